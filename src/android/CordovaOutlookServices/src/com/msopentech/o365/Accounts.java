@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Helper class that identifies the account calls are made for. Account key is built from service root and
+ * user's identity, taken from access token's claims, so it doesn't change when token is refreshed.
+ * Used to keep local data (search index, entity cache, request limits) of different accounts apart
+ */
+class Accounts {
+
+    /**
+     * Claims that identify user, in order of preference
+     */
+    private static final String[] USER_CLAIMS = { "oid", "upn", "unique_name", "email", "sub" };
+
+    private Accounts() {
+    }
+
+    /**
+     * Returns key of account that token is issued for
+     *
+     * @param serviceRoot service root URI
+     * @param token access token
+     * @return account key, e.g. 'https://outlook.office365.com/api/v1.0|tenant-id/user-id'
+     */
+    static String key(String serviceRoot, String token) {
+        String root = serviceRoot.endsWith("/") ? serviceRoot.substring(0, serviceRoot.length() - 1) : serviceRoot;
+        return root + "|" + user(token);
+    }
+
+    /**
+     * Reads user's identity from token's claims. Tokens that are not JWTs or have no user claims
+     * can't be matched to a user, so such tokens are treated as separate accounts, identified by token's hash
+     */
+    private static String user(String token) {
+        JSONObject claims = claims(token);
+        if (claims != null) {
+            for (String claim : USER_CLAIMS) {
+                String user = claims.optString(claim, null);
+                if (user != null && user.length() > 0) {
+                    String tenant = claims.optString("tid", null);
+                    return tenant != null ? tenant + "/" + user : user;
+                }
+            }
+        }
+        return "token:" + Hashing.sha256().hashString(token, Charsets.UTF_8).toString();
+    }
+
+    private static JSONObject claims(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            // JWT segments are base64url encoded without padding
+            String payload = CharMatcher.is('=').trimTrailingFrom(parts[1]);
+            return new JSONObject(new String(BaseEncoding.base64Url().omitPadding().decode(payload), Charsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+}
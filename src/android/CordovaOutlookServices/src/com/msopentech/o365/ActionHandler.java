@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+
+/**
+ * Handler for a single plugin's action, registered in actions table once when plugin is initialized
+ */
+interface ActionHandler {
+
+    /**
+     * Executes action with arguments passed from common JS layer
+     *
+     * @param context Plugin context used to send action's result back to JS layer
+     * @param client OutlookClient instance for current service root and token
+     * @param resolver Dependency resolver, used by client
+     * @param methodArgs Arguments, passed from JS layer
+     * @throws Throwable
+     */
+    void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable;
+}
@@ -0,0 +1,499 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.ODataException;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class that transfers attachments' content between server and local files, so content never goes
+ * through JS bridge and is never held in memory as a whole. Transfers run on their own threads
+ * to keep worker pool free for other actions
+ */
+class AttachmentTransfers {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TRANSFER_THREADS = 2;
+
+    /**
+     * Min number of bytes transferred between two progress notifications
+     */
+    private static final long PROGRESS_STEP = 256 * 1024;
+
+    /**
+     * Size of uploaded chunk. Upload sessions require chunks to be multiples of 320 KB
+     */
+    private static final int UPLOAD_CHUNK_SIZE = 4 * 320 * 1024;
+
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+    private static final int NOT_FOUND = 404;
+    private static final int GONE = 410;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    private final File downloadsDirectory;
+    private final StateStore uploads;
+    private final ExecutorService executor;
+
+    /**
+     * @param downloadsDirectory default directory for downloaded attachments
+     * @param uploads store that keeps upload sessions, so interrupted uploads can be resumed
+     */
+    AttachmentTransfers(File downloadsDirectory, StateStore uploads) {
+        this.downloadsDirectory = downloadsDirectory;
+        this.uploads = uploads;
+        this.executor = Executors.newFixedThreadPool(TRANSFER_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("OutlookServices-transfer-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Registers attachment transfer actions
+     *
+     * @param handlers Actions table to fill
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("downloadAttachmentToFile", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                downloadToFile(context, resolver, methodArgs);
+            }
+        });
+        handlers.put("uploadAttachmentFromFile", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                uploadFromFile(context, resolver, methodArgs);
+            }
+        });
+    }
+
+    /**
+     * Stops transfer threads. Transfers in progress are interrupted
+     */
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Downloads file attachment's content, specified by OData path, to local file. Attachment's metadata is read first,
+     * then content is streamed from '$value' to file. Progress is reported to JS layer with keepCallback flag set:
+     * {done: false, bytesWritten: Number, totalBytes: Number}. Final result contains file location and metadata:
+     * {done: true, uri: String, path: String, name: String, contentType: String, size: Number}
+     *
+     * @param context Plugin context used to send progress and result back to plugin
+     * @param resolver Dependency resolver, used to send requests
+     * @param methodArgs Arguments, passed from JS layer. Optional first argument is options JSON:
+     *                   directory: String, path or file URI of directory to save attachment to
+     * @throws JSONException
+     */
+    void downloadToFile(final CallbackContext context, final DependencyResolver resolver, ODataMethodArgs methodArgs) throws JSONException {
+        JSONObject options = new JSONObject(methodArgs.getArgs().isEmpty() ? "{}" : methodArgs.getArgs().get(0));
+
+        final String path = methodArgs.getODataPath();
+        final File directory = options.has("directory") ? toFile(options.getString("directory")) : this.downloadsDirectory;
+        final String attachmentId = methodArgs.parseIdFromODataPath();
+
+        ListenableFuture<String> metadata = ODataRequests.sendForString(resolver, HttpVerb.GET,
+                path + "?$select=Name,ContentType,Size", null, null);
+
+        Futures.addCallback(metadata, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String metadataJson) {
+                try {
+                    JSONObject attachment = new JSONObject(metadataJson != null ? metadataJson : "{}");
+                    String name = attachment.optString("Name", "");
+                    File target = new File(directory, safeFileName(name.length() > 0 ? name : attachmentId));
+
+                    Download download = new Download(context, attachment, target);
+                    Futures.addCallback(ODataRequests.send(resolver, HttpVerb.GET, path + "/$value", null, null),
+                            download, executor);
+                } catch (JSONException e) {
+                    context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                        OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+            }
+        }, this.executor);
+    }
+
+    /**
+     * Uploads local file as file attachment to message or event, specified by attachments collection's OData path.
+     * File is sent in fixed-size chunks through an upload session. Session URL and offset of the next chunk are
+     * kept in StateStore after every acknowledged chunk, so if upload of the same file to the same collection
+     * is interrupted, next call resumes it. Progress is reported to JS layer with keepCallback flag set:
+     * {done: false, bytesWritten: Number, totalBytes: Number}. Final result is {done: true, name: String, size: Number}
+     *
+     * @param context Plugin context used to send progress and result back to plugin
+     * @param resolver Dependency resolver, used to send requests
+     * @param methodArgs Arguments, passed from JS layer. First argument is options JSON:
+     *                   file: String, path or file URI of file to upload,
+     *                   name: String, optional attachment name, file name is used by default
+     * @throws JSONException
+     * @throws IOException
+     */
+    void uploadFromFile(CallbackContext context, DependencyResolver resolver, ODataMethodArgs methodArgs) throws JSONException, IOException {
+        JSONObject options = new JSONObject(methodArgs.getArgs().get(0));
+
+        File file = toFile(options.getString("file"));
+        if (!file.isFile()) {
+            throw new IOException("File not found: " + file);
+        }
+        if (file.length() == 0) {
+            throw new IOException("Can't upload empty file " + file);
+        }
+
+        String name = options.optString("name", file.getName());
+        String path = methodArgs.getODataPath();
+
+        // File's size and modification time are part of the key, so changed file is never resumed
+        String stateKey = path + "|" + file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+
+        new Upload(context, resolver, path, file, name, stateKey).start();
+    }
+
+    /**
+     * Single file upload, that sends chunks one by one until server acknowledges the whole file
+     */
+    private class Upload {
+        private final CallbackContext context;
+        private final DependencyResolver resolver;
+        private final String attachmentsPath;
+        private final File file;
+        private final String name;
+        private final String stateKey;
+        private final long size;
+
+        private String uploadUrl;
+
+        Upload(CallbackContext context, DependencyResolver resolver, String attachmentsPath, File file, String name, String stateKey) {
+            this.context = context;
+            this.resolver = resolver;
+            this.attachmentsPath = attachmentsPath;
+            this.file = file;
+            this.name = name;
+            this.stateKey = stateKey;
+            this.size = file.length();
+        }
+
+        void start() throws IOException, JSONException {
+            String stateJson = uploads.get(this.stateKey);
+            if (stateJson != null) {
+                JSONObject state = new JSONObject(stateJson);
+                this.uploadUrl = state.getString("uploadUrl");
+                sendChunk(state.getLong("offset"));
+            } else {
+                createSession();
+            }
+        }
+
+        private void createSession() throws JSONException {
+            JSONObject item = new JSONObject();
+            item.put("AttachmentType", "File");
+            item.put("Name", this.name);
+            item.put("Size", this.size);
+            byte[] content = new JSONObject().put("AttachmentItem", item).toString().getBytes(Constants.UTF8);
+
+            ListenableFuture<String> future = ODataRequests.sendForString(this.resolver, HttpVerb.POST,
+                    this.attachmentsPath + "/createUploadSession", content, null);
+
+            Futures.addCallback(future, new FutureCallback<String>() {
+                @Override
+                public void onSuccess(String sessionJson) {
+                    try {
+                        JSONObject session = new JSONObject(sessionJson != null ? sessionJson : "{}");
+                        uploadUrl = session.has("UploadUrl") ? session.getString("UploadUrl") : session.getString("uploadUrl");
+                        saveState(0);
+                        sendChunk(0);
+                    } catch (JSONException e) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+                    } catch (IOException e) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.IO_EXCEPTION, e.getMessage()));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    fail(throwable);
+                }
+            }, executor);
+        }
+
+        private void sendChunk(final long offset) throws IOException {
+            final long length = Math.min(UPLOAD_CHUNK_SIZE, this.size - offset);
+
+            final FileInputStream input = new FileInputStream(this.file);
+            input.getChannel().position(offset);
+
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put(CONTENT_RANGE_HEADER, "bytes " + offset + "-" + (offset + length - 1) + "/" + this.size);
+
+            // Upload URL is already authorized, so access token is not sent with chunks
+            ListenableFuture<Response> future = ODataRequests.sendStream(this.resolver, HttpVerb.PUT, this.uploadUrl,
+                    ByteStreams.limit(input, length), length, headers, false);
+
+            Futures.addCallback(future, new FutureCallback<Response>() {
+                @Override
+                public void onSuccess(Response response) {
+                    closeQuietly(input);
+                    try {
+                        onChunkResponse(response, offset + length);
+                    } catch (JSONException e) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+                    } catch (IOException e) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.IO_EXCEPTION, e.getMessage()));
+                    } catch (Throwable throwable) {
+                        fail(throwable);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    closeQuietly(input);
+                    // State is kept, so next call resumes from the last acknowledged chunk
+                    fail(throwable);
+                }
+            }, executor);
+        }
+
+        private void onChunkResponse(Response response, long chunkEnd) throws Throwable {
+            int status = response.getStatus();
+            byte[] payload = ODataRequests.readPayload(response);
+
+            if (status == NOT_FOUND || status == GONE || status == RANGE_NOT_SATISFIABLE) {
+                // Upload session is expired or out of sync with saved offset, start over with a new one
+                uploads.remove(this.stateKey);
+                createSession();
+                return;
+            }
+            if (!ODataRequests.isSuccess(status)) {
+                throw new ODataException(new ODataRequests.RawODataResponse(response, payload),
+                        "Request failed with status " + status);
+            }
+
+            JSONObject body = new JSONObject(payload == null || payload.length == 0 ? "{}" : new String(payload, Constants.UTF8));
+            long nextOffset = nextExpectedOffset(body, chunkEnd);
+
+            if (nextOffset >= this.size) {
+                uploads.remove(this.stateKey);
+
+                JSONObject result = new JSONObject();
+                result.put("done", true);
+                result.put("name", this.name);
+                result.put("size", this.size);
+                this.context.sendPluginResult(new PluginResult(PluginResult.Status.OK, result.toString()));
+                return;
+            }
+
+            saveState(nextOffset);
+            sendProgress(this.context, nextOffset, this.size);
+            sendChunk(nextOffset);
+        }
+
+        private void saveState(long offset) throws JSONException, IOException {
+            JSONObject state = new JSONObject();
+            state.put("uploadUrl", this.uploadUrl);
+            state.put("offset", offset);
+            uploads.put(this.stateKey, state.toString());
+        }
+
+        private void fail(Throwable throwable) {
+            this.context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                    OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+        }
+    }
+
+    /**
+     * Reads start of the first range server still expects, e.g. "NextExpectedRanges": ["1310720-"]
+     *
+     * @param body chunk response body
+     * @param defaultOffset offset to use if response has no expected ranges (i.e. upload is complete)
+     * @return offset of the next chunk
+     */
+    private static long nextExpectedOffset(JSONObject body, long defaultOffset) throws JSONException {
+        JSONArray ranges = body.has("NextExpectedRanges") ?
+                body.optJSONArray("NextExpectedRanges") : body.optJSONArray("nextExpectedRanges");
+        if (ranges == null || ranges.length() == 0) {
+            return defaultOffset;
+        }
+
+        String range = ranges.getString(0);
+        int separator = range.indexOf('-');
+        return Long.parseLong(separator < 0 ? range : range.substring(0, separator));
+    }
+
+    private static void closeQuietly(FileInputStream input) {
+        try {
+            input.close();
+        } catch (IOException e) {
+            // Nothing to do, file was only read
+        }
+    }
+
+    /**
+     * Callback that copies attachment's content from response stream to file. Content is written
+     * to a temporary file first, so interrupted download never leaves a partial file under target name
+     */
+    private static final class Download implements FutureCallback<Response> {
+        private final CallbackContext context;
+        private final JSONObject attachment;
+        private final File target;
+
+        Download(CallbackContext context, JSONObject attachment, File target) {
+            this.context = context;
+            this.attachment = attachment;
+            this.target = target;
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            try {
+                if (!ODataRequests.isSuccess(response.getStatus())) {
+                    byte[] payload = ODataRequests.readPayload(response);
+                    throw new ODataException(new ODataRequests.RawODataResponse(response, payload),
+                            "Request failed with status " + response.getStatus());
+                }
+
+                long size = copyToFile(response);
+
+                JSONObject result = new JSONObject();
+                result.put("done", true);
+                result.put("uri", this.target.toURI().toString());
+                result.put("path", this.target.getAbsolutePath());
+                result.put("name", this.attachment.optString("Name", this.target.getName()));
+                result.put("contentType", this.attachment.optString("ContentType", ""));
+                result.put("size", size);
+                this.context.sendPluginResult(new PluginResult(PluginResult.Status.OK, result.toString()));
+            } catch (JSONException e) {
+                this.context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+            } catch (IOException e) {
+                this.context.sendPluginResult(new PluginResult(PluginResult.Status.IO_EXCEPTION, e.getMessage()));
+            } catch (Throwable throwable) {
+                onFailure(throwable);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+            this.context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                    OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+        }
+
+        private long copyToFile(Response response) throws IOException, JSONException {
+            File directory = this.target.getParentFile();
+            if (!directory.exists() && !directory.mkdirs()) {
+                response.close();
+                throw new IOException("Can't create directory " + directory);
+            }
+
+            long totalBytes = this.attachment.optLong("Size", -1);
+            File temp = new File(directory, this.target.getName() + ".part");
+
+            InputStream stream = response.getStream();
+            FileOutputStream output = null;
+            long bytesWritten = 0;
+            boolean completed = false;
+            try {
+                output = new FileOutputStream(temp);
+                if (stream != null) {
+                    ReadableByteChannel in = Channels.newChannel(stream);
+                    FileChannel out = output.getChannel();
+                    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+                    long notifiedBytes = 0;
+                    while (in.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            bytesWritten += out.write(buffer);
+                        }
+                        buffer.clear();
+
+                        if (bytesWritten - notifiedBytes >= PROGRESS_STEP) {
+                            notifiedBytes = bytesWritten;
+                            sendProgress(this.context, bytesWritten, totalBytes);
+                        }
+                    }
+                }
+                completed = true;
+            } finally {
+                if (output != null) {
+                    output.close();
+                }
+                response.close();
+                if (!completed) {
+                    temp.delete();
+                }
+            }
+
+            if (this.target.exists() && !this.target.delete()) {
+                throw new IOException("Can't replace file " + this.target);
+            }
+            if (!temp.renameTo(this.target)) {
+                throw new IOException("Can't write file " + this.target);
+            }
+            return bytesWritten;
+        }
+    }
+
+    private static void sendProgress(CallbackContext context, long bytesWritten, long totalBytes) throws JSONException {
+        JSONObject progress = new JSONObject();
+        progress.put("done", false);
+        progress.put("bytesWritten", bytesWritten);
+        progress.put("totalBytes", totalBytes);
+
+        PluginResult result = new PluginResult(PluginResult.Status.OK, progress.toString());
+        result.setKeepCallback(true);
+        context.sendPluginResult(result);
+    }
+
+    /**
+     * @param location file URI or path
+     * @return File for specified location
+     */
+    static File toFile(String location) {
+        return location.startsWith("file:") ? new File(URI.create(location)) : new File(location);
+    }
+
+    private static String safeFileName(String name) {
+        return name.replaceAll("[\\\\/:*?\"<>|\\x00-\\x1f]", "_");
+    }
+}
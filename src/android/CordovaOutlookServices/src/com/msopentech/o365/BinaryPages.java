@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.services.odata.Constants;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compact binary encoding of collection pages, sent to JS layer as ArrayBuffer instead of string.
+ * Every item is encoded separately, so JS layer decodes and parses items one by one instead of
+ * building and parsing a single string of the whole page. All integers are big-endian:
+ *
+ * <pre>
+ * int32 MAGIC
+ * int32 header length, header bytes (UTF-8 JSON of page's properties except 'value', e.g. '@odata.nextLink')
+ * int32 items count
+ * items count * (int32 item length, item bytes (UTF-8 JSON))
+ * </pre>
+ *
+ * Decoder is in www/Fetchers.js
+ */
+class BinaryPages {
+
+    /**
+     * Format marker and version, "OSB1"
+     */
+    static final int MAGIC = 0x4F534231;
+
+    private BinaryPages() {
+    }
+
+    /**
+     * @param queryObject JSONObject that contains query parameters, including optional 'binary' flag
+     * @return true if collection should be sent in binary form
+     */
+    static boolean isRequested(JSONObject queryObject) {
+        return queryObject.optBoolean("binary", false);
+    }
+
+    /**
+     * Encodes collection's page
+     *
+     * @param page collection's page
+     * @return encoded page
+     * @throws JSONException
+     */
+    static byte[] encode(JSONObject page) throws JSONException {
+        JSONObject header = new JSONObject();
+        Iterator<?> keys = page.keys();
+        while (keys.hasNext()) {
+            String key = keys.next().toString();
+            if (!key.equals("value")) {
+                header.put(key, page.get(key));
+            }
+        }
+        byte[] headerBytes = header.toString().getBytes(Constants.UTF8);
+
+        JSONArray items = page.optJSONArray("value");
+        int itemsCount = items != null ? items.length() : 0;
+        List<byte[]> encodedItems = new ArrayList<byte[]>(itemsCount);
+        int size = 3 * 4 + headerBytes.length;
+        for (int i = 0; i < itemsCount; i++) {
+            byte[] item = items.get(i).toString().getBytes(Constants.UTF8);
+            encodedItems.add(item);
+            size += 4 + item.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(headerBytes.length);
+        buffer.put(headerBytes);
+        buffer.putInt(itemsCount);
+        for (byte[] item : encodedItems) {
+            buffer.putInt(item.length);
+            buffer.put(item);
+        }
+        return buffer.array();
+    }
+}
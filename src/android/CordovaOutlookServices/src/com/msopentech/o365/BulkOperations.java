@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class that applies the same action to many entities of one collection with a single call from JS layer.
+ * Operations are sent as $batch requests, so number of HTTP requests and bridge crossings
+ * doesn't grow linearly with number of entities
+ */
+class BulkOperations {
+
+    private BulkOperations() {
+    }
+
+    /**
+     * Applies action to every entity in the list
+     *
+     * @param resolver Dependency resolver, used to create and authorize requests
+     * @param serviceRoot service root URI
+     * @param collectionPath OData path of collection that contains entities
+     * @param action single entity action to apply (e.g. "moveMessage")
+     * @param idsJson JSON array of entities' Ids
+     * @param argument action's argument shared by all entities (e.g. destination Id or update body), may be null
+     * @return Future with bulk result: {succeeded: Number, failed: Number, results: [{id: String, status: Number,
+     *         body: Object}]}. Results are in the same order as Ids; failed item has 'error' instead of 'body'
+     *         when it wasn't sent, or status other than 2xx
+     * @throws JSONException
+     */
+    static ListenableFuture<String> execute(DependencyResolver resolver, String serviceRoot, String collectionPath,
+                                            String action, String idsJson, String argument) throws JSONException {
+        final JSONArray ids = new JSONArray(idsJson);
+        List<String> args = argument != null ? Collections.singletonList(argument) : Collections.<String>emptyList();
+
+        // Entities are addressed as Messages('id'), so Ids that contain '/' or '+' stay a single key
+        String path = collectionPath.endsWith("/") ? collectionPath.substring(0, collectionPath.length() - 1) : collectionPath;
+        int nameStart = path.lastIndexOf('/') + 1;
+        String parentPath = path.substring(0, nameStart);
+        String collection = path.substring(nameStart);
+
+        List<ODataOperation> operations = new ArrayList<ODataOperation>(ids.length());
+        for (int i = 0; i < ids.length(); i++) {
+            String entityPath = parentPath + OutlookServicesMethodsImpl.entitySegment(collection, ids.getString(i));
+            operations.add(ODataOperation.fromAction(action, entityPath, args));
+        }
+
+        return Futures.transform(ODataBatch.execute(resolver, serviceRoot, operations), new AsyncFunction<JSONArray, String>() {
+            @Override
+            public ListenableFuture<String> apply(JSONArray results) throws JSONException {
+                return Futures.immediateFuture(buildResult(ids, results));
+            }
+        });
+    }
+
+    private static String buildResult(JSONArray ids, JSONArray results) throws JSONException {
+        int succeeded = 0;
+        JSONArray items = new JSONArray();
+
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject item = results.getJSONObject(i);
+            item.put("id", ids.getString(i));
+            if (ODataRequests.isSuccess(item.optInt("status"))) {
+                succeeded++;
+            }
+            items.put(item);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("succeeded", succeeded);
+        result.put("failed", results.length() - succeeded);
+        result.put("results", items);
+        return result.toString();
+    }
+}
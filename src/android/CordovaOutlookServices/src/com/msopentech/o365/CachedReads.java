@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Class that puts EntityCache under single entity read actions and message's attachments' metadata reads. Cached entity is sent to JS layer
+ * immediately and then revalidated in background with If-None-Match request, so next read gets fresh entity.
+ * Entities are cached per account. Actions that change or remove entities drop them from cache both before
+ * the change is sent and after it is completed, so reads that run concurrently with the change don't keep stale entity
+ */
+class CachedReads {
+
+    private static final String TAG = "Office 365";
+
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final int NOT_FOUND = 404;
+
+    /**
+     * Attachments' metadata that is cached, fields are sorted
+     */
+    private static final String ATTACHMENTS_INFO_SELECT = "ContentType,IsInline,Name,Size";
+
+    private final EntityCache cache;
+    private final Executor executor;
+
+    /**
+     * @param cache cache to keep entities in
+     * @param executor Executor used to process responses
+     */
+    CachedReads(EntityCache cache, Executor executor) {
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    /**
+     * Replaces read actions with cached ones and wraps actions that change entities,
+     * so they invalidate cache. Must be called after other actions are registered
+     *
+     * @param handlers Actions table to update
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("clearCache", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                cache.clear(methodArgs.getAccount());
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+            }
+        });
+
+        addRead(handlers, "getMessage", "Messages");
+        addRead(handlers, "getEvent", "Events");
+        addRead(handlers, "getContact", "Contacts");
+        addRead(handlers, "getFolder", "Folders");
+        addRead(handlers, "getCalendar", "Calendars");
+        addAttachmentsInfoRead(handlers);
+
+        for (String action : new String[] { "updateMessage", "deleteMessage", "moveMessage", "send" }) {
+            addInvalidation(handlers, action, "Messages");
+        }
+        for (String action : new String[] { "updateEvent", "deleteEvent", "accept", "tentativelyAccept", "decline" }) {
+            addInvalidation(handlers, action, "Events");
+        }
+        for (String action : new String[] { "updateContact", "deleteContact" }) {
+            addInvalidation(handlers, action, "Contacts");
+        }
+        for (String action : new String[] { "updateFolder", "deleteFolder", "moveFolder" }) {
+            addInvalidation(handlers, action, "Folders");
+        }
+        for (String action : new String[] { "updateCalendar", "deleteCalendar" }) {
+            addInvalidation(handlers, action, "Calendars");
+        }
+
+        for (String action : new String[] { "moveMessages", "updateMessages", "deleteMessages" }) {
+            addBulkInvalidation(handlers, action, "Messages");
+        }
+
+        // Queued operations target either a message or an event, so both are dropped
+        addInvalidation(handlers, "enqueueOperation", "Messages");
+        addInvalidation(handlers, "enqueueOperation", "Events");
+
+        // Attachments change their message's or event's HasAttachments flag
+        addContainerInvalidation(handlers, "addAttachment");
+        addContainerInvalidation(handlers, "uploadAttachmentFromFile");
+        addContainerInvalidation(handlers, "updateAttachment");
+        addContainerInvalidation(handlers, "deleteAttachment");
+    }
+
+    /**
+     * Drops target entity of queued operation (see Outbox) once operation is sent. Queued operations target
+     * either a message or an event, so both are dropped
+     *
+     * @param account operation's account
+     * @param serviceRoot operation's service root
+     * @param path operation's target entity path
+     */
+    void onOperationSent(String account, String serviceRoot, String path) {
+        ODataPath entityPath = ODataPath.parse(path);
+        String collection = entityPath.getEntitySetName().equalsIgnoreCase("events") ? "Events" : "Messages";
+        this.cache.remove(account, entityUrl(serviceRoot, collection, entityPath.getEntityId()));
+    }
+
+    private void addRead(Map<String, ActionHandler> handlers, String action, final String collection) {
+        handlers.put(action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                // getCalendar receives calendar Id as argument, other actions have it at the end of OData path
+                String id = collection.equals("Calendars") ? methodArgs.getArgs().get(0) : methodArgs.parseIdFromODataPath();
+                read(context, resolver, methodArgs.getAccount(), entityUrl(methodArgs.getServiceRoot(), collection, id));
+            }
+        });
+    }
+
+    private void addAttachmentsInfoRead(Map<String, ActionHandler> handlers) {
+        final ActionHandler handler = handlers.get("getAttachments");
+        if (handler == null) {
+            return;
+        }
+
+        handlers.put("getAttachments", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                // Only message's attachments' metadata is cached, other queries are sent as is
+                ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
+                if (methodArgs.parseParentTypeFromOdataPath().equals("messages") && isAttachmentsInfoQuery(query)) {
+                    read(context, resolver, methodArgs.getAccount(),
+                            attachmentsInfoUrl(methodArgs.getServiceRoot(), methodArgs.parseContainerIdFromODataPath()));
+                } else {
+                    handler.execute(context, client, resolver, methodArgs);
+                }
+            }
+        });
+    }
+
+    private void addInvalidation(Map<String, ActionHandler> handlers, String action, final String collection) {
+        final ActionHandler handler = handlers.get(action);
+        if (handler == null) {
+            return;
+        }
+
+        handlers.put(action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                List<String> keys = Collections.singletonList(
+                        entityUrl(methodArgs.getServiceRoot(), collection, methodArgs.parseIdFromODataPath()));
+                handler.execute(invalidating(context, methodArgs.getAccount(), keys), client, resolver, methodArgs);
+            }
+        });
+    }
+
+    private void addBulkInvalidation(Map<String, ActionHandler> handlers, String action, final String collection) {
+        final ActionHandler handler = handlers.get(action);
+        if (handler == null) {
+            return;
+        }
+
+        handlers.put(action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                // First argument is JSON array of entities' Ids
+                JSONArray ids = new JSONArray(methodArgs.getArgs().get(0));
+                List<String> keys = new ArrayList<String>(ids.length());
+                for (int i = 0; i < ids.length(); i++) {
+                    keys.add(entityUrl(methodArgs.getServiceRoot(), collection, ids.getString(i)));
+                }
+                handler.execute(invalidating(context, methodArgs.getAccount(), keys), client, resolver, methodArgs);
+            }
+        });
+    }
+
+    private void addContainerInvalidation(Map<String, ActionHandler> handlers, String action) {
+        final ActionHandler handler = handlers.get(action);
+        if (handler == null) {
+            return;
+        }
+
+        handlers.put(action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                String collection = methodArgs.parseParentTypeFromOdataPath().equals("messages") ? "Messages" : "Events";
+                String containerId = methodArgs.parseContainerIdFromODataPath();
+                List<String> keys = Arrays.asList(entityUrl(methodArgs.getServiceRoot(), collection, containerId),
+                        attachmentsInfoUrl(methodArgs.getServiceRoot(), containerId));
+                handler.execute(invalidating(context, methodArgs.getAccount(), keys), client, resolver, methodArgs);
+            }
+        });
+    }
+
+    /**
+     * Drops entities from cache now and returns context that drops them again when action is completed
+     *
+     * @param context action's plugin context
+     * @param account entities' account
+     * @param keys entities' keys
+     * @return context to pass to action's handler
+     */
+    private CallbackContext invalidating(CallbackContext context, final String account, final List<String> keys) {
+        final Runnable invalidation = new Runnable() {
+            @Override
+            public void run() {
+                for (String key : keys) {
+                    cache.remove(account, key);
+                }
+            }
+        };
+        invalidation.run();
+        return new CompletionCallbackContext(context, invalidation);
+    }
+
+    private void read(final CallbackContext context, DependencyResolver resolver, final String account, final String url) {
+        EntityCache.Entry cached = this.cache.get(account, url);
+        if (cached != null) {
+            context.sendPluginResult(new PluginResult(PluginResult.Status.OK, cached.getEntity()));
+            revalidate(resolver, account, url, cached.getEtag());
+            return;
+        }
+
+        final long generation = this.cache.getGeneration();
+
+        ListenableFuture<String> future = ODataRequests.sendForString(resolver, HttpVerb.GET, url, null, null);
+        Futures.addCallback(future, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String entity) {
+                if (entity == null) {
+                    context.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+                    return;
+                }
+                cache.put(account, url, entity, generation);
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK, entity));
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                        OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+            }
+        }, this.executor);
+    }
+
+    private void revalidate(DependencyResolver resolver, final String account, final String url, String etag) {
+        Map<String, String> headers = etag.length() == 0 ?
+                null : Collections.singletonMap(IF_NONE_MATCH_HEADER, etag);
+        final long generation = this.cache.getGeneration();
+
+        ListenableFuture<Response> future = ODataRequests.send(resolver, HttpVerb.GET, url, null, headers);
+        Futures.addCallback(future, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    int status = response.getStatus();
+                    byte[] payload = ODataRequests.readPayload(response);
+
+                    if (status == NOT_FOUND) {
+                        cache.remove(account, url);
+                    } else if (ODataRequests.isSuccess(status) && payload != null && payload.length > 0) {
+                        cache.put(account, url, new String(payload, Constants.UTF8), generation);
+                    }
+                    // 304 means cached entity is still valid, other statuses leave cache as is
+                } catch (Exception e) {
+                    LOG.w(TAG, "Failed to revalidate cached entity", e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                // Cached entity stays until next successful revalidation
+                LOG.w(TAG, "Failed to revalidate cached entity", throwable);
+            }
+        }, this.executor);
+    }
+
+    /**
+     * @param serviceRoot service root URI
+     * @param collection name of collection (e.g. "Messages")
+     * @param id entity's Id
+     * @return entity's URL with encoded Id, used as cache key along with account
+     */
+    static String entityUrl(String serviceRoot, String collection, String id) {
+        String root = serviceRoot.endsWith("/") ? serviceRoot.substring(0, serviceRoot.length() - 1) : serviceRoot;
+        return root + "/Me/" + OutlookServicesMethodsImpl.entitySegment(collection, id);
+    }
+
+    /**
+     * @param serviceRoot service root URI
+     * @param messageId message's Id
+     * @return URL of message's attachments' metadata, used as cache key along with account
+     */
+    static String attachmentsInfoUrl(String serviceRoot, String messageId) {
+        return entityUrl(serviceRoot, "Messages", messageId) + "/Attachments?$select=" + ATTACHMENTS_INFO_SELECT;
+    }
+
+    /**
+     * @param query getAttachments query parameters
+     * @return true if query selects attachments' metadata only, in any order, and has no other options
+     */
+    private static boolean isAttachmentsInfoQuery(ODataQuery query) {
+        String select = query.getSelect();
+        if (select == null || query.getTop() > -1 || query.getSkip() > -1
+                || query.getFilter() != null || query.getExpand() != null || query.getOrderBy() != null) {
+            return false;
+        }
+
+        String[] fields = select.split(",");
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        Arrays.sort(fields);
+        return Joiner.on(',').join(fields).equals(ATTACHMENTS_INFO_SELECT);
+    }
+}
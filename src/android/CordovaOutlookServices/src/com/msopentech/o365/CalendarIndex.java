@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of one calendar view's event occurrences. Keeps time windows that are already
+ * read from the server, merged into disjoint intervals, and occurrences sorted by start time,
+ * so a window query is answered from memory and only its uncovered parts are requested.
+ * Not thread-safe, callers synchronize on index
+ */
+class CalendarIndex {
+
+    /**
+     * Covered windows: start to end, in milliseconds. Intervals are disjoint and not adjacent
+     */
+    private final TreeMap<Long, Long> covered = new TreeMap<Long, Long>();
+
+    /**
+     * Occurrences by start time
+     */
+    private final TreeMap<Long, Map<String, Occurrence>> byStart = new TreeMap<Long, Map<String, Occurrence>>();
+
+    /**
+     * Occurrences by Id
+     */
+    private final Map<String, Occurrence> byId = new HashMap<String, Occurrence>();
+
+    /**
+     * Longest occurrence's duration, bounds the range scanned by queries
+     */
+    private long maxDuration;
+
+    /**
+     * @param start window start, in milliseconds
+     * @param end window end, in milliseconds
+     * @return parts of window that are not read from the server yet, in time order
+     */
+    List<long[]> uncovered(long start, long end) {
+        List<long[]> gaps = new ArrayList<long[]>();
+        long position = start;
+
+        Map.Entry<Long, Long> interval = this.covered.floorEntry(start);
+        if (interval == null) {
+            interval = this.covered.higherEntry(start);
+        }
+        while (interval != null && interval.getKey() < end && position < end) {
+            if (interval.getKey() > position) {
+                gaps.add(new long[] { position, interval.getKey() });
+            }
+            position = Math.max(position, interval.getValue());
+            interval = this.covered.higherEntry(interval.getKey());
+        }
+        if (position < end) {
+            gaps.add(new long[] { position, end });
+        }
+        return gaps;
+    }
+
+    /**
+     * Marks window as read from the server, merging it with overlapping and adjacent windows
+     *
+     * @param start window start, in milliseconds
+     * @param end window end, in milliseconds
+     */
+    void cover(long start, long end) {
+        Map.Entry<Long, Long> previous = this.covered.floorEntry(start);
+        if (previous != null && previous.getValue() >= start) {
+            start = previous.getKey();
+            end = Math.max(end, previous.getValue());
+            this.covered.remove(previous.getKey());
+        }
+
+        Map.Entry<Long, Long> next = this.covered.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            this.covered.remove(next.getKey());
+            next = this.covered.ceilingEntry(start);
+        }
+
+        this.covered.put(start, end);
+    }
+
+    /**
+     * Forgets window, so it is read from the server again. Occurrences that start in window are dropped
+     *
+     * @param start window start, in milliseconds
+     * @param end window end, in milliseconds
+     */
+    void invalidate(long start, long end) {
+        Map.Entry<Long, Long> interval = this.covered.floorEntry(start);
+        if (interval == null || interval.getValue() <= start) {
+            interval = this.covered.higherEntry(start);
+        }
+        while (interval != null && interval.getKey() < end) {
+            long intervalStart = interval.getKey();
+            long intervalEnd = interval.getValue();
+            this.covered.remove(intervalStart);
+            if (intervalStart < start) {
+                this.covered.put(intervalStart, start);
+            }
+            if (intervalEnd > end) {
+                this.covered.put(end, intervalEnd);
+            }
+            interval = this.covered.higherEntry(intervalStart);
+        }
+
+        for (Occurrence occurrence : query(start, end)) {
+            if (occurrence.start >= start) {
+                remove(occurrence);
+            }
+        }
+    }
+
+    /**
+     * Adds occurrence or replaces occurrence with the same Id
+     *
+     * @param id occurrence's Id
+     * @param start occurrence's start, in milliseconds
+     * @param end occurrence's end, in milliseconds
+     * @param event occurrence's JSON
+     */
+    void put(String id, long start, long end, JSONObject event) {
+        Occurrence existing = this.byId.get(id);
+        if (existing != null) {
+            remove(existing);
+        }
+
+        Occurrence occurrence = new Occurrence(id, start, end, event);
+        this.byId.put(id, occurrence);
+        Map<String, Occurrence> sameStart = this.byStart.get(start);
+        if (sameStart == null) {
+            sameStart = new HashMap<String, Occurrence>();
+            this.byStart.put(start, sameStart);
+        }
+        sameStart.put(id, occurrence);
+        this.maxDuration = Math.max(this.maxDuration, end - start);
+    }
+
+    /**
+     * @param start window start, in milliseconds
+     * @param end window end, in milliseconds
+     * @return occurrences that overlap window, sorted by start time. Zero-length occurrences
+     *         are returned if they start in window
+     */
+    List<Occurrence> query(long start, long end) {
+        List<Occurrence> result = new ArrayList<Occurrence>();
+        for (Map<String, Occurrence> sameStart : this.byStart.subMap(start - this.maxDuration, true, end, false).values()) {
+            for (Occurrence occurrence : sameStart.values()) {
+                if (occurrence.end > start || occurrence.start >= start) {
+                    result.add(occurrence);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of indexed occurrences
+     */
+    int size() {
+        return this.byId.size();
+    }
+
+    private void remove(Occurrence occurrence) {
+        this.byId.remove(occurrence.id);
+        Map<String, Occurrence> sameStart = this.byStart.get(occurrence.start);
+        if (sameStart != null) {
+            sameStart.remove(occurrence.id);
+            if (sameStart.isEmpty()) {
+                this.byStart.remove(occurrence.start);
+            }
+        }
+    }
+
+    /**
+     * Single event occurrence
+     */
+    static final class Occurrence {
+        private final String id;
+        private final long start;
+        private final long end;
+        private final JSONObject event;
+
+        private Occurrence(String id, long start, long end, JSONObject event) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+            this.event = event;
+        }
+
+        JSONObject getEvent() {
+            return this.event;
+        }
+    }
+}
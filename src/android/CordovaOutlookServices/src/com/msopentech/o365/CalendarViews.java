@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.Helpers;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+/**
+ * Class that reads calendar view (events and expanded occurrences of recurring events in a time window)
+ * through CalendarIndex: parts of window that are already read are answered from memory and only
+ * uncovered parts are requested from the server, so scrolling between adjacent weeks or months
+ * costs at most one request per new part. Indexes are dropped when events are changed through the plugin
+ */
+class CalendarViews {
+
+    private static final String TAG = "Office 365";
+
+    private static final String PREFER_HEADER = "Prefer";
+    private static final String CALENDAR_VIEW_PREFERENCE = "odata.maxpagesize=50, outlook.timezone=\"UTC\"";
+
+    /**
+     * Max number of indexed calendar views, least recently used one is dropped first
+     */
+    private static final int MAX_INDEXES = 8;
+
+    /**
+     * Max number of occurrences in one index, larger index is dropped and read again on demand
+     */
+    private static final int MAX_OCCURRENCES = 5000;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final Executor executor;
+    private final Executor streamExecutor;
+
+    /**
+     * Indexes keyed by account (see Accounts.key) and calendar view URL, in access order. Guarded by this
+     */
+    private final Map<String, CalendarIndex> indexes = new LinkedHashMap<String, CalendarIndex>(MAX_INDEXES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CalendarIndex> eldest) {
+            return size() > MAX_INDEXES;
+        }
+    };
+
+    /**
+     * @param executor Executor used to process responses
+     * @param streamExecutor Executor used to read calendar views' pages as they arrive
+     */
+    CalendarViews(Executor executor, Executor streamExecutor) {
+        this.executor = executor;
+        this.streamExecutor = streamExecutor;
+    }
+
+    /**
+     * Registers calendar view action and wraps actions that change events, so they drop indexes.
+     * Must be called after events' actions are registered
+     *
+     * @param handlers Actions table to update
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("getCalendarView", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                getCalendarView(context, resolver, methodArgs);
+            }
+        });
+
+        for (String action : new String[] { "addEvent", "updateEvent", "deleteEvent", "accept", "tentativelyAccept",
+                "decline", "enqueueOperation" }) {
+            addInvalidation(handlers, action);
+        }
+    }
+
+    private void addInvalidation(Map<String, ActionHandler> handlers, String action) {
+        final ActionHandler handler = handlers.get(action);
+        if (handler == null) {
+            return;
+        }
+
+        handlers.put(action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                // Changed event may be a series master, so any number of occurrences may change
+                clear();
+                handler.execute(context, client, resolver, methodArgs);
+            }
+        });
+    }
+
+    /**
+     * Drops all indexes. Requests that are in flight fill dropped indexes, so they don't bring stale events back
+     */
+    synchronized void clear() {
+        this.indexes.clear();
+    }
+
+    /**
+     * Returns events and occurrences that overlap time window, sorted by start time
+     *
+     * @param context Plugin context used to send result back to plugin
+     * @param resolver Dependency resolver, used to send requests
+     * @param methodArgs Arguments, passed from JS layer. OData path is events collection's path,
+     *                   first argument is options JSON:
+     *                   startDateTime: String, endDateTime: String, ISO 8601 time window,
+     *                   refresh: boolean, reads the whole window from the server again
+     * @throws JSONException
+     * @throws ParseException
+     */
+    private void getCalendarView(final CallbackContext context, DependencyResolver resolver, ODataMethodArgs methodArgs) throws JSONException, ParseException {
+        JSONObject options = new JSONObject(methodArgs.getArgs().isEmpty() ? "{}" : methodArgs.getArgs().get(0));
+        final long start = parseDateTime(options.getString("startDateTime"));
+        final long end = parseDateTime(options.getString("endDateTime"));
+        if (end <= start) {
+            throw new IllegalArgumentException("endDateTime must be later than startDateTime");
+        }
+
+        String viewUrl = calendarViewUrl(methodArgs.getODataPath());
+        final CalendarIndex index = getIndex(methodArgs.getAccount() + "|" + viewUrl);
+
+        final List<long[]> gaps;
+        synchronized (index) {
+            if (options.optBoolean("refresh", false)) {
+                index.invalidate(start, end);
+            }
+            gaps = index.uncovered(start, end);
+        }
+
+        if (gaps.isEmpty()) {
+            sendWindow(context, index, start, end);
+            return;
+        }
+
+        List<ListenableFuture<List<JSONObject>>> reads = new ArrayList<ListenableFuture<List<JSONObject>>>(gaps.size());
+        for (long[] gap : gaps) {
+            String url = viewUrl + "?startDateTime=" + Helpers.urlEncode(formatDateTime(gap[0]))
+                    + "&endDateTime=" + Helpers.urlEncode(formatDateTime(gap[1]));
+            reads.add(CollectionPager.readAll(resolver, url,
+                    Collections.singletonMap(PREFER_HEADER, CALENDAR_VIEW_PREFERENCE), this.streamExecutor));
+        }
+
+        Futures.addCallback(Futures.allAsList(reads), new FutureCallback<List<List<JSONObject>>>() {
+            @Override
+            public void onSuccess(List<List<JSONObject>> windows) {
+                synchronized (index) {
+                    for (int i = 0; i < gaps.size(); i++) {
+                        for (JSONObject event : windows.get(i)) {
+                            putEvent(index, event);
+                        }
+                        index.cover(gaps.get(i)[0], gaps.get(i)[1]);
+                    }
+                }
+                sendWindow(context, index, start, end);
+                dropIfLarge(index);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                        OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+            }
+        }, this.executor);
+    }
+
+    private void sendWindow(CallbackContext context, CalendarIndex index, long start, long end) {
+        JSONArray value = new JSONArray();
+        synchronized (index) {
+            for (CalendarIndex.Occurrence occurrence : index.query(start, end)) {
+                value.put(occurrence.getEvent());
+            }
+        }
+
+        try {
+            String page = new JSONObject().put("value", value).toString();
+            context.sendPluginResult(new PluginResult(PluginResult.Status.OK, page));
+        } catch (JSONException e) {
+            context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+        }
+    }
+
+    private synchronized CalendarIndex getIndex(String key) {
+        CalendarIndex index = this.indexes.get(key);
+        if (index == null) {
+            index = new CalendarIndex();
+            this.indexes.put(key, index);
+        }
+        return index;
+    }
+
+    private void dropIfLarge(CalendarIndex index) {
+        int size;
+        synchronized (index) {
+            size = index.size();
+        }
+        if (size > MAX_OCCURRENCES) {
+            synchronized (this) {
+                this.indexes.values().remove(index);
+            }
+        }
+    }
+
+    private static void putEvent(CalendarIndex index, JSONObject event) {
+        String id = event.optString("Id", null);
+        if (id == null) {
+            return;
+        }
+        try {
+            index.put(id, parseEventTime(event, "Start"), parseEventTime(event, "End"), event);
+        } catch (Exception e) {
+            LOG.w(TAG, "Skipping calendar view event without valid start and end time");
+        }
+    }
+
+    /**
+     * Reads event's time: either DateTimeOffset string or DateTime and TimeZone pair
+     */
+    private static long parseEventTime(JSONObject event, String name) throws JSONException, ParseException {
+        JSONObject time = event.optJSONObject(name);
+        if (time == null) {
+            return parseDateTime(event.getString(name));
+        }
+
+        String timeZone = time.optString("TimeZone", "UTC");
+        long local = parseDateTime(time.getString("DateTime"));
+        if (timeZone.equalsIgnoreCase("UTC")) {
+            return local;
+        }
+        // Outlook can return Windows time zone names, unknown names resolve to GMT
+        return local - TimeZone.getTimeZone(timeZone).getOffset(local);
+    }
+
+    /**
+     * @param path events collection's path, e.g. .../Me/Events or .../Me/Calendars('id')/Events
+     * @return calendar view's URL of the same calendar
+     */
+    static String calendarViewUrl(String path) {
+        int query = path.indexOf('?');
+        String url = query < 0 ? path : path.substring(0, query);
+        if (url.toLowerCase(Locale.US).endsWith("/events")) {
+            return url.substring(0, url.length() - "events".length()) + "CalendarView";
+        }
+        return url;
+    }
+
+    /**
+     * Parses ISO 8601 date and time, e.g. 2015-06-01T10:00:00Z, 2015-06-01T10:00:00.0000000 or
+     * 2015-06-01T12:00:00+02:00. Time without offset is treated as UTC
+     *
+     * @param value date and time string
+     * @return milliseconds since epoch
+     * @throws ParseException
+     */
+    static long parseDateTime(String value) throws ParseException {
+        String text = value.trim();
+        int timeStart = text.indexOf('T');
+        if (timeStart < 0) {
+            throw new ParseException("Invalid date and time: " + value, 0);
+        }
+
+        long offset = 0;
+        int zoneStart = text.length();
+        if (text.endsWith("Z") || text.endsWith("z")) {
+            zoneStart = text.length() - 1;
+        } else {
+            int sign = Math.max(text.lastIndexOf('+'), text.lastIndexOf('-'));
+            if (sign > timeStart) {
+                String[] zone = text.substring(sign + 1).split(":");
+                int hours = Integer.parseInt(zone[0].length() > 2 ? zone[0].substring(0, 2) : zone[0]);
+                int minutes = zone.length > 1 ? Integer.parseInt(zone[1])
+                        : zone[0].length() > 2 ? Integer.parseInt(zone[0].substring(2)) : 0;
+                offset = (hours * 60L + minutes) * 60000L * (text.charAt(sign) == '-' ? -1 : 1);
+                zoneStart = sign;
+            }
+        }
+
+        String dateTime = text.substring(0, zoneStart);
+        long millis = 0;
+        int fraction = dateTime.indexOf('.');
+        if (fraction >= 0) {
+            String digits = (dateTime.substring(fraction + 1) + "000").substring(0, 3);
+            millis = Integer.parseInt(digits);
+            dateTime = dateTime.substring(0, fraction);
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat(
+                dateTime.length() > timeStart + 6 ? "yyyy-MM-dd'T'HH:mm:ss" : "yyyy-MM-dd'T'HH:mm", Locale.US);
+        format.setTimeZone(UTC);
+        format.setLenient(false);
+        return format.parse(dateTime).getTime() + millis - offset;
+    }
+
+    private static String formatDateTime(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(UTC);
+        return format.format(new Date(millis));
+    }
+}
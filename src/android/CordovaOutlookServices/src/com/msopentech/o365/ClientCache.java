@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.HttpTransport;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe cache of OutlookClient objects, keyed by service root and access token,
+ * so that apps working with several accounts reuse clients instead of rebuilding them per call
+ */
+class ClientCache {
+
+    private static final int MAX_CLIENTS = 8;
+    private static final long IDLE_EXPIRY_MINUTES = 30;
+
+    private final Cache<Key, Entry> clients = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CLIENTS)
+            .expireAfterAccess(IDLE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+
+    private final RequestCoalescer coalescer;
+    private final RequestScheduler scheduler;
+    private final HttpTransport transport;
+
+    /**
+     * @param coalescer coalescer that clients' requests are sent through
+     * @param scheduler scheduler that clients' requests are sent through
+     */
+    ClientCache(RequestCoalescer coalescer, RequestScheduler scheduler) {
+        this(coalescer, scheduler, null);
+    }
+
+    /**
+     * @param coalescer coalescer that clients' requests are sent through
+     * @param scheduler scheduler that clients' requests are sent through
+     * @param transport transport shared by all clients, replaced by a local stand-in in benchmarks;
+     *                  if null, every client gets its own Android transport
+     */
+    ClientCache(RequestCoalescer coalescer, RequestScheduler scheduler, HttpTransport transport) {
+        this.coalescer = coalescer;
+        this.scheduler = scheduler;
+        this.transport = transport;
+    }
+
+    /**
+     * Returns cached client for specified service root and token or creates a new one
+     *
+     * @param serviceRoot service root URI
+     * @param token access token
+     * @return cache entry that contains client and its dependency resolver
+     */
+    Entry get(final String serviceRoot, final String token) {
+        try {
+            return this.clients.get(new Key(serviceRoot, token), new Callable<Entry>() {
+                @Override
+                public Entry call() {
+                    String account = Accounts.key(serviceRoot, token);
+                    DefaultDependencyResolver resolver = transport != null ?
+                            new PluginDependencyResolver(token, account, transport, coalescer, scheduler) :
+                            new PluginDependencyResolver(token, account, coalescer, scheduler);
+                    return new Entry(new OutlookClient(serviceRoot, resolver), resolver);
+                }
+            });
+        } catch (ExecutionException e) {
+            // Client creation doesn't throw checked exceptions
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return cache hit/miss statistics
+     */
+    CacheStats stats() {
+        return this.clients.stats();
+    }
+
+    /**
+     * @return number of cached clients
+     */
+    long size() {
+        return this.clients.size();
+    }
+
+    /**
+     * Removes all cached clients
+     */
+    void clear() {
+        this.clients.invalidateAll();
+    }
+
+    /**
+     * Cached OutlookClient along with dependency resolver it is created with
+     */
+    static final class Entry {
+        private final OutlookClient client;
+        private final DefaultDependencyResolver resolver;
+
+        private Entry(OutlookClient client, DefaultDependencyResolver resolver) {
+            this.client = client;
+            this.resolver = resolver;
+        }
+
+        OutlookClient getClient() {
+            return this.client;
+        }
+
+        DefaultDependencyResolver getResolver() {
+            return this.resolver;
+        }
+    }
+
+    private static final class Key {
+        private final String serviceRoot;
+        private final String token;
+
+        private Key(String serviceRoot, String token) {
+            this.serviceRoot = serviceRoot;
+            this.token = token;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.serviceRoot.equals(other.serviceRoot) && this.token.equals(other.token);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.serviceRoot.hashCode() + this.token.hashCode();
+        }
+    }
+}
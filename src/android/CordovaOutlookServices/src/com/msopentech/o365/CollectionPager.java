@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Class that reads OData collection, following '@odata.nextLink', and sends it to JS layer as it arrives.
+ * Pages are parsed from response stream item by item with CollectionStream. Parsed items are passed to page listener
+ * and shaped in parts of up to PART_SIZE items, so in paging mode at most two parts are kept in memory at a time
+ */
+class CollectionPager {
+
+    /**
+     * Name of next page link annotation in collection's page
+     */
+    static final String NEXT_LINK = "@odata.nextLink";
+
+    /**
+     * Name of flag, set on parts of server's page that are followed by other parts of the same page
+     */
+    static final String PARTIAL = "partial";
+
+    /**
+     * Max number of items passed to page listener at once and sent in one part of page in paging mode
+     */
+    private static final int PART_SIZE = 25;
+
+    private final DependencyResolver resolver;
+    private final boolean paged;
+    private final int maxItems;
+    private final ResultShaper shaper;
+    private final PageListener listener;
+    private final ODataMethodArgs methodArgs;
+    private final boolean binary;
+    private final CallbackContext context;
+    private final Executor executor;
+
+    /**
+     * Items parsed but not passed to listener and shaped yet
+     */
+    private JSONArray parsed = new JSONArray();
+
+    /**
+     * Shaped items not sent yet
+     */
+    private JSONArray items = new JSONArray();
+
+    private int deliveredItems;
+
+    private CollectionPager(DependencyResolver resolver, boolean paged, int maxItems, ResultShaper shaper,
+                            PageListener listener, ODataMethodArgs methodArgs, boolean binary, CallbackContext context,
+                            Executor executor) {
+        this.resolver = resolver;
+        this.paged = paged;
+        this.maxItems = maxItems;
+        this.shaper = shaper;
+        this.listener = listener;
+        this.methodArgs = methodArgs;
+        this.binary = binary;
+        this.context = context;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts reading collection pages. Every server's page is sent in parts of up to PART_SIZE items as they are parsed.
+     * Every part is sent with keepCallback flag set, except the last one. All parts of a page but the last have
+     * 'partial' flag, last part of a page has page's '@odata.nextLink', and last part of collection has neither,
+     * so JS layer can use it as end of collection marker
+     *
+     * @param url absolute URL of collection's first page
+     * @param resolver Dependency resolver, used to send requests
+     * @param maxItems max number of items to read or -1 to read whole collection
+     * @param shaper shaper applied to every item before it is sent
+     * @param listener listener that receives items as read from the server, may be null
+     * @param methodArgs arguments of the action that reads collection, passed to listener
+     * @param binary true to send pages encoded with BinaryPages instead of JSON strings
+     * @param context Plugin context used to send pages back to plugin
+     * @param executor Executor used to read pages
+     */
+    static void readPages(String url, DependencyResolver resolver, int maxItems, ResultShaper shaper, PageListener listener,
+                          ODataMethodArgs methodArgs, boolean binary, CallbackContext context, Executor executor) {
+        new CollectionPager(resolver, true, maxItems, shaper, listener, methodArgs, binary, context, executor).requestPage(url);
+    }
+
+    /**
+     * Reads single collection page and sends it as a single result, '@odata.nextLink' is kept in the result
+     *
+     * @param url absolute URL of collection's page
+     * @param resolver Dependency resolver, used to send request
+     * @param shaper shaper applied to every item before it is sent
+     * @param listener listener that receives items as read from the server, may be null
+     * @param methodArgs arguments of the action that reads collection, passed to listener
+     * @param binary true to send page encoded with BinaryPages instead of JSON string
+     * @param context Plugin context used to send page back to plugin
+     * @param executor Executor used to read page
+     */
+    static void readPage(String url, DependencyResolver resolver, ResultShaper shaper, PageListener listener,
+                         ODataMethodArgs methodArgs, boolean binary, CallbackContext context, Executor executor) {
+        new CollectionPager(resolver, false, -1, shaper, listener, methodArgs, binary, context, executor).requestPage(url);
+    }
+
+    /**
+     * Reads all items of collection into memory, following next page links.
+     * Used for native reads of small collections that are not sent to JS layer page by page
+     *
+     * @param resolver Dependency resolver, used to send requests
+     * @param url absolute URL of collection's first page
+     * @param headers additional request headers or null
+     * @param executor Executor used to read pages
+     * @return Future with all collection's items
+     */
+    static ListenableFuture<List<JSONObject>> readAll(DependencyResolver resolver, String url, Map<String, String> headers,
+                                                      Executor executor) {
+        return readAll(resolver, url, headers, executor, new ArrayList<JSONObject>());
+    }
+
+    private static ListenableFuture<List<JSONObject>> readAll(final DependencyResolver resolver, String url,
+                                                              final Map<String, String> headers, final Executor executor,
+                                                              final List<JSONObject> items) {
+        ListenableFuture<Response> page = ODataRequests.sendForStream(resolver, url, headers);
+
+        return Futures.transform(page, new AsyncFunction<Response, List<JSONObject>>() {
+            @Override
+            public ListenableFuture<List<JSONObject>> apply(Response response) throws Exception {
+                JSONObject properties = CollectionStream.read(response, new CollectionStream.ItemSink() {
+                    @Override
+                    public boolean onItem(JSONObject item) {
+                        items.add(item);
+                        return true;
+                    }
+                });
+
+                String nextLink = properties.optString(NEXT_LINK, null);
+                return nextLink != null ? readAll(resolver, nextLink, headers, executor, items) : Futures.immediateFuture(items);
+            }
+        }, executor);
+    }
+
+    private void requestPage(String url) {
+        Futures.addCallback(ODataRequests.sendForStream(this.resolver, url, null), new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    processPage(response);
+                } catch (JSONException e) {
+                    context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+                } catch (IOException e) {
+                    context.sendPluginResult(new PluginResult(PluginResult.Status.IO_EXCEPTION, e.getMessage()));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                        OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+            }
+        }, this.executor);
+    }
+
+    private void processPage(Response response) throws IOException, JSONException {
+        JSONObject properties = CollectionStream.read(response, new CollectionStream.ItemSink() {
+            @Override
+            public boolean onItem(JSONObject item) throws JSONException {
+                return onItemRead(item);
+            }
+        });
+        flushParsed();
+
+        // Context is not needed by JS layer, same as in shaped items
+        properties.remove("@odata.context");
+
+        String nextLink = properties.optString(NEXT_LINK, null);
+        if (this.paged && isCapReached()) {
+            properties.remove(NEXT_LINK);
+            nextLink = null;
+        }
+
+        boolean hasMore = this.paged && nextLink != null;
+        send(properties, hasMore);
+
+        if (hasMore) {
+            requestPage(nextLink);
+        }
+    }
+
+    private boolean onItemRead(JSONObject item) throws JSONException {
+        if (this.paged && isCapReached()) {
+            return false;
+        }
+
+        this.parsed.put(item);
+        this.deliveredItems++;
+        if (this.parsed.length() == PART_SIZE) {
+            flushParsed();
+        }
+        return !(this.paged && isCapReached());
+    }
+
+    /**
+     * Passes parsed items to listener and shapes them. In paging mode previously shaped items are sent first
+     * as a partial page, so the last part of a page is never empty
+     */
+    private void flushParsed() throws JSONException {
+        if (this.parsed.length() == 0) {
+            return;
+        }
+
+        // Listener gets items as received; it doesn't keep them, so they are shaped in place afterwards
+        if (this.listener != null) {
+            this.listener.onPage(this.methodArgs, new JSONObject().put("value", this.parsed));
+        }
+        if (this.paged && this.items.length() > 0) {
+            send(new JSONObject().put(PARTIAL, true), true);
+        }
+
+        for (int i = 0; i < this.parsed.length(); i++) {
+            JSONObject item = this.parsed.getJSONObject(i);
+            this.shaper.shapeItem(item);
+            this.items.put(item);
+        }
+        this.parsed = new JSONArray();
+    }
+
+    private boolean isCapReached() {
+        return this.maxItems > -1 && this.deliveredItems >= this.maxItems;
+    }
+
+    private void send(JSONObject page, boolean keepCallback) throws JSONException {
+        long start = System.nanoTime();
+
+        page.put("value", this.items);
+        this.items = new JSONArray();
+
+        PluginResult result = this.binary ?
+                new PluginResult(PluginResult.Status.OK, BinaryPages.encode(page)) :
+                new PluginResult(PluginResult.Status.OK, page.toString());
+        result.setKeepCallback(keepCallback);
+
+        Metrics.record(this.context, Metrics.Phase.SERIALIZE, start);
+        this.context.sendPluginResult(result);
+    }
+}
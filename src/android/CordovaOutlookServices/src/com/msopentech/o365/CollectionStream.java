@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Reads OData collection page straight from response body with a pull parser. Items of 'value' are
+ * handed out one by one as soon as each of them is parsed, so neither whole page's string nor its
+ * parsed tree is ever kept in memory, only the item being read
+ */
+class CollectionStream {
+
+    /**
+     * Receiver of collection's items
+     */
+    interface ItemSink {
+
+        /**
+         * Called for every item of page, in page order, on the thread that reads the response
+         *
+         * @param item collection's item
+         * @return true to continue reading, false to stop, rest of the response is then discarded
+         * @throws JSONException
+         */
+        boolean onItem(JSONObject item) throws JSONException;
+    }
+
+    private CollectionStream() {
+    }
+
+    /**
+     * Reads collection page from response and closes response. Blocks while response body is received
+     *
+     * @param response successful transport response with collection page
+     * @param sink receiver of page's items
+     * @return page's properties other than 'value', e.g. '@odata.nextLink'. When sink stops reading,
+     *         only properties that precede 'value' are returned
+     * @throws IOException
+     * @throws JSONException if response is not a collection page
+     */
+    static JSONObject read(Response response, ItemSink sink) throws IOException, JSONException {
+        JSONObject properties = new JSONObject();
+
+        InputStream stream = response.getStream();
+        if (stream == null) {
+            response.close();
+            return properties;
+        }
+
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, Constants.UTF8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (!name.equals("value") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    properties.put(name, readValue(reader));
+                    continue;
+                }
+
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Object item = readValue(reader);
+                    if (item instanceof JSONObject && !sink.onItem((JSONObject) item)) {
+                        return properties;
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+            return properties;
+        } catch (IllegalStateException e) {
+            // Thrown by reader when response has unexpected structure
+            throw new JSONException(e.getMessage());
+        } finally {
+            try {
+                reader.close();
+            } finally {
+                response.close();
+            }
+        }
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    object.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected token " + reader.peek());
+        }
+    }
+
+    private static Object parseNumber(String number) {
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                return Long.parseLong(number);
+            } catch (NumberFormatException ignored) {
+                // Too large for long
+            }
+        }
+        return Double.valueOf(number);
+    }
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+/**
+ * Plugin context that passes results to the original context and runs a task right before the last result
+ * is sent, i.e. when action is completed, either successfully or with an error
+ */
+class CompletionCallbackContext extends CallbackContext {
+
+    private final CallbackContext context;
+    private final Runnable onComplete;
+
+    /**
+     * @param context original plugin context
+     * @param onComplete task to run when action is completed
+     */
+    CompletionCallbackContext(CallbackContext context, Runnable onComplete) {
+        // Results are never sent to WebView directly, they all go through the original context
+        super(context.getCallbackId(), null);
+        this.context = context;
+        this.onComplete = onComplete;
+    }
+
+    /**
+     * @return original plugin context
+     */
+    CallbackContext getContext() {
+        return this.context;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return this.context.isFinished();
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        if (!pluginResult.getKeepCallback()) {
+            this.onComplete.run();
+        }
+        this.context.sendPluginResult(pluginResult);
+    }
+}
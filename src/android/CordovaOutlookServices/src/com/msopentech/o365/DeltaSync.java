@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.Helpers;
+import com.microsoft.services.odata.ODataException;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Class that downloads only changes (created, updated and deleted items) of folders, messages and events
+ * collections since previous sync, using OData change tracking. Sync state is kept per account and collection
+ * (and time window for calendar view) in StateStore
+ */
+class DeltaSync {
+
+    private static final String TAG = "Office 365";
+
+    private static final String PREFER_HEADER = "Prefer";
+    private static final String TRACK_CHANGES_PREFERENCE = "odata.track-changes, odata.maxpagesize=";
+    private static final int PAGE_SIZE = 50;
+
+    private static final String DELTA_LINK = "@odata.deltaLink";
+    private static final String DELETED_ENTITY_CONTEXT = "$deletedEntity";
+
+    /**
+     * HTTP status returned when sync state is expired and full sync is required
+     */
+    private static final int SYNC_STATE_EXPIRED = 410;
+
+    private final StateStore states;
+    private final Executor executor;
+
+    /**
+     * @param states store that keeps sync states
+     * @param executor Executor used to process received changes
+     */
+    DeltaSync(StateStore states, Executor executor) {
+        this.states = states;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers delta sync actions
+     *
+     * @param handlers Actions table to fill
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("syncChanges", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                syncChanges(context, resolver, methodArgs);
+            }
+        });
+    }
+
+    /**
+     * Downloads changes of collection, specified by OData path. Changes are sent to JS layer page by page
+     * as change sets: {changed: [Object], deleted: [String], full: boolean, done: boolean}.
+     * Last change set has 'done' flag set; 'full' flag is set when whole collection is downloaded
+     * because there is no previous sync state
+     *
+     * @param context Plugin context used to send change sets back to plugin
+     * @param resolver Dependency resolver, used to send requests
+     * @param methodArgs Arguments, passed from JS layer. First argument is options JSON:
+     *                   reset: boolean, drops previous sync state and starts full sync,
+     *                   startDateTime: String, endDateTime: String, time window for calendar view
+     * @throws JSONException
+     * @throws IOException
+     */
+    void syncChanges(CallbackContext context, DependencyResolver resolver, ODataMethodArgs methodArgs) throws JSONException, IOException {
+        JSONObject options = new JSONObject(methodArgs.getArgs().isEmpty() ? "{}" : methodArgs.getArgs().get(0));
+
+        String path = methodArgs.getODataPath();
+        String initialUrl = initialUrl(path, options);
+        // Sync state belongs to account and collection; calendar views of different windows have different changes
+        String stateKey = methodArgs.getAccount() + "|" + initialUrl;
+
+        if (options.optBoolean("reset", false)) {
+            this.states.remove(stateKey);
+        }
+
+        String url = null;
+        boolean full = true;
+
+        String stateJson = this.states.get(stateKey);
+        if (stateJson != null) {
+            JSONObject state = new JSONObject(stateJson);
+            if (state.has("deltaLink")) {
+                url = state.getString("deltaLink");
+                full = false;
+            } else {
+                // Previous sync was interrupted, continue from the last received page
+                url = state.optString("nextLink", null);
+                full = state.optBoolean("full", true);
+            }
+        }
+
+        if (url == null) {
+            url = initialUrl;
+        }
+
+        new SyncRun(resolver, stateKey, full, context).requestPage(url);
+    }
+
+    private static String initialUrl(String path, JSONObject options) {
+        StringBuilder url = new StringBuilder(path);
+        char separator = path.indexOf('?') < 0 ? '?' : '&';
+        for (String parameter : new String[] { "startDateTime", "endDateTime" }) {
+            String value = options.optString(parameter, null);
+            if (value != null) {
+                url.append(separator).append(parameter).append('=').append(Helpers.urlEncode(value));
+                separator = '&';
+            }
+        }
+        return url.toString();
+    }
+
+    /**
+     * Single sync run, that follows next page links until delta link is received
+     */
+    private class SyncRun {
+        private final DependencyResolver resolver;
+        private final String stateKey;
+        private final boolean full;
+        private final CallbackContext context;
+        private final Map<String, String> headers = new HashMap<String, String>();
+
+        SyncRun(DependencyResolver resolver, String stateKey, boolean full, CallbackContext context) {
+            this.resolver = resolver;
+            this.stateKey = stateKey;
+            this.full = full;
+            this.context = context;
+            this.headers.put(PREFER_HEADER, TRACK_CHANGES_PREFERENCE + PAGE_SIZE);
+        }
+
+        void requestPage(String url) {
+            ListenableFuture<String> future = ODataRequests.sendForString(this.resolver, HttpVerb.GET, url, null, this.headers);
+
+            Futures.addCallback(future, new FutureCallback<String>() {
+                @Override
+                public void onSuccess(String page) {
+                    try {
+                        processPage(new JSONObject(page != null ? page : "{}"));
+                    } catch (JSONException e) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+                    } catch (IOException e) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.IO_EXCEPTION, e.getMessage()));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    if (isSyncStateExpired(throwable)) {
+                        // Next sync will start from scratch
+                        states.remove(stateKey);
+                    }
+                    context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                            OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+                }
+            }, executor);
+        }
+
+        private void processPage(JSONObject page) throws JSONException, IOException {
+            JSONArray changed = new JSONArray();
+            JSONArray deleted = new JSONArray();
+
+            JSONArray items = page.optJSONArray("value");
+            if (items != null) {
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject item = items.getJSONObject(i);
+                    if (isDeleted(item)) {
+                        deleted.put(item.has("Id") ? item.getString("Id") : item.optString("id"));
+                    } else {
+                        changed.put(item);
+                    }
+                }
+            }
+
+            String nextLink = page.optString(CollectionPager.NEXT_LINK, null);
+            String deltaLink = page.optString(DELTA_LINK, null);
+
+            JSONObject state = new JSONObject();
+            if (nextLink != null) {
+                state.put("nextLink", nextLink).put("full", this.full);
+                states.put(this.stateKey, state.toString());
+            } else if (deltaLink != null) {
+                state.put("deltaLink", deltaLink);
+                states.put(this.stateKey, state.toString());
+            } else {
+                LOG.w(TAG, "Change tracking is not supported for collection, sync state is not saved");
+            }
+
+            boolean done = nextLink == null;
+
+            JSONObject changeSet = new JSONObject();
+            changeSet.put("changed", changed);
+            changeSet.put("deleted", deleted);
+            changeSet.put("full", this.full);
+            changeSet.put("done", done);
+
+            PluginResult result = new PluginResult(PluginResult.Status.OK, changeSet.toString());
+            result.setKeepCallback(!done);
+            this.context.sendPluginResult(result);
+
+            if (!done) {
+                requestPage(nextLink);
+            }
+        }
+    }
+
+    private static boolean isDeleted(JSONObject item) {
+        return item.has("@removed")
+                || "deleted".equalsIgnoreCase(item.optString("reason"))
+                || item.optString("@odata.context").contains(DELETED_ENTITY_CONTEXT);
+    }
+
+    private static boolean isSyncStateExpired(Throwable throwable) {
+        return throwable instanceof ODataException
+                && ((ODataException) throwable).getODataResponse() != null
+                && ((ODataException) throwable).getODataResponse().getResponse() != null
+                && ((ODataException) throwable).getODataResponse().getResponse().getStatus() == SYNC_STATE_EXPIRED;
+    }
+}
@@ -0,0 +1,414 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Recipients' directory for autocomplete: contacts of all contact folders, refreshed in background,
+ * and users recently read with getUsers. Lookups are answered from DirectoryIndex without network requests.
+ * Every account has its own directory, kept in StateStore, so it is available right after application restart
+ */
+class Directory {
+
+    private static final String TAG = "Office 365";
+
+    /**
+     * Name of preference that sets contacts' refresh interval, in minutes
+     */
+    static final String REFRESH_INTERVAL_PREFERENCE = "OutlookServicesDirectoryRefreshInterval";
+
+    private static final int DEFAULT_REFRESH_INTERVAL = 60;
+    private static final int DEFAULT_TOP = 10;
+
+    /**
+     * Max number of remembered users, least recently read ones are dropped first
+     */
+    private static final int MAX_USERS = 500;
+
+    private static final String CONTACTS_KEY = "contacts";
+    private static final String USERS_KEY = "users";
+    private static final String CONTACTS_QUERY = "?$select=DisplayName,EmailAddresses&$top=100";
+
+    private final StateStore store;
+    private final long refreshInterval;
+    private final Executor executor;
+    private final Executor streamExecutor;
+
+    /**
+     * Directories keyed by account, see Accounts.key. Guarded by this
+     */
+    private final Map<String, AccountDirectory> directories = new HashMap<String, AccountDirectory>();
+
+    /**
+     * @param store store to keep directory in
+     * @param refreshInterval contacts' refresh interval in milliseconds
+     * @param executor Executor used to process responses
+     * @param streamExecutor Executor used to read contacts' pages as they arrive
+     */
+    Directory(StateStore store, long refreshInterval, Executor executor, Executor streamExecutor) {
+        this.store = store;
+        this.refreshInterval = refreshInterval;
+        this.executor = executor;
+        this.streamExecutor = streamExecutor;
+    }
+
+    /**
+     * Creates directory with refresh interval taken from plugin preferences
+     *
+     * @param store store to keep directory in
+     * @param preferences Cordova preferences, may be null
+     * @param executor Executor used to process responses
+     * @param streamExecutor Executor used to read contacts' pages as they arrive
+     * @return new Directory instance
+     */
+    static Directory create(StateStore store, CordovaPreferences preferences, Executor executor, Executor streamExecutor) {
+        int minutes = preferences != null ?
+                preferences.getInteger(REFRESH_INTERVAL_PREFERENCE, DEFAULT_REFRESH_INTERVAL) : DEFAULT_REFRESH_INTERVAL;
+        return new Directory(store, Math.max(1, minutes) * 60L * 1000L, executor, streamExecutor);
+    }
+
+    /**
+     * Registers directory actions and starts listening to users' pages
+     *
+     * @param handlers Actions table to fill
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("lookupRecipients", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                lookup(context, resolver, methodArgs);
+            }
+        });
+        handlers.put("refreshDirectory", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                AccountDirectory directory = getDirectory(methodArgs.getAccount());
+                directory.ensureLoaded();
+                directory.refresh(resolver, methodArgs.getServiceRoot(), context);
+            }
+        });
+        handlers.put("clearDirectory", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                getDirectory(methodArgs.getAccount()).clear();
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+            }
+        });
+
+        OutlookServicesMethodsImpl.setPageListener("Users", new PageListener() {
+            @Override
+            public void onPage(ODataMethodArgs methodArgs, JSONObject page) {
+                getDirectory(methodArgs.getAccount()).addUsers(page);
+            }
+        });
+    }
+
+    /**
+     * Stops listening to users' pages
+     */
+    void close() {
+        OutlookServicesMethodsImpl.setPageListener("Users", null);
+    }
+
+    /**
+     * Returns recipients that match text typed by user. Starts background refresh when contacts are stale
+     *
+     * @param context Plugin context used to send result back to plugin
+     * @param resolver Dependency resolver, used to refresh contacts
+     * @param methodArgs Arguments, passed from JS layer. First argument is text typed by user,
+     *                   second one is optional options JSON: top: int, max number of results
+     * @throws JSONException
+     */
+    private void lookup(CallbackContext context, DependencyResolver resolver, ODataMethodArgs methodArgs) throws JSONException {
+        AccountDirectory directory = getDirectory(methodArgs.getAccount());
+        directory.ensureLoaded();
+
+        String text = methodArgs.getArgs().get(0);
+        JSONObject options = new JSONObject(methodArgs.getArgs().size() > 1 ? methodArgs.getArgs().get(1) : "{}");
+
+        JSONArray value = new JSONArray();
+        for (DirectoryIndex.Recipient recipient : directory.index.lookup(text, options.optInt("top", DEFAULT_TOP))) {
+            value.put(recipient.toJson());
+        }
+        context.sendPluginResult(new PluginResult(PluginResult.Status.OK, value.toString()));
+
+        if (directory.isStale()) {
+            directory.refresh(resolver, methodArgs.getServiceRoot(), null);
+        }
+    }
+
+    private synchronized AccountDirectory getDirectory(String account) {
+        AccountDirectory directory = this.directories.get(account);
+        if (directory == null) {
+            directory = new AccountDirectory(account);
+            this.directories.put(account, directory);
+        }
+        return directory;
+    }
+
+    private ListenableFuture<List<JSONObject>> readContacts(final DependencyResolver resolver, String serviceRoot) {
+        final String me = (serviceRoot.endsWith("/") ? serviceRoot : serviceRoot + "/") + "Me/";
+        ListenableFuture<List<JSONObject>> folders = CollectionPager.readAll(resolver,
+                me + "ContactFolders?$select=Id&$top=100", null, this.streamExecutor);
+
+        return Futures.transform(folders, new AsyncFunction<List<JSONObject>, List<JSONObject>>() {
+            @Override
+            public ListenableFuture<List<JSONObject>> apply(List<JSONObject> folders) throws Exception {
+                List<ListenableFuture<List<JSONObject>>> reads = new ArrayList<ListenableFuture<List<JSONObject>>>();
+                reads.add(CollectionPager.readAll(resolver, me + "Contacts" + CONTACTS_QUERY, null, streamExecutor));
+                for (JSONObject folder : folders) {
+                    String url = me + "ContactFolders/" + folder.getString("Id") + "/Contacts" + CONTACTS_QUERY;
+                    reads.add(CollectionPager.readAll(resolver, url, null, streamExecutor));
+                }
+
+                return Futures.transform(Futures.allAsList(reads), new AsyncFunction<List<List<JSONObject>>, List<JSONObject>>() {
+                    @Override
+                    public ListenableFuture<List<JSONObject>> apply(List<List<JSONObject>> pages) {
+                        List<JSONObject> contacts = new ArrayList<JSONObject>();
+                        for (List<JSONObject> folderContacts : pages) {
+                            contacts.addAll(folderContacts);
+                        }
+                        return Futures.immediateFuture(contacts);
+                    }
+                }, executor);
+            }
+        }, this.executor);
+    }
+
+    private static void addContact(List<DirectoryIndex.Recipient> recipients, JSONObject contact) {
+        JSONArray addresses = contact.optJSONArray("EmailAddresses");
+        if (addresses == null) {
+            return;
+        }
+        String displayName = contact.optString("DisplayName", "");
+        for (int i = 0; i < addresses.length(); i++) {
+            JSONObject address = addresses.optJSONObject(i);
+            if (address != null && address.optString("Address", "").length() > 0) {
+                String name = displayName.length() > 0 ? displayName : address.optString("Name", "");
+                recipients.add(new DirectoryIndex.Recipient(name, address.optString("Address"), "contact"));
+            }
+        }
+    }
+
+    private static JSONArray toJson(Iterable<DirectoryIndex.Recipient> recipients) throws JSONException {
+        JSONArray items = new JSONArray();
+        for (DirectoryIndex.Recipient recipient : recipients) {
+            items.put(recipient.toJson());
+        }
+        return items;
+    }
+
+    private static List<DirectoryIndex.Recipient> fromJson(JSONArray items) {
+        List<DirectoryIndex.Recipient> recipients = new ArrayList<DirectoryIndex.Recipient>();
+        for (int i = 0; items != null && i < items.length(); i++) {
+            JSONObject item = items.optJSONObject(i);
+            if (item != null) {
+                recipients.add(DirectoryIndex.Recipient.fromJson(item));
+            }
+        }
+        return recipients;
+    }
+
+    /**
+     * Directory of one account: its contacts, users and index, kept in StateStore under account's keys
+     */
+    private final class AccountDirectory {
+        private final String account;
+
+        /**
+         * Current index, replaced as a whole when directory changes
+         */
+        private volatile DirectoryIndex index = DirectoryIndex.EMPTY;
+
+        /**
+         * Fields below are guarded by this
+         */
+        private List<DirectoryIndex.Recipient> contacts = new ArrayList<DirectoryIndex.Recipient>();
+        private final LinkedHashMap<String, DirectoryIndex.Recipient> users =
+                new LinkedHashMap<String, DirectoryIndex.Recipient>(16, 0.75f, true);
+        private long refreshedAt;
+        private boolean loaded;
+        private boolean refreshing;
+
+        AccountDirectory(String account) {
+            this.account = account;
+        }
+
+        synchronized boolean isStale() {
+            return System.currentTimeMillis() - this.refreshedAt > refreshInterval;
+        }
+
+        /**
+         * Reads contacts of default folder and all contact folders and replaces directory's contacts
+         *
+         * @param context Plugin context to report completion to or null for background refresh
+         */
+        private void refresh(DependencyResolver resolver, String serviceRoot, final CallbackContext context) {
+            synchronized (this) {
+                if (this.refreshing) {
+                    if (context != null) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.OK, this.index.size()));
+                    }
+                    return;
+                }
+                this.refreshing = true;
+            }
+
+            ListenableFuture<List<JSONObject>> contacts = readContacts(resolver, serviceRoot);
+            Futures.addCallback(contacts, new FutureCallback<List<JSONObject>>() {
+                @Override
+                public void onSuccess(List<JSONObject> items) {
+                    List<DirectoryIndex.Recipient> recipients = new ArrayList<DirectoryIndex.Recipient>();
+                    for (JSONObject contact : items) {
+                        addContact(recipients, contact);
+                    }
+
+                    synchronized (AccountDirectory.this) {
+                        AccountDirectory.this.contacts = recipients;
+                        refreshedAt = System.currentTimeMillis();
+                        refreshing = false;
+                        rebuild();
+                    }
+                    save(CONTACTS_KEY);
+                    if (context != null) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.OK, index.size()));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    synchronized (AccountDirectory.this) {
+                        refreshing = false;
+                    }
+                    LOG.d(TAG, "Directory refresh failed: " + throwable.getMessage());
+                    if (context != null) {
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                                OutlookServicesMethodsImpl.getErrorMessage(throwable)));
+                    }
+                }
+            }, executor);
+        }
+
+        private void addUsers(JSONObject page) {
+            JSONArray items = page.optJSONArray("value");
+            if (items == null || items.length() == 0) {
+                return;
+            }
+
+            ensureLoaded();
+            synchronized (this) {
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject user = items.optJSONObject(i);
+                    String address = user != null ? user.optString("EmailAddress", "") : "";
+                    if (address.length() > 0) {
+                        this.users.remove(address);
+                        this.users.put(address, new DirectoryIndex.Recipient(user.optString("DisplayName", ""), address, "user"));
+                    }
+                }
+                while (this.users.size() > MAX_USERS) {
+                    this.users.remove(this.users.keySet().iterator().next());
+                }
+                rebuild();
+            }
+            save(USERS_KEY);
+        }
+
+        /**
+         * Rebuilds index from contacts and users, must be called holding lock
+         */
+        private void rebuild() {
+            List<DirectoryIndex.Recipient> all = new ArrayList<DirectoryIndex.Recipient>(this.contacts);
+            all.addAll(this.users.values());
+            this.index = DirectoryIndex.build(all);
+        }
+
+        private synchronized void clear() {
+            this.contacts = new ArrayList<DirectoryIndex.Recipient>();
+            this.users.clear();
+            this.refreshedAt = 0;
+            this.loaded = true;
+            this.index = DirectoryIndex.EMPTY;
+            store.remove(storeKey(CONTACTS_KEY));
+            store.remove(storeKey(USERS_KEY));
+        }
+
+        /**
+         * Reads directory saved by previous application run, once
+         */
+        private synchronized void ensureLoaded() {
+            if (this.loaded) {
+                return;
+            }
+            this.loaded = true;
+
+            try {
+                String contactsJson = store.get(storeKey(CONTACTS_KEY));
+                if (contactsJson != null) {
+                    JSONObject saved = new JSONObject(contactsJson);
+                    this.refreshedAt = saved.optLong("refreshedAt", 0);
+                    this.contacts = fromJson(saved.optJSONArray("items"));
+                }
+                String usersJson = store.get(storeKey(USERS_KEY));
+                if (usersJson != null) {
+                    for (DirectoryIndex.Recipient user : fromJson(new JSONObject(usersJson).optJSONArray("items"))) {
+                        this.users.put(user.getAddress(), user);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.w(TAG, "Failed to read saved directory", e);
+            } catch (JSONException e) {
+                LOG.w(TAG, "Failed to read saved directory", e);
+            }
+            rebuild();
+        }
+
+        private void save(String key) {
+            try {
+                JSONObject saved = new JSONObject();
+                synchronized (this) {
+                    saved.put("items", toJson(key.equals(CONTACTS_KEY) ? this.contacts : this.users.values()));
+                    saved.put("refreshedAt", this.refreshedAt);
+                }
+                store.put(storeKey(key), saved.toString());
+            } catch (IOException e) {
+                LOG.w(TAG, "Failed to save directory", e);
+            } catch (JSONException e) {
+                LOG.w(TAG, "Failed to save directory", e);
+            }
+        }
+
+        private String storeKey(String key) {
+            return this.account + "|" + key;
+        }
+    }
+}
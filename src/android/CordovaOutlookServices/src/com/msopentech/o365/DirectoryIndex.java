@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable prefix index of recipients. Every word of recipient's name and address is a key;
+ * keys are kept in a sorted array, so all keys that start with typed prefix form a contiguous range
+ * found by binary search. Instances are replaced as a whole when directory changes, so lookups need no locks
+ */
+final class DirectoryIndex {
+
+    static final DirectoryIndex EMPTY = build(Collections.<Recipient>emptyList());
+
+    private final Recipient[] recipients;
+
+    /**
+     * Sorted keys and index of recipient each key belongs to
+     */
+    private final String[] keys;
+    private final int[] owners;
+
+    private DirectoryIndex(Recipient[] recipients, String[] keys, int[] owners) {
+        this.recipients = recipients;
+        this.keys = keys;
+        this.owners = owners;
+    }
+
+    /**
+     * Builds index. Recipients with the same address are indexed once, the first one wins
+     *
+     * @param recipients recipients in priority order
+     * @return new index
+     */
+    static DirectoryIndex build(Collection<Recipient> recipients) {
+        Map<String, Recipient> unique = new LinkedHashMap<String, Recipient>();
+        for (Recipient recipient : recipients) {
+            String address = normalize(recipient.address);
+            if (address.length() > 0 && !unique.containsKey(address)) {
+                unique.put(address, recipient);
+            }
+        }
+
+        final Recipient[] all = unique.values().toArray(new Recipient[unique.size()]);
+        final List<String> keyList = new ArrayList<String>();
+        List<Integer> ownerList = new ArrayList<Integer>();
+        for (int i = 0; i < all.length; i++) {
+            for (String key : all[i].keys) {
+                keyList.add(key);
+                ownerList.add(i);
+            }
+        }
+
+        // Sort positions by key, then lay keys and owners out in that order
+        Integer[] order = new Integer[keyList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                return keyList.get(left).compareTo(keyList.get(right));
+            }
+        });
+
+        String[] keys = new String[order.length];
+        int[] owners = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = keyList.get(order[i]);
+            owners[i] = ownerList.get(order[i]);
+        }
+        return new DirectoryIndex(all, keys, owners);
+    }
+
+    /**
+     * Finds recipients that have a word starting with every term of query. Recipients whose name starts
+     * with the first term go first, then ones with any matching word in name, then ones matched by address only
+     *
+     * @param query text typed by user
+     * @param top max number of results
+     * @return matching recipients, best matches first
+     */
+    List<Recipient> lookup(String query, int top) {
+        String[] terms = terms(query);
+        if (terms.length == 0 || top <= 0) {
+            return Collections.emptyList();
+        }
+
+        // Candidates are found by the longest term, which has the narrowest range
+        String first = terms[0];
+        for (String term : terms) {
+            if (term.length() > first.length()) {
+                first = term;
+            }
+        }
+
+        Set<Integer> candidates = new HashSet<Integer>();
+        for (int i = lowerBound(first); i < this.keys.length && this.keys[i].startsWith(first); i++) {
+            candidates.add(this.owners[i]);
+        }
+
+        List<Recipient> matches = new ArrayList<Recipient>();
+        for (int candidate : candidates) {
+            Recipient recipient = this.recipients[candidate];
+            if (recipient.matchesAll(terms)) {
+                matches.add(recipient);
+            }
+        }
+
+        final String lead = terms[0];
+        Collections.sort(matches, new Comparator<Recipient>() {
+            @Override
+            public int compare(Recipient left, Recipient right) {
+                int rank = left.rank(lead) - right.rank(lead);
+                return rank != 0 ? rank : left.sortName.compareTo(right.sortName);
+            }
+        });
+        return matches.size() > top ? matches.subList(0, top) : matches;
+    }
+
+    /**
+     * @return number of indexed recipients
+     */
+    int size() {
+        return this.recipients.length;
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = this.keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.keys[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String text) {
+        return text != null ? text.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static String[] terms(String text) {
+        List<String> terms = new ArrayList<String>();
+        for (String term : normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() > 0) {
+                terms.add(term);
+            }
+        }
+        return terms.toArray(new String[terms.size()]);
+    }
+
+    /**
+     * Single recipient: contact's or user's name and email address
+     */
+    static final class Recipient {
+        private final String name;
+        private final String address;
+        private final String source;
+        private final String sortName;
+        private final String[] nameWords;
+        private final String[] keys;
+
+        /**
+         * @param name display name, may be empty
+         * @param address email address
+         * @param source where recipient comes from: "contact" or "user"
+         */
+        Recipient(String name, String address, String source) {
+            this.name = name != null ? name : "";
+            this.address = address != null ? address : "";
+            this.source = source;
+            this.sortName = normalize(this.name.length() > 0 ? this.name : this.address);
+            this.nameWords = terms(this.name);
+
+            Set<String> keys = new HashSet<String>(Arrays.asList(this.nameWords));
+            keys.addAll(Arrays.asList(terms(this.address)));
+            this.keys = keys.toArray(new String[keys.size()]);
+        }
+
+        /**
+         * @return recipient's email address
+         */
+        String getAddress() {
+            return this.address;
+        }
+
+        private boolean matchesAll(String[] terms) {
+            for (String term : terms) {
+                boolean matched = false;
+                for (String key : this.keys) {
+                    if (key.startsWith(term)) {
+                        matched = true;
+                        break;
+                    }
+                }
+                if (!matched) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int rank(String lead) {
+            if (this.sortName.startsWith(lead)) {
+                return 0;
+            }
+            for (String word : this.nameWords) {
+                if (word.startsWith(lead)) {
+                    return 1;
+                }
+            }
+            return 2;
+        }
+
+        /**
+         * @return recipient as EmailAddress-like JSON: Name, Address and Source
+         * @throws JSONException
+         */
+        JSONObject toJson() throws JSONException {
+            return new JSONObject().put("Name", this.name).put("Address", this.address).put("Source", this.source);
+        }
+
+        /**
+         * @param json JSON produced by toJson
+         * @return recipient
+         */
+        static Recipient fromJson(JSONObject json) {
+            return new Recipient(json.optString("Name", ""), json.optString("Address", ""), json.optString("Source", ""));
+        }
+    }
+}
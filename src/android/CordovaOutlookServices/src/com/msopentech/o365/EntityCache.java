@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk-backed cache of entities' JSON, keyed by account and entity's path. Each entity is kept in its own file
+ * along with its ETag. Cache size is bounded; least recently used entities are evicted first.
+ * Every removal starts a new cache generation; entities read before removal are not cached, since they may
+ * predate the change that caused removal
+ */
+class EntityCache {
+
+    private static final String TAG = "Office 365";
+
+    /**
+     * Name of entity's ETag annotation
+     */
+    static final String ETAG = "@odata.etag";
+
+    private final File directory;
+    private final long maxSize;
+
+    /**
+     * File name to file size, in access order
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * Incremented on every removal, see getGeneration
+     */
+    private long generation;
+
+    /**
+     * @param directory directory to keep cached entities in
+     * @param maxSize max total size of cached entities in bytes
+     */
+    EntityCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        loadEntries();
+    }
+
+    /**
+     * Cached entity along with its ETag
+     */
+    static final class Entry {
+        private final String etag;
+        private final String entity;
+
+        Entry(String etag, String entity) {
+            this.etag = etag;
+            this.entity = entity;
+        }
+
+        /**
+         * @return entity's ETag or empty string if entity has no ETag
+         */
+        String getEtag() {
+            return this.etag;
+        }
+
+        /**
+         * @return entity's JSON
+         */
+        String getEntity() {
+            return this.entity;
+        }
+    }
+
+    /**
+     * @param account entity's account, see Accounts.key
+     * @param key entity key
+     * @return cached entity or null if entity is not cached
+     */
+    synchronized Entry get(String account, String key) {
+        String name = fileName(account, key);
+        if (this.entries.get(name) == null) {
+            return null;
+        }
+
+        File file = new File(this.directory, name);
+        try {
+            String content = Files.toString(file, Charsets.UTF_8);
+            int separator = content.indexOf('\n');
+            if (separator < 0) {
+                throw new IOException("Malformed cache entry");
+            }
+            // Keep access order across application runs
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(content.substring(0, separator), content.substring(separator + 1));
+        } catch (IOException e) {
+            LOG.w(TAG, "Failed to read cached entity", e);
+            removeFile(name);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether entity is cached without reading it and without changing access order
+     *
+     * @param account entity's account, see Accounts.key
+     * @param key entity key
+     * @return true if entity is cached
+     */
+    synchronized boolean contains(String account, String key) {
+        return this.entries.containsKey(fileName(account, key));
+    }
+
+    /**
+     * @return current cache generation, taken before entity is requested and passed to put
+     */
+    synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Caches entity JSON. Entity's ETag is taken from entity's '@odata.etag' annotation.
+     * Entity is not cached if any entity was removed after it was requested
+     *
+     * @param account entity's account, see Accounts.key
+     * @param key entity key
+     * @param entity entity JSON
+     * @param generation cache generation taken before entity was requested
+     */
+    synchronized void put(String account, String key, String entity, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+
+        String etag = "";
+        try {
+            etag = new JSONObject(entity).optString(ETAG, "");
+        } catch (JSONException e) {
+            // Entity is cached without ETag and will be fully reloaded on revalidation
+        }
+
+        String name = fileName(account, key);
+        removeFile(name);
+
+        // Size is counted in bytes, the same way as file sizes are counted when cache is loaded
+        byte[] content = (etag + "\n" + entity).getBytes(Charsets.UTF_8);
+        try {
+            if (!this.directory.exists() && !this.directory.mkdirs()) {
+                throw new IOException("Can't create cache directory " + this.directory);
+            }
+            Files.write(content, new File(this.directory, name));
+        } catch (IOException e) {
+            LOG.w(TAG, "Failed to cache entity", e);
+            return;
+        }
+
+        long entrySize = content.length;
+        this.entries.put(name, entrySize);
+        this.size += entrySize;
+        trim();
+    }
+
+    /**
+     * Removes entity from cache
+     *
+     * @param account entity's account, see Accounts.key
+     * @param key entity key
+     */
+    synchronized void remove(String account, String key) {
+        this.generation++;
+        removeFile(fileName(account, key));
+    }
+
+    /**
+     * Removes all cached entities of account
+     *
+     * @param account account to remove entities of
+     */
+    synchronized void clear(String account) {
+        this.generation++;
+        String prefix = accountPrefix(account);
+        for (String name : this.entries.keySet().toArray(new String[this.entries.size()])) {
+            if (name.startsWith(prefix)) {
+                removeFile(name);
+            }
+        }
+    }
+
+    /**
+     * @return total size of cached entities in bytes
+     */
+    synchronized long size() {
+        return this.size;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+        while (this.size > this.maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            this.size -= eldest.getValue();
+            new File(this.directory, eldest.getKey()).delete();
+        }
+    }
+
+    private void removeFile(String name) {
+        Long entrySize = this.entries.remove(name);
+        if (entrySize != null) {
+            this.size -= entrySize;
+        }
+        new File(this.directory, name).delete();
+    }
+
+    private void loadEntries() {
+        File[] files = this.directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile();
+            }
+        });
+        if (files == null) {
+            return;
+        }
+
+        // Restore access order from files' modification time
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                long diff = left.lastModified() - right.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : files) {
+            this.entries.put(file.getName(), file.length());
+            this.size += file.length();
+        }
+        trim();
+    }
+
+    /**
+     * File name starts with account's hash, so account's entities can be found without reading them
+     */
+    private static String fileName(String account, String key) {
+        return accountPrefix(account) + Hashing.sha1().hashString(key, Charsets.UTF_8).toString();
+    }
+
+    private static String accountPrefix(String account) {
+        return Hashing.sha1().hashString(account, Charsets.UTF_8).toString().substring(0, 16) + "-";
+    }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, like HdrHistogram: values below 32 microseconds
+ * have their own buckets, larger ones are split into 16 buckets per power of two, so any percentile
+ * is reported within about 6% of its actual value. Recording is a few atomic increments, without allocations
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Buckets cover values up to 2^40 microseconds (about 12 days), larger values go to the last bucket
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records single value
+     *
+     * @param nanos latency in nanoseconds
+     */
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        this.counts.incrementAndGet(bucketOf(micros));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(micros);
+
+        long current = this.max.get();
+        while (micros > current && !this.max.compareAndSet(current, micros)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Returns value at specified percentile. Values recorded concurrently may or may not be taken into account
+     *
+     * @param percentile percentile, from 0 to 100
+     * @return upper bound of bucket that contains percentile, in microseconds, or 0 if nothing is recorded
+     */
+    long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Drops recorded values
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    /**
+     * @return summary in milliseconds: count, mean, p50, p90, p99 and max
+     * @throws JSONException
+     */
+    JSONObject toJson() throws JSONException {
+        long count = this.count.get();
+        return new JSONObject()
+                .put("count", count)
+                .put("mean", count > 0 ? this.sum.get() / count / 1000.0 : 0)
+                .put("p50", getPercentile(50) / 1000.0)
+                .put("p90", getPercentile(90) / 1000.0)
+                .put("p99", getPercentile(99) / 1000.0)
+                .put("max", this.max.get() / 1000.0);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        // (micros >> shift) is in [16, 32), so consecutive exponents continue each other's buckets
+        return shift * SUB_BUCKETS + (int) (micros >> shift);
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
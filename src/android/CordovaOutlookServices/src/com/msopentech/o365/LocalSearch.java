@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class that feeds SearchIndex with messages and contacts as their pages are read by getMessages and
+ * getContacts, and answers searchLocal action from the index without network requests. Pages are indexed
+ * on a single background thread, so reading collections is not slowed down by index writes.
+ * Items are indexed and searched per account, and searches on a folder's collection return items of that folder only
+ */
+class LocalSearch {
+
+    private static final String TAG = "Office 365";
+
+    /**
+     * Name of preference that sets max number of indexed items
+     */
+    static final String SEARCH_INDEX_SIZE_PREFERENCE = "OutlookServicesSearchIndexSize";
+
+    private static final int DEFAULT_MAX_DOCUMENTS = 50000;
+    private static final int DEFAULT_TOP = 20;
+
+    /**
+     * Max length of indexed body text, in characters
+     */
+    private static final int MAX_BODY_LENGTH = 16 * 1024;
+
+    /**
+     * Number of indexed items after which index is trimmed to its max size
+     */
+    private static final int TRIM_INTERVAL = 500;
+
+    private final SearchIndex index;
+    private final int maxDocuments;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("OutlookServices-search-%d").setDaemon(true).build());
+
+    /**
+     * Number of items indexed since last trim, used by writer thread only
+     */
+    private int indexedSinceTrim;
+
+    /**
+     * @param index index to keep items in
+     * @param maxDocuments max number of indexed items, least recently indexed ones are dropped first
+     */
+    LocalSearch(SearchIndex index, int maxDocuments) {
+        this.index = index;
+        this.maxDocuments = maxDocuments;
+    }
+
+    /**
+     * Creates local search with index size taken from plugin preferences
+     *
+     * @param index index to keep items in
+     * @param preferences Cordova preferences, may be null
+     * @return new LocalSearch instance
+     */
+    static LocalSearch create(SearchIndex index, CordovaPreferences preferences) {
+        int maxDocuments = preferences != null ?
+                preferences.getInteger(SEARCH_INDEX_SIZE_PREFERENCE, DEFAULT_MAX_DOCUMENTS) : DEFAULT_MAX_DOCUMENTS;
+        return new LocalSearch(index, Math.max(0, maxDocuments));
+    }
+
+    /**
+     * Registers search actions, starts listening to messages' and contacts' pages and wraps actions
+     * that delete items, so deleted items are removed from index. Must be called after other actions are registered
+     *
+     * @param handlers Actions table to update
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("searchLocal", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                search(context, methodArgs);
+            }
+        });
+        handlers.put("clearSearchIndex", new ActionHandler() {
+            @Override
+            public void execute(final CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                final String account = methodArgs.getAccount();
+                writer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        index.clear(account);
+                        context.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+                    }
+                });
+            }
+        });
+
+        OutlookServicesMethodsImpl.setPageListener("Messages", new PageListener() {
+            @Override
+            public void onPage(ODataMethodArgs methodArgs, JSONObject page) {
+                indexPage("Messages", methodArgs, page);
+            }
+        });
+        OutlookServicesMethodsImpl.setPageListener("Contacts", new PageListener() {
+            @Override
+            public void onPage(ODataMethodArgs methodArgs, JSONObject page) {
+                indexPage("Contacts", methodArgs, page);
+            }
+        });
+
+        addRemoval(handlers, "deleteMessage", "Messages");
+        addRemoval(handlers, "moveMessage", "Messages");
+        addRemoval(handlers, "deleteContact", "Contacts");
+        addBulkRemoval(handlers, "deleteMessages", "Messages");
+        addBulkRemoval(handlers, "moveMessages", "Messages");
+    }
+
+    /**
+     * Stops listening to pages and closes index after pending pages are indexed
+     */
+    void close() {
+        OutlookServicesMethodsImpl.setPageListener("Messages", null);
+        OutlookServicesMethodsImpl.setPageListener("Contacts", null);
+        try {
+            this.writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    index.close();
+                }
+            });
+        } catch (RuntimeException ignored) {
+            // Already closed
+        }
+        this.writer.shutdown();
+    }
+
+    private void addRemoval(Map<String, ActionHandler> handlers, String action, final String kind) {
+        final ActionHandler handler = handlers.get(action);
+        if (handler == null) {
+            return;
+        }
+
+        handlers.put(action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                remove(methodArgs.getAccount(), kind, Collections.singletonList(methodArgs.parseIdFromODataPath()));
+                handler.execute(context, client, resolver, methodArgs);
+            }
+        });
+    }
+
+    private void addBulkRemoval(Map<String, ActionHandler> handlers, String action, final String kind) {
+        final ActionHandler handler = handlers.get(action);
+        if (handler == null) {
+            return;
+        }
+
+        handlers.put(action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                // First argument is JSON array of items' Ids
+                JSONArray ids = new JSONArray(methodArgs.getArgs().get(0));
+                List<String> removed = new ArrayList<String>(ids.length());
+                for (int i = 0; i < ids.length(); i++) {
+                    removed.add(ids.getString(i));
+                }
+                remove(methodArgs.getAccount(), kind, removed);
+                handler.execute(context, client, resolver, methodArgs);
+            }
+        });
+    }
+
+    /**
+     * Searches indexed items of collection, specified by OData path. Items of account's whole collection
+     * (e.g. Me/Messages) are searched in all folders, items of folder's collection (e.g. Me/Folders/Inbox/Messages)
+     * are searched in that folder only
+     *
+     * @param context Plugin context used to send result back to plugin
+     * @param methodArgs Arguments, passed from JS layer. OData path is messages' or contacts' collection path,
+     *                   first argument is text typed by user, second one is optional options JSON:
+     *                   top: int, max number of results
+     * @throws JSONException
+     */
+    private void search(CallbackContext context, ODataMethodArgs methodArgs) throws JSONException {
+        String kind = kindFromPath(methodArgs.getODataPath());
+        String text = methodArgs.getArgs().get(0);
+        JSONObject options = new JSONObject(methodArgs.getArgs().size() > 1 ? methodArgs.getArgs().get(1) : "{}");
+
+        JSONArray value = new JSONArray();
+        List<JSONObject> items = this.index.search(methodArgs.getAccount(), kind, folderFromArgs(methodArgs), text,
+                options.optInt("top", DEFAULT_TOP));
+        for (JSONObject item : items) {
+            value.put(item);
+        }
+        context.sendPluginResult(new PluginResult(PluginResult.Status.OK, new JSONObject().put("value", value).toString()));
+    }
+
+    private void indexPage(String kind, ODataMethodArgs methodArgs, JSONObject page) {
+        JSONArray items = page.optJSONArray("value");
+        if (items == null || items.length() == 0) {
+            return;
+        }
+
+        String account = methodArgs.getAccount();
+        String folder = folderFromArgs(methodArgs);
+
+        // Text is extracted right away, since page is shaped after listeners are called
+        final List<SearchIndex.Document> documents = new ArrayList<SearchIndex.Document>(items.length());
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.optJSONObject(i);
+            if (item != null && item.optString("Id", null) != null) {
+                documents.add(kind.equals("Messages") ?
+                        messageDocument(account, folder, item) :
+                        contactDocument(account, folder, item));
+            }
+        }
+
+        try {
+            this.writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        index.put(documents);
+                        indexedSinceTrim += documents.size();
+                        if (indexedSinceTrim >= TRIM_INTERVAL) {
+                            indexedSinceTrim = 0;
+                            index.trim(maxDocuments);
+                        }
+                    } catch (RuntimeException e) {
+                        LOG.w(TAG, "Failed to index page", e);
+                    }
+                }
+            });
+        } catch (RuntimeException ignored) {
+            // Search is closed
+        }
+    }
+
+    private void remove(final String account, final String kind, final Collection<String> ids) {
+        try {
+            this.writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        index.remove(account, kind, ids);
+                    } catch (RuntimeException e) {
+                        LOG.w(TAG, "Failed to remove items from search index", e);
+                    }
+                }
+            });
+        } catch (RuntimeException ignored) {
+            // Search is closed
+        }
+    }
+
+    private static SearchIndex.Document messageDocument(String account, String folder, JSONObject message) {
+        String body = null;
+        JSONObject itemBody = message.optJSONObject("Body");
+        if (itemBody != null) {
+            body = itemBody.optString("Content", "");
+            if ("HTML".equalsIgnoreCase(itemBody.optString("ContentType"))) {
+                body = body.replaceAll("<[^>]*>", " ").replaceAll("&[#\\w]+;", " ");
+            }
+        } else if (message.has("BodyPreview")) {
+            body = message.optString("BodyPreview", "");
+        }
+        if (body != null && body.length() > MAX_BODY_LENGTH) {
+            body = body.substring(0, MAX_BODY_LENGTH);
+        }
+
+        return new SearchIndex.Document(account, "Messages", message.optString("Id"),
+                message.optString("ParentFolderId", null), folder,
+                text(message, "Subject"),
+                text(message, "From", "Sender", "ToRecipients", "CcRecipients"),
+                body, summary(message));
+    }
+
+    private static SearchIndex.Document contactDocument(String account, String folder, JSONObject contact) {
+        return new SearchIndex.Document(account, "Contacts", contact.optString("Id"),
+                contact.optString("ParentFolderId", null), folder,
+                text(contact, "DisplayName", "GivenName", "Surname"),
+                text(contact, "EmailAddresses"),
+                text(contact, "CompanyName", "JobTitle", "Department", "MobilePhone1", "BusinessPhones", "HomePhones"),
+                summary(contact));
+    }
+
+    /**
+     * Collects string values of item's fields, including values nested in objects and arrays
+     * (e.g. recipients' names and addresses)
+     *
+     * @return text or null if item has none of the fields
+     */
+    private static String text(JSONObject item, String... fields) {
+        StringBuilder text = null;
+        for (String field : fields) {
+            if (item.has(field)) {
+                text = text != null ? text : new StringBuilder();
+                appendText(text, item.opt(field));
+            }
+        }
+        return text != null ? text.toString() : null;
+    }
+
+    private static void appendText(StringBuilder text, Object value) {
+        if (value instanceof JSONObject) {
+            Iterator<String> keys = ((JSONObject) value).keys();
+            while (keys.hasNext()) {
+                appendText(text, ((JSONObject) value).opt(keys.next()));
+            }
+        } else if (value instanceof JSONArray) {
+            for (int i = 0; i < ((JSONArray) value).length(); i++) {
+                appendText(text, ((JSONArray) value).opt(i));
+            }
+        } else if (value instanceof String) {
+            text.append((String) value).append(' ');
+        }
+    }
+
+    /**
+     * @return item without body and OData annotations, returned by searches
+     */
+    private static String summary(JSONObject item) {
+        JSONObject summary = new JSONObject();
+        Iterator<String> keys = item.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.equals("Body") && !key.contains("@odata.")) {
+                try {
+                    summary.put(key, item.get(key));
+                } catch (JSONException ignored) {
+                }
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return Id or well-known name of folder whose collection is read or searched, or null for account's
+     *         whole collection, e.g. 'Inbox' for Me/Folders/Inbox/Messages and null for Me/Messages
+     */
+    private static String folderFromArgs(ODataMethodArgs methodArgs) {
+        ODataPath path = methodArgs.getParsedPath();
+        if (path.getSegmentsCount() < 2 || path.segmentEqualsIgnoreCase(2, "me")) {
+            return null;
+        }
+        return path.getSegment(2);
+    }
+
+    private static String kindFromPath(String path) {
+        int query = path.indexOf('?');
+        String url = query < 0 ? path : path.substring(0, query);
+        String collection = url.substring(url.lastIndexOf('/') + 1);
+        if (collection.equalsIgnoreCase("Messages")) {
+            return "Messages";
+        }
+        if (collection.equalsIgnoreCase("Contacts")) {
+            return "Contacts";
+        }
+        throw new IllegalArgumentException("Local search is supported for messages and contacts only");
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plugin context that passes results to the original context and records network, bridge and total
+ * time of action's call, number of completed calls, results, errors and results' size
+ */
+class MeteredCallbackContext extends CallbackContext {
+
+    private final CallbackContext context;
+    private final Metrics.ActionStats stats;
+    private final long startNanos;
+
+    /**
+     * Time when action's handler returned, 0 while handler runs
+     */
+    private volatile long handlerEndNanos;
+
+    private final AtomicBoolean firstResult = new AtomicBoolean(true);
+
+    /**
+     * @param context original plugin context
+     * @param webView WebView the context belongs to
+     * @param stats statistics of context's action
+     * @param startNanos time when plugin received action, from System.nanoTime
+     */
+    MeteredCallbackContext(CallbackContext context, CordovaWebView webView, Metrics.ActionStats stats, long startNanos) {
+        super(context.getCallbackId(), webView);
+        this.context = context;
+        this.stats = stats;
+        this.startNanos = startNanos;
+        stats.onCall();
+    }
+
+    /**
+     * @return statistics of context's action
+     */
+    Metrics.ActionStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Marks the end of synchronous part of action, time until the first result is recorded as network time
+     */
+    void onHandlerReturned() {
+        this.handlerEndNanos = System.nanoTime();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return this.context.isFinished();
+    }
+
+    @Override
+    public void sendPluginResult(PluginResult pluginResult) {
+        long now = System.nanoTime();
+        long handlerEnd = this.handlerEndNanos;
+        if (this.firstResult.compareAndSet(true, false) && handlerEnd != 0) {
+            this.stats.record(Metrics.Phase.NETWORK, now - handlerEnd);
+        }
+
+        int status = pluginResult.getStatus();
+        this.stats.onResult(status != PluginResult.Status.OK.ordinal() && status != PluginResult.Status.NO_RESULT.ordinal(),
+                sizeOf(pluginResult));
+
+        this.context.sendPluginResult(pluginResult);
+
+        long sent = System.nanoTime();
+        this.stats.record(Metrics.Phase.BRIDGE, sent - now);
+        if (!pluginResult.getKeepCallback()) {
+            this.stats.onComplete();
+            this.stats.record(Metrics.Phase.TOTAL, sent - this.startNanos);
+        }
+    }
+
+    private static long sizeOf(PluginResult result) {
+        switch (result.getMessageType()) {
+            case PluginResult.MESSAGE_TYPE_STRING:
+                return result.getStrMessage() != null ? result.getStrMessage().length() : 0;
+            case PluginResult.MESSAGE_TYPE_ARRAYBUFFER:
+            case PluginResult.MESSAGE_TYPE_BINARYSTRING:
+                // Binary messages are kept base64 encoded
+                return result.getMessage() != null ? result.getMessage().length() * 3L / 4 : 0;
+            default:
+                return result.getMessage() != null ? result.getMessage().length() : 0;
+        }
+    }
+}
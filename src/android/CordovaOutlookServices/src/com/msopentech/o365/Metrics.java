@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-action counters and latency histograms. Every action's call is split into phases:
+ * dispatch (waiting for a worker thread), parse (arguments and client lookup), handler (synchronous part
+ * of action's handler), network (from handler's return to the first result, includes server time),
+ * serialize (shaping and serializing results), bridge (passing result to WebView) and total.
+ * Metrics are returned by getMetrics action and can be dumped to a file periodically
+ */
+class Metrics {
+
+    private static final String TAG = "Office 365";
+
+    /**
+     * Name of preference that sets metrics dump interval in seconds, 0 disables dump
+     */
+    static final String DUMP_INTERVAL_PREFERENCE = "OutlookServicesMetricsDumpInterval";
+
+    /**
+     * Phases of action's call
+     */
+    enum Phase {
+        DISPATCH, PARSE, HANDLER, NETWORK, SERIALIZE, BRIDGE, TOTAL
+    }
+
+    /**
+     * Source of other components' statistics, included into metrics as is
+     */
+    interface ComponentsReporter {
+
+        /**
+         * @param components object to put components' statistics to, keyed by component name
+         * @throws JSONException
+         */
+        void report(JSONObject components) throws JSONException;
+    }
+
+    private final ConcurrentMap<String, ActionStats> actions = new ConcurrentHashMap<String, ActionStats>();
+    private final ComponentsReporter components;
+    private volatile long since = System.currentTimeMillis();
+
+    private ScheduledExecutorService dumper;
+
+    /**
+     * @param components source of other components' statistics
+     */
+    Metrics(ComponentsReporter components) {
+        this.components = components;
+    }
+
+    /**
+     * Registers metrics action
+     *
+     * @param handlers Actions table to fill
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("getMetrics", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                JSONObject options = new JSONObject(methodArgs.getArgs().isEmpty() ? "{}" : methodArgs.getArgs().get(0));
+                JSONObject snapshot = toJson();
+                if (options.optBoolean("reset", false)) {
+                    reset();
+                }
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK, snapshot.toString()));
+            }
+        });
+    }
+
+    /**
+     * Starts periodic dump of metrics to file if enabled by plugin preferences
+     *
+     * @param file file to write metrics to, replaced on every dump
+     * @param preferences Cordova preferences, may be null
+     */
+    void startDump(final File file, CordovaPreferences preferences) {
+        int interval = preferences != null ? preferences.getInteger(DUMP_INTERVAL_PREFERENCE, 0) : 0;
+        if (interval <= 0) {
+            return;
+        }
+
+        this.dumper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("OutlookServices-metrics-%d").setDaemon(true).build());
+        this.dumper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                dump(file);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops periodic dump
+     */
+    void stopDump() {
+        if (this.dumper != null) {
+            this.dumper.shutdown();
+        }
+    }
+
+    /**
+     * @param action action's name
+     * @return action's statistics, created on first use
+     */
+    ActionStats get(String action) {
+        ActionStats stats = this.actions.get(action);
+        if (stats == null) {
+            ActionStats created = new ActionStats();
+            stats = this.actions.putIfAbsent(action, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Records phase duration for action, that context belongs to. Does nothing for contexts that are not metered
+     *
+     * @param context Plugin context of action's call
+     * @param phase phase to record
+     * @param startNanos phase's start, from System.nanoTime
+     */
+    static void record(CallbackContext context, Phase phase, long startNanos) {
+        if (context instanceof CompletionCallbackContext) {
+            context = ((CompletionCallbackContext) context).getContext();
+        }
+        if (context instanceof MeteredCallbackContext) {
+            ((MeteredCallbackContext) context).getStats().record(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @return all actions' metrics and components' statistics
+     * @throws JSONException
+     */
+    JSONObject toJson() throws JSONException {
+        JSONObject actions = new JSONObject();
+        for (Map.Entry<String, ActionStats> action : this.actions.entrySet()) {
+            actions.put(action.getKey(), action.getValue().toJson());
+        }
+
+        JSONObject components = new JSONObject();
+        if (this.components != null) {
+            this.components.report(components);
+        }
+
+        return new JSONObject()
+                .put("since", this.since)
+                .put("now", System.currentTimeMillis())
+                .put("actions", actions)
+                .put("components", components);
+    }
+
+    /**
+     * Drops all actions' metrics. Components' statistics are cumulative and are not reset
+     */
+    void reset() {
+        for (ActionStats stats : this.actions.values()) {
+            stats.reset();
+        }
+        this.since = System.currentTimeMillis();
+    }
+
+    private void dump(File file) {
+        try {
+            File temp = new File(file.getPath() + ".tmp");
+            Files.write(toJson().toString(), temp, Charsets.UTF_8);
+            if (!temp.renameTo(file)) {
+                LOG.w(TAG, "Can't replace metrics file " + file);
+            }
+        } catch (IOException e) {
+            LOG.w(TAG, "Failed to dump metrics", e);
+        } catch (JSONException e) {
+            LOG.w(TAG, "Failed to dump metrics", e);
+        }
+    }
+
+    /**
+     * Single action's counters and phases' histograms, all updated without locks
+     */
+    static final class ActionStats {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong results = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+        private ActionStats() {
+            for (int i = 0; i < this.phases.length; i++) {
+                this.phases[i] = new LatencyHistogram();
+            }
+        }
+
+        void onCall() {
+            this.calls.incrementAndGet();
+        }
+
+        void onComplete() {
+            this.completed.incrementAndGet();
+        }
+
+        void onResult(boolean error, long size) {
+            this.results.incrementAndGet();
+            this.bytes.addAndGet(size);
+            if (error) {
+                this.errors.incrementAndGet();
+            }
+        }
+
+        void record(Phase phase, long nanos) {
+            this.phases[phase.ordinal()].record(nanos);
+        }
+
+        private void reset() {
+            this.calls.set(0);
+            this.completed.set(0);
+            this.errors.set(0);
+            this.results.set(0);
+            this.bytes.set(0);
+            for (LatencyHistogram histogram : this.phases) {
+                histogram.reset();
+            }
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject phases = new JSONObject();
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = this.phases[phase.ordinal()];
+                if (histogram.getCount() > 0) {
+                    phases.put(phase.name().toLowerCase(Locale.US), histogram.toJson());
+                }
+            }
+            // Calls that never complete point to callbacks kept by native layer
+            long calls = this.calls.get();
+            return new JSONObject()
+                    .put("calls", calls)
+                    .put("pending", Math.max(0, calls - this.completed.get()))
+                    .put("errors", this.errors.get())
+                    .put("results", this.results.get())
+                    .put("bytes", this.bytes.get())
+                    .put("phases", phases);
+        }
+    }
+}
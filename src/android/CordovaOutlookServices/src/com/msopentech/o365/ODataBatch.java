@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that packs a list of operations into OData JSON $batch requests
+ * and sends them with bounded parallelism
+ */
+class ODataBatch {
+
+    /**
+     * Max number of operations in a single $batch request
+     */
+    static final int MAX_OPERATIONS_PER_BATCH = 20;
+
+    /**
+     * Max number of $batch requests sent at the same time
+     */
+    static final int MAX_BATCHES_IN_FLIGHT = 4;
+
+    private final DependencyResolver resolver;
+    private final String serviceRoot;
+    private final JSONObject[] results;
+    private final List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+    private final List<ODataOperation> operations;
+
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    private final AtomicInteger remainingChunks = new AtomicInteger();
+    private final SettableFuture<JSONArray> result = SettableFuture.create();
+
+    private ODataBatch(DependencyResolver resolver, String serviceRoot, List<ODataOperation> operations, JSONObject[] results) {
+        this.resolver = resolver;
+        this.serviceRoot = serviceRoot.endsWith("/") ? serviceRoot.substring(0, serviceRoot.length() - 1) : serviceRoot;
+        this.operations = operations;
+        this.results = results;
+    }
+
+    /**
+     * Sends operations, passed from JS layer, as $batch requests
+     *
+     * @param resolver Dependency resolver, used to create and authorize requests
+     * @param serviceRoot service root URI
+     * @param operationsJson JSON array of operations: [{action: String, path: String, args: [String]}]
+     * @return Future with JSON array of per-operation results in the same order as operations:
+     *         [{status: Number, body: Object}] or [{status: 0, error: String}] if operation was not sent
+     * @throws JSONException
+     */
+    static ListenableFuture<String> execute(DependencyResolver resolver, String serviceRoot, String operationsJson) throws JSONException {
+        JSONArray operationsArray = new JSONArray(operationsJson);
+        List<ODataOperation> operations = new ArrayList<ODataOperation>();
+        JSONObject[] results = new JSONObject[operationsArray.length()];
+
+        for (int i = 0; i < operationsArray.length(); i++) {
+            ODataOperation operation = null;
+            try {
+                operation = ODataOperation.parse(operationsArray.getJSONObject(i));
+            } catch (IllegalArgumentException e) {
+                results[i] = error(e.getMessage());
+            } catch (JSONException e) {
+                results[i] = error(e.getMessage());
+            }
+            operations.add(operation);
+        }
+
+        return Futures.transform(new ODataBatch(resolver, serviceRoot, operations, results).start(), new Function<JSONArray, String>() {
+            @Override
+            public String apply(JSONArray results) {
+                return results.toString();
+            }
+        });
+    }
+
+    /**
+     * Sends operations as $batch requests
+     *
+     * @param resolver Dependency resolver, used to create and authorize requests
+     * @param serviceRoot service root URI
+     * @param operations operations to send
+     * @return Future with JSON array of per-operation results in the same order as operations:
+     *         [{status: Number, body: Object}] or [{status: 0, error: String}] if operation was not sent
+     */
+    static ListenableFuture<JSONArray> execute(DependencyResolver resolver, String serviceRoot, List<ODataOperation> operations) {
+        return new ODataBatch(resolver, serviceRoot, operations, new JSONObject[operations.size()]).start();
+    }
+
+    private ListenableFuture<JSONArray> start() {
+        List<Integer> chunk = new ArrayList<Integer>();
+        for (int i = 0; i < this.operations.size(); i++) {
+            if (this.operations.get(i) != null) {
+                chunk.add(i);
+                if (chunk.size() == MAX_OPERATIONS_PER_BATCH) {
+                    this.chunks.add(chunk);
+                    chunk = new ArrayList<Integer>();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            this.chunks.add(chunk);
+        }
+
+        this.remainingChunks.set(this.chunks.size());
+        if (this.chunks.isEmpty()) {
+            this.result.set(buildResult());
+            return this.result;
+        }
+
+        for (int i = 0; i < Math.min(MAX_BATCHES_IN_FLIGHT, this.chunks.size()); i++) {
+            sendNextChunk();
+        }
+        return this.result;
+    }
+
+    private void sendNextChunk() {
+        final int chunkIndex = this.nextChunk.getAndIncrement();
+        if (chunkIndex >= this.chunks.size()) {
+            return;
+        }
+
+        final List<Integer> chunk = this.chunks.get(chunkIndex);
+        byte[] content;
+        try {
+            content = buildRequest(chunk).toString().getBytes(Constants.UTF8);
+        } catch (JSONException e) {
+            failChunk(chunk, e);
+            completeChunk();
+            return;
+        }
+
+        ListenableFuture<String> future = ODataRequests.sendForString(this.resolver, HttpVerb.POST,
+                this.serviceRoot + "/$batch", content, null);
+
+        Futures.addCallback(future, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String response) {
+                try {
+                    if (response == null) {
+                        throw new JSONException("Empty $batch response");
+                    }
+                    applyResponses(chunk, new JSONObject(response));
+                } catch (JSONException e) {
+                    failChunk(chunk, e);
+                }
+                completeChunk();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                failChunk(chunk, throwable);
+                completeChunk();
+            }
+        });
+    }
+
+    private void completeChunk() {
+        if (this.remainingChunks.decrementAndGet() == 0) {
+            this.result.set(buildResult());
+        } else {
+            sendNextChunk();
+        }
+    }
+
+    private JSONObject buildRequest(List<Integer> chunk) throws JSONException {
+        JSONArray requests = new JSONArray();
+        for (Integer index : chunk) {
+            ODataOperation operation = this.operations.get(index);
+
+            JSONObject request = new JSONObject();
+            request.put("id", String.valueOf(index));
+            request.put("method", operation.getVerb().toString());
+            request.put("url", relativeUrl(operation.getUrl()));
+            if (operation.getBody() != null) {
+                request.put("headers", new JSONObject().put(Constants.CONTENT_TYPE_HEADER, Constants.JSON_CONTENT_TYPE));
+                request.put("body", new JSONObject(operation.getBody()));
+            }
+            requests.put(request);
+        }
+        return new JSONObject().put("requests", requests);
+    }
+
+    private void applyResponses(List<Integer> chunk, JSONObject batchResponse) throws JSONException {
+        JSONArray responses = batchResponse.getJSONArray("responses");
+        for (int i = 0; i < responses.length(); i++) {
+            JSONObject response = responses.getJSONObject(i);
+            int index = Integer.parseInt(response.getString("id"));
+
+            JSONObject operationResult = new JSONObject();
+            operationResult.put("status", response.optInt("status"));
+            operationResult.put("body", response.opt("body"));
+            this.results[index] = operationResult;
+        }
+
+        // Server may omit responses for some requests, e.g. when batch is aborted
+        for (Integer index : chunk) {
+            if (this.results[index] == null) {
+                this.results[index] = error("No response received for operation");
+            }
+        }
+    }
+
+    private void failChunk(List<Integer> chunk, Throwable throwable) {
+        for (Integer index : chunk) {
+            this.results[index] = error(throwable.getMessage());
+        }
+    }
+
+    private String relativeUrl(String url) {
+        return url.startsWith(this.serviceRoot) ? url.substring(this.serviceRoot.length()) : url;
+    }
+
+    private JSONArray buildResult() {
+        JSONArray resultArray = new JSONArray();
+        for (JSONObject operationResult : this.results) {
+            resultArray.put(operationResult);
+        }
+        return resultArray;
+    }
+
+    private static JSONObject error(String message) {
+        try {
+            return new JSONObject().put("status", 0).put("error", message);
+        } catch (JSONException e) {
+            // Can't happen for string value
+            return new JSONObject();
+        }
+    }
+}
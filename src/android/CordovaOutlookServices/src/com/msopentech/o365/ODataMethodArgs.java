@@ -18,6 +18,11 @@ import java.util.List;
  */
 class ODataMethodArgs {
 
+    /**
+     * Name of messages' and events' nested attachments collection in OData path
+     */
+    private static final String ATTACHMENTS = "Attachments";
+
     /**
      * OAuth access token
      */
@@ -38,6 +43,16 @@ class ODataMethodArgs {
      */
     private final List<String> args;
 
+    /**
+     * OData path, parsed on first use
+     */
+    private ODataPath parsedPath;
+
+    /**
+     * Account key, built on first use
+     */
+    private String account;
+
     private ODataMethodArgs(String token, String serviceRoot, String oDataPath, List<String> args) {
         this.token = token;
         this.serviceRoot = serviceRoot;
@@ -81,6 +96,16 @@ class ODataMethodArgs {
         return this.serviceRoot;
     }
 
+    /**
+     * @return key of account the call is made for, see Accounts.key
+     */
+    public String getAccount() {
+        if (this.account == null) {
+            this.account = Accounts.key(this.serviceRoot, this.token);
+        }
+        return this.account;
+    }
+
     /**
      * @return OData path
      */
@@ -95,17 +120,23 @@ class ODataMethodArgs {
         return this.args;
     }
 
+    /**
+     * @return parsed OData path, path is parsed once and reused by all parse* methods
+     */
+    public ODataPath getParsedPath() {
+        if (this.parsedPath == null) {
+            this.parsedPath = ODataPath.parse(this.oDataPath);
+        }
+        return this.parsedPath;
+    }
+
     /**
      * @param indexFromTheEnd index of Id parameter in OData path (from the end of path)
      * @return Id
      * @throws IndexOutOfBoundsException
      */
     public String parseIdFromODataPath(int indexFromTheEnd) throws IndexOutOfBoundsException {
-        String[] oDataPathParts = this.oDataPath.split("/");
-        if (indexFromTheEnd > oDataPathParts.length){
-            throw new IndexOutOfBoundsException();
-        }
-        return oDataPathParts[oDataPathParts.length - indexFromTheEnd];
+        return this.getParsedPath().getSegment(indexFromTheEnd);
     }
 
     /**
@@ -126,24 +157,27 @@ class ODataMethodArgs {
     }
 
     /**
-     * Used to get parent container's Id from OData path (for Attachments)
-     * @return Entity parent's Id (third from the end)
+     * Used to get Id of attachments' container (message or event) from OData path of attachments collection
+     * or of a single attachment
+     * @return container's Id, the segment before 'Attachments'
      * @throws IndexOutOfBoundsException
      */
     public String parseContainerIdFromODataPath() {
-        return this.parseIdFromODataPath(3);
+        return this.getParsedPath().getContainerId(ATTACHMENTS);
     }
 
     /**
-     * Used to get parent container's type from OData path (for Attachments)
-     * @param indexFromTheEnd index of container's type parameter in OData path (from the end of path)
-     * @return Entity container's type ("message" or "event")
+     * Used to get type of attachments' container from OData path of attachments collection or of a single attachment
+     * @return Entity container's type ("messages" or "events")
      * @throws Throwable
      */
-    public String parseParentTypeFromOdataPath(int indexFromTheEnd) throws Throwable {
-        String type = this.parseIdFromODataPath(indexFromTheEnd).toLowerCase();
-        if (type.equals("events") || type.equals("messages")){
-            return type;
+    public String parseParentTypeFromOdataPath() throws Throwable {
+        ODataPath path = this.getParsedPath();
+        if (path.containerTypeEqualsIgnoreCase(ATTACHMENTS, "events")) {
+            return "events";
+        }
+        if (path.containerTypeEqualsIgnoreCase(ATTACHMENTS, "messages")) {
+            return "messages";
         }
         throw new Throwable("Can't parse parent container type");
     }
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.services.odata.interfaces.HttpVerb;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class that represents a single plugin's action as plain OData HTTP request,
+ * so it can be sent outside of SDK's fetchers (e.g. as part of $batch request)
+ */
+class ODataOperation {
+
+    private final HttpVerb verb;
+    private final String url;
+    private final String body;
+
+    private ODataOperation(HttpVerb verb, String url, String body) {
+        this.verb = verb;
+        this.url = url;
+        this.body = body;
+    }
+
+    /**
+     * @return HTTP verb
+     */
+    HttpVerb getVerb() {
+        return this.verb;
+    }
+
+    /**
+     * @return absolute request URL
+     */
+    String getUrl() {
+        return this.url;
+    }
+
+    /**
+     * @return request body or null if request has no body
+     */
+    String getBody() {
+        return this.body;
+    }
+
+    /**
+     * Parses operation JSON, passed from JS layer. Operation has the same shape as ODataMethodArgs:
+     * {action: String, path: String, args: [String]}
+     *
+     * @param operation operation JSON
+     * @return ODataOperation object
+     * @throws JSONException if operation JSON is malformed
+     * @throws IllegalArgumentException if operation's action can't be expressed as a single request
+     */
+    static ODataOperation parse(JSONObject operation) throws JSONException {
+        String action = operation.getString("action");
+        String path = operation.getString("path");
+
+        List<String> args = new ArrayList<String>();
+        JSONArray argsArray = operation.optJSONArray("args");
+        if (argsArray != null) {
+            for (int i = 0; i < argsArray.length(); i++) {
+                args.add(argsArray.getString(i));
+            }
+        }
+
+        return fromAction(action, path, args);
+    }
+
+    /**
+     * Maps plugin's action to an OData request
+     *
+     * @param action action name, as passed to OutlookServicesProxy.execute
+     * @param path entity OData path (includes service root URL)
+     * @param args action specific arguments
+     * @return ODataOperation object
+     * @throws JSONException if arguments can't be serialized
+     * @throws IllegalArgumentException if action can't be expressed as a single request
+     */
+    static ODataOperation fromAction(String action, String path, List<String> args) throws JSONException {
+
+        String firstArg = args.isEmpty() ? null : args.get(0);
+
+        if (action.equals("accept") || action.equals("tentativelyAccept") || action.equals("decline")) {
+            return new ODataOperation(HttpVerb.POST, path + "/" + action, comment(firstArg).toString());
+        }
+        if (action.equals("reply") || action.equals("replyAll")) {
+            return new ODataOperation(HttpVerb.POST, path + "/" + action, comment(firstArg).toString());
+        }
+        if (action.equals("forward")) {
+            JSONObject body = comment(firstArg);
+            body.put("ToRecipients", new JSONArray(args.size() > 1 ? args.get(1) : "[]"));
+            return new ODataOperation(HttpVerb.POST, path + "/forward", body.toString());
+        }
+        if (action.equals("createReply") || action.equals("createReplyAll") || action.equals("createForward")
+                || action.equals("send")) {
+            return new ODataOperation(HttpVerb.POST, path + "/" + action, null);
+        }
+        if (action.startsWith("copy") || action.startsWith("move")) {
+            JSONObject body = new JSONObject().put("DestinationId", firstArg);
+            return new ODataOperation(HttpVerb.POST, path + "/" + action.substring(0, 4), body.toString());
+        }
+        if (action.startsWith("update")) {
+            return new ODataOperation(HttpVerb.PATCH, path, firstArg);
+        }
+        if (action.startsWith("add")) {
+            return new ODataOperation(HttpVerb.POST, path, firstArg);
+        }
+        if (action.startsWith("delete")) {
+            return new ODataOperation(HttpVerb.DELETE, path, null);
+        }
+        if (action.startsWith("get") && !action.startsWith("getAttachmentItem")) {
+            return new ODataOperation(HttpVerb.GET, path, null);
+        }
+
+        throw new IllegalArgumentException("Action " + action + " can't be sent as a single OData request");
+    }
+
+    private static JSONObject comment(String comment) throws JSONException {
+        return new JSONObject().put("Comment", comment != null ? comment : "");
+    }
+}
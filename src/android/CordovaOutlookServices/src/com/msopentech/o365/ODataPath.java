@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+/**
+ * Parsed OData path. Segment boundaries are found once, when path is parsed,
+ * so segments can be read by index without splitting path again.
+ * Segments are counted the same way as String.split("/") does, i.e. trailing empty segments are ignored
+ */
+final class ODataPath {
+
+    private final String path;
+    private final int[] starts;
+    private final int[] ends;
+    private final int count;
+
+    private ODataPath(String path, int[] starts, int[] ends, int count) {
+        this.path = path;
+        this.starts = starts;
+        this.ends = ends;
+        this.count = count;
+    }
+
+    /**
+     * Finds segments' boundaries of specified path
+     *
+     * @param path OData path
+     * @return parsed path
+     */
+    static ODataPath parse(String path) {
+        int length = path.length();
+
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        int count = 0;
+        int start = 0;
+
+        for (int i = 0; i <= length; i++) {
+            if (i == length || path.charAt(i) == '/') {
+                if (count == starts.length) {
+                    starts = grow(starts);
+                    ends = grow(ends);
+                }
+                starts[count] = start;
+                ends[count] = i;
+                count++;
+                start = i + 1;
+            }
+        }
+
+        // Drop trailing empty segments, like String.split does
+        while (count > 0 && starts[count - 1] == ends[count - 1]) {
+            count--;
+        }
+
+        return new ODataPath(path, starts, ends, count);
+    }
+
+    /**
+     * @return number of path segments
+     */
+    int getSegmentsCount() {
+        return this.count;
+    }
+
+    /**
+     * @param indexFromTheEnd index of segment from the end of path, starting with 1
+     * @return path segment
+     * @throws IndexOutOfBoundsException
+     */
+    String getSegment(int indexFromTheEnd) throws IndexOutOfBoundsException {
+        if (indexFromTheEnd < 1 || indexFromTheEnd > this.count) {
+            throw new IndexOutOfBoundsException();
+        }
+        int index = this.count - indexFromTheEnd;
+        return this.path.substring(this.starts[index], this.ends[index]);
+    }
+
+    /**
+     * Checks segment without creating a substring
+     *
+     * @param indexFromTheEnd index of segment from the end of path, starting with 1
+     * @param value value to compare segment with, ignoring case
+     * @return true if segment equals to specified value
+     */
+    boolean segmentEqualsIgnoreCase(int indexFromTheEnd, String value) {
+        if (indexFromTheEnd < 1 || indexFromTheEnd > this.count) {
+            return false;
+        }
+        int index = this.count - indexFromTheEnd;
+        int length = this.ends[index] - this.starts[index];
+        return length == value.length() && this.path.regionMatches(true, this.starts[index], value, 0, length);
+    }
+
+    /**
+     * For entity path (e.g. '.../Messages/{id}') returns entity's Id
+     *
+     * @return last path segment
+     */
+    String getEntityId() {
+        return getSegment(1);
+    }
+
+    /**
+     * For entity path (e.g. '.../Messages/{id}') returns name of entity set that contains entity
+     *
+     * @return second segment from the end
+     */
+    String getEntitySetName() {
+        return getSegment(2);
+    }
+
+    /**
+     * For path of nested collection or of its entity (e.g. '.../Messages/{id}/Attachments' or
+     * '.../Messages/{id}/Attachments/{attachmentId}/Item') returns Id of entity that contains nested collection
+     *
+     * @param nestedCollection name of nested collection, e.g. 'Attachments'
+     * @return container's Id
+     * @throws IndexOutOfBoundsException if path has no such nested collection
+     */
+    String getContainerId(String nestedCollection) {
+        return getSegment(indexOfSegment(nestedCollection) + 1);
+    }
+
+    /**
+     * For path of nested collection or of its entity returns name of container's entity set, see getContainerId
+     *
+     * @param nestedCollection name of nested collection, e.g. 'Attachments'
+     * @return container's entity set name, e.g. 'Messages'
+     * @throws IndexOutOfBoundsException if path has no such nested collection
+     */
+    String getContainerType(String nestedCollection) {
+        return getSegment(indexOfSegment(nestedCollection) + 2);
+    }
+
+    /**
+     * Checks container's entity set name without creating a substring, see getContainerType
+     *
+     * @param nestedCollection name of nested collection, e.g. 'Attachments'
+     * @param type entity set name to compare with, ignoring case
+     * @return true if container belongs to specified entity set
+     * @throws IndexOutOfBoundsException if path has no such nested collection
+     */
+    boolean containerTypeEqualsIgnoreCase(String nestedCollection, String type) {
+        return segmentEqualsIgnoreCase(indexOfSegment(nestedCollection) + 2, type);
+    }
+
+    /**
+     * @return index from the end of the last segment that equals to specified name, ignoring case
+     */
+    private int indexOfSegment(String name) {
+        for (int i = 1; i <= this.count; i++) {
+            if (segmentEqualsIgnoreCase(i, name)) {
+                return i;
+            }
+        }
+        throw new IndexOutOfBoundsException("No " + name + " segment in path " + this.path);
+    }
+
+    @Override
+    public String toString() {
+        return this.path;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
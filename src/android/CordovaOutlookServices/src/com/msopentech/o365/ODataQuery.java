@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import com.microsoft.services.odata.Helpers;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable query parameters of collection read. Query JSON passed from JS layer is parsed and validated once
+ * and cached by its raw string, since the same few query shapes repeat during session.
+ * Query's canonical string, with options always in the same order, is used in request URLs, so identical
+ * queries produce identical URLs and can share responses in RequestCoalescer and cache entries keyed by URL
+ */
+final class ODataQuery {
+
+    private static final int MAX_CACHED_QUERIES = 64;
+
+    private static final Cache<String, ODataQuery> queries = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_QUERIES)
+            .build();
+
+    private static final String PROPERTY = "[A-Za-z_][\\w.@/]*";
+
+    private static final String SELECTED = "(\\*|" + PROPERTY + ")";
+
+    /**
+     * Comma separated property paths or '*', e.g. Subject,From/EmailAddress
+     */
+    private static final Pattern SELECT = Pattern.compile("\\s*" + SELECTED + "(\\s*,\\s*" + SELECTED + ")*\\s*");
+
+    /**
+     * Comma separated property paths with optional direction, e.g. Importance desc,DateTimeReceived
+     */
+    private static final Pattern ORDER_BY = Pattern.compile("(?i)\\s*" + PROPERTY + "(\\s+(asc|desc))?(\\s*,\\s*" + PROPERTY + "(\\s+(asc|desc))?)*\\s*");
+
+    /**
+     * Single expanded navigation property with optional nested options, e.g. Attachments($select=Name)
+     */
+    private static final Pattern EXPANDED = Pattern.compile("\\s*" + PROPERTY + "\\s*(\\(.*\\))?\\s*", Pattern.DOTALL);
+
+    /**
+     * Characters allowed in $filter outside of string literals: names, numbers, dates, operators' words,
+     * function calls and arithmetic. Anything else, e.g. '=', '&' or '"', means that filter was not written
+     * in OData syntax and would be rejected by the server or would corrupt the request URL
+     */
+    private static final Pattern FILTER_CHARS = Pattern.compile("[\\w\\s.,/@():+\\-*$]*");
+
+    private final int top;
+    private final int skip;
+    private final String select;
+    private final String expand;
+    private final String filter;
+    private final String orderBy;
+
+    private final ResultShaper shaper;
+    private final boolean binary;
+    private final boolean pageAll;
+    private final int maxItems;
+
+    private final String queryString;
+
+    private ODataQuery(JSONObject queryObject) throws JSONException {
+        this.top = queryObject.optInt("top", -1);
+        this.skip = queryObject.optInt("skip", -1);
+
+        String select = optionValue(queryObject, "select");
+        this.select = validate("$select", select != null ? select : ResultShaper.getSelect(queryObject), SELECT);
+        this.expand = validateExpand(optionValue(queryObject, "expand"));
+        this.filter = validateFilter(optionValue(queryObject, "filter"));
+        this.orderBy = validate("$orderby", optionValue(queryObject, "orderBy"), ORDER_BY);
+
+        this.shaper = ResultShaper.fromQuery(queryObject);
+        this.binary = BinaryPages.isRequested(queryObject);
+        this.pageAll = queryObject.optBoolean("pageAll", false);
+        this.maxItems = queryObject.optInt("maxItems", -1);
+
+        this.queryString = buildQueryString();
+    }
+
+    /**
+     * Returns query for specified query JSON, parsed on first use
+     *
+     * @param queryJson query parameters' JSON passed from JS layer:
+     *                  top: int,
+     *                  skip: int,
+     *                  select: String,
+     *                  expand: String,
+     *                  filter: String,
+     *                  orderBy: String,
+     *                  fields: String, used as select when select is not specified, and other shaping
+     *                  parameters, see ResultShaper.fromQuery,
+     *                  binary: boolean, see BinaryPages.isRequested,
+     *                  pageAll: boolean,
+     *                  maxItems: int
+     * @return parsed query
+     * @throws JSONException if query is not a valid JSON or any of its options is malformed. Malformed options
+     *                       fail the call instead of being dropped, so the query never silently returns
+     *                       unfiltered or unordered results
+     */
+    static ODataQuery parse(String queryJson) throws JSONException {
+        ODataQuery query = queries.getIfPresent(queryJson);
+        if (query == null) {
+            query = new ODataQuery(new JSONObject(queryJson));
+            queries.put(queryJson, query);
+        }
+        return query;
+    }
+
+    /**
+     * @return $top option or -1 if not set
+     */
+    int getTop() {
+        return this.top;
+    }
+
+    /**
+     * @return $skip option or -1 if not set
+     */
+    int getSkip() {
+        return this.skip;
+    }
+
+    /**
+     * @return $select option, built from requested fields if select is not set, or null
+     */
+    String getSelect() {
+        return this.select;
+    }
+
+    /**
+     * @return $expand option or null
+     */
+    String getExpand() {
+        return this.expand;
+    }
+
+    /**
+     * @return $filter option or null
+     */
+    String getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * @return $orderby option or null
+     */
+    String getOrderBy() {
+        return this.orderBy;
+    }
+
+    /**
+     * @return shaper of query's results
+     */
+    ResultShaper getShaper() {
+        return this.shaper;
+    }
+
+    /**
+     * @return true if collection should be sent in binary form
+     */
+    boolean isBinary() {
+        return this.binary;
+    }
+
+    /**
+     * @return true if collection should be read page by page
+     */
+    boolean isPageAll() {
+        return this.pageAll;
+    }
+
+    /**
+     * @return max number of items to read in paging mode or -1 to read whole collection
+     */
+    int getMaxItems() {
+        return this.maxItems;
+    }
+
+    /**
+     * @return URL encoded query string without leading '?', e.g. $top=10&$orderby=DateTimeReceived%20desc,
+     *         or empty string if query has no options
+     */
+    String getQueryString() {
+        return this.queryString;
+    }
+
+    private String buildQueryString() {
+        StringBuilder query = new StringBuilder();
+        if (this.top > -1) {
+            appendOption(query, "$top", Integer.toString(this.top));
+        }
+        if (this.skip > -1) {
+            appendOption(query, "$skip", Integer.toString(this.skip));
+        }
+        if (this.select != null) {
+            appendOption(query, "$select", this.select);
+        }
+        if (this.expand != null) {
+            appendOption(query, "$expand", this.expand);
+        }
+        if (this.filter != null) {
+            appendOption(query, "$filter", this.filter);
+        }
+        if (this.orderBy != null) {
+            appendOption(query, "$orderby", this.orderBy);
+        }
+        return query.toString();
+    }
+
+    private static void appendOption(StringBuilder query, String name, String value) {
+        if (query.length() > 0) {
+            query.append('&');
+        }
+        query.append(name).append('=').append(Helpers.urlEncode(value));
+    }
+
+    /**
+     * JS layer sends unset options as null or "null" string
+     */
+    private static String optionValue(JSONObject queryObject, String name) {
+        String value = queryObject.isNull(name) ? null : queryObject.optString(name, null);
+        return value == null || value.equals("null") || value.trim().length() == 0 ? null : value;
+    }
+
+    private static String validate(String option, String value, Pattern pattern) throws JSONException {
+        if (value != null && !pattern.matcher(value).matches()) {
+            throw new JSONException("Invalid " + option + " option: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Checks that every comma separated item is a property path, optionally followed by nested options
+     * in balanced parentheses
+     */
+    private static String validateExpand(String value) throws JSONException {
+        if (value == null) {
+            return null;
+        }
+
+        for (String item : splitTopLevel("$expand", value)) {
+            if (!EXPANDED.matcher(item).matches()) {
+                throw new JSONException("Invalid $expand option: " + value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Checks that parentheses are balanced, string literals are closed and there are no characters outside
+     * of literals that can't appear in OData filter expression
+     */
+    private static String validateFilter(String value) throws JSONException {
+        if (value == null) {
+            return null;
+        }
+
+        StringBuilder outside = new StringBuilder(value.length());
+        boolean inLiteral = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\'') {
+                inLiteral = !inLiteral;
+            } else if (!inLiteral) {
+                outside.append(c);
+            }
+        }
+
+        splitTopLevel("$filter", value);
+        if (!FILTER_CHARS.matcher(outside).matches()) {
+            throw new JSONException("Invalid $filter option: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Checks that parentheses are balanced and string literals are closed and splits value by commas
+     * that are outside of parentheses and literals. OData escapes quote in literal by doubling it,
+     * which leaves quotes balanced as well
+     *
+     * @return top level items, not trimmed
+     */
+    private static List<String> splitTopLevel(String option, String value) throws JSONException {
+        List<String> items = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        boolean inLiteral = false;
+        for (int i = 0; i < value.length() && depth >= 0; i++) {
+            char c = value.charAt(i);
+            if (c == '\'') {
+                inLiteral = !inLiteral;
+            } else if (!inLiteral && c == '(') {
+                depth++;
+            } else if (!inLiteral && c == ')') {
+                depth--;
+            } else if (!inLiteral && depth == 0 && c == ',') {
+                items.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+
+        if (depth != 0 || inLiteral) {
+            throw new JSONException("Invalid " + option + " option: " + value);
+        }
+        items.add(value.substring(start));
+        return items;
+    }
+}
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.Helpers;
+import com.microsoft.services.odata.ODataException;
+import com.microsoft.services.odata.interfaces.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper class that sends requests to absolute OData URLs through SDK's HTTP transport.
+ * Used for requests that SDK's fetchers can't express: $batch, next page links, raw content, etc.
+ */
+class ODataRequests {
+
+    private ODataRequests() {
+    }
+
+    /**
+     * Sends a request to specified URL and returns raw transport response.
+     * Caller is responsible for closing the response
+     *
+     * @param resolver Dependency resolver, used to create request and authorize it
+     * @param verb HTTP verb
+     * @param url absolute URL
+     * @param content request body or null
+     * @param headers additional request headers or null
+     * @return Future with transport response
+     */
+    static ListenableFuture<Response> send(DependencyResolver resolver, HttpVerb verb, String url,
+                                           byte[] content, Map<String, String> headers) {
+        Request request = resolver.createRequest();
+        request.setVerb(verb);
+        request.setUrl(new AbsoluteODataURL(url));
+
+        request.addHeader(Constants.ACCEPT_HEADER, Constants.JSON_CONTENT_TYPE);
+        request.addHeader(Constants.ODATA_VERSION_HEADER, Constants.ODATA_VERSION);
+        request.addHeader(Constants.ODATA_MAXVERSION_HEADER, Constants.ODATA_MAXVERSION);
+        if (content != null) {
+            request.addHeader(Constants.CONTENT_TYPE_HEADER, Constants.JSON_CONTENT_TYPE);
+            request.setContent(content);
+        }
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                request.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        Credentials credentials = resolver.getCredentials();
+        if (credentials != null) {
+            credentials.prepareRequest(request);
+        }
+
+        return resolver.getHttpTransport().execute(request);
+    }
+
+    /**
+     * Sends a request with body read from stream, so body is never held in memory as a whole
+     *
+     * @param resolver Dependency resolver, used to create request and authorize it
+     * @param verb HTTP verb
+     * @param url absolute URL
+     * @param content stream to read request body from
+     * @param size number of bytes to read from stream
+     * @param headers additional request headers or null
+     * @param authorize false for URLs that are already authorized (e.g. upload session URLs)
+     * @return Future with transport response
+     */
+    static ListenableFuture<Response> sendStream(DependencyResolver resolver, HttpVerb verb, String url,
+                                                 InputStream content, long size, Map<String, String> headers,
+                                                 boolean authorize) {
+        Request request = resolver.createRequest();
+        request.setVerb(verb);
+        request.setUrl(new AbsoluteODataURL(url));
+        request.setStreamedContent(content, size);
+
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                request.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        Credentials credentials = resolver.getCredentials();
+        if (authorize && credentials != null) {
+            credentials.prepareRequest(request);
+        }
+
+        return resolver.getHttpTransport().execute(request);
+    }
+
+    /**
+     * Sends a request to specified URL and returns response body as a string.
+     * Non-successful responses fail with ODataException that contains response payload,
+     * so errors are reported to JS layer the same way as for SDK's raw methods
+     *
+     * @param resolver Dependency resolver, used to create request and authorize it
+     * @param verb HTTP verb
+     * @param url absolute URL
+     * @param content request body or null
+     * @param headers additional request headers or null
+     * @return Future with response body or null if response has no body
+     */
+    static ListenableFuture<String> sendForString(DependencyResolver resolver, HttpVerb verb, String url,
+                                                  byte[] content, Map<String, String> headers) {
+        return Futures.transform(send(resolver, verb, url, content, headers), new AsyncFunction<Response, String>() {
+            @Override
+            public ListenableFuture<String> apply(Response response) throws Exception {
+                byte[] payload = readPayload(response);
+                if (!isSuccess(response.getStatus())) {
+                    throw new ODataException(new RawODataResponse(response, payload),
+                            "Request failed with status " + response.getStatus());
+                }
+                return Futures.immediateFuture(payload == null || payload.length == 0 ?
+                        null : new String(payload, Constants.UTF8));
+            }
+        });
+    }
+
+    /**
+     * Sends GET request to specified URL and returns response with unread body, so it can be parsed as it arrives.
+     * Caller is responsible for closing the response. Non-successful responses fail the same way as in sendForString
+     *
+     * @param resolver Dependency resolver, used to create request and authorize it
+     * @param url absolute URL
+     * @param headers additional request headers or null
+     * @return Future with successful transport response
+     */
+    static ListenableFuture<Response> sendForStream(DependencyResolver resolver, String url, Map<String, String> headers) {
+        return Futures.transform(send(resolver, HttpVerb.GET, url, null, headers), new AsyncFunction<Response, Response>() {
+            @Override
+            public ListenableFuture<Response> apply(Response response) throws Exception {
+                if (!isSuccess(response.getStatus())) {
+                    byte[] payload = readPayload(response);
+                    throw new ODataException(new RawODataResponse(response, payload),
+                            "Request failed with status " + response.getStatus());
+                }
+                return Futures.immediateFuture(response);
+            }
+        });
+    }
+
+    /**
+     * Reads whole response body and closes response
+     *
+     * @param response transport response
+     * @return response body bytes or null if response has no body
+     * @throws IOException
+     */
+    static byte[] readPayload(Response response) throws IOException {
+        InputStream stream = response.getStream();
+        try {
+            return stream == null ? null : ByteStreams.toByteArray(stream);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * @param status HTTP status code
+     * @return true if status code is 2xx
+     */
+    static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Returns first value of specified response header, ignoring header name case
+     *
+     * @param response transport response
+     * @param name header name
+     * @return header value or null if there is no such header
+     */
+    static String getHeader(Response response, String name) {
+        Map<String, List<String>> headers = response.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * ODataResponse implementation for responses, received by this helper
+     */
+    static final class RawODataResponse implements ODataResponse {
+        private final Response response;
+        private final byte[] payload;
+
+        RawODataResponse(Response response, byte[] payload) {
+            this.response = response;
+            this.payload = payload != null ? payload : new byte[0];
+        }
+
+        @Override
+        public byte[] getPayload() {
+            return this.payload;
+        }
+
+        @Override
+        public Response getResponse() {
+            return this.response;
+        }
+
+        @Override
+        public InputStream openStreamedResponse() {
+            return this.response.getStream();
+        }
+
+        @Override
+        public void closeStreamedResponse() throws IOException {
+            this.response.close();
+        }
+    }
+
+    /**
+     * ODataURL implementation that keeps URL as is. SDK's implementation always
+     * appends a path separator to base URL, which breaks URLs with query string (e.g. next page links)
+     */
+    private static final class AbsoluteODataURL implements ODataURL {
+        private String url;
+
+        private AbsoluteODataURL(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void setBaseUrl(String baseUrl) {
+            this.url = baseUrl;
+        }
+
+        @Override
+        public void appendPathComponent(String component) {
+            this.url = this.url + "/" + component;
+        }
+
+        /**
+         * Inserts component right after URL's authority, the way SDK's implementation puts it
+         * in front of other path components
+         */
+        @Override
+        public void prependPathComponent(String component) {
+            int scheme = this.url.indexOf("://");
+            int authorityStart = scheme < 0 ? 0 : scheme + 3;
+            int pathStart = authorityStart;
+            while (pathStart < this.url.length() && "/?#".indexOf(this.url.charAt(pathStart)) < 0) {
+                pathStart++;
+            }
+
+            String rest = this.url.substring(pathStart);
+            if (rest.startsWith("/")) {
+                rest = rest.substring(1);
+            }
+            this.url = this.url.substring(0, pathStart) + "/" + component
+                    + (rest.length() == 0 || rest.startsWith("?") || rest.startsWith("#") ? "" : "/") + rest;
+        }
+
+        @Override
+        public void addQueryStringParameter(String name, String value) {
+            this.url = this.url + (this.url.indexOf('?') < 0 ? "?" : "&") + Helpers.urlEncode(name) + "=" + Helpers.urlEncode(value);
+        }
+
+        @Override
+        public Map<String, String> getQueryStringParameters() {
+            return new LinkedHashMap<String, String>();
+        }
+
+        @Override
+        public String getBaseUrl() {
+            return this.url;
+        }
+
+        @Override
+        public List<String> getPathComponents() {
+            return new ArrayList<String>();
+        }
+
+        @Override
+        public String toString() {
+            return this.url;
+        }
+    }
+}
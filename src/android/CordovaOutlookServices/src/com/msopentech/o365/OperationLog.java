@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Durable append-only log of JSON records, one record per line. Records are written by a single
+ * writer thread: all records appended while previous batch is being synced are written and
+ * synced to disk together, so a burst of appends costs one fsync instead of one per record.
+ * Append's future completes only after its record is on disk
+ */
+class OperationLog {
+
+    private static final String TAG = "Office 365";
+
+    private final File file;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("OutlookServices-outbox-%d").setDaemon(true).build());
+
+    /**
+     * Entries waiting for writer thread, guarded by this
+     */
+    private List<Entry> pending = new ArrayList<Entry>();
+    private boolean drainScheduled;
+
+    /**
+     * Stream to log file, used by writer thread only
+     */
+    private FileOutputStream stream;
+
+    /**
+     * @param file log file, created if doesn't exist
+     */
+    OperationLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all records from log. Line that can't be parsed is skipped: only the last line
+     * can be partially written, when application is killed in the middle of write
+     *
+     * @return records in the order they were appended
+     * @throws IOException
+     */
+    synchronized List<JSONObject> read() throws IOException {
+        List<JSONObject> records = new ArrayList<JSONObject>();
+        if (!this.file.exists()) {
+            return records;
+        }
+
+        for (String line : Files.readLines(this.file, Charsets.UTF_8)) {
+            if (line.length() == 0) {
+                continue;
+            }
+            try {
+                records.add(new JSONObject(line));
+            } catch (JSONException e) {
+                LOG.w(TAG, "Skipping malformed outbox record");
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Appends record to log
+     *
+     * @param record record to append
+     * @return Future that completes when record is synced to disk
+     */
+    ListenableFuture<Void> append(JSONObject record) {
+        return enqueue(new Entry(record.toString(), null));
+    }
+
+    /**
+     * Replaces log content with specified records, used to drop records that are no longer needed.
+     * Records appended before this call are replaced too, records appended after it are kept
+     *
+     * @param records records to keep
+     * @return Future that completes when new log is synced to disk
+     */
+    ListenableFuture<Void> rewrite(List<JSONObject> records) {
+        List<String> lines = new ArrayList<String>(records.size());
+        for (JSONObject record : records) {
+            lines.add(record.toString());
+        }
+        return enqueue(new Entry(null, lines));
+    }
+
+    /**
+     * Writes already appended records and stops writer thread
+     */
+    void close() {
+        try {
+            this.writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closeStream();
+                }
+            });
+        } catch (RuntimeException ignored) {
+            // Already closed
+        }
+        this.writer.shutdown();
+    }
+
+    private ListenableFuture<Void> enqueue(Entry entry) {
+        synchronized (this) {
+            this.pending.add(entry);
+            if (this.drainScheduled) {
+                return entry.result;
+            }
+            this.drainScheduled = true;
+        }
+
+        try {
+            this.writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        } catch (RuntimeException e) {
+            // Writer is shut down
+            entry.result.setException(e);
+        }
+        return entry.result;
+    }
+
+    private void drain() {
+        List<Entry> batch;
+        synchronized (this) {
+            batch = this.pending;
+            this.pending = new ArrayList<Entry>();
+            this.drainScheduled = false;
+        }
+
+        try {
+            for (Entry entry : batch) {
+                if (entry.snapshot != null) {
+                    replace(entry.snapshot);
+                } else {
+                    openStream().write((entry.line + "\n").getBytes(Charsets.UTF_8));
+                }
+            }
+            // Single sync for the whole batch
+            if (this.stream != null) {
+                this.stream.flush();
+                this.stream.getFD().sync();
+            }
+            for (Entry entry : batch) {
+                entry.result.set(null);
+            }
+        } catch (IOException e) {
+            closeStream();
+            for (Entry entry : batch) {
+                entry.result.setException(e);
+            }
+        }
+    }
+
+    private void replace(List<String> lines) throws IOException {
+        closeStream();
+        ensureDirectory();
+
+        File temp = new File(this.file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            for (String line : lines) {
+                out.write((line + "\n").getBytes(Charsets.UTF_8));
+            }
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(this.file)) {
+            throw new IOException("Can't replace outbox log " + this.file);
+        }
+    }
+
+    private FileOutputStream openStream() throws IOException {
+        if (this.stream == null) {
+            ensureDirectory();
+            this.stream = new FileOutputStream(this.file, true);
+        }
+        return this.stream;
+    }
+
+    private void ensureDirectory() throws IOException {
+        File directory = this.file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Can't create outbox directory " + directory);
+        }
+    }
+
+    private void closeStream() {
+        if (this.stream != null) {
+            try {
+                this.stream.close();
+            } catch (IOException ignored) {
+            }
+            this.stream = null;
+        }
+    }
+
+    /**
+     * Either a single record to append or a snapshot that replaces log content
+     */
+    private static final class Entry {
+        private final String line;
+        private final List<String> snapshot;
+        private final SettableFuture<Void> result = SettableFuture.create();
+
+        private Entry(String line, List<String> snapshot) {
+            this.line = line;
+            this.snapshot = snapshot;
+        }
+    }
+}
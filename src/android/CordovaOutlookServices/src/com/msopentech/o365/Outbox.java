@@ -0,0 +1,701 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Durable queue of write operations (send, reply, forward, updates) that are confirmed to JS layer
+ * as soon as they are written to OperationLog and sent to the server later, in the order they were queued.
+ * Queue is replayed when operation is queued, when JS layer asks for it and when connection comes back.
+ * Operations are sent at least once: operation that was sent right before application was killed
+ * may be sent again after restart. Idempotency key, passed from JS layer, prevents queuing the same
+ * operation twice
+ */
+class Outbox {
+
+    private static final String TAG = "Office 365";
+
+    /**
+     * Listener of queued operations that are sent successfully
+     */
+    interface SentListener {
+
+        /**
+         * Called on replay executor after operation is applied on the server
+         *
+         * @param account operation's account, see Accounts.key
+         * @param serviceRoot operation's service root
+         * @param path operation's target entity path
+         */
+        void onSent(String account, String serviceRoot, String path);
+    }
+
+    /**
+     * Actions that can be queued
+     */
+    private static final Set<String> QUEUED_ACTIONS = new HashSet<String>(Arrays.asList(
+            "send", "reply", "replyAll", "forward", "updateMessage", "updateEvent"));
+
+    private static final String STATE_PENDING = "pending";
+    private static final String STATE_SENDING = "sending";
+    private static final String STATE_FAILED = "failed";
+    private static final String STATE_DONE = "done";
+
+    private static final int UNAUTHORIZED = 401;
+    private static final int REQUEST_TIMEOUT = 408;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Number of idempotency keys of sent operations that are remembered to drop duplicates
+     */
+    private static final int COMPLETED_KEYS_LIMIT = 256;
+
+    /**
+     * Number of obsolete records in log after which log is compacted
+     */
+    private static final int COMPACTION_THRESHOLD = 128;
+
+    private final OperationLog log;
+    private final Executor executor;
+
+    /**
+     * Queued operations in queue order, keyed by Id. All fields below are guarded by this
+     */
+    private final LinkedHashMap<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+    /**
+     * Idempotency keys of queued operations
+     */
+    private final Map<String, Operation> keys = new HashMap<String, Operation>();
+
+    /**
+     * Idempotency keys of sent operations, oldest first
+     */
+    private final LinkedHashMap<String, String> completedKeys = new LinkedHashMap<String, String>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > COMPLETED_KEYS_LIMIT;
+        }
+    };
+
+    /**
+     * Latest dependency resolver of every account (see Accounts.key), used to replay operations. Access tokens
+     * are never written to disk, so operations wait for JS layer's call after application restart
+     */
+    private final Map<String, DependencyResolver> resolvers = new HashMap<String, DependencyResolver>();
+
+    /**
+     * Callbacks of flushOperations calls, waiting for current replay to stop
+     */
+    private final List<CallbackContext> flushCallbacks = new ArrayList<CallbackContext>();
+
+    private boolean loaded;
+    private boolean replaying;
+    private int obsoleteRecords;
+    private int sentCount;
+    private int failedCount;
+
+    private BroadcastReceiver connectivityReceiver;
+
+    private volatile SentListener sentListener;
+
+    /**
+     * @param log log that keeps queued operations
+     * @param executor Executor used to replay operations
+     */
+    Outbox(OperationLog log, Executor executor) {
+        this.log = log;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers outbox actions
+     *
+     * @param handlers Actions table to fill
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("enqueueOperation", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                enqueue(context, resolver, methodArgs);
+            }
+        });
+        handlers.put("getPendingOperations", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                ensureLoaded();
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK, getPendingOperations().toString()));
+            }
+        });
+        handlers.put("flushOperations", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                ensureLoaded();
+                synchronized (Outbox.this) {
+                    resolvers.put(methodArgs.getAccount(), resolver);
+                    flushCallbacks.add(context);
+                }
+                replay();
+            }
+        });
+        handlers.put("removeOperation", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                ensureLoaded();
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK, remove(methodArgs.getArgs().get(0))));
+            }
+        });
+    }
+
+    /**
+     * Sets listener of sent operations
+     *
+     * @param listener listener or null to remove current one
+     */
+    void setSentListener(SentListener listener) {
+        this.sentListener = listener;
+    }
+
+    /**
+     * Starts replaying queued operations whenever device gets connected
+     *
+     * @param context Android context to listen for connectivity changes in
+     */
+    void start(Context context) {
+        this.connectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (!intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                ensureLoaded();
+                                replay();
+                            } catch (IOException e) {
+                                LOG.w(TAG, "Failed to load outbox", e);
+                            }
+                        }
+                    });
+                }
+            }
+        };
+        context.registerReceiver(this.connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Stops listening for connectivity changes and closes log. Operations that are not sent stay in log
+     *
+     * @param context Android context passed to start
+     */
+    void stop(Context context) {
+        if (this.connectivityReceiver != null) {
+            context.unregisterReceiver(this.connectivityReceiver);
+            this.connectivityReceiver = null;
+        }
+        this.log.close();
+    }
+
+    /**
+     * Queues operation. Operation is confirmed to JS layer when it is written to disk, then replay is started
+     *
+     * @param context Plugin context used to send queued operation back to plugin
+     * @param resolver Dependency resolver, used to replay operations
+     * @param methodArgs Arguments, passed from JS layer. OData path is target entity's path,
+     *                   first argument is operation JSON: {action: String, args: [String], key: String},
+     *                   where action is a name of native method (e.g. "send") and key is optional idempotency key
+     * @throws JSONException
+     * @throws IOException
+     */
+    private void enqueue(final CallbackContext context, DependencyResolver resolver, ODataMethodArgs methodArgs)
+            throws JSONException, IOException {
+        ensureLoaded();
+
+        JSONObject request = new JSONObject(methodArgs.getArgs().get(0));
+        String action = request.getString("action");
+        if (!QUEUED_ACTIONS.contains(action)) {
+            throw new IllegalArgumentException("Action " + action + " can't be queued");
+        }
+
+        List<String> args = new ArrayList<String>();
+        JSONArray argsArray = request.optJSONArray("args");
+        if (argsArray != null) {
+            for (int i = 0; i < argsArray.length(); i++) {
+                args.add(argsArray.getString(i));
+            }
+        }
+
+        // Fail early if operation can't be sent at all
+        ODataOperation.fromAction(action, methodArgs.getODataPath(), args);
+
+        String id = UUID.randomUUID().toString();
+        String key = request.optString("key", "");
+        if (key.length() == 0 || key.equals("null")) {
+            key = id;
+        }
+
+        final Operation operation;
+        ListenableFuture<Void> written;
+        synchronized (this) {
+            this.resolvers.put(methodArgs.getAccount(), resolver);
+
+            Operation existing = this.keys.get(key);
+            if (existing != null || this.completedKeys.containsKey(key)) {
+                // Duplicate, the same operation is already queued or sent
+                JSONObject result = existing != null ? existing.toJson() :
+                        new JSONObject().put("id", this.completedKeys.get(key)).put("key", key).put("state", STATE_DONE);
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK, result.toString()));
+                return;
+            }
+
+            operation = new Operation(id, key, action, methodArgs.getODataPath(), methodArgs.getServiceRoot(),
+                    methodArgs.getAccount(), args, System.currentTimeMillis());
+            add(operation);
+            written = this.log.append(new JSONObject().put("type", "enqueued").put("operation", operation.toRecord()));
+        }
+
+        Futures.addCallback(written, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                synchronized (Outbox.this) {
+                    operation.durable = true;
+                }
+                try {
+                    context.sendPluginResult(new PluginResult(PluginResult.Status.OK, operation.toJson().toString()));
+                } catch (JSONException e) {
+                    context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage()));
+                }
+                replay();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                // Operation is not durable, so it is not queued
+                synchronized (Outbox.this) {
+                    drop(operation);
+                }
+                context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                        "Failed to queue operation: " + throwable.getMessage()));
+            }
+        }, this.executor);
+    }
+
+    /**
+     * @return queued operations, both waiting to be sent and failed ones, in queue order
+     * @throws JSONException
+     */
+    synchronized JSONArray getPendingOperations() throws JSONException {
+        JSONArray result = new JSONArray();
+        for (Operation operation : this.operations.values()) {
+            result.put(operation.toJson());
+        }
+        return result;
+    }
+
+    /**
+     * Removes operation that is waiting to be sent or failed
+     *
+     * @param id operation's Id
+     * @return false if there is no such operation or it is being sent right now
+     * @throws JSONException
+     */
+    private synchronized boolean remove(String id) throws JSONException {
+        Operation operation = this.operations.get(id);
+        if (operation == null || operation.state.equals(STATE_SENDING)) {
+            return false;
+        }
+
+        drop(operation);
+        appendObsolete(new JSONObject().put("type", "removed").put("id", id));
+        return true;
+    }
+
+    /**
+     * Reads queued operations from log once, before first use
+     */
+    private synchronized void ensureLoaded() throws IOException {
+        if (this.loaded) {
+            return;
+        }
+
+        for (JSONObject record : this.log.read()) {
+            try {
+                String type = record.getString("type");
+                if (type.equals("enqueued")) {
+                    Operation operation = Operation.fromRecord(record.getJSONObject("operation"));
+                    operation.durable = true;
+                    add(operation);
+                    continue;
+                }
+
+                this.obsoleteRecords++;
+                Operation operation = this.operations.get(record.optString("id"));
+                if (type.equals("done")) {
+                    this.completedKeys.put(record.getString("key"), record.optString("id"));
+                    if (operation != null) {
+                        drop(operation);
+                    }
+                } else if (type.equals("failed") && operation != null) {
+                    operation.fail(record.optInt("status"), record.isNull("error") ? null : record.optString("error"));
+                } else if (type.equals("removed") && operation != null) {
+                    drop(operation);
+                }
+            } catch (JSONException e) {
+                LOG.w(TAG, "Skipping unknown outbox record");
+            }
+        }
+
+        this.loaded = true;
+        compactIfNeeded();
+    }
+
+    /**
+     * Sends queued operations one by one, in queue order. Failed operation is kept for JS layer to inspect
+     * and the next one is sent; replay stops when connection fails, access token is expired or
+     * server is busy, so later operations never overtake earlier ones
+     */
+    private void replay() {
+        final Operation operation;
+        final DependencyResolver resolver;
+        final ODataOperation request;
+        synchronized (this) {
+            if (this.replaying) {
+                return;
+            }
+
+            Operation next = null;
+            for (Operation candidate : this.operations.values()) {
+                if (candidate.state.equals(STATE_PENDING)) {
+                    // Operation that is not written to disk yet blocks later ones too, to keep the order
+                    next = candidate.durable ? candidate : null;
+                    break;
+                }
+            }
+
+            DependencyResolver nextResolver = next != null ? this.resolvers.get(next.account) : null;
+            if (nextResolver == null) {
+                // Nothing to send or no access token for this account yet
+                finishReplay();
+                return;
+            }
+
+            ODataOperation nextRequest;
+            try {
+                nextRequest = ODataOperation.fromAction(next.action, next.path, next.args);
+            } catch (JSONException e) {
+                fail(next, 0, e.getMessage());
+                this.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        replay();
+                    }
+                });
+                return;
+            }
+
+            this.replaying = true;
+            next.state = STATE_SENDING;
+            next.attempts++;
+            operation = next;
+            resolver = nextResolver;
+            request = nextRequest;
+        }
+
+        byte[] content = request.getBody() != null ? request.getBody().getBytes(Constants.UTF8) : null;
+        ListenableFuture<Response> response;
+        try {
+            response = ODataRequests.send(resolver, request.getVerb(), request.getUrl(), content, null);
+        } catch (RuntimeException e) {
+            LOG.w(TAG, "Failed to send queued operation", e);
+            onSent(operation, 0, null);
+            return;
+        }
+        Futures.addCallback(response, new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                int status = response.getStatus();
+                String payload = null;
+                try {
+                    byte[] bytes = ODataRequests.readPayload(response);
+                    payload = bytes != null ? new String(bytes, Constants.UTF8) : null;
+                } catch (IOException ignored) {
+                    // Status is enough to decide
+                }
+                onSent(operation, status, payload);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                LOG.d(TAG, "Queued operation is not sent: " + throwable.getMessage());
+                onSent(operation, 0, null);
+            }
+        }, this.executor);
+    }
+
+    private void onSent(Operation operation, int status, String payload) {
+        boolean next;
+        synchronized (this) {
+            this.replaying = false;
+            if (ODataRequests.isSuccess(status)) {
+                drop(operation);
+                this.completedKeys.put(operation.key, operation.id);
+                this.sentCount++;
+                appendObsolete(doneRecord(operation));
+                next = true;
+            } else if (status == 0 || status == UNAUTHORIZED || status == REQUEST_TIMEOUT
+                    || status == TOO_MANY_REQUESTS || status >= 500) {
+                // Transient failure, operation is sent again on next replay
+                operation.state = STATE_PENDING;
+                if (status == UNAUTHORIZED) {
+                    this.resolvers.remove(operation.account);
+                }
+                finishReplay();
+                next = false;
+            } else {
+                fail(operation, status, payload);
+                next = true;
+            }
+        }
+
+        SentListener listener = this.sentListener;
+        if (listener != null && ODataRequests.isSuccess(status)) {
+            listener.onSent(operation.account, operation.serviceRoot, operation.path);
+        }
+
+        if (next) {
+            replay();
+        }
+    }
+
+    /**
+     * Sends replay summary to flushOperations callers. Must be called while holding lock
+     */
+    private void finishReplay() {
+        if (this.flushCallbacks.isEmpty()) {
+            return;
+        }
+
+        int pending = 0;
+        for (Operation operation : this.operations.values()) {
+            if (!operation.state.equals(STATE_FAILED)) {
+                pending++;
+            }
+        }
+
+        String summary;
+        try {
+            summary = new JSONObject()
+                    .put("sent", this.sentCount)
+                    .put("failed", this.failedCount)
+                    .put("pending", pending)
+                    .toString();
+        } catch (JSONException e) {
+            summary = "{}";
+        }
+
+        for (CallbackContext callback : this.flushCallbacks) {
+            callback.sendPluginResult(new PluginResult(PluginResult.Status.OK, summary));
+        }
+        this.flushCallbacks.clear();
+        this.sentCount = 0;
+        this.failedCount = 0;
+    }
+
+    private void fail(Operation operation, int status, String error) {
+        operation.fail(status, error);
+        this.failedCount++;
+        try {
+            appendObsolete(new JSONObject()
+                    .put("type", "failed")
+                    .put("id", operation.id)
+                    .put("status", status)
+                    .put("error", error != null ? error : JSONObject.NULL));
+        } catch (JSONException e) {
+            LOG.w(TAG, "Failed to record failed operation", e);
+        }
+    }
+
+    private void add(Operation operation) {
+        this.operations.put(operation.id, operation);
+        this.keys.put(operation.key, operation);
+    }
+
+    private void drop(Operation operation) {
+        this.operations.remove(operation.id);
+        this.keys.remove(operation.key);
+    }
+
+    private JSONObject doneRecord(Operation operation) {
+        try {
+            return new JSONObject().put("type", "done").put("id", operation.id).put("key", operation.key);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Appends record that makes earlier records obsolete. Operation's state is already changed in memory,
+     * so record's write is not awaited: if it is lost, operation is sent once more after restart
+     */
+    private void appendObsolete(JSONObject record) {
+        this.log.append(record);
+        this.obsoleteRecords++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Rewrites log with current state only, when it contains too many obsolete records
+     */
+    private void compactIfNeeded() {
+        if (this.obsoleteRecords < COMPACTION_THRESHOLD) {
+            return;
+        }
+
+        List<JSONObject> records = new ArrayList<JSONObject>();
+        try {
+            for (Map.Entry<String, String> completed : this.completedKeys.entrySet()) {
+                records.add(new JSONObject().put("type", "done").put("id", completed.getValue()).put("key", completed.getKey()));
+            }
+            for (Operation operation : this.operations.values()) {
+                records.add(new JSONObject().put("type", "enqueued").put("operation", operation.toRecord()));
+                if (operation.state.equals(STATE_FAILED)) {
+                    records.add(new JSONObject()
+                            .put("type", "failed")
+                            .put("id", operation.id)
+                            .put("status", operation.status)
+                            .put("error", operation.error != null ? operation.error : JSONObject.NULL));
+                }
+            }
+        } catch (JSONException e) {
+            LOG.w(TAG, "Failed to compact outbox", e);
+            return;
+        }
+
+        this.log.rewrite(records);
+        this.obsoleteRecords = 0;
+    }
+
+    /**
+     * Single queued operation
+     */
+    private static final class Operation {
+        private final String id;
+        private final String key;
+        private final String action;
+        private final String path;
+        private final String serviceRoot;
+        private final String account;
+        private final List<String> args;
+        private final long enqueuedAt;
+
+        private String state = STATE_PENDING;
+        private boolean durable;
+        private int attempts;
+        private int status;
+        private String error;
+
+        private Operation(String id, String key, String action, String path, String serviceRoot, String account,
+                          List<String> args, long enqueuedAt) {
+            this.id = id;
+            this.key = key;
+            this.action = action;
+            this.path = path;
+            this.serviceRoot = serviceRoot;
+            this.account = account;
+            this.args = args;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        private void fail(int status, String error) {
+            this.state = STATE_FAILED;
+            this.status = status;
+            this.error = error;
+        }
+
+        private static Operation fromRecord(JSONObject record) throws JSONException {
+            List<String> args = new ArrayList<String>();
+            JSONArray argsArray = record.getJSONArray("args");
+            for (int i = 0; i < argsArray.length(); i++) {
+                args.add(argsArray.getString(i));
+            }
+            return new Operation(record.getString("id"), record.getString("key"), record.getString("action"),
+                    record.getString("path"), record.getString("serviceRoot"), record.getString("account"), args,
+                    record.getLong("enqueuedAt"));
+        }
+
+        private JSONObject toRecord() throws JSONException {
+            JSONArray argsArray = new JSONArray();
+            for (String arg : this.args) {
+                argsArray.put(arg);
+            }
+            return new JSONObject()
+                    .put("id", this.id)
+                    .put("key", this.key)
+                    .put("action", this.action)
+                    .put("path", this.path)
+                    .put("serviceRoot", this.serviceRoot)
+                    .put("account", this.account)
+                    .put("args", argsArray)
+                    .put("enqueuedAt", this.enqueuedAt);
+        }
+
+        /**
+         * @return operation as seen by JS layer: without service root and arguments, with current state
+         */
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject()
+                    .put("id", this.id)
+                    .put("key", this.key)
+                    .put("action", this.action)
+                    .put("path", this.path)
+                    .put("enqueuedAt", this.enqueuedAt)
+                    .put("state", this.state)
+                    .put("attempts", this.attempts);
+            if (this.state.equals(STATE_FAILED)) {
+                json.put("status", this.status);
+                json.put("error", this.error != null ? this.error : JSONObject.NULL);
+            }
+            return json;
+        }
+    }
+}
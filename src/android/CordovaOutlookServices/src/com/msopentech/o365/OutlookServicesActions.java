@@ -0,0 +1,483 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+
+import java.util.Map;
+
+/**
+ * Helper class that builds plugin's actions table, so actions are dispatched
+ * without reflective method lookup on each call from JS layer
+ */
+class OutlookServicesActions {
+
+    /**
+     * Registers handlers for all actions, implemented in OutlookServicesMethodsImpl
+     *
+     * @param handlers Actions table to fill, keyed by action name
+     */
+    static void registerActions(Map<String, ActionHandler> handlers) {
+
+        //region Calendars
+        handlers.put("getCalendars", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getCalendars(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getCalendar", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getCalendar(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addCalendar", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addCalendar(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateCalendar", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateCalendar(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("deleteCalendar", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteCalendar(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Calendar Groups
+        handlers.put("getCalendarGroups", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getCalendarGroups(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getCalendarGroup", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getCalendarGroup(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addCalendarGroup", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addCalendarGroup(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateCalendarGroup", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateCalendarGroup(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("deleteCalendarGroup", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteCalendarGroup(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Contacts
+        handlers.put("deleteContact", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteContact(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateContact", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateContact(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addContact", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addContact(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getContact", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getContact(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getContacts", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getContacts(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Events
+        handlers.put("getEvent", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getEvent(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getEvents", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getEvents(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addEvent", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addEvent(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateEvent", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateEvent(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("deleteEvent", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteEvent(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("accept", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.accept(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("tentativelyAccept", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.tentativelyAccept(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("decline", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.decline(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Folders
+        handlers.put("getFolders", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getFolders(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("copyFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.copyFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("moveFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.moveFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("deleteFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteFolder(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Messages
+        handlers.put("getMessages", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getMessages(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getMessage", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getMessage(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addMessage", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addMessage(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("copyMessage", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.copyMessage(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("moveMessage", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.moveMessage(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateMessage", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateMessage(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("deleteMessage", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteMessage(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("createReply", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.createReply(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("createReplyAll", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.createReplyAll(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("createForward", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.createForward(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("reply", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.reply(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("replyAll", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.replyAll(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("forward", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.forward(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("send", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.send(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Users
+        handlers.put("getUsers", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getUsers(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getUser", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getUser(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Attachments
+        handlers.put("getAttachments", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getAttachments(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getAttachment", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getAttachment(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getAttachmentItem", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getAttachmentItem(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addAttachment", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addAttachment(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateAttachment", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateAttachment(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("deleteAttachment", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteAttachment(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region ContactFolders
+        handlers.put("getContactFolders", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getContactFolders(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("getContactFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.getContactFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("addContactFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.addContactFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("updateContactFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateContactFolder(context, client, resolver, methodArgs);
+            }
+        });
+
+        handlers.put("deleteContactFolder", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteContactFolder(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Batch
+        handlers.put("executeBatch", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.executeBatch(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+
+        //region Bulk
+        handlers.put("moveMessages", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.moveMessages(context, client, resolver, methodArgs);
+            }
+        });
+        handlers.put("copyMessages", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.copyMessages(context, client, resolver, methodArgs);
+            }
+        });
+        handlers.put("updateMessages", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.updateMessages(context, client, resolver, methodArgs);
+            }
+        });
+        handlers.put("deleteMessages", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                OutlookServicesMethodsImpl.deleteMessages(context, client, resolver, methodArgs);
+            }
+        });
+        //endregion
+    }
+}
@@ -10,6 +10,7 @@ package com.msopentech.o365.outlookServices;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import com.microsoft.outlookservices.*;
 import com.microsoft.outlookservices.odata.*;
@@ -19,23 +20,68 @@ import com.microsoft.services.odata.impl.*;
 import com.microsoft.services.odata.interfaces.DependencyResolver;
 import org.apache.cordova.CallbackContext;
 
-import org.apache.cordova.LOG;
 import org.apache.cordova.PluginResult;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Helper class that contains static methods for handling plugin's actions
  */
-@SuppressWarnings({"UnusedDeclaration"})
 class OutlookServicesMethodsImpl {
 
     /**
-     * Tag constant for logging purposes
+     * Executor used to serialize futures' results and send them back to plugin
      */
-    private static final String TAG = "Office 365";
+    private static volatile Executor callbackExecutor = MoreExecutors.directExecutor();
+
+    /**
+     * Sets executor used to run callbacks, added by addCordovaCallback and addRawCordovaCallback,
+     * so results are not serialized on SDK's network threads
+     *
+     * @param executor Executor to run callbacks on
+     */
+    static void setCallbackExecutor(Executor executor) {
+        callbackExecutor = executor != null ? executor : MoreExecutors.directExecutor();
+    }
+
+    /**
+     * Executor used to read streamed collections, see addRawCollectionCallback
+     */
+    private static volatile Executor streamExecutor = MoreExecutors.directExecutor();
+
+    /**
+     * Sets executor used to read collections' responses as they arrive. Reading blocks until
+     * the whole page is received, so it must not run on callback executor's workers
+     *
+     * @param executor Executor to read streams on
+     */
+    static void setStreamExecutor(Executor executor) {
+        streamExecutor = executor != null ? executor : MoreExecutors.directExecutor();
+    }
+
+    /**
+     * Listeners of collections' pages, keyed by collection name
+     */
+    private static final Map<String, PageListener> pageListeners = new ConcurrentHashMap<String, PageListener>();
+
+    /**
+     * Sets listener that receives every page of specified collection read by addRawCollectionCallback
+     *
+     * @param collection name of collection (e.g. "Messages")
+     * @param listener listener or null to remove current one
+     */
+    static void setPageListener(String collection, PageListener listener) {
+        if (listener != null) {
+            pageListeners.put(collection, listener);
+        } else {
+            pageListeners.remove(collection);
+        }
+    }
 
     /**
      * Adds default callback that send future's result back to plugin
@@ -49,7 +95,9 @@ class OutlookServicesMethodsImpl {
             @Override
             public void onSuccess(T t) {
                 if (t != null) {
+                    long start = System.nanoTime();
                     String result = resolver.getJsonSerializer().serialize(t);
+                    Metrics.record(context, Metrics.Phase.SERIALIZE, start);
                     context.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
                 } else {
                     context.sendPluginResult(new PluginResult(PluginResult.Status.OK));
@@ -60,7 +108,7 @@ class OutlookServicesMethodsImpl {
             public void onFailure(Throwable throwable) {
                 context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, throwable.getMessage()));
             }
-        });
+        }, callbackExecutor);
     }
 
     /**
@@ -83,83 +131,133 @@ class OutlookServicesMethodsImpl {
 
             @Override
             public void onFailure(Throwable throwable) {
-                String error = throwable.getMessage();
-                if (throwable instanceof ODataException) {
-                    try {
-                        String response = new String(((ODataException) throwable).getODataResponse().getPayload());
-                        // since error object is encapsulated into response's object
-                        // try to get it from response and return instead of raw throwable's message
-                        JSONObject errorMessage = new JSONObject(response);
-                        error = errorMessage.get("error").toString();
-                    } catch (JSONException ignored) {
-                    } catch (IOException ignored) { }
-                }
-                context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, error));
+                context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, getErrorMessage(throwable)));
             }
-        });
+        }, callbackExecutor);
+    }
+
+    /**
+     * Reads collection and sends it back to plugin. Response is parsed as it arrives, item by item, see CollectionPager.
+     * If query requests paging mode, pages are read one by one following '@odata.nextLink' and each page
+     * is sent to JS layer in parts as it is parsed, otherwise only the first page is sent as a single result.
+     * Items are shaped by query's ResultShaper before they are sent
+     *
+     * @param url absolute URL of collection's first page, see collectionUrl
+     * @param collection name of collection, used to find its page listener
+     * @param query collection's query, including paging, binary and shaping parameters
+     * @param resolver Dependency resolver, used to send requests
+     * @param methodArgs arguments of the action, passed to collection's page listener
+     * @param context Plugin context used to send pages back to plugin
+     */
+    static void addRawCollectionCallback(String url, String collection, ODataQuery query, DependencyResolver resolver,
+                                         ODataMethodArgs methodArgs, CallbackContext context) {
+        PageListener listener = pageListeners.get(collection);
+
+        if (query.isPageAll()) {
+            CollectionPager.readPages(url, resolver, query.getMaxItems(), query.getShaper(), listener, methodArgs,
+                    query.isBinary(), context, streamExecutor);
+        } else {
+            CollectionPager.readPage(url, resolver, query.getShaper(), listener, methodArgs, query.isBinary(), context,
+                    streamExecutor);
+        }
     }
 
     /**
-     * Updates fetcher object with oData query params, specified in queryObject JSON
+     * Extracts error message from throwable. Since for ODataException error object is encapsulated
+     * into response's object, tries to get it from response instead of raw throwable's message
+     *
+     * @param throwable Error to get message from
+     * @return Error message
+     */
+    static String getErrorMessage(Throwable throwable) {
+        String error = throwable.getMessage();
+        if (throwable instanceof ODataException) {
+            try {
+                String response = new String(((ODataException) throwable).getODataResponse().getPayload());
+                JSONObject errorMessage = new JSONObject(response);
+                error = errorMessage.get("error").toString();
+            } catch (JSONException ignored) {
+            } catch (IOException ignored) { }
+        }
+        return error;
+    }
+
+    /**
+     * Updates fetcher object with oData query params
      *
      * @param fetcher Fetcher object to update
-     * @param queryObject JSONObject that contains query parameters:
-     *                    top: int,
-     *                    skip: int,
-     *                    select: String,
-     *                    expand: String,
-     *                    filter: String
+     * @param query parsed query parameters, see ODataQuery.parse
      */
-    static void updateFetcherWithQuery (ODataCollectionFetcher fetcher, JSONObject queryObject) {
-
-        try {
-            int top = queryObject.getInt("top");
-            int skip = queryObject.getInt("skip");
-            String select = queryObject.getString("select");
-            select = select.equals("null") ? null : select;
-            String expand = queryObject.getString("expand");
-            expand = expand.equals("null") ? null : expand;
-            String filter = queryObject.getString("filter");
-            filter = filter.equals("null") ? null : filter;
-
-            if (top > -1) {
-                fetcher.top(top);
-            }
+    static void updateFetcherWithQuery (ODataCollectionFetcher fetcher, ODataQuery query) {
 
-            if (skip > -1) {
-                fetcher.skip(skip);
-            }
+        if (query.getTop() > -1) {
+            fetcher.top(query.getTop());
+        }
 
-            if (select != null) {
-                fetcher.select(select);
-            }
+        if (query.getSkip() > -1) {
+            fetcher.skip(query.getSkip());
+        }
 
-            if (expand != null) {
-                fetcher.expand(expand);
-            }
+        if (query.getSelect() != null) {
+            fetcher.select(query.getSelect());
+        }
 
-            if (filter != null) {
-                fetcher.filter(filter);
-            }
+        if (query.getExpand() != null) {
+            fetcher.expand(query.getExpand());
+        }
+
+        if (query.getFilter() != null) {
+            fetcher.filter(query.getFilter());
+        }
 
-        } catch (JSONException ignored) {
-            LOG.w(TAG, "Failed to parse query parameters", ignored);
-            fetcher.reset();
+        if (query.getOrderBy() != null) {
+            fetcher.orderBy(query.getOrderBy());
         }
     }
 
+    /**
+     * Builds URL of collection's page with query options, the same way SDK's collection fetchers do
+     *
+     * @param serviceRoot service root URI
+     * @param collectionPath path of collection relative to service root, e.g. Me/Folders('id')/Messages
+     * @param query collection's query
+     * @return absolute URL of collection's page
+     */
+    static String collectionUrl(String serviceRoot, String collectionPath, ODataQuery query) {
+        StringBuilder url = new StringBuilder(serviceRoot);
+        if (!serviceRoot.endsWith("/")) {
+            url.append('/');
+        }
+        url.append(collectionPath);
+
+        String queryString = query.getQueryString();
+        if (queryString.length() > 0) {
+            url.append('?').append(queryString);
+        }
+        return url.toString();
+    }
+
+    /**
+     * @param collection name of collection
+     * @param id entity's Id
+     * @return path segment of collection's entity, e.g. Folders('id')
+     */
+    static String entitySegment(String collection, String id) {
+        return collection + "('" + Helpers.urlEncode(id) + "')";
+    }
+
     //region Calendars
 
     static void getCalendars(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
         String parentId = methodArgs.parseIdFromODataPath(2);
 
         ODataCollectionFetcher<Calendar, CalendarFetcher, CalendarCollectionOperations> fetcher = parentId.equalsIgnoreCase("me") ?
                 client.getMe().getCalendars() :
                 client.getMe().getCalendarGroups().getById(parentId).getCalendars();
 
-        updateFetcherWithQuery(fetcher, queryObject);
+        updateFetcherWithQuery(fetcher, query);
         ListenableFuture<String> future = fetcher.readRaw();
         addRawCordovaCallback(future, context);
     }
@@ -210,10 +308,10 @@ class OutlookServicesMethodsImpl {
 
     static void getCalendarGroups(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
 
         ODataCollectionFetcher<CalendarGroup, CalendarGroupFetcher, CalendarGroupCollectionOperations> fetcher = client.getMe().getCalendarGroups();
-        updateFetcherWithQuery(fetcher, queryObject);
+        updateFetcherWithQuery(fetcher, query);
 
         ListenableFuture<String> future = fetcher.readRaw();
         addRawCordovaCallback(future, context);
@@ -295,14 +393,14 @@ class OutlookServicesMethodsImpl {
     static void getContacts(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
         String parentId = methodArgs.parseParentIdFromOdataPath();
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
 
-        ODataCollectionFetcher<Contact, ContactFetcher, ContactCollectionOperations> fetcher = parentId.equalsIgnoreCase("me") ?
-                client.getMe().getContacts() :
-                client.getMe().getContactFolders().getById(parentId).getContacts();
+        String path = parentId.equalsIgnoreCase("me") ?
+                "Me/Contacts" :
+                "Me/" + entitySegment("ContactFolders", parentId) + "/Contacts";
 
-        updateFetcherWithQuery(fetcher, queryObject);
-        addRawCordovaCallback(fetcher.readRaw(), context);
+        addRawCollectionCallback(collectionUrl(methodArgs.getServiceRoot(), path, query), "Contacts", query,
+                resolver, methodArgs, context);
     }
     //endregion
 
@@ -319,16 +417,14 @@ class OutlookServicesMethodsImpl {
     static void getEvents(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
         String parentId = methodArgs.parseParentIdFromOdataPath();
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
-
-        ODataCollectionFetcher<Event, EventFetcher, EventCollectionOperations> fetcher = parentId.equalsIgnoreCase("me") ?
-                client.getMe().getEvents() :
-                client.getMe().getCalendars().getById(parentId).getEvents();
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
 
-        updateFetcherWithQuery(fetcher, queryObject);
-        ListenableFuture<String> future = fetcher.readRaw();
+        String path = parentId.equalsIgnoreCase("me") ?
+                "Me/Events" :
+                "Me/" + entitySegment("Calendars", parentId) + "/Events";
 
-        addRawCordovaCallback(future, context);
+        addRawCollectionCallback(collectionUrl(methodArgs.getServiceRoot(), path, query), "Events", query,
+                resolver, methodArgs, context);
     }
 
     static void addEvent(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws Throwable {
@@ -393,13 +489,12 @@ class OutlookServicesMethodsImpl {
     static void getFolders(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
         String parentFolderId = methodArgs.parseParentIdFromOdataPath();
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
 
-        ODataCollectionFetcher<Folder, FolderFetcher, FolderCollectionOperations> fetcher = client.getMe().getFolders().getById(parentFolderId).getChildFolders();
-        updateFetcherWithQuery(fetcher, queryObject);
-        ListenableFuture<String> future = fetcher.readRaw();
+        String path = "Me/" + entitySegment("Folders", parentFolderId) + "/ChildFolders";
 
-        addRawCordovaCallback(future, context);
+        addRawCollectionCallback(collectionUrl(methodArgs.getServiceRoot(), path, query), "Folders", query,
+                resolver, methodArgs, context);
     }
 
     static void getFolder(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) {
@@ -464,16 +559,14 @@ class OutlookServicesMethodsImpl {
     static void getMessages(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
         String parentId = methodArgs.parseParentIdFromOdataPath();
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
-
-        ODataCollectionFetcher<Message, MessageFetcher, MessageCollectionOperations> fetcher = parentId.equalsIgnoreCase("me") ?
-                client.getMe().getMessages() :
-                client.getMe().getFolders().getById(parentId).getMessages();
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
 
-        updateFetcherWithQuery(fetcher, queryObject);
-        ListenableFuture<String> messages = fetcher.readRaw();
+        String path = parentId.equalsIgnoreCase("me") ?
+                "Me/Messages" :
+                "Me/" + entitySegment("Folders", parentId) + "/Messages";
 
-        addRawCordovaCallback(messages, context);
+        addRawCollectionCallback(collectionUrl(methodArgs.getServiceRoot(), path, query), "Messages", query,
+                resolver, methodArgs, context);
     }
 
     static void getMessage(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) {
@@ -602,13 +695,10 @@ class OutlookServicesMethodsImpl {
 
     static void getUsers(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
-
-        ODataCollectionFetcher<User, UserFetcher, UserCollectionOperations> fetcher = client.getUsers();
-        updateFetcherWithQuery(fetcher, queryObject);
-        ListenableFuture<String> future = fetcher.readRaw();
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
 
-        addRawCordovaCallback(future, context);
+        addRawCollectionCallback(collectionUrl(methodArgs.getServiceRoot(), "Users", query), "Users", query,
+                resolver, methodArgs, context);
     }
 
     static void getUser(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) {
@@ -625,9 +715,9 @@ class OutlookServicesMethodsImpl {
 
     static void getAttachments(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws Throwable {
 
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
-        String parentId = methodArgs.parseParentIdFromOdataPath();
-        String parentType = methodArgs.parseParentTypeFromOdataPath(3);
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
+        String parentId = methodArgs.parseContainerIdFromODataPath();
+        String parentType = methodArgs.parseParentTypeFromOdataPath();
 
         ODataCollectionFetcher<Attachment, AttachmentFetcher, AttachmentCollectionOperations> fetcher;
         if (parentType.equals("messages")){
@@ -636,7 +726,7 @@ class OutlookServicesMethodsImpl {
             fetcher = client.getMe().getEvents().getById(parentId).getAttachments();
         }
 
-        updateFetcherWithQuery(fetcher, queryObject);
+        updateFetcherWithQuery(fetcher, query);
 
         ListenableFuture<String> future = fetcher.readRaw();
         addRawCordovaCallback(future, context);
@@ -646,7 +736,7 @@ class OutlookServicesMethodsImpl {
 
         String attachmentId = methodArgs.parseIdFromODataPath();
         String parentId = methodArgs.parseContainerIdFromODataPath();
-        String parentType = methodArgs.parseParentTypeFromOdataPath(4);
+        String parentType = methodArgs.parseParentTypeFromOdataPath();
 
         ODataCollectionFetcher<Attachment, AttachmentFetcher, AttachmentCollectionOperations> fetcher;
         if (parentType.equals("messages")){
@@ -662,8 +752,8 @@ class OutlookServicesMethodsImpl {
     static void getAttachmentItem(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws Throwable {
 
         String attachmentId = methodArgs.parseIdFromODataPath(2);
-        String parentId = methodArgs.parseIdFromODataPath(4);
-        String parentType = methodArgs.parseParentTypeFromOdataPath(5);
+        String parentId = methodArgs.parseContainerIdFromODataPath();
+        String parentType = methodArgs.parseParentTypeFromOdataPath();
 
         ODataCollectionFetcher<Attachment, AttachmentFetcher, AttachmentCollectionOperations> fetcher = parentType.equals("messages") ?
                 client.getMe().getMessages().getById(parentId).getAttachments() :
@@ -676,8 +766,8 @@ class OutlookServicesMethodsImpl {
     static void addAttachment(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws Throwable {
 
         String attachment = methodArgs.getArgs().get(0);
-        String parentId = methodArgs.parseParentIdFromOdataPath();
-        String parentType = methodArgs.parseParentTypeFromOdataPath(3);
+        String parentId = methodArgs.parseContainerIdFromODataPath();
+        String parentType = methodArgs.parseParentTypeFromOdataPath();
 
         ODataCollectionFetcher<Attachment, AttachmentFetcher, AttachmentCollectionOperations> fetcher = parentType.equals("messages") ?
                 client.getMe().getMessages().getById(parentId).getAttachments() :
@@ -691,8 +781,8 @@ class OutlookServicesMethodsImpl {
 
         String attachment = methodArgs.getArgs().get(0);
         String attachmentId = methodArgs.parseIdFromODataPath();
-        String parentId = methodArgs.parseParentIdFromOdataPath();
-        String parentType = methodArgs.parseParentTypeFromOdataPath(4);
+        String parentId = methodArgs.parseContainerIdFromODataPath();
+        String parentType = methodArgs.parseParentTypeFromOdataPath();
 
         ODataCollectionFetcher<Attachment, AttachmentFetcher, AttachmentCollectionOperations> fetcher = parentType.equals("messages") ?
                 client.getMe().getMessages().getById(parentId).getAttachments() :
@@ -706,7 +796,7 @@ class OutlookServicesMethodsImpl {
 
         String attachmentId = methodArgs.parseIdFromODataPath();
         String parentId = methodArgs.parseContainerIdFromODataPath();
-        String parentType = methodArgs.parseParentTypeFromOdataPath(4);
+        String parentType = methodArgs.parseParentTypeFromOdataPath();
 
         ODataCollectionFetcher<Attachment, AttachmentFetcher, AttachmentCollectionOperations> fetcher = parentType.equals("messages") ?
                 client.getMe().getMessages().getById(parentId).getAttachments() :
@@ -722,14 +812,14 @@ class OutlookServicesMethodsImpl {
 
     static void getContactFolders(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
 
-        JSONObject queryObject = new JSONObject(methodArgs.getArgs().get(0));
+        ODataQuery query = ODataQuery.parse(methodArgs.getArgs().get(0));
         String parentFolderId = methodArgs.parseParentIdFromOdataPath();
 
         ODataCollectionFetcher<ContactFolder, ContactFolderFetcher, ContactFolderCollectionOperations> fetcher = parentFolderId.equalsIgnoreCase("me") ?
                 client.getMe().getContactFolders() :
                 client.getMe().getContactFolders().getById(parentFolderId).getChildFolders();
 
-        updateFetcherWithQuery(fetcher, queryObject);
+        updateFetcherWithQuery(fetcher, query);
 
         ListenableFuture<String> future = fetcher.readRaw();
         addRawCordovaCallback(future, context);
@@ -770,4 +860,51 @@ class OutlookServicesMethodsImpl {
     }
 
     //endregion
+
+    //region Batch
+
+    static void executeBatch(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
+
+        String operations = methodArgs.getArgs().get(0);
+
+        ListenableFuture<String> future = ODataBatch.execute(resolver, methodArgs.getServiceRoot(), operations);
+        addRawCordovaCallback(future, context);
+    }
+
+    //endregion
+
+    //region Bulk
+
+    static void moveMessages(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
+        executeBulk(context, resolver, methodArgs, "moveMessage");
+    }
+
+    static void copyMessages(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
+        executeBulk(context, resolver, methodArgs, "copyMessage");
+    }
+
+    static void updateMessages(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
+        executeBulk(context, resolver, methodArgs, "updateMessage");
+    }
+
+    static void deleteMessages(final CallbackContext context, final OutlookClient client, final DefaultDependencyResolver resolver, final ODataMethodArgs methodArgs) throws JSONException {
+        executeBulk(context, resolver, methodArgs, "deleteMessage");
+    }
+
+    /**
+     * Applies single message action to list of messages. OData path is path of messages collection,
+     * first argument is JSON array of messages' Ids, optional second argument is action's argument
+     * shared by all messages (destination Id for move and copy, update body for update)
+     */
+    private static void executeBulk(CallbackContext context, DependencyResolver resolver, ODataMethodArgs methodArgs, String action) throws JSONException {
+
+        String ids = methodArgs.getArgs().get(0);
+        String argument = methodArgs.getArgs().size() > 1 ? methodArgs.getArgs().get(1) : null;
+
+        ListenableFuture<String> future = BulkOperations.execute(resolver, methodArgs.getServiceRoot(),
+                methodArgs.getODataPath(), action, ids, argument);
+        addRawCordovaCallback(future, context);
+    }
+
+    //endregion
 }
@@ -7,8 +7,8 @@
 
 package com.msopentech.o365.outlookServices;
 
-import com.microsoft.outlookservices.odata.*;
-import com.microsoft.services.odata.impl.*;
+import com.google.common.cache.CacheStats;
+import com.microsoft.services.odata.interfaces.HttpTransport;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
@@ -16,87 +16,339 @@ import org.apache.cordova.PluginResult;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Class that handles calls to Office365 plugin's native layer
  */
 public class OutlookServicesProxy extends CordovaPlugin {
 
-    private DefaultDependencyResolver resolver;
-    private OutlookClient client;
-    private String clientServiceRoot;
-    private String clientToken;
+    /**
+     * Name of directory in application's files directory where sync states are kept
+     */
+    private static final String SYNC_STATES_DIRECTORY = "outlook-sync";
 
     /**
-     * Creates a new DefaultDependencyResolver object or return an existing if token is unchanged from previous call
-     *
-     * @param token access token
-     * @return new DefaultDependencyResolver instance or existing one if token is unchanged from previous call
+     * Name of directory in application's cache directory where cached entities are kept
      */
-    private DefaultDependencyResolver getResolver (final String token){
-        if (this.resolver == null || !token.equals(this.clientToken)){
-            this.resolver = new DefaultDependencyResolver(token);
-        }
-        return this.resolver;
+    private static final String ENTITY_CACHE_DIRECTORY = "outlook-entities";
+
+    /**
+     * Name of preference that sets max size of entity cache in bytes
+     */
+    private static final String ENTITY_CACHE_SIZE_PREFERENCE = "OutlookServicesEntityCacheSize";
+
+    private static final int DEFAULT_ENTITY_CACHE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Name of directory in application's cache directory where attachments are downloaded by default
+     */
+    private static final String ATTACHMENTS_DIRECTORY = "outlook-attachments";
+
+    /**
+     * Name of directory in application's files directory where attachments' upload sessions are kept
+     */
+    private static final String UPLOAD_STATES_DIRECTORY = "outlook-uploads";
+
+    /**
+     * Path of outbox log in application's files directory
+     */
+    private static final String OUTBOX_LOG = "outlook-outbox/operations.log";
+
+    /**
+     * Name of local search index database
+     */
+    private static final String SEARCH_INDEX_DATABASE = "outlook-search.db";
+
+    /**
+     * Name of directory in application's files directory where recipients' directory is kept
+     */
+    private static final String DIRECTORY_DIRECTORY = "outlook-directory";
+
+    /**
+     * Name of file in application's cache directory where metrics are dumped
+     */
+    private static final String METRICS_FILE = "outlook-metrics.json";
+
+    /**
+     * Transport shared by all clients, null when every client uses its own Android transport
+     */
+    private final HttpTransport transport;
+
+    /**
+     * Single-flight layer, shared by all clients' requests
+     */
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+
+    /**
+     * Scheduler that limits and retries all clients' requests
+     */
+    private RequestScheduler scheduler;
+
+    /**
+     * Clients cache, keyed by service root and access token
+     */
+    private ClientCache clients;
+
+    /**
+     * Actions table, filled once when plugin is initialized
+     */
+    private final Map<String, ActionHandler> actions = new HashMap<String, ActionHandler>();
+
+    /**
+     * Bounded pool that parses actions' arguments and serializes their results
+     */
+    private ThreadPoolExecutor workerPool;
+
+    /**
+     * Pool that reads streamed collections, so slow responses don't block workers
+     */
+    private ThreadPoolExecutor streamPool;
+
+    /**
+     * Attachments' content transfers, run on their own threads
+     */
+    private AttachmentTransfers transfers;
+
+    /**
+     * Durable queue of write operations
+     */
+    private Outbox outbox;
+
+    /**
+     * On-device search over read messages and contacts
+     */
+    private LocalSearch localSearch;
+
+    /**
+     * Recipients' directory for autocomplete
+     */
+    private Directory directory;
+
+    /**
+     * Per-action latency and throughput metrics
+     */
+    private Metrics metrics;
+
+    public OutlookServicesProxy() {
+        this(null);
     }
 
     /**
-     * Creates a new OutlookClient object or return an existing if token and serviceRoot are unchanged from previous call
-     *
-     * @param serviceRoot service root URI
-     * @param token access token
-     * @return new OutlookClient instance or existing one if token and serviceRoot are unchanged from previous call
-     */
-    private OutlookClient getClient (final String serviceRoot, final String token) {
-        // Check that token and url are the same as in the previous request
-        if (this.client == null || !serviceRoot.equals(this.clientServiceRoot) || !token.equals(this.clientToken)) {
-            this.client = new OutlookClient(serviceRoot, getResolver(token));
-        }
-        this.clientServiceRoot = serviceRoot;
-        this.clientToken = token;
+     * @param transport transport that sends all clients' requests to the service, replaced by a local stand-in
+     *                  in benchmarks
+     */
+    OutlookServicesProxy(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    protected void pluginInitialize() {
+        this.workerPool = WorkerPool.create(this.preferences);
+        OutlookServicesMethodsImpl.setCallbackExecutor(this.workerPool);
+        this.streamPool = WorkerPool.createStreamPool(this.preferences);
+        OutlookServicesMethodsImpl.setStreamExecutor(this.streamPool);
+
+        this.scheduler = RequestScheduler.create(this.preferences);
+        this.clients = new ClientCache(this.coalescer, this.scheduler, this.transport);
+
+        this.metrics = new Metrics(new Metrics.ComponentsReporter() {
+            @Override
+            public void report(JSONObject components) throws JSONException {
+                reportComponents(components);
+            }
+        });
+        this.metrics.registerActions(this.actions);
+        this.metrics.startDump(new File(this.cordova.getActivity().getCacheDir(), METRICS_FILE), this.preferences);
+
+        OutlookServicesActions.registerActions(this.actions);
+
+        File filesDir = this.cordova.getActivity().getFilesDir();
+        new DeltaSync(new StateStore(new File(filesDir, SYNC_STATES_DIRECTORY)), this.workerPool).registerActions(this.actions);
 
-        return this.client;
+        this.transfers = new AttachmentTransfers(new File(this.cordova.getActivity().getCacheDir(), ATTACHMENTS_DIRECTORY),
+                new StateStore(new File(filesDir, UPLOAD_STATES_DIRECTORY)));
+        this.transfers.registerActions(this.actions);
+
+        this.outbox = new Outbox(new OperationLog(new File(filesDir, OUTBOX_LOG)), this.workerPool);
+        this.outbox.registerActions(this.actions);
+        this.outbox.start(this.cordova.getActivity());
+
+        int entityCacheSize = this.preferences != null ?
+                this.preferences.getInteger(ENTITY_CACHE_SIZE_PREFERENCE, DEFAULT_ENTITY_CACHE_SIZE) : DEFAULT_ENTITY_CACHE_SIZE;
+        File cacheDir = new File(this.cordova.getActivity().getCacheDir(), ENTITY_CACHE_DIRECTORY);
+        EntityCache entityCache = new EntityCache(cacheDir, entityCacheSize);
+        Prefetcher.create(entityCache, PrefetchPolicy.create(this.cordova.getActivity(), this.preferences), this.preferences,
+                this.workerPool).registerActions(this.actions);
+
+        // Calendar views wrap events' actions to drop indexes when events change
+        new CalendarViews(this.workerPool, this.streamPool).registerActions(this.actions);
+
+        this.localSearch = LocalSearch.create(new SearchIndex(this.cordova.getActivity(), SEARCH_INDEX_DATABASE), this.preferences);
+        this.localSearch.registerActions(this.actions);
+
+        this.directory = Directory.create(new StateStore(new File(filesDir, DIRECTORY_DIRECTORY)), this.preferences, this.workerPool,
+                this.streamPool);
+        this.directory.registerActions(this.actions);
+
+        // Cached reads wrap already registered actions, so they must be registered last
+        final CachedReads cachedReads = new CachedReads(entityCache, this.workerPool);
+        cachedReads.registerActions(this.actions);
+        this.outbox.setSentListener(new Outbox.SentListener() {
+            @Override
+            public void onSent(String account, String serviceRoot, String path) {
+                cachedReads.onOperationSent(account, serviceRoot, path);
+            }
+        });
     }
 
     @Override
-    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+    public void onDestroy() {
+        OutlookServicesMethodsImpl.setCallbackExecutor(null);
+        OutlookServicesMethodsImpl.setStreamExecutor(null);
+        if (this.metrics != null) {
+            this.metrics.stopDump();
+        }
+        if (this.workerPool != null) {
+            this.workerPool.shutdown();
+        }
+        if (this.streamPool != null) {
+            this.streamPool.shutdown();
+        }
+        if (this.transfers != null) {
+            this.transfers.shutdown();
+        }
+        if (this.outbox != null) {
+            this.outbox.stop(this.cordova.getActivity());
+        }
+        if (this.localSearch != null) {
+            this.localSearch.close();
+        }
+        if (this.directory != null) {
+            this.directory.close();
+        }
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+        }
+        if (this.clients != null) {
+            this.clients.clear();
+        }
+        super.onDestroy();
+    }
 
-        Method handler;
-        try {
-            // Get appropriate method for handling provided action
-            handler = OutlookServicesMethodsImpl.class.getDeclaredMethod(action, CallbackContext.class, OutlookClient.class,
-                    DefaultDependencyResolver.class, ODataMethodArgs.class);
-        } catch (NoSuchMethodException e) {
-            // If no appropriate method found, send return false to indicate this
+    @Override
+    public boolean execute(final String action, final JSONArray args, final CallbackContext callbackContext) throws JSONException {
+
+        // Get appropriate handler for provided action
+        final ActionHandler handler = this.actions.get(action);
+        if (handler == null) {
+            // If no appropriate handler found, send return false to indicate this
             return false;
         }
 
-        // parse arguments passed from JS layer to ArrayList objects
-        ODataMethodArgs methodArgs = ODataMethodArgs.parseInvocationArgs(args);
+        final long start = System.nanoTime();
+        final MeteredCallbackContext metered = new MeteredCallbackContext(callbackContext, this.webView,
+                this.metrics.get(action), start);
+
+        // Parse arguments and start action on worker pool to keep WebView thread free
+        this.workerPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                Metrics.record(metered, Metrics.Phase.DISPATCH, start);
+                executeOnWorker(action, handler, args, metered);
+            }
+        });
 
-        //Get common parameters necessary for creating OutlookClient object
-        //and create a new one or use an existing if token and serviceRoot are unchanged from previous call
-        final String token = methodArgs.getToken();
-        final String serviceRoot = methodArgs.getServiceRoot();
-        OutlookClient client = getClient(serviceRoot, token);
+        // Return true here to indicate that action is handled by plugin
+        return true;
+    }
 
+    /**
+     * Parses action arguments and invokes action handler. Any error is sent back as an error result
+     *
+     * @param action action name
+     * @param handler action handler
+     * @param args arguments passed from JS layer
+     * @param callbackContext Plugin context used to send result back to JS layer
+     */
+    private void executeOnWorker(String action, ActionHandler handler, JSONArray args, MeteredCallbackContext callbackContext) {
         try {
-            // If appropriate method found, invoke it with arguments parsed from action args
-            handler.invoke(null, callbackContext, client, this.resolver, methodArgs);
-        } catch (InvocationTargetException e) {
-            // Catch inner method's exception and send back an error result
+            long parseStart = System.nanoTime();
+
+            // parse arguments passed from JS layer to ArrayList objects
+            ODataMethodArgs methodArgs = ODataMethodArgs.parseInvocationArgs(args);
+
+            //Get common parameters necessary for creating OutlookClient object
+            //and create a new one or use a cached one for the same token and serviceRoot
+            final String token = methodArgs.getToken();
+            final String serviceRoot = methodArgs.getServiceRoot();
+            ClientCache.Entry entry = this.clients.get(serviceRoot, token);
+
+            long handlerStart = System.nanoTime();
+            Metrics.record(callbackContext, Metrics.Phase.PARSE, parseStart);
+
+            // If appropriate handler found, invoke it with arguments parsed from action args
+            handler.execute(callbackContext, entry.getClient(), entry.getResolver(), methodArgs);
+
+            Metrics.record(callbackContext, Metrics.Phase.HANDLER, handlerStart);
+        } catch (JSONException e) {
+            String message = "Failed to parse arguments for method " + action + ": " + e.getMessage();
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, message));
+        } catch (Throwable e) {
+            // Catch handler's exception and send back an error result
             String message = "Method " + action + " failed with error: " + e.getMessage();
             callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
-        } catch (IllegalAccessException e) {
-            // Catch method invocation exception and send back an error result
-            String message = "Failed to call native method " + action + ": " + e.getMessage();
-            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ILLEGAL_ACCESS_EXCEPTION, message));
+        } finally {
+            callbackContext.onHandlerReturned();
         }
+    }
 
-        // Return true here to indicate that action is handled by plugin
-        return true;
+    /**
+     * Puts statistics of clients cache, request coalescer, scheduler, worker and stream pools and runtime into metrics
+     *
+     * @param components object to put statistics to
+     * @throws JSONException
+     */
+    private void reportComponents(JSONObject components) throws JSONException {
+        CacheStats clientsStats = this.clients.stats();
+        components.put("clients", new JSONObject()
+                .put("size", this.clients.size())
+                .put("hitCount", clientsStats.hitCount())
+                .put("missCount", clientsStats.missCount())
+                .put("hitRate", clientsStats.hitRate()));
+
+        components.put("coalescer", new JSONObject()
+                .put("requests", this.coalescer.getRequestsCount())
+                .put("collapsed", this.coalescer.getCollapsedCount())
+                .put("inFlight", this.coalescer.getInFlightCount()));
+
+        components.put("scheduler", new JSONObject()
+                .put("throttled", this.scheduler.getThrottledCount())
+                .put("retried", this.scheduler.getRetriedCount())
+                .put("delayed", this.scheduler.getDelayedCount())
+                .put("requests", this.scheduler.getLatency().toJson()));
+
+        components.put("workerPool", new JSONObject()
+                .put("poolSize", this.workerPool.getPoolSize())
+                .put("active", this.workerPool.getActiveCount())
+                .put("queued", this.workerPool.getQueue().size())
+                .put("completed", this.workerPool.getCompletedTaskCount()));
+
+        components.put("streamPool", new JSONObject()
+                .put("poolSize", this.streamPool.getPoolSize())
+                .put("active", this.streamPool.getActiveCount())
+                .put("queued", this.streamPool.getQueue().size())
+                .put("completed", this.streamPool.getCompletedTaskCount()));
+
+        Runtime runtime = Runtime.getRuntime();
+        components.put("runtime", new JSONObject()
+                .put("heapUsed", runtime.totalMemory() - runtime.freeMemory())
+                .put("heapMax", runtime.maxMemory())
+                .put("threads", Thread.activeCount()));
     }
 }
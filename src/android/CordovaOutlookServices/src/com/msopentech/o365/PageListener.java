@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONObject;
+
+/**
+ * Listener of collection pages received from the server
+ */
+interface PageListener {
+
+    /**
+     * Called for every page before it is shaped and sent to JS layer, on callbacks' executor.
+     * Pages read by CollectionPager are streamed, so every page comes in parts of a few items.
+     * Listener must not change page and must not block. Page's items are shaped in place as soon as
+     * listener returns, so listener must copy what it needs and must not keep references to page or its items
+     *
+     * @param methodArgs arguments of the action that reads collection, e.g. to find account and collection's path
+     * @param page collection page as received from the server
+     */
+    void onPage(ODataMethodArgs methodArgs, JSONObject page);
+}
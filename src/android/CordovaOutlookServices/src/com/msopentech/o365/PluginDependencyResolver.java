@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.impl.http.AndroidHttpTransport;
+import com.microsoft.services.odata.interfaces.HttpTransport;
+
+/**
+ * Dependency resolver that sends all requests, both SDK's and plugin's own,
+ * through plugin's transport layers
+ */
+class PluginDependencyResolver extends DefaultDependencyResolver {
+
+    private final HttpTransport transport;
+
+    /**
+     * @param token access token
+     * @param account key of account token is issued for, see Accounts.key
+     * @param coalescer coalescer shared by all resolvers
+     * @param scheduler scheduler shared by all resolvers
+     */
+    PluginDependencyResolver(String token, String account, RequestCoalescer coalescer, RequestScheduler scheduler) {
+        this(token, account, new AndroidHttpTransport(), coalescer, scheduler);
+    }
+
+    /**
+     * @param token access token
+     * @param account key of account token is issued for, see Accounts.key
+     * @param transport transport that sends requests to the service, replaced by a local stand-in in soak tests
+     * @param coalescer coalescer shared by all resolvers
+     * @param scheduler scheduler shared by all resolvers
+     */
+    PluginDependencyResolver(String token, String account, HttpTransport transport,
+                             RequestCoalescer coalescer, RequestScheduler scheduler) {
+        super(token);
+        // Identical requests are collapsed before they are queued, so they never take scheduler's slots
+        this.transport = coalescer.wrap(scheduler.wrap(transport, account));
+    }
+
+    @Override
+    public HttpTransport getHttpTransport() {
+        return this.transport;
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+
+import org.apache.cordova.CordovaPreferences;
+
+/**
+ * Decides whether background prefetch is allowed right now: prefetch is skipped on metered networks
+ * and when battery is low and not charging, unless preferences allow it
+ */
+class PrefetchPolicy {
+
+    /**
+     * Name of preference that allows prefetch on metered (e.g. mobile) networks
+     */
+    static final String PREFETCH_ON_METERED_PREFERENCE = "OutlookServicesPrefetchOnMetered";
+
+    /**
+     * Name of preference that sets min battery level, in percent, for prefetch when device is not charging
+     */
+    static final String PREFETCH_MIN_BATTERY_PREFERENCE = "OutlookServicesPrefetchMinBattery";
+
+    private static final int DEFAULT_MIN_BATTERY = 20;
+
+    private final Context context;
+    private final boolean allowMetered;
+    private final int minBattery;
+
+    /**
+     * @param context Android context used to read network and battery state
+     * @param allowMetered true to prefetch on metered networks
+     * @param minBattery min battery level in percent, ignored when device is charging
+     */
+    PrefetchPolicy(Context context, boolean allowMetered, int minBattery) {
+        this.context = context;
+        this.allowMetered = allowMetered;
+        this.minBattery = minBattery;
+    }
+
+    /**
+     * Creates policy with limits taken from plugin preferences
+     *
+     * @param context Android context
+     * @param preferences Cordova preferences, may be null
+     * @return new PrefetchPolicy instance
+     */
+    static PrefetchPolicy create(Context context, CordovaPreferences preferences) {
+        if (preferences == null) {
+            return new PrefetchPolicy(context, false, DEFAULT_MIN_BATTERY);
+        }
+        return new PrefetchPolicy(context,
+                preferences.getBoolean(PREFETCH_ON_METERED_PREFERENCE, false),
+                preferences.getInteger(PREFETCH_MIN_BATTERY_PREFERENCE, DEFAULT_MIN_BATTERY));
+    }
+
+    /**
+     * @return true if prefetch is allowed with current network and battery state
+     */
+    boolean allowsPrefetch() {
+        return isNetworkAllowed() && isBatteryAllowed();
+    }
+
+    private boolean isNetworkAllowed() {
+        ConnectivityManager connectivity = (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivity != null ? connectivity.getActiveNetworkInfo() : null;
+        if (network == null || !network.isConnected()) {
+            return false;
+        }
+        if (this.allowMetered) {
+            return true;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return !connectivity.isActiveNetworkMetered();
+        }
+        // Before Android 4.1 only Wi-Fi is considered unmetered
+        return network.getType() == ConnectivityManager.TYPE_WIFI;
+    }
+
+    private boolean isBatteryAllowed() {
+        // Battery state is a sticky broadcast, so it is returned without registering a receiver
+        Intent battery = this.context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return true;
+        }
+
+        int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        if (status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL) {
+            return true;
+        }
+
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level < 0 || scale <= 0 || level * 100 / scale >= this.minBattery;
+    }
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+import com.microsoft.services.odata.interfaces.DependencyResolver;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Class that reads messages and their attachments' metadata in background into EntityCache,
+ * so opening a message from a list is served from cache. Messages are read in the order they are
+ * passed (i.e. by their position in the list), a few at a time; new prefetch request replaces
+ * the previous one, so messages the user has scrolled away from are not read
+ */
+class Prefetcher {
+
+    private static final String TAG = "Office 365";
+
+    /**
+     * Name of preference that sets max number of messages prefetched per request
+     */
+    static final String PREFETCH_COUNT_PREFERENCE = "OutlookServicesPrefetchCount";
+
+    private static final int DEFAULT_PREFETCH_COUNT = 10;
+    private static final int MAX_CONCURRENT_REQUESTS = 2;
+
+    private final EntityCache cache;
+    private final PrefetchPolicy policy;
+    private final int maxCount;
+    private final Executor executor;
+
+    /**
+     * Messages waiting to be read, in priority order. All fields below are guarded by this
+     */
+    private final Queue<Task> queue = new ArrayDeque<Task>();
+    private int active;
+
+    /**
+     * Incremented on every prefetch and cancel request, tasks of previous generations are cancelled
+     */
+    private int generation;
+
+    /**
+     * @param cache cache to read messages into
+     * @param policy policy that allows or denies prefetch
+     * @param maxCount max number of messages read per prefetch request
+     * @param executor Executor used to process responses
+     */
+    Prefetcher(EntityCache cache, PrefetchPolicy policy, int maxCount, Executor executor) {
+        this.cache = cache;
+        this.policy = policy;
+        this.maxCount = maxCount;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates prefetcher with limits taken from plugin preferences
+     *
+     * @param cache cache to read messages into
+     * @param policy policy that allows or denies prefetch
+     * @param preferences Cordova preferences, may be null
+     * @param executor Executor used to process responses
+     * @return new Prefetcher instance
+     */
+    static Prefetcher create(EntityCache cache, PrefetchPolicy policy, CordovaPreferences preferences, Executor executor) {
+        int maxCount = preferences != null ?
+                preferences.getInteger(PREFETCH_COUNT_PREFERENCE, DEFAULT_PREFETCH_COUNT) : DEFAULT_PREFETCH_COUNT;
+        return new Prefetcher(cache, policy, Math.max(0, maxCount), executor);
+    }
+
+    /**
+     * Registers prefetch actions
+     *
+     * @param handlers Actions table to fill
+     */
+    void registerActions(Map<String, ActionHandler> handlers) {
+        handlers.put("prefetchMessages", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                prefetch(context, resolver, methodArgs);
+            }
+        });
+        handlers.put("cancelPrefetch", new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                cancel();
+                context.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+            }
+        });
+    }
+
+    /**
+     * Starts reading messages into cache, replacing previous prefetch request
+     *
+     * @param context Plugin context used to send result back to plugin
+     * @param resolver Dependency resolver, used to send requests
+     * @param methodArgs Arguments, passed from JS layer. First argument is JSON array of messages' Ids
+     *                   in priority order, second one is optional options JSON:
+     *                   attachments: boolean, false to skip attachments' metadata
+     * @throws JSONException
+     */
+    private void prefetch(CallbackContext context, DependencyResolver resolver, ODataMethodArgs methodArgs) throws JSONException {
+        JSONArray ids = new JSONArray(methodArgs.getArgs().get(0));
+        JSONObject options = new JSONObject(methodArgs.getArgs().size() > 1 ? methodArgs.getArgs().get(1) : "{}");
+        boolean attachments = options.optBoolean("attachments", true);
+
+        boolean allowed = this.policy.allowsPrefetch();
+        int count = allowed ? Math.min(ids.length(), this.maxCount) : 0;
+
+        synchronized (this) {
+            this.generation++;
+            this.queue.clear();
+            for (int i = 0; i < count; i++) {
+                this.queue.add(new Task(this.generation, resolver, methodArgs.getAccount(), methodArgs.getServiceRoot(),
+                        ids.getString(i), attachments));
+            }
+        }
+
+        JSONObject result = new JSONObject().put("queued", count).put("skipped", !allowed);
+        context.sendPluginResult(new PluginResult(PluginResult.Status.OK, result.toString()));
+        drain();
+    }
+
+    /**
+     * Drops messages that are waiting to be read. Requests already sent are completed
+     */
+    synchronized void cancel() {
+        this.generation++;
+        this.queue.clear();
+    }
+
+    private void drain() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                if (this.active >= MAX_CONCURRENT_REQUESTS || this.queue.isEmpty()) {
+                    return;
+                }
+                task = this.queue.poll();
+                this.active++;
+            }
+            readMessage(task);
+        }
+    }
+
+    private synchronized boolean isCancelled(Task task) {
+        return task.generation != this.generation;
+    }
+
+    private void readMessage(final Task task) {
+        String url = CachedReads.entityUrl(task.serviceRoot, "Messages", task.id);
+        EntityCache.Entry cached = this.cache.get(task.account, url);
+        if (cached != null) {
+            readAttachments(task, cached.getEntity());
+            return;
+        }
+
+        read(task, url, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String entity) {
+                readAttachments(task, entity);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                finish();
+            }
+        });
+    }
+
+    private void readAttachments(final Task task, String entity) {
+        if (!task.attachments || isCancelled(task) || !hasAttachments(entity)) {
+            finish();
+            return;
+        }
+
+        String url = CachedReads.attachmentsInfoUrl(task.serviceRoot, task.id);
+        if (this.cache.contains(task.account, url)) {
+            finish();
+            return;
+        }
+
+        read(task, url, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String entity) {
+                finish();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Reads entity into cache and passes it to callback
+     */
+    private void read(final Task task, final String url, final FutureCallback<String> callback) {
+        final long generation = this.cache.getGeneration();
+        ListenableFuture<String> future = ODataRequests.sendForString(task.resolver, HttpVerb.GET, url, null, null);
+        Futures.addCallback(future, new FutureCallback<String>() {
+            @Override
+            public void onSuccess(String entity) {
+                if (entity != null) {
+                    cache.put(task.account, url, entity, generation);
+                }
+                callback.onSuccess(entity);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                LOG.d(TAG, "Prefetch failed: " + throwable.getMessage());
+                callback.onFailure(throwable);
+            }
+        }, this.executor);
+    }
+
+    private void finish() {
+        synchronized (this) {
+            this.active--;
+        }
+        drain();
+    }
+
+    private static boolean hasAttachments(String entity) {
+        if (entity == null) {
+            return false;
+        }
+        try {
+            return new JSONObject(entity).optBoolean("HasAttachments", false);
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Single message to prefetch
+     */
+    private static final class Task {
+        private final int generation;
+        private final DependencyResolver resolver;
+        private final String account;
+        private final String serviceRoot;
+        private final String id;
+        private final boolean attachments;
+
+        private Task(int generation, DependencyResolver resolver, String account, String serviceRoot, String id,
+                     boolean attachments) {
+            this.generation = generation;
+            this.resolver = resolver;
+            this.account = account;
+            this.serviceRoot = serviceRoot;
+            this.id = id;
+            this.attachments = attachments;
+        }
+    }
+}
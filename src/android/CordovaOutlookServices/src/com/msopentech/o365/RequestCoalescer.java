@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import com.microsoft.services.odata.interfaces.HttpTransport;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Request;
+import com.microsoft.services.odata.interfaces.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight layer for HTTP transport. Identical GET requests (same URL and headers, including
+ * access token) that are sent while the first one is still waiting for response share that response
+ * instead of going to network. Response body is buffered only when request actually has followers,
+ * otherwise response is passed through as is
+ */
+class RequestCoalescer {
+
+    /**
+     * Suffix of media resource URLs. Their content may be large, so it is never buffered
+     */
+    private static final String MEDIA_RESOURCE_SUFFIX = "/$value";
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * Wraps transport, so its requests go through this coalescer
+     *
+     * @param transport transport to wrap
+     * @return wrapping transport
+     */
+    HttpTransport wrap(final HttpTransport transport) {
+        return new HttpTransport() {
+            @Override
+            public Request createRequest() {
+                return transport.createRequest();
+            }
+
+            @Override
+            public ListenableFuture<Response> execute(Request request) {
+                return RequestCoalescer.this.execute(transport, request);
+            }
+        };
+    }
+
+    /**
+     * Sends request through specified transport or joins identical request in flight
+     *
+     * @param transport transport to send request with
+     * @param request request to send
+     * @return Future with response
+     */
+    ListenableFuture<Response> execute(HttpTransport transport, Request request) {
+        this.requests.incrementAndGet();
+
+        final String key = keyFor(request);
+        if (key == null) {
+            return transport.execute(request);
+        }
+
+        final Flight flight = new Flight();
+        Flight existing = this.flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            ListenableFuture<Response> shared = existing.join();
+            if (shared != null) {
+                this.collapsed.incrementAndGet();
+                return shared;
+            }
+            // Existing request has already got its response, so this one goes to network on its own
+            return transport.execute(request);
+        }
+
+        Futures.addCallback(transport.execute(request), new FutureCallback<Response>() {
+            @Override
+            public void onSuccess(Response response) {
+                flights.remove(key, flight);
+                flight.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                flights.remove(key, flight);
+                flight.fail(throwable);
+            }
+        });
+        return flight.leader;
+    }
+
+    /**
+     * @return total number of requests sent through coalescer
+     */
+    long getRequestsCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return number of requests that shared response of identical request instead of going to network
+     */
+    long getCollapsedCount() {
+        return this.collapsed.get();
+    }
+
+    /**
+     * @return number of coalescable requests waiting for response
+     */
+    int getInFlightCount() {
+        return this.flights.size();
+    }
+
+    private static String keyFor(Request request) {
+        if (request.getVerb() != HttpVerb.GET || request.getContent() != null || request.getStreamedContent() != null) {
+            return null;
+        }
+
+        Map<String, String> options = request.getOptions();
+        if (options != null && options.containsKey(Request.MUST_STREAM_RESPONSE_CONTENT)) {
+            return null;
+        }
+
+        String url = request.getUrl().toString();
+        if (url.endsWith(MEDIA_RESOURCE_SUFFIX)) {
+            return null;
+        }
+
+        // Headers carry access token, so requests of different accounts never share responses
+        Map<String, String> headers = request.getHeaders();
+        return url + "\n" + (headers != null ? new TreeMap<String, String>(headers).toString() : "");
+    }
+
+    /**
+     * Request in flight along with requests that wait for its response
+     */
+    private static final class Flight {
+        private final SettableFuture<Response> leader = SettableFuture.create();
+        private final List<SettableFuture<Response>> followers = new ArrayList<SettableFuture<Response>>();
+        private boolean completed;
+
+        /**
+         * @return Future with shared response or null if response is already received
+         */
+        synchronized ListenableFuture<Response> join() {
+            if (this.completed) {
+                return null;
+            }
+            SettableFuture<Response> follower = SettableFuture.create();
+            this.followers.add(follower);
+            return follower;
+        }
+
+        void complete(Response response) {
+            List<SettableFuture<Response>> waiting = close();
+            if (waiting.isEmpty()) {
+                this.leader.set(response);
+                return;
+            }
+
+            try {
+                int status = response.getStatus();
+                Map<String, List<String>> headers = response.getHeaders();
+                byte[] payload = ODataRequests.readPayload(response);
+
+                this.leader.set(new BufferedResponse(status, headers, payload));
+                for (SettableFuture<Response> follower : waiting) {
+                    follower.set(new BufferedResponse(status, headers, payload));
+                }
+            } catch (IOException e) {
+                this.leader.setException(e);
+                for (SettableFuture<Response> follower : waiting) {
+                    follower.setException(e);
+                }
+            }
+        }
+
+        void fail(Throwable throwable) {
+            this.leader.setException(throwable);
+            for (SettableFuture<Response> follower : close()) {
+                follower.setException(throwable);
+            }
+        }
+
+        private synchronized List<SettableFuture<Response>> close() {
+            this.completed = true;
+            return new ArrayList<SettableFuture<Response>>(this.followers);
+        }
+    }
+
+    /**
+     * Response with body read in memory, so it can be given to several requests
+     */
+    private static final class BufferedResponse implements Response {
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final InputStream stream;
+
+        BufferedResponse(int status, Map<String, List<String>> headers, byte[] payload) {
+            this.status = status;
+            this.headers = headers != null ? headers : Collections.<String, List<String>>emptyMap();
+            this.stream = payload != null ? new ByteArrayInputStream(payload) : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return this.headers;
+        }
+
+        @Override
+        public List<String> getHeaders(String name) {
+            for (Map.Entry<String, List<String>> header : this.headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey())) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int getStatus() {
+            return this.status;
+        }
+
+        @Override
+        public InputStream getStream() {
+            return this.stream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.stream != null) {
+                this.stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,469 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.microsoft.services.odata.interfaces.HttpTransport;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Request;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.LOG;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Central scheduler for requests sent to the service. Every mailbox (i.e. every account, see Accounts.key)
+ * gets its own queue with a limit of concurrent requests and a token bucket rate limiter, shared by all
+ * dependency resolvers of the account, so limits and pauses outlive access token's refresh.
+ * Throttled responses (429, 503) pause the whole mailbox for the time the server asks in Retry-After;
+ * idempotent requests are retried with exponential backoff and jitter, other requests get the throttled response
+ */
+class RequestScheduler {
+
+    private static final String TAG = "Office 365";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    /**
+     * Name of preference that sets max number of concurrent requests per mailbox
+     */
+    static final String MAX_CONCURRENT_REQUESTS_PREFERENCE = "OutlookServicesMaxConcurrentRequests";
+
+    /**
+     * Name of preference that sets sustained number of requests per second per mailbox
+     */
+    static final String REQUESTS_PER_SECOND_PREFERENCE = "OutlookServicesRequestsPerSecond";
+
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    private static final int DEFAULT_REQUESTS_PER_SECOND = 10;
+    private static final int BURST_SIZE = 20;
+    private static final int MAX_RETRIES = 4;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private final int maxConcurrentRequests;
+    private final double requestsPerSecond;
+    private final int burstSize;
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("OutlookServices-scheduler-%d").setDaemon(true).build());
+    private final Random random = new Random();
+
+    /**
+     * Mailboxes keyed by account
+     */
+    private final ConcurrentMap<String, Mailbox> mailboxes = new ConcurrentHashMap<String, Mailbox>();
+
+    /**
+     * Tasks waiting for retry delay
+     */
+    private final Set<Task> retrying = Collections.newSetFromMap(new ConcurrentHashMap<Task, Boolean>());
+
+    private volatile boolean shutdown;
+
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+
+    /**
+     * Time from sending request to receiving response headers, retries are recorded separately
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param maxConcurrentRequests max number of requests of one mailbox sent at the same time
+     * @param requestsPerSecond sustained rate of requests of one mailbox
+     * @param burstSize max number of requests of one mailbox sent at once after idle period
+     * @param maxRetries max number of retries of idempotent request
+     * @param baseBackoffMillis backoff before first retry, doubled for every next retry
+     * @param maxBackoffMillis max backoff
+     */
+    RequestScheduler(int maxConcurrentRequests, double requestsPerSecond, int burstSize,
+                     int maxRetries, long baseBackoffMillis, long maxBackoffMillis) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burstSize = burstSize;
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Creates scheduler with limits taken from plugin preferences
+     *
+     * @param preferences Cordova preferences, may be null
+     * @return new RequestScheduler instance
+     */
+    static RequestScheduler create(CordovaPreferences preferences) {
+        int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+        int requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+
+        if (preferences != null) {
+            maxConcurrentRequests = Math.max(1, preferences.getInteger(MAX_CONCURRENT_REQUESTS_PREFERENCE, DEFAULT_MAX_CONCURRENT_REQUESTS));
+            requestsPerSecond = Math.max(1, preferences.getInteger(REQUESTS_PER_SECOND_PREFERENCE, DEFAULT_REQUESTS_PER_SECOND));
+        }
+
+        return new RequestScheduler(maxConcurrentRequests, requestsPerSecond, Math.max(BURST_SIZE, requestsPerSecond),
+                MAX_RETRIES, BASE_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Wraps transport of one dependency resolver, so its requests go through account's mailbox
+     *
+     * @param transport transport to wrap
+     * @param account key of account that transport sends requests for, see Accounts.key
+     * @return wrapping transport
+     */
+    HttpTransport wrap(final HttpTransport transport, String account) {
+        Mailbox created = new Mailbox();
+        Mailbox existing = this.mailboxes.putIfAbsent(account, created);
+        final Mailbox mailbox = existing != null ? existing : created;
+
+        return new HttpTransport() {
+            @Override
+            public Request createRequest() {
+                return transport.createRequest();
+            }
+
+            @Override
+            public ListenableFuture<Response> execute(Request request) {
+                Task task = new Task(mailbox, transport, request);
+                mailbox.submit(task);
+                return task.result;
+            }
+        };
+    }
+
+    /**
+     * Stops scheduler's timer. Requests waiting for retry or rate limit are not sent, they fail instead,
+     * so their callers are always answered. Requests submitted after shutdown fail right away
+     */
+    void shutdown() {
+        this.shutdown = true;
+        this.timer.shutdownNow();
+
+        for (Mailbox mailbox : this.mailboxes.values()) {
+            mailbox.failPending();
+        }
+        for (Task task : this.retrying.toArray(new Task[0])) {
+            this.retrying.remove(task);
+            task.fail();
+        }
+    }
+
+    /**
+     * @return number of throttled responses (429 or 503) received
+     */
+    long getThrottledCount() {
+        return this.throttled.get();
+    }
+
+    /**
+     * @return number of retried requests
+     */
+    long getRetriedCount() {
+        return this.retried.get();
+    }
+
+    /**
+     * @return number of times requests waited for rate limit or Retry-After period
+     */
+    long getDelayedCount() {
+        return this.delayed.get();
+    }
+
+    /**
+     * @return histogram of requests' network time
+     */
+    LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Requests' queue of one mailbox
+     */
+    private final class Mailbox {
+        private final Queue<Task> pending = new ArrayDeque<Task>();
+
+        private int active;
+        private long throttledUntil;
+        private boolean drainScheduled;
+
+        private double tokens = burstSize;
+        private long lastRefill = System.nanoTime();
+
+        void submit(Task task) {
+            if (shutdown) {
+                task.fail();
+                return;
+            }
+            synchronized (this) {
+                this.pending.add(task);
+            }
+            drain();
+        }
+
+        void failPending() {
+            List<Task> failed;
+            synchronized (this) {
+                failed = new ArrayList<Task>(this.pending);
+                this.pending.clear();
+            }
+            for (Task task : failed) {
+                task.fail();
+            }
+        }
+
+        void throttle(long delayMillis) {
+            synchronized (this) {
+                this.throttledUntil = Math.max(this.throttledUntil, System.currentTimeMillis() + delayMillis);
+            }
+        }
+
+        void release() {
+            synchronized (this) {
+                this.active--;
+            }
+            drain();
+        }
+
+        private void drain() {
+            while (true) {
+                Task task;
+                synchronized (this) {
+                    if (this.drainScheduled || this.active >= maxConcurrentRequests || this.pending.isEmpty()) {
+                        return;
+                    }
+
+                    long waitMillis = this.throttledUntil - System.currentTimeMillis();
+                    if (waitMillis <= 0) {
+                        waitMillis = takeToken();
+                    }
+                    if (waitMillis > 0 && !shutdown) {
+                        this.drainScheduled = true;
+                        delayed.incrementAndGet();
+                        try {
+                            timer.schedule(new Runnable() {
+                                @Override
+                                public void run() {
+                                    synchronized (Mailbox.this) {
+                                        drainScheduled = false;
+                                    }
+                                    drain();
+                                }
+                            }, waitMillis, TimeUnit.MILLISECONDS);
+                            return;
+                        } catch (RuntimeException e) {
+                            // Shut down concurrently, pending tasks are failed below
+                            this.drainScheduled = false;
+                        }
+                    }
+                    if (shutdown) {
+                        break;
+                    }
+
+                    task = this.pending.poll();
+                    this.active++;
+                }
+                task.send();
+            }
+            failPending();
+        }
+
+        /**
+         * Takes a token from bucket
+         *
+         * @return 0 if token is taken or number of milliseconds until next token is available
+         */
+        private long takeToken() {
+            long now = System.nanoTime();
+            this.tokens = Math.min(burstSize, this.tokens + (now - this.lastRefill) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            this.lastRefill = now;
+
+            if (this.tokens >= 1) {
+                this.tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - this.tokens) * 1000 / requestsPerSecond));
+        }
+    }
+
+    /**
+     * Single request along with its retry attempts
+     */
+    private final class Task {
+        private final Mailbox mailbox;
+        private final HttpTransport transport;
+        private final Request request;
+        private final SettableFuture<Response> result = SettableFuture.create();
+        private int attempt;
+
+        Task(Mailbox mailbox, HttpTransport transport, Request request) {
+            this.mailbox = mailbox;
+            this.transport = transport;
+            this.request = request;
+        }
+
+        void fail() {
+            this.result.setException(new IOException("Request is cancelled, plugin is shut down"));
+        }
+
+        void send() {
+            final long sentNanos = System.nanoTime();
+            ListenableFuture<Response> future;
+            try {
+                future = this.transport.execute(this.request);
+            } catch (RuntimeException e) {
+                this.mailbox.release();
+                this.result.setException(e);
+                return;
+            }
+
+            Futures.addCallback(future, new FutureCallback<Response>() {
+                @Override
+                public void onSuccess(Response response) {
+                    latency.record(System.nanoTime() - sentNanos);
+                    mailbox.release();
+
+                    int status = response.getStatus();
+                    if (status != TOO_MANY_REQUESTS && status != SERVICE_UNAVAILABLE) {
+                        result.set(response);
+                        return;
+                    }
+
+                    throttled.incrementAndGet();
+                    long retryAfter = retryAfterMillis(response);
+                    if (retryAfter > 0) {
+                        // Server asks to pause all requests of this mailbox, not only this one
+                        mailbox.throttle(retryAfter);
+                    }
+
+                    if (!canRetry()) {
+                        result.set(response);
+                        return;
+                    }
+
+                    try {
+                        response.close();
+                    } catch (IOException e) {
+                        // Response is dropped anyway
+                    }
+                    retry(Math.max(retryAfter, backoffMillis(attempt)));
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    latency.record(System.nanoTime() - sentNanos);
+                    mailbox.release();
+                    if (throwable instanceof IOException && canRetry()) {
+                        retry(backoffMillis(attempt));
+                    } else {
+                        result.setException(throwable);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Only idempotent requests without streamed body can be sent again
+         */
+        private boolean canRetry() {
+            return this.attempt < maxRetries
+                    && this.request.getVerb() == HttpVerb.GET
+                    && this.request.getStreamedContent() == null;
+        }
+
+        private void retry(long delayMillis) {
+            this.attempt++;
+            retried.incrementAndGet();
+            LOG.d(TAG, "Retrying request in " + delayMillis + " ms, attempt " + this.attempt);
+
+            retrying.add(this);
+            try {
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (retrying.remove(Task.this)) {
+                            mailbox.submit(Task.this);
+                        }
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // Scheduler is shut down
+                if (retrying.remove(this)) {
+                    fail();
+                }
+            }
+        }
+    }
+
+    /**
+     * Full jitter backoff: random delay between 0 and base * 2^attempt, capped by max backoff
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(this.maxBackoffMillis, this.baseBackoffMillis << Math.min(attempt, 20));
+        synchronized (this.random) {
+            return (long) (this.random.nextDouble() * ceiling);
+        }
+    }
+
+    /**
+     * Reads Retry-After header, which is either a number of seconds or HTTP date
+     *
+     * @param response throttled response
+     * @return delay in milliseconds or 0 if response has no valid Retry-After header
+     */
+    static long retryAfterMillis(Response response) {
+        String value = ODataRequests.getHeader(response, RETRY_AFTER_HEADER);
+        if (value == null) {
+            return 0;
+        }
+
+        value = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try HTTP date
+        }
+
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+}
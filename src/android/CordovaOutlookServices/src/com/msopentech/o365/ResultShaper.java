@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class that shapes collection items before they are sent to JS layer: removes OData annotations
+ * from items, keeps only requested fields and shortens items' body to a preview,
+ * so less data crosses the bridge and is parsed in WebView
+ */
+class ResultShaper {
+
+    /**
+     * Marker of OData annotations, both entity's ("@odata.etag") and property's ("Attachments@odata.navigationLink")
+     */
+    private static final String ANNOTATION_MARKER = "@odata.";
+
+    private static final String ID_FIELD = "Id";
+    private static final String BODY_FIELD = "Body";
+    private static final String CONTENT_FIELD = "Content";
+
+    /**
+     * Fields to keep or null to keep all fields
+     */
+    private final Set<String> fields;
+
+    /**
+     * Max length of body's content or -1 to keep whole body
+     */
+    private final int previewLength;
+
+    private ResultShaper(Set<String> fields, int previewLength) {
+        this.fields = fields;
+        this.previewLength = previewLength;
+    }
+
+    /**
+     * Creates shaper from collection's query parameters
+     *
+     * @param queryObject JSONObject that contains query parameters, including optional shaping parameters:
+     *                    fields: String, comma separated names or paths of fields to keep,
+     *                    previewLength: int, max length of items' Body.Content
+     * @return new ResultShaper instance
+     */
+    static ResultShaper fromQuery(JSONObject queryObject) {
+        Set<String> fields = null;
+        List<String> names = parseFields(queryObject);
+        if (names != null) {
+            fields = new HashSet<String>(names.size() + 1);
+            for (String name : names) {
+                // Property path, e.g. From/EmailAddress, keeps its top level field
+                int separator = name.indexOf('/');
+                fields.add(separator > 0 ? name.substring(0, separator) : name);
+            }
+            // Id is required by JS layer to build entity's path
+            fields.add(ID_FIELD);
+        }
+
+        return new ResultShaper(fields, queryObject.optInt("previewLength", -1));
+    }
+
+    /**
+     * Builds $select option from fields requested in query parameters, so fields
+     * that are dropped anyway are not sent by the server either
+     *
+     * @param queryObject JSONObject that contains query parameters
+     * @return value for $select option or null if fields are not specified
+     */
+    static String getSelect(JSONObject queryObject) {
+        List<String> names = parseFields(queryObject);
+        if (names == null) {
+            return null;
+        }
+
+        StringBuilder select = new StringBuilder();
+        for (String name : names) {
+            if (select.length() > 0) {
+                select.append(',');
+            }
+            select.append(name);
+        }
+        return select.toString();
+    }
+
+    /**
+     * Shapes collection's item in place. Items are shaped right after they are passed to page listeners,
+     * see PageListener
+     *
+     * @param item collection's item as received from the server
+     * @return true if item has been changed
+     * @throws JSONException
+     */
+    boolean shapeItem(JSONObject item) throws JSONException {
+        List<String> removed = new ArrayList<String>();
+        Iterator<?> keys = item.keys();
+        while (keys.hasNext()) {
+            String key = keys.next().toString();
+            if (key.contains(ANNOTATION_MARKER) || (this.fields != null && !this.fields.contains(key))) {
+                removed.add(key);
+            }
+        }
+        for (String key : removed) {
+            item.remove(key);
+        }
+
+        return truncateBody(item) || !removed.isEmpty();
+    }
+
+    private boolean truncateBody(JSONObject item) throws JSONException {
+        if (this.previewLength < 0) {
+            return false;
+        }
+
+        JSONObject body = item.optJSONObject(BODY_FIELD);
+        String content = body != null ? body.optString(CONTENT_FIELD, null) : null;
+        if (content == null || content.length() <= this.previewLength) {
+            return false;
+        }
+
+        int length = this.previewLength;
+        if (length > 0 && Character.isHighSurrogate(content.charAt(length - 1))) {
+            // Don't split surrogate pair
+            length--;
+        }
+        body.put(CONTENT_FIELD, content.substring(0, length));
+        return true;
+    }
+
+    private static List<String> parseFields(JSONObject queryObject) {
+        String value = queryObject.optString("fields", null);
+        if (value == null || value.equals("null")) {
+            return null;
+        }
+
+        List<String> names = new ArrayList<String>();
+        for (String name : value.split(",")) {
+            name = name.trim();
+            if (name.length() > 0) {
+                names.add(name);
+            }
+        }
+        return names.isEmpty() ? null : names;
+    }
+}
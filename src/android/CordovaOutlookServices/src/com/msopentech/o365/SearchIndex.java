@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * On-device full-text index of messages and contacts, kept in SQLite FTS4 table. Each item has three
+ * indexed columns: title (e.g. subject), people (names and addresses) and body, and a stored JSON summary
+ * that is returned by searches. Text is lower-cased before it is indexed, so matching ignores case of
+ * any script. Search terms match as prefixes; results are ranked by BM25 with column weights.
+ * Items are kept per account, see Accounts.key, and every query is limited to a single account
+ */
+class SearchIndex extends SQLiteOpenHelper {
+
+    private static final int VERSION = 2;
+
+    /**
+     * Column weights: title, people, body
+     */
+    private static final double[] WEIGHTS = { 3.0, 2.0, 1.0 };
+
+    private static final double K1 = 1.2;
+
+    SearchIndex(Context context, String name) {
+        super(context, name, null, VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Searches run while pages are being indexed
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Folder is item's ParentFolderId, folder alias is folder's Id or well-known name (e.g. 'Inbox')
+        // item was read through, so searches scoped by either of them find the item
+        db.execSQL("CREATE TABLE items (account TEXT NOT NULL, kind TEXT NOT NULL, item_id TEXT NOT NULL, "
+                + "folder TEXT, folder_alias TEXT, json TEXT NOT NULL, seen INTEGER NOT NULL, "
+                + "UNIQUE (account, kind, item_id))");
+        db.execSQL("CREATE INDEX items_seen ON items (seen)");
+        // Prefix indexes make 2 and 3 character prefix queries as fast as full terms
+        db.execSQL("CREATE VIRTUAL TABLE items_text USING fts4(title, people, body, prefix=\"2,3\")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS items");
+        db.execSQL("DROP TABLE IF EXISTS items_text");
+        onCreate(db);
+    }
+
+    /**
+     * Adds or replaces documents in a single transaction. Null fields of a document that is already
+     * indexed keep their previous values, so items read with $select don't lose their indexed text
+     *
+     * @param documents documents to index
+     */
+    void put(Collection<Document> documents) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long now = System.currentTimeMillis();
+            for (Document document : documents) {
+                put(db, document, now);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void put(SQLiteDatabase db, Document document, long now) {
+        String[] key = { document.account, document.kind, document.id };
+        Cursor existing = db.rawQuery("SELECT items.rowid, items.json, items_text.title, items_text.people, items_text.body "
+                + "FROM items JOIN items_text ON items_text.docid = items.rowid "
+                + "WHERE items.account = ? AND items.kind = ? AND items.item_id = ?", key);
+        try {
+            if (existing.moveToFirst()) {
+                long rowId = existing.getLong(0);
+
+                ContentValues item = new ContentValues();
+                item.put("json", merge(existing.getString(1), document.json));
+                item.put("seen", now);
+                if (document.folder != null) {
+                    item.put("folder", document.folder);
+                }
+                if (document.folderAlias != null) {
+                    item.put("folder_alias", document.folderAlias);
+                }
+                db.update("items", item, "rowid = " + rowId, null);
+
+                ContentValues text = new ContentValues();
+                text.put("title", document.title != null ? document.title : existing.getString(2));
+                text.put("people", document.people != null ? document.people : existing.getString(3));
+                text.put("body", document.body != null ? document.body : existing.getString(4));
+                db.update("items_text", text, "docid = " + rowId, null);
+                return;
+            }
+        } finally {
+            existing.close();
+        }
+
+        ContentValues item = new ContentValues();
+        item.put("account", document.account);
+        item.put("kind", document.kind);
+        item.put("item_id", document.id);
+        item.put("folder", document.folder);
+        item.put("folder_alias", document.folderAlias);
+        item.put("json", document.json);
+        item.put("seen", now);
+        long rowId = db.insertOrThrow("items", null, item);
+
+        ContentValues text = new ContentValues();
+        text.put("docid", rowId);
+        text.put("title", document.title);
+        text.put("people", document.people);
+        text.put("body", document.body);
+        db.insertOrThrow("items_text", null, text);
+    }
+
+    /**
+     * Removes documents
+     *
+     * @param account documents' account
+     * @param kind documents' kind
+     * @param ids documents' Ids
+     */
+    void remove(String account, String kind, Collection<String> ids) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String id : ids) {
+                String[] key = { account, kind, id };
+                db.execSQL("DELETE FROM items_text WHERE docid IN "
+                        + "(SELECT rowid FROM items WHERE account = ? AND kind = ? AND item_id = ?)", key);
+                db.execSQL("DELETE FROM items WHERE account = ? AND kind = ? AND item_id = ?", key);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes least recently indexed documents above limit
+     *
+     * @param maxDocuments max number of documents to keep
+     */
+    void trim(int maxDocuments) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String oldest = "SELECT rowid FROM items ORDER BY seen DESC LIMIT -1 OFFSET " + maxDocuments;
+            db.execSQL("DELETE FROM items_text WHERE docid IN (" + oldest + ")");
+            db.execSQL("DELETE FROM items WHERE rowid IN (" + oldest + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes all documents of account
+     *
+     * @param account account to remove documents of
+     */
+    void clear(String account) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String[] key = { account };
+            db.execSQL("DELETE FROM items_text WHERE docid IN (SELECT rowid FROM items WHERE account = ?)", key);
+            db.execSQL("DELETE FROM items WHERE account = ?", key);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Finds documents that contain all terms of query, each term matches as prefix
+     *
+     * @param account documents' account
+     * @param kind documents' kind
+     * @param folder Id or well-known name of folder to search in or null to search in all folders
+     * @param query text typed by user
+     * @param top max number of results
+     * @return documents' JSON summaries with "@search.score" annotation, best matches first
+     * @throws JSONException
+     */
+    List<JSONObject> search(String account, String kind, String folder, String query, int top) throws JSONException {
+        String match = toMatchExpression(query);
+        if (match == null || top <= 0) {
+            return Collections.emptyList();
+        }
+
+        String sql = "SELECT items.json, matchinfo(items_text, 'pcnx') "
+                + "FROM items_text JOIN items ON items.rowid = items_text.docid "
+                + "WHERE items_text MATCH ? AND items.account = ? AND items.kind = ?";
+        String[] args = folder != null ?
+                new String[] { match, account, kind, folder, folder } :
+                new String[] { match, account, kind };
+        if (folder != null) {
+            sql += " AND (items.folder = ? OR items.folder_alias = ?)";
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<Hit>();
+        Cursor cursor = getReadableDatabase().rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                double score = score(cursor.getBlob(1));
+                if (best.size() < top) {
+                    best.add(new Hit(score, cursor.getString(0)));
+                } else if (score > best.peek().score) {
+                    best.poll();
+                    best.add(new Hit(score, cursor.getString(0)));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<Hit> hits = new ArrayList<Hit>(best);
+        Collections.sort(hits, Collections.reverseOrder());
+
+        List<JSONObject> result = new ArrayList<JSONObject>(hits.size());
+        for (Hit hit : hits) {
+            result.add(new JSONObject(hit.json).put("@search.score", hit.score));
+        }
+        return result;
+    }
+
+    /**
+     * Builds FTS query where every term of text is a prefix term, e.g. "john sm" becomes "john* sm*"
+     *
+     * @return match expression or null if text has no terms
+     */
+    static String toMatchExpression(String text) {
+        StringBuilder match = new StringBuilder();
+        for (String term : normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (term.length() > 0) {
+                match.append(match.length() > 0 ? " " : "").append(term).append('*');
+            }
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * @return text in the form it is indexed and queried
+     */
+    static String normalize(String text) {
+        return text != null ? text.toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Computes BM25 score from FTS4 matchinfo 'pcnx' blob. Document length is not available
+     * without 'l' and 'a' values, so term frequency saturation is used without length normalization
+     */
+    private static double score(byte[] matchInfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        int documents = buffer.getInt(8);
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns && column < WEIGHTS.length; column++) {
+                int offset = 4 * (3 + 3 * (phrase * columns + column));
+                int hits = buffer.getInt(offset);
+                int documentsWithHits = buffer.getInt(offset + 8);
+                if (hits == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (documents - documentsWithHits + 0.5) / (documentsWithHits + 0.5));
+                score += WEIGHTS[column] * idf * hits * (K1 + 1) / (hits + K1);
+            }
+        }
+        return score;
+    }
+
+    private static String merge(String existingJson, String json) {
+        try {
+            JSONObject merged = new JSONObject(existingJson);
+            JSONObject update = new JSONObject(json);
+            Iterator<String> keys = update.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                merged.put(key, update.get(key));
+            }
+            return merged.toString();
+        } catch (JSONException e) {
+            return json;
+        }
+    }
+
+    /**
+     * Single indexed item
+     */
+    static final class Document {
+        private final String account;
+        private final String kind;
+        private final String id;
+        private final String folder;
+        private final String folderAlias;
+        private final String title;
+        private final String people;
+        private final String body;
+        private final String json;
+
+        /**
+         * @param account item's account
+         * @param kind item's kind, e.g. "Messages"
+         * @param id item's Id
+         * @param folder item's ParentFolderId or null to keep indexed one
+         * @param folderAlias Id or well-known name of folder item is read from or null to keep indexed one
+         * @param title item's title text or null to keep indexed one
+         * @param people item's people text or null to keep indexed one
+         * @param body item's body text or null to keep indexed one
+         * @param json item's summary returned by searches
+         */
+        Document(String account, String kind, String id, String folder, String folderAlias,
+                 String title, String people, String body, String json) {
+            this.account = account;
+            this.kind = kind;
+            this.id = id;
+            this.folder = folder;
+            this.folderAlias = folderAlias;
+            this.title = normalize(title);
+            this.people = normalize(people);
+            this.body = normalize(body);
+            this.json = json;
+        }
+    }
+
+    private static final class Hit implements Comparable<Hit> {
+        private final double score;
+        private final String json;
+
+        private Hit(double score, String json) {
+            this.score = score;
+            this.json = json;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            return Double.compare(this.score, other.score);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Simple file-based key-value store, used to persist plugin's small state objects
+ * (e.g. sync states) between application runs. Each value is kept in its own file
+ */
+class StateStore {
+
+    private final File directory;
+
+    /**
+     * @param directory directory to keep state files in, created if doesn't exist
+     */
+    StateStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param key state key
+     * @return stored value or null if there is no value for specified key
+     * @throws IOException
+     */
+    synchronized String get(String key) throws IOException {
+        File file = fileFor(key);
+        return file.exists() ? Files.toString(file, Charsets.UTF_8) : null;
+    }
+
+    /**
+     * Stores value for specified key. Value is written to temporary file first and then
+     * renamed, so interrupted write never leaves a partially written state
+     *
+     * @param key state key
+     * @param value value to store
+     * @throws IOException
+     */
+    synchronized void put(String key, String value) throws IOException {
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            throw new IOException("Can't create state directory " + this.directory);
+        }
+
+        File file = fileFor(key);
+        File temp = new File(this.directory, file.getName() + ".tmp");
+        Files.write(value, temp, Charsets.UTF_8);
+        if (!temp.renameTo(file)) {
+            throw new IOException("Can't write state file " + file);
+        }
+    }
+
+    /**
+     * Removes value for specified key
+     *
+     * @param key state key
+     */
+    synchronized void remove(String key) {
+        File file = fileFor(key);
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(this.directory, Hashing.sha1().hashString(key, Charsets.UTF_8).toString());
+    }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.cordova.CordovaPreferences;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helper class that creates bounded worker pool used for parsing action arguments
+ * and serializing results off the WebView and network threads
+ */
+class WorkerPool {
+
+    /**
+     * Name of preference that sets number of worker threads
+     */
+    static final String THREADS_PREFERENCE = "OutlookServicesWorkerThreads";
+
+    /**
+     * Name of preference that sets number of tasks waiting for a free worker
+     */
+    static final String QUEUE_SIZE_PREFERENCE = "OutlookServicesWorkerQueueSize";
+
+    /**
+     * Name of preference that sets number of threads that read streamed responses
+     */
+    static final String STREAM_THREADS_PREFERENCE = "OutlookServicesStreamThreads";
+
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+    private static final int DEFAULT_STREAM_THREADS = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private WorkerPool() {
+    }
+
+    /**
+     * Creates a new worker pool with size and queue depth taken from plugin preferences.
+     * When queue is full, task is executed on submitting thread, so callers are slowed down
+     * instead of piling up unbounded work
+     *
+     * @param preferences Cordova preferences, may be null
+     * @return new ThreadPoolExecutor instance
+     */
+    static ThreadPoolExecutor create(CordovaPreferences preferences) {
+        int threads = DEFAULT_THREADS;
+        int queueSize = DEFAULT_QUEUE_SIZE;
+
+        if (preferences != null) {
+            threads = Math.max(1, preferences.getInteger(THREADS_PREFERENCE, DEFAULT_THREADS));
+            queueSize = Math.max(1, preferences.getInteger(QUEUE_SIZE_PREFERENCE, DEFAULT_QUEUE_SIZE));
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("OutlookServices-worker-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a new pool that reads streamed responses, with size taken from plugin preferences.
+     * Reading a stream blocks until the whole response is received, so streams get their own threads
+     * and slow collections never take workers from other actions. Streams that don't get a thread wait
+     * in queue; they are never read on submitting thread, which is a network thread
+     *
+     * @param preferences Cordova preferences, may be null
+     * @return new ThreadPoolExecutor instance
+     */
+    static ThreadPoolExecutor createStreamPool(CordovaPreferences preferences) {
+        int threads = DEFAULT_STREAM_THREADS;
+
+        if (preferences != null) {
+            threads = Math.max(1, preferences.getInteger(STREAM_THREADS_PREFERENCE, DEFAULT_STREAM_THREADS));
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("OutlookServices-stream-%d").setDaemon(true).build());
+
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.impl.http.ResponseImpl;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payloads shaped like Outlook REST API v1.0 responses, shared by benchmarks
+ */
+final class Fixtures {
+
+    static final String SERVICE_ROOT = "https://outlook.office365.com/api/v1.0";
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param index message's index, makes ids and subjects unique
+     * @param bodyLength length of message's HTML body
+     * @return message as returned by GET /Me/Messages/{id}
+     */
+    static JSONObject message(int index, int bodyLength) throws JSONException {
+        StringBuilder body = new StringBuilder("<html><body>");
+        while (body.length() < bodyLength) {
+            body.append("<p>Quarterly review notes, item ").append(index).append(", ü ✓</p>");
+        }
+
+        return new JSONObject()
+                .put("@odata.id", SERVICE_ROOT + "/Users('user@contoso.com')/Messages('AAMk" + index + "')")
+                .put("@odata.etag", "W/\"CQAAABYAAAB" + index + "\"")
+                .put("Id", "AAMk" + index)
+                .put("ChangeKey", "CQAAABYAAAB" + index)
+                .put("Categories", new JSONArray().put("Blue category"))
+                .put("DateTimeCreated", "2015-06-01T10:00:00Z")
+                .put("DateTimeLastModified", "2015-06-01T10:00:00Z")
+                .put("Subject", "Quarterly review #" + index)
+                .put("BodyPreview", "Quarterly review notes, item " + index)
+                .put("Body", new JSONObject().put("ContentType", "HTML").put("Content", body.toString()))
+                .put("Importance", "Normal")
+                .put("HasAttachments", index % 5 == 0)
+                .put("ParentFolderId", "AAMkFolder")
+                .put("From", recipient("Alex Darrow", "alexd@contoso.com"))
+                .put("Sender", recipient("Alex Darrow", "alexd@contoso.com"))
+                .put("ToRecipients", new JSONArray()
+                        .put(recipient("Garth Fort", "garthf@contoso.com"))
+                        .put(recipient("Megan Bowen", "meganb@contoso.com")))
+                .put("CcRecipients", new JSONArray())
+                .put("BccRecipients", new JSONArray())
+                .put("ReplyTo", new JSONArray())
+                .put("ConversationId", "AAQk" + (index / 3))
+                .put("DateTimeReceived", "2015-06-01T10:00:00Z")
+                .put("DateTimeSent", "2015-06-01T09:59:58Z")
+                .put("IsDeliveryReceiptRequested", JSONObject.NULL)
+                .put("IsDraft", false)
+                .put("IsRead", index % 2 == 0)
+                .put("IsReadReceiptRequested", false)
+                .put("WebLink", "https://outlook.office365.com/owa/?ItemID=AAMk" + index);
+    }
+
+    /**
+     * @param size number of messages
+     * @param bodyLength length of messages' HTML bodies
+     * @return collection page with next link, as returned by GET /Me/Messages
+     */
+    static JSONObject messagesPage(int size, int bodyLength) throws JSONException {
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            items.put(message(i, bodyLength));
+        }
+        return new JSONObject()
+                .put("@odata.context", SERVICE_ROOT + "/$metadata#Me/Messages")
+                .put("value", items)
+                .put("@odata.nextLink", SERVICE_ROOT + "/Me/Messages?$skip=" + size);
+    }
+
+    /**
+     * @param status response's status
+     * @param headers response's headers
+     * @param body response's body, may be null
+     * @return transport response that reads body from memory
+     */
+    static Response response(int status, Map<String, List<String>> headers, byte[] body) {
+        final InputStream stream = body != null ? new ByteArrayInputStream(body) : null;
+        return new ResponseImpl(stream, status, headers, new Closeable() {
+            @Override
+            public void close() throws IOException {
+                if (stream != null) {
+                    stream.close();
+                }
+            }
+        });
+    }
+
+    static Response response(byte[] body) {
+        return response(200, Collections.<String, List<String>>emptyMap(), body);
+    }
+
+    static byte[] bytes(JSONObject json) {
+        return json.toString().getBytes(Constants.UTF8);
+    }
+
+    private static JSONObject recipient(String name, String address) throws JSONException {
+        return new JSONObject().put("EmailAddress", new JSONObject().put("Name", name).put("Address", address));
+    }
+}
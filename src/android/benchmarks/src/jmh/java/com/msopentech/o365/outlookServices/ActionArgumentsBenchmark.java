@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.ODataCollectionFetcher;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work done on every call before the SDK sends a request: action's arguments are parsed into ODataMethodArgs
+ * (and the account is read from the token by the first wrapper that needs it), and collection's query is applied
+ * to SDK's fetcher. The client is built on a stubbed dependency resolver, requests are never sent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionArgumentsBenchmark {
+
+    private static final String QUERY = "{\"top\":25,\"skip\":50,\"select\":\"Subject,From,DateTimeReceived,IsRead\","
+            + "\"filter\":\"IsRead eq false and (Importance eq 'High' or HasAttachments eq true)\","
+            + "\"orderBy\":\"DateTimeReceived desc\"}";
+
+    private JSONArray args;
+    private OutlookClient client;
+    private ODataQuery query;
+
+    @Setup
+    public void setUp() throws JSONException {
+        // Token shaped like a JWT, so account is read from its claims as on device
+        BaseEncoding encoding = BaseEncoding.base64Url().omitPadding();
+        String claims = new JSONObject().put("tid", "contoso").put("upn", "alexd@contoso.com").toString();
+        String token = encoding.encode("{\"alg\":\"none\"}".getBytes(Charsets.UTF_8)) + "."
+                + encoding.encode(claims.getBytes(Charsets.UTF_8)) + ".signature";
+
+        // Arguments of getMessages as sent by JS layer, Cordova passes them already parsed
+        this.args = new JSONArray().put(token).put(Fixtures.SERVICE_ROOT)
+                .put(Fixtures.SERVICE_ROOT + "/me/Folders/Inbox/Messages").put(QUERY);
+
+        this.client = new OutlookClient(Fixtures.SERVICE_ROOT, new DefaultDependencyResolver(token));
+        this.query = ODataQuery.parse(QUERY);
+    }
+
+    @Benchmark
+    public ODataMethodArgs parseInvocationArgs() throws JSONException {
+        return ODataMethodArgs.parseInvocationArgs(this.args);
+    }
+
+    @Benchmark
+    public String parseInvocationArgsWithAccount() throws JSONException {
+        return ODataMethodArgs.parseInvocationArgs(this.args).getAccount();
+    }
+
+    /**
+     * Baseline for updateFetcherWithQuery: fetcher is built by the client without query options
+     */
+    @Benchmark
+    public ODataCollectionFetcher fetcher() {
+        return this.client.getMe().getMessages();
+    }
+
+    @Benchmark
+    public ODataCollectionFetcher updateFetcherWithQuery() {
+        ODataCollectionFetcher fetcher = this.client.getMe().getMessages();
+        OutlookServicesMethodsImpl.updateFetcherWithQuery(fetcher, this.query);
+        return fetcher;
+    }
+}
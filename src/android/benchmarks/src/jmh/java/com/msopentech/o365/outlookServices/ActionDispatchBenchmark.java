@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Action dispatch through the actions table built by OutlookServicesActions, compared with the reflective
+ * dispatch it replaced: getDeclaredMethod on OutlookServicesMethodsImpl and Method.invoke on every call.
+ * Both ways run the same stubbed action, which answers right away, so only dispatch itself is measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionDispatchBenchmark {
+
+    private static final Class<?>[] HANDLER_PARAMETERS =
+            {CallbackContext.class, OutlookClient.class, DefaultDependencyResolver.class, ODataMethodArgs.class};
+
+    private static final CordovaWebView WEB_VIEW = new CordovaWebView() {
+        @Override
+        public void sendPluginResult(PluginResult result, String callbackId) {
+        }
+    };
+
+    /**
+     * Names of real actions, looked up among all actions of OutlookServicesMethodsImpl
+     */
+    @Param({"getCalendars", "getMessage", "deleteAttachment"})
+    public String action;
+
+    private final Map<String, ActionHandler> actions = new HashMap<String, ActionHandler>();
+    private Method stub;
+    private ODataMethodArgs methodArgs;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException, JSONException {
+        // Real table, so lookups run against all actions, with the measured action answered by stub
+        OutlookServicesActions.registerActions(this.actions);
+        this.actions.put(this.action, new ActionHandler() {
+            @Override
+            public void execute(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) throws Throwable {
+                StubActions.answer(context, client, resolver, methodArgs);
+            }
+        });
+
+        this.stub = StubActions.class.getDeclaredMethod("answer", HANDLER_PARAMETERS);
+        this.methodArgs = ODataMethodArgs.parseInvocationArgs(new JSONArray()
+                .put("token").put(Fixtures.SERVICE_ROOT).put(Fixtures.SERVICE_ROOT + "/me/Messages/AAMk1"));
+    }
+
+    @Benchmark
+    public void table() throws Throwable {
+        ActionHandler handler = this.actions.get(this.action);
+        handler.execute(new CallbackContext("ActionDispatch", WEB_VIEW), null, null, this.methodArgs);
+    }
+
+    /**
+     * Dispatch as done before actions table: method is looked up by action's name on every call
+     */
+    @Benchmark
+    public void reflective(Blackhole blackhole) throws Exception {
+        blackhole.consume(OutlookServicesMethodsImpl.class.getDeclaredMethod(this.action, HANDLER_PARAMETERS));
+        this.stub.invoke(null, new CallbackContext("ActionDispatch", WEB_VIEW), null, null, this.methodArgs);
+    }
+
+    /**
+     * Stubbed action with the same signature as OutlookServicesMethodsImpl's actions
+     */
+    static final class StubActions {
+
+        private StubActions() {
+        }
+
+        static void answer(CallbackContext context, OutlookClient client, DefaultDependencyResolver resolver, ODataMethodArgs methodArgs) {
+            context.sendPluginResult(new PluginResult(PluginResult.Status.OK, methodArgs.getODataPath()));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.io.BaseEncoding;
+import com.microsoft.services.odata.Constants;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary encoding of collection pages against the JSON string that is sent otherwise, as both cross the bridge:
+ * Cordova sends ArrayBuffer results base64 encoded and string results JSON-quoted (see PluginResult.getMessage).
+ * Bridge message's size in both modes is printed once per page size. End-to-end benchmarks also decode the message
+ * the way the JS layer does (www/Fetchers.js parsePage), so they measure latency from the page to parsed items
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryPagesBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int pageSize;
+
+    private JSONObject page;
+
+    @Setup
+    public void setUp() throws JSONException {
+        this.page = Fixtures.messagesPage(this.pageSize, 2 * 1024);
+
+        int binaryBytes = binary().getBytes(Constants.UTF8).length;
+        int jsonBytes = json().getBytes(Constants.UTF8).length;
+        System.out.printf("Bridge bytes per page of %d items: binary %d, json %d (%.2f of json)%n",
+                this.pageSize, binaryBytes, jsonBytes, (double) binaryBytes / jsonBytes);
+    }
+
+    @Benchmark
+    public String binary() throws JSONException {
+        return new PluginResult(PluginResult.Status.OK, BinaryPages.encode(this.page)).getMessage();
+    }
+
+    @Benchmark
+    public String json() {
+        return new PluginResult(PluginResult.Status.OK, this.page.toString()).getMessage();
+    }
+
+    @Benchmark
+    public JSONObject binaryEndToEnd() throws JSONException {
+        ByteBuffer buffer = ByteBuffer.wrap(BaseEncoding.base64().decode(binary()));
+        if (buffer.getInt() != BinaryPages.MAGIC) {
+            throw new IllegalStateException("Unknown collection page format");
+        }
+
+        JSONObject decoded = readJson(buffer);
+        int count = buffer.getInt();
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            items.put(readJson(buffer));
+        }
+        return decoded.put("value", items);
+    }
+
+    @Benchmark
+    public JSONObject jsonEndToEnd() throws JSONException {
+        String unquoted = (String) new JSONTokener(json()).nextValue();
+        return new JSONObject(unquoted);
+    }
+
+    private static JSONObject readJson(ByteBuffer buffer) throws JSONException {
+        int length = buffer.getInt();
+        JSONObject json = new JSONObject(new String(buffer.array(), buffer.position(), length, Constants.UTF8));
+        buffer.position(buffer.position() + length);
+        return json;
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streamed parsing of collection pages against reading whole body into a string and parsing it at once
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectionStreamBenchmark {
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws JSONException {
+        this.body = Fixtures.bytes(Fixtures.messagesPage(this.pageSize, 2 * 1024));
+    }
+
+    @Benchmark
+    public JSONObject stream(final Blackhole blackhole) throws IOException, JSONException {
+        return CollectionStream.read(Fixtures.response(this.body), new CollectionStream.ItemSink() {
+            @Override
+            public boolean onItem(JSONObject item) {
+                blackhole.consume(item);
+                return true;
+            }
+        });
+    }
+
+    @Benchmark
+    public JSONObject firstItem() throws IOException, JSONException {
+        // Sink stops reading after first item, the rest of the page is discarded
+        return CollectionStream.read(Fixtures.response(this.body), new CollectionStream.ItemSink() {
+            @Override
+            public boolean onItem(JSONObject item) {
+                return false;
+            }
+        });
+    }
+
+    @Benchmark
+    public JSONObject wholeBody() throws JSONException {
+        return new JSONObject(new String(this.body, com.microsoft.services.odata.Constants.UTF8));
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.outlookservices.Message;
+import com.microsoft.services.odata.ODataException;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Callbacks that send SDK's results back to JS layer, run on completed futures: addCordovaCallback serializes
+ * typed entities with SDK's serializer, addRawCordovaCallback sends raw strings and maps failures to error messages,
+ * reading service's error object from ODataException's payload. Results go to a fake CallbackContext, which keeps
+ * the last one
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CordovaCallbacksBenchmark {
+
+    private final CordovaWebView webView = new CordovaWebView() {
+        @Override
+        public void sendPluginResult(PluginResult result, String callbackId) {
+            sent = result;
+        }
+    };
+
+    private PluginResult sent;
+
+    private DefaultDependencyResolver resolver;
+    private Message message;
+    private String rawMessage;
+    private ODataException notFound;
+    private IOException connectionReset;
+
+    @Setup
+    public void setUp() throws Throwable {
+        // Callbacks run on the thread that completes the future
+        OutlookServicesMethodsImpl.setCallbackExecutor(null);
+
+        this.resolver = new DefaultDependencyResolver("token");
+        this.rawMessage = Fixtures.message(0, 2 * 1024).toString();
+        this.message = this.resolver.getJsonSerializer().deserialize(this.rawMessage, Message.class);
+
+        JSONObject error = new JSONObject().put("error", new JSONObject()
+                .put("code", "ErrorItemNotFound")
+                .put("message", "The specified object was not found in the store."));
+        Map<String, List<String>> headers = Collections.emptyMap();
+        this.notFound = new ODataException(new ODataRequests.RawODataResponse(
+                Fixtures.response(404, headers, null), Fixtures.bytes(error)), "Request failed with status 404");
+        this.connectionReset = new IOException("Connection reset");
+    }
+
+    @Benchmark
+    public PluginResult addCordovaCallback() {
+        OutlookServicesMethodsImpl.addCordovaCallback(Futures.immediateFuture(this.message), context(), this.resolver);
+        return this.sent;
+    }
+
+    /**
+     * Result of deletes, which is what plugin's actions pass to addCordovaCallback
+     */
+    @Benchmark
+    public PluginResult addCordovaCallbackNoContent() {
+        OutlookServicesMethodsImpl.addCordovaCallback(Futures.immediateFuture(null), context(), this.resolver);
+        return this.sent;
+    }
+
+    @Benchmark
+    public PluginResult addRawCordovaCallback() {
+        OutlookServicesMethodsImpl.addRawCordovaCallback(Futures.immediateFuture(this.rawMessage), context());
+        return this.sent;
+    }
+
+    @Benchmark
+    public PluginResult addRawCordovaCallbackODataError() {
+        ListenableFuture<String> failed = Futures.immediateFailedFuture(this.notFound);
+        OutlookServicesMethodsImpl.addRawCordovaCallback(failed, context());
+        return this.sent;
+    }
+
+    @Benchmark
+    public PluginResult addRawCordovaCallbackIOError() {
+        ListenableFuture<String> failed = Futures.immediateFailedFuture(this.connectionReset);
+        OutlookServicesMethodsImpl.addRawCordovaCallback(failed, context());
+        return this.sent;
+    }
+
+    /**
+     * @return new context, since a context takes only one final result
+     */
+    private CallbackContext context() {
+        return new CallbackContext("CordovaCallbacks", this.webView);
+    }
+}
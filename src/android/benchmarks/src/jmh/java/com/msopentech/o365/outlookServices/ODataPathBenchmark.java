@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads done by an attachment action (container type, container Id and attachment Id) from its OData path:
+ * ODataPath parses the path once and reads segments through its descriptors, compared with the split("/")
+ * on every read that ODataMethodArgs did before
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ODataPathBenchmark {
+
+    private static final String MESSAGE_ID = "AAMkAGI2THVSAAA=";
+    private static final String ATTACHMENT_ID = "AAMkAGI2THVSAAABEgAQAC5Tq0d4Ak9Ng6xG2T4uLXE=";
+
+    @Param({"messages", "events"})
+    public String container;
+
+    private String path;
+
+    @Setup
+    public void setUp() {
+        String collection = this.container.equals("messages") ? "Messages" : "Events";
+        this.path = Fixtures.SERVICE_ROOT + "/me/" + collection + "/" + MESSAGE_ID + "/Attachments/" + ATTACHMENT_ID;
+    }
+
+    @Benchmark
+    public void descriptors(Blackhole blackhole) {
+        ODataPath parsed = ODataPath.parse(this.path);
+        blackhole.consume(parsed.containerTypeEqualsIgnoreCase("Attachments", "messages"));
+        blackhole.consume(parsed.getContainerId("Attachments"));
+        blackhole.consume(parsed.getEntityId());
+    }
+
+    /**
+     * Reads as done before ODataPath: path is split for every read and container type is lower-cased
+     */
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        blackhole.consume(segment(this.path, 4).toLowerCase().equals("messages"));
+        blackhole.consume(segment(this.path, 3));
+        blackhole.consume(segment(this.path, 1));
+    }
+
+    private static String segment(String path, int indexFromTheEnd) {
+        String[] parts = path.split("/");
+        if (indexFromTheEnd > parts.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return parts[parts.length - indexFromTheEnd];
+    }
+}
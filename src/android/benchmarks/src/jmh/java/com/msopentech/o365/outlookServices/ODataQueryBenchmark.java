@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query options' parsing, validation and query string building, done for every collection read
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ODataQueryBenchmark {
+
+    private static final String QUERY = "{\"top\":25,\"skip\":50,\"fields\":\"Subject,From/EmailAddress,DateTimeReceived,IsRead\","
+            + "\"filter\":\"IsRead eq false and (Importance eq 'High' or HasAttachments eq true)\","
+            + "\"orderBy\":\"DateTimeReceived desc\",\"previewLength\":200}";
+
+    private int counter;
+
+    /**
+     * Same query as the previous call, answered from parsed queries' cache
+     */
+    @Benchmark
+    public String parseCached() throws JSONException {
+        return ODataQuery.parse(QUERY).getQueryString();
+    }
+
+    /**
+     * New query every call: JSON parsing, validation, shaper and query string building
+     */
+    @Benchmark
+    public String parseNew() throws JSONException {
+        String query = "{\"top\":" + (this.counter++ & 0xFFFF) + QUERY.substring(QUERY.indexOf(','));
+        return ODataQuery.parse(query).getQueryString();
+    }
+}
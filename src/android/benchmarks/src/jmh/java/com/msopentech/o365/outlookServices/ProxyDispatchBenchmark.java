@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import android.app.Activity;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.services.odata.impl.http.RequestImpl;
+import com.microsoft.services.odata.interfaces.HttpTransport;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Request;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actions run through OutlookServicesProxy.execute, from the call made by Cordova to the final result: worker pool's
+ * hand-off, arguments' parsing, cached client's lookup, actions table with all wrappers registered by the plugin
+ * (metrics, cached reads, local search, outbox) and result's callback. Requests go through the plugin's coalescer
+ * and scheduler to a transport that answers at once from memory, so the plugin's own overhead is measured.
+ * Local search's index is the SQLite stand-in that keeps nothing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyDispatchBenchmark {
+
+    private static final long CALL_TIMEOUT_SECONDS = 10;
+
+    private static final CordovaWebView WEB_VIEW = new CordovaWebView() {
+        @Override
+        public void sendPluginResult(PluginResult result, String callbackId) {
+        }
+    };
+
+    /**
+     * getCalendars: query applied to SDK's fetcher, raw callback; getMessages: streamed collection page;
+     * deleteMessage: typed callback with cache and index invalidation; getMessage of missing message: cache miss
+     * and error mapping
+     */
+    @Param({"getCalendars", "getMessages", "deleteMessage", "getMissingMessage"})
+    public String action;
+
+    private File dataDir;
+    private OutlookServicesProxy proxy;
+    private String actionName;
+    private JSONArray args;
+    private long calls;
+
+    @Setup
+    public void setUp() throws JSONException {
+        this.dataDir = Files.createTempDir();
+        final Activity activity = new Activity(this.dataDir);
+
+        CordovaPreferences preferences = new CordovaPreferences();
+        // Scheduler never delays requests, so only its overhead is measured
+        preferences.set(RequestScheduler.REQUESTS_PER_SECOND_PREFERENCE, Integer.MAX_VALUE);
+        preferences.set(RequestScheduler.MAX_CONCURRENT_REQUESTS_PREFERENCE, 64);
+
+        this.proxy = new OutlookServicesProxy(new Server());
+        this.proxy.privateInitialize("OutlookServices", new CordovaInterface() {
+            @Override
+            public Activity getActivity() {
+                return activity;
+            }
+        }, WEB_VIEW, preferences);
+
+        String query = "{\"top\":10,\"select\":\"Subject,From,DateTimeReceived,IsRead\",\"filter\":\"IsRead eq false\","
+                + "\"orderBy\":\"DateTimeReceived desc\"}";
+        this.actionName = this.action;
+        this.args = new JSONArray().put("token").put(Fixtures.SERVICE_ROOT);
+        if (this.action.equals("getCalendars")) {
+            this.args.put(Fixtures.SERVICE_ROOT + "/me/Calendars").put("{\"top\":10,\"select\":\"Name,Color\"}");
+        } else if (this.action.equals("getMessages")) {
+            this.args.put(Fixtures.SERVICE_ROOT + "/me/Messages").put(query);
+        } else if (this.action.equals("deleteMessage")) {
+            this.args.put(Fixtures.SERVICE_ROOT + "/me/Messages/AAMk1");
+        } else {
+            this.actionName = "getMessage";
+            this.args.put(Fixtures.SERVICE_ROOT + "/me/Messages/missing-1");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.proxy.onDestroy();
+        delete(this.dataDir);
+    }
+
+    @Benchmark
+    public PluginResult execute() throws Exception {
+        final PluginResult[] result = new PluginResult[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        CallbackContext context = new CallbackContext("ProxyDispatch" + this.calls++, new CordovaWebView() {
+            @Override
+            public void sendPluginResult(PluginResult pluginResult, String callbackId) {
+                if (!pluginResult.getKeepCallback()) {
+                    result[0] = pluginResult;
+                    done.countDown();
+                }
+            }
+        });
+
+        if (!this.proxy.execute(this.actionName, this.args, context)) {
+            throw new IllegalStateException("Unknown action " + this.actionName);
+        }
+        if (!done.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(this.actionName + " is not answered in " + CALL_TIMEOUT_SECONDS + " s");
+        }
+        return result[0];
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Transport that answers at once: calendars' and messages' pages for collections, 404 for entities which ids
+     * start with 'missing', no content for deletes
+     */
+    private static final class Server implements HttpTransport {
+
+        private static final Map<String, List<String>> JSON_HEADERS = Collections.singletonMap("Content-Type",
+                Collections.singletonList("application/json; odata.metadata=minimal"));
+
+        private final byte[] calendars;
+        private final byte[] messages;
+        private final byte[] notFound;
+
+        Server() throws JSONException {
+            JSONArray items = new JSONArray();
+            for (int i = 0; i < 10; i++) {
+                items.put(new JSONObject()
+                        .put("@odata.id", Fixtures.SERVICE_ROOT + "/Users('user@contoso.com')/Calendars('AAMkCal" + i + "')")
+                        .put("Id", "AAMkCal" + i)
+                        .put("Name", "Calendar " + i)
+                        .put("Color", "Auto")
+                        .put("ChangeKey", "nfZyf7VcrEKLNoU37KWlkQAAA" + i));
+            }
+            this.calendars = Fixtures.bytes(new JSONObject()
+                    .put("@odata.context", Fixtures.SERVICE_ROOT + "/$metadata#Me/Calendars")
+                    .put("value", items));
+            this.messages = Fixtures.bytes(Fixtures.messagesPage(10, 2 * 1024));
+            this.notFound = Fixtures.bytes(new JSONObject().put("error", new JSONObject()
+                    .put("code", "ErrorItemNotFound")
+                    .put("message", "The specified object was not found in the store.")));
+        }
+
+        @Override
+        public Request createRequest() {
+            return new RequestImpl();
+        }
+
+        @Override
+        public ListenableFuture<Response> execute(Request request) {
+            String url = request.getUrl().toString();
+            // SDK's fetchers end collections' and entities' paths with '/'
+            String path = url.split("\\?")[0].replaceAll("/$", "");
+
+            Response response;
+            if (path.contains("missing")) {
+                response = Fixtures.response(404, JSON_HEADERS, this.notFound);
+            } else if (request.getVerb() == HttpVerb.DELETE) {
+                response = Fixtures.response(204, JSON_HEADERS, null);
+            } else if (path.endsWith("/Calendars")) {
+                response = Fixtures.response(200, JSON_HEADERS, this.calendars);
+            } else if (path.endsWith("/Messages")) {
+                response = Fixtures.response(200, JSON_HEADERS, this.messages);
+            } else {
+                response = Fixtures.response(404, JSON_HEADERS, this.notFound);
+            }
+            return Futures.immediateFuture(response);
+        }
+    }
+}
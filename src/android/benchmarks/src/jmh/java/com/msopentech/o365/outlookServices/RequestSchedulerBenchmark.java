@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.services.odata.impl.http.RequestImpl;
+import com.microsoft.services.odata.interfaces.HttpTransport;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Request;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduler's overhead per request, with a transport that answers at once. Limits are set high enough
+ * to never delay requests, except for throttled requests, which are retried with zero backoff,
+ * so retry path is measured without waiting
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSchedulerBenchmark {
+
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private RequestScheduler scheduler;
+    private HttpTransport transport;
+    private HttpTransport throttledTransport;
+
+    private final Response retryAfterSeconds = Fixtures.response(503,
+            Collections.singletonMap("Retry-After", Collections.singletonList("120")), null);
+    private final Response retryAfterDate = Fixtures.response(503,
+            Collections.singletonMap("Retry-After", Collections.singletonList("Wed, 21 Oct 2037 07:28:00 GMT")), null);
+
+    @Setup
+    public void setUp() {
+        this.scheduler = new RequestScheduler(64, 1e9, Integer.MAX_VALUE, 4, 0, 0);
+        this.transport = this.scheduler.wrap(new Server(0), "bench|ok");
+        // Every other request is throttled and retried once
+        this.throttledTransport = this.scheduler.wrap(new Server(2), "bench|throttled");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.scheduler.shutdown();
+    }
+
+    @Benchmark
+    public Response send() throws Exception {
+        return this.transport.execute(get()).get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Response sendConcurrent() throws Exception {
+        return this.transport.execute(get()).get();
+    }
+
+    @Benchmark
+    public Response sendThrottled() throws Exception {
+        return this.throttledTransport.execute(get()).get();
+    }
+
+    @Benchmark
+    public long parseRetryAfterSeconds() {
+        return RequestScheduler.retryAfterMillis(this.retryAfterSeconds);
+    }
+
+    @Benchmark
+    public long parseRetryAfterDate() {
+        return RequestScheduler.retryAfterMillis(this.retryAfterDate);
+    }
+
+    private static Request get() {
+        Request request = new RequestImpl();
+        request.setVerb(HttpVerb.GET);
+        return request;
+    }
+
+    /**
+     * Transport that answers at once, with 503 for every n-th request when n > 0
+     */
+    private static final class Server implements HttpTransport {
+        private final int throttleEvery;
+        private final AtomicLong requests = new AtomicLong();
+
+        Server(int throttleEvery) {
+            this.throttleEvery = throttleEvery;
+        }
+
+        @Override
+        public Request createRequest() {
+            return new RequestImpl();
+        }
+
+        @Override
+        public ListenableFuture<Response> execute(Request request) {
+            long number = this.requests.incrementAndGet();
+            int status = this.throttleEvery > 0 && number % this.throttleEvery == 0 ? 503 : 200;
+            return Futures.immediateFuture(Fixtures.response(status, NO_HEADERS, null));
+        }
+    }
+}
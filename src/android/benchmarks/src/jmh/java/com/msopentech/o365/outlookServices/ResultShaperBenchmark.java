@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shaping of collection's items. Shaping changes item in place, so every call shapes a fresh copy;
+ * copy() measures copying alone and should be subtracted
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultShaperBenchmark {
+
+    private JSONObject message;
+    private ResultShaper fields;
+    private ResultShaper preview;
+
+    @Setup
+    public void setUp() throws JSONException {
+        this.message = Fixtures.message(1, 8 * 1024);
+        this.fields = ResultShaper.fromQuery(new JSONObject("{\"fields\":\"Subject,From,DateTimeReceived,IsRead\"}"));
+        this.preview = ResultShaper.fromQuery(new JSONObject("{\"previewLength\":200}"));
+    }
+
+    @Benchmark
+    public JSONObject copy() throws JSONException {
+        return new JSONObject(this.message, JSONObject.getNames(this.message));
+    }
+
+    @Benchmark
+    public boolean shapeFields() throws JSONException {
+        return this.fields.shapeItem(copy());
+    }
+
+    @Benchmark
+    public boolean shapePreview() throws JSONException {
+        return this.preview.shapeItem(copy());
+    }
+}
@@ -0,0 +1,467 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.microsoft.services.odata.Constants;
+import com.microsoft.services.odata.impl.http.RequestImpl;
+import com.microsoft.services.odata.interfaces.HttpTransport;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Request;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for Outlook REST API, plugged in instead of SDK's network transport.
+ * Serves messages, events, folders, attachments and users, accepts writes, actions and JSON $batch requests,
+ * answers after a random delay and injects throttled responses (503 with Retry-After) and connection failures
+ * at the specified rate. Entities which ids start with 'missing' are not found.
+ *
+ * Replay tests record received requests, answer them from a script and take the server down and up
+ */
+class MockOutlookServer implements HttpTransport {
+
+    /**
+     * Scripted answers, consulted before default ones
+     */
+    interface Script {
+
+        /**
+         * @param request received request
+         * @return response to send or null to send the default one
+         * @throws Exception to fail the request as a connection failure
+         */
+        Response respond(RecordedRequest request) throws Exception;
+    }
+
+    /**
+     * Request as received by the server
+     */
+    static final class RecordedRequest {
+        final HttpVerb verb;
+        final String url;
+        final String body;
+        final Map<String, String> headers;
+        final long receivedNanos;
+
+        /**
+         * True if request arrived while server was down, so it was refused and never applied
+         */
+        final boolean refused;
+
+        private RecordedRequest(Request request, boolean refused) {
+            this.verb = request.getVerb();
+            this.url = request.getUrl().toString();
+            this.body = request.getContent() != null ? new String(request.getContent(), Constants.UTF8) : null;
+            this.headers = new HashMap<String, String>(request.getHeaders());
+            this.receivedNanos = System.nanoTime();
+            this.refused = refused;
+        }
+
+        @Override
+        public String toString() {
+            return this.verb + " " + this.url;
+        }
+    }
+
+    /**
+     * Actions that are posted to entity's URL, e.g. POST Messages/{id}/send
+     */
+    private static final List<String> ACTIONS = Arrays.asList("send", "reply", "replyall", "forward", "move", "copy",
+            "createreply", "createreplyall", "createforward", "accept", "tentativelyaccept", "decline");
+
+    private static final Pattern TOP = Pattern.compile("\\$top=(\\d+)");
+    private static final Pattern KEY = Pattern.compile("^([A-Za-z]+)\\('([^']*)'\\)$");
+
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int BODY_LENGTH = 2 * 1024;
+
+    private static final Map<String, List<String>> JSON_HEADERS =
+            Collections.singletonMap("Content-Type", Collections.singletonList("application/json"));
+    private static final Map<String, List<String>> THROTTLED_HEADERS =
+            Collections.singletonMap("Retry-After", Collections.singletonList("0"));
+
+    private final long minLatencyMillis;
+    private final long maxLatencyMillis;
+    private final double errorRate;
+
+    private final ScheduledExecutorService network = Executors.newScheduledThreadPool(4,
+            new ThreadFactoryBuilder().setNameFormat("MockOutlookServer-%d").setDaemon(true).build());
+    private final Random random = new Random();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong createdIds = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final List<RecordedRequest> received = Collections.synchronizedList(new ArrayList<RecordedRequest>());
+    private volatile Script script;
+    private volatile boolean down;
+
+    /**
+     * Server that answers right away and never injects errors, for replay tests
+     */
+    MockOutlookServer() {
+        this(0, 0, 0);
+    }
+
+    /**
+     * @param minLatencyMillis min delay before response
+     * @param maxLatencyMillis max delay before response
+     * @param errorRate share of requests, from 0 to 1, that are answered with an error
+     */
+    MockOutlookServer(long minLatencyMillis, long maxLatencyMillis, double errorRate) {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = Math.max(minLatencyMillis, maxLatencyMillis);
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    public Request createRequest() {
+        return new RequestImpl();
+    }
+
+    @Override
+    public ListenableFuture<Response> execute(final Request request) {
+        this.requests.incrementAndGet();
+        final RecordedRequest recorded = new RecordedRequest(request, this.down);
+        this.received.add(recorded);
+        onRequestStarted();
+
+        final SettableFuture<Response> result = SettableFuture.create();
+        final double dice;
+        final long delay;
+        synchronized (this.random) {
+            dice = this.random.nextDouble();
+            delay = this.minLatencyMillis + (long) (this.random.nextDouble() * (this.maxLatencyMillis - this.minLatencyMillis));
+        }
+
+        this.network.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Response response = null;
+                Throwable error = null;
+                try {
+                    if (recorded.refused) {
+                        error = new IOException("Connection refused (server is down)");
+                    } else if (dice < errorRate / 2) {
+                        injectedErrors.incrementAndGet();
+                        response = Fixtures.response(503, THROTTLED_HEADERS, null);
+                    } else if (dice < errorRate) {
+                        injectedErrors.incrementAndGet();
+                        error = new IOException("Connection reset (injected)");
+                    } else {
+                        Script current = script;
+                        response = current != null ? current.respond(recorded) : null;
+                        if (response == null) {
+                            response = respond(recorded);
+                        }
+                    }
+                } catch (Throwable e) {
+                    error = e;
+                }
+
+                // Request is answered before its callbacks run, they may send next requests right away
+                inFlight.decrementAndGet();
+                if (error != null) {
+                    result.setException(error);
+                } else {
+                    result.set(response);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        return result;
+    }
+
+    /**
+     * @param script scripted answers or null to send default ones only
+     */
+    void setScript(Script script) {
+        this.script = script;
+    }
+
+    /**
+     * @param down true to fail all requests that arrive from now on as if server was unreachable,
+     *             false to bring server back
+     */
+    void setDown(boolean down) {
+        this.down = down;
+    }
+
+    /**
+     * @return copy of requests received so far, in order of arrival
+     */
+    List<RecordedRequest> getReceived() {
+        synchronized (this.received) {
+            return new ArrayList<RecordedRequest>(this.received);
+        }
+    }
+
+    /**
+     * @param verb HTTP verb
+     * @param urlPart part of request URL, e.g. "/$batch"
+     * @return requests received so far with specified verb and URL that contains urlPart
+     */
+    List<RecordedRequest> getReceived(HttpVerb verb, String urlPart) {
+        List<RecordedRequest> matching = new ArrayList<RecordedRequest>();
+        for (RecordedRequest request : getReceived()) {
+            if (request.verb == verb && request.url.contains(urlPart)) {
+                matching.add(request);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * @return max number of requests being answered at the same time since server was created
+     */
+    int getMaxInFlight() {
+        return this.maxInFlight.get();
+    }
+
+    /**
+     * @return number of received requests, including retries
+     */
+    long getRequestsCount() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return number of injected errors
+     */
+    long getInjectedErrorsCount() {
+        return this.injectedErrors.get();
+    }
+
+    void shutdown() {
+        this.network.shutdownNow();
+    }
+
+    private void onRequestStarted() {
+        int current = this.inFlight.incrementAndGet();
+        int max;
+        while (current > (max = this.maxInFlight.get()) && !this.maxInFlight.compareAndSet(max, current)) {
+            // Retry until the max is updated or another request updates it with a bigger value
+        }
+    }
+
+    /**
+     * Default answer: entities and collections for reads, created or updated entities for writes,
+     * no content for deletes and actions like send, and per-request answers for $batch
+     */
+    private Response respond(RecordedRequest request) throws JSONException {
+        String path = request.url.split("\\?")[0];
+        if (request.verb == HttpVerb.POST && path.endsWith("/$batch")) {
+            return ok(batch(new JSONObject(request.body)));
+        }
+
+        Answer answer = answer(request.verb, request.url, request.body);
+        return Fixtures.response(answer.status, JSON_HEADERS, answer.body != null ? Fixtures.bytes(answer.body) : null);
+    }
+
+    private JSONObject batch(JSONObject batchRequest) throws JSONException {
+        JSONArray requests = batchRequest.getJSONArray("requests");
+        JSONArray responses = new JSONArray();
+        for (int i = 0; i < requests.length(); i++) {
+            JSONObject request = requests.getJSONObject(i);
+            JSONObject body = request.optJSONObject("body");
+            Answer answer = answer(HttpVerb.valueOf(request.getString("method")), request.getString("url"),
+                    body != null ? body.toString() : null);
+
+            JSONObject response = new JSONObject().put("id", request.getString("id")).put("status", answer.status);
+            if (answer.body != null) {
+                response.put("body", answer.body);
+            }
+            responses.put(response);
+        }
+        return new JSONObject().put("responses", responses);
+    }
+
+    private Answer answer(HttpVerb verb, String url, String body) throws JSONException {
+        int queryStart = url.indexOf('?');
+        String path = queryStart >= 0 ? url.substring(0, queryStart) : url;
+        String query = queryStart >= 0 ? url.substring(queryStart) : "";
+
+        List<String> segments = new ArrayList<String>(Arrays.asList(path.split("/")));
+        String action = null;
+        if (verb == HttpVerb.POST && segments.size() > 2
+                && ACTIONS.contains(segments.get(segments.size() - 1).toLowerCase(Locale.US))) {
+            action = segments.remove(segments.size() - 1).toLowerCase(Locale.US);
+        }
+
+        // Last path segment is either entity set or entity, addressed as Set('id') or Set/id
+        String last = segments.get(segments.size() - 1);
+        String set;
+        String id = null;
+
+        Matcher key = KEY.matcher(last);
+        if (key.matches()) {
+            set = key.group(1);
+            id = decode(key.group(2));
+        } else if (isEntitySet(last)) {
+            set = last;
+        } else {
+            set = segments.get(segments.size() - 2);
+            id = decode(last);
+        }
+
+        set = set.toLowerCase(Locale.US);
+        if (!isEntitySet(set) || (id != null && id.startsWith("missing"))) {
+            return new Answer(404, notFound(path));
+        }
+
+        if (id == null) {
+            if (verb == HttpVerb.POST) {
+                return new Answer(201, merge(entity(set, "AAMkNew" + this.createdIds.incrementAndGet(), 0), body));
+            }
+            return new Answer(200, collection(set, path, top(query)));
+        }
+        if (action != null) {
+            boolean createsEntity = action.equals("move") || action.equals("copy") || action.startsWith("create");
+            return createsEntity ? new Answer(201, entity(set, "AAMkNew" + this.createdIds.incrementAndGet(), 0)) : new Answer(202, null);
+        }
+        if (verb == HttpVerb.DELETE) {
+            return new Answer(204, null);
+        }
+        if (verb == HttpVerb.PATCH) {
+            return new Answer(200, merge(entity(set, id, 0), body));
+        }
+        return new Answer(200, entity(set, id, 0));
+    }
+
+    private static JSONObject merge(JSONObject entity, String body) throws JSONException {
+        if (body == null) {
+            return entity;
+        }
+        JSONObject changes = new JSONObject(body);
+        Iterator<?> keys = changes.keys();
+        while (keys.hasNext()) {
+            String name = keys.next().toString();
+            entity.put(name, changes.get(name));
+        }
+        return entity;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isEntitySet(String name) {
+        String set = name.toLowerCase(Locale.US);
+        return set.equals("messages") || set.equals("events") || set.equals("folders")
+                || set.equals("attachments") || set.equals("users");
+    }
+
+    private static int top(String query) {
+        Matcher top = TOP.matcher(query);
+        return top.find() ? Math.min(Integer.parseInt(top.group(1)), 100) : DEFAULT_PAGE_SIZE;
+    }
+
+    private static JSONObject collection(String set, String path, int size) throws JSONException {
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            items.put(entity(set, "AAMk" + i, i));
+        }
+        return new JSONObject()
+                .put("@odata.context", path + "/$metadata")
+                .put("value", items);
+    }
+
+    private static JSONObject entity(String set, String id, int index) throws JSONException {
+        if (set.equals("messages")) {
+            return Fixtures.message(index, BODY_LENGTH).put("Id", id);
+        }
+        if (set.equals("events")) {
+            return new JSONObject()
+                    .put("@odata.etag", "W/\"DwAAABYAAAB" + index + "\"")
+                    .put("Id", id)
+                    .put("Subject", "Weekly sync #" + index)
+                    .put("Start", "2015-06-01T10:00:00Z")
+                    .put("End", "2015-06-01T10:30:00Z")
+                    .put("Location", new JSONObject().put("DisplayName", "Conf Room 1"))
+                    .put("ShowAs", "Busy")
+                    .put("IsAllDay", false);
+        }
+        if (set.equals("folders")) {
+            return new JSONObject()
+                    .put("Id", id)
+                    .put("DisplayName", id)
+                    .put("ParentFolderId", "AAMkRoot")
+                    .put("ChildFolderCount", 0);
+        }
+        if (set.equals("attachments")) {
+            return new JSONObject()
+                    .put("@odata.type", "#Microsoft.OutlookServices.FileAttachment")
+                    .put("Id", id)
+                    .put("Name", "report-" + index + ".txt")
+                    .put("ContentType", "text/plain")
+                    .put("Size", 64)
+                    .put("IsInline", false)
+                    .put("ContentBytes", "UXVhcnRlcmx5IHJldmlldyBub3Rlcw==");
+        }
+        return new JSONObject()
+                .put("Id", id)
+                .put("DisplayName", "User " + index)
+                .put("Alias", "user" + index)
+                .put("MailboxGuid", "00000000-0000-0000-0000-00000000000" + (index % 10));
+    }
+
+    private static Response ok(JSONObject body) {
+        return Fixtures.response(200, JSON_HEADERS, Fixtures.bytes(body));
+    }
+
+    private static JSONObject notFound(String path) throws JSONException {
+        return new JSONObject().put("error", new JSONObject()
+                .put("code", "ErrorItemNotFound")
+                .put("message", "The specified object was not found in the store: " + path));
+    }
+
+    /**
+     * Status and body of default answer
+     */
+    private static final class Answer {
+        final int status;
+        final JSONObject body;
+
+        Answer(int status, JSONObject body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.outlookservices.odata.OutlookClient;
+import com.microsoft.services.odata.impl.DefaultDependencyResolver;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Soak test of native layer. Callers repeat a mix of message, event, folder, attachment and user reads
+ * through actions' handlers, dispatched on worker pool the same way OutlookServicesProxy.execute does it.
+ * Requests go through plugin's coalescer and scheduler to MockOutlookServer, plugged in
+ * through PluginDependencyResolver instead of network transport.
+ *
+ * Throughput, errors, latency percentiles, heap and threads are printed periodically. The test fails
+ * (exits with 1) when a call is not answered in time, calls stay pending after callers stop,
+ * or used heap or number of threads grows over the limit between the end of warmup and the end of run.
+ * Heap and threads are sampled while callers are paused and have no calls in flight, so samples
+ * don't depend on the amount of work in progress.
+ *
+ * Options are read from system properties, 'gradle soak' passes them from project properties, e.g. -Pcallers=50:
+ * soak.callers (20), soak.duration (60 s), soak.warmup (10 s), soak.reportInterval (10 s),
+ * soak.minLatency (5 ms), soak.maxLatency (50 ms), soak.errorRate (0.02), soak.maxHeapGrowth (16 MB),
+ * soak.maxThreadGrowth (4)
+ */
+final class SoakTest {
+
+    private static final String SERVICE_ROOT = Fixtures.SERVICE_ROOT;
+    private static final String TOKEN = "soak-test-token";
+
+    private static final long CALL_TIMEOUT_SECONDS = 60;
+    private static final long DRAIN_TIMEOUT_SECONDS = 10;
+    private static final long MB = 1024 * 1024;
+
+    private final int callers = Integer.getInteger("soak.callers", 20);
+    private final long durationSeconds = Long.getLong("soak.duration", 60);
+    private final long warmupSeconds = Long.getLong("soak.warmup", 10);
+    private final long reportIntervalSeconds = Long.getLong("soak.reportInterval", 10);
+    private final long maxHeapGrowthMb = Long.getLong("soak.maxHeapGrowth", 16);
+    private final int maxThreadGrowth = Integer.getInteger("soak.maxThreadGrowth", 4);
+
+    private final MockOutlookServer server = new MockOutlookServer(Long.getLong("soak.minLatency", 5),
+            Long.getLong("soak.maxLatency", 50), Double.parseDouble(System.getProperty("soak.errorRate", "0.02")));
+
+    private final ThreadPoolExecutor workerPool;
+    private final ThreadPoolExecutor streamPool;
+    private final RequestScheduler scheduler;
+    private final Metrics metrics;
+    private final Map<String, ActionHandler> actions = new HashMap<String, ActionHandler>();
+    private final DefaultDependencyResolver resolver;
+    private final OutlookClient client;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong callbackIds = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile boolean running = true;
+    private volatile boolean paused;
+
+    private SoakTest() {
+        CordovaPreferences preferences = new CordovaPreferences();
+        // Callers are limited by the service stand-in's latency, not by the default rate limit of a real mailbox
+        preferences.set(RequestScheduler.REQUESTS_PER_SECOND_PREFERENCE, 1000);
+        preferences.set(RequestScheduler.MAX_CONCURRENT_REQUESTS_PREFERENCE, 8);
+
+        this.workerPool = WorkerPool.create(preferences);
+        OutlookServicesMethodsImpl.setCallbackExecutor(this.workerPool);
+        this.streamPool = WorkerPool.createStreamPool(preferences);
+        OutlookServicesMethodsImpl.setStreamExecutor(this.streamPool);
+        this.scheduler = RequestScheduler.create(preferences);
+
+        this.resolver = new PluginDependencyResolver(TOKEN, Accounts.key(SERVICE_ROOT, TOKEN), this.server,
+                new RequestCoalescer(), this.scheduler);
+        this.client = new OutlookClient(SERVICE_ROOT, this.resolver);
+
+        this.metrics = new Metrics(null);
+        OutlookServicesActions.registerActions(this.actions);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SoakTest test = new SoakTest();
+        List<String> failures = test.run();
+
+        if (failures.isEmpty()) {
+            System.out.println("PASSED");
+            System.exit(0);
+        }
+        for (String failure : failures) {
+            System.out.println("FAILED: " + failure);
+        }
+        System.exit(1);
+    }
+
+    private List<String> run() throws Exception {
+        System.out.println(String.format(Locale.US, "Soak test: %d callers for %d s, warmup %d s",
+                this.callers, this.durationSeconds, this.warmupSeconds));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < this.callers; i++) {
+            Thread caller = new Thread(new Caller(i), "SoakTest-caller-" + i);
+            caller.setDaemon(true);
+            threads.add(caller);
+            caller.start();
+        }
+
+        long startNanos = System.nanoTime();
+        sleepUntil(startNanos, this.warmupSeconds);
+        pause();
+        long baselineHeap = usedHeapAfterGc();
+        int baselineThreads = Thread.activeCount();
+        report(startNanos, baselineHeap);
+        this.paused = false;
+
+        long nextReport = this.warmupSeconds + this.reportIntervalSeconds;
+        while (nextReport < this.durationSeconds) {
+            sleepUntil(startNanos, nextReport);
+            report(startNanos, usedHeap());
+            nextReport += this.reportIntervalSeconds;
+        }
+        sleepUntil(startNanos, this.durationSeconds);
+
+        pause();
+        long finalHeap = usedHeapAfterGc();
+        int finalThreads = Thread.activeCount();
+        report(startNanos, finalHeap);
+
+        this.running = false;
+        this.paused = false;
+        for (Thread caller : threads) {
+            caller.join(TimeUnit.SECONDS.toMillis(CALL_TIMEOUT_SECONDS));
+        }
+        long pending = waitForPendingCalls();
+
+        List<String> failures = new ArrayList<String>();
+        if (this.lost.get() > 0) {
+            failures.add(this.lost.get() + " calls are not answered in " + CALL_TIMEOUT_SECONDS + " s");
+        }
+        if (pending > 0) {
+            failures.add(pending + " calls are pending after callers stopped: " + this.metrics.toJson().getJSONObject("actions"));
+        }
+        long heapGrowth = finalHeap - baselineHeap;
+        if (heapGrowth > this.maxHeapGrowthMb * MB) {
+            failures.add(String.format(Locale.US, "used heap grew by %d MB, limit is %d MB",
+                    heapGrowth / MB, this.maxHeapGrowthMb));
+        }
+        if (finalThreads - baselineThreads > this.maxThreadGrowth) {
+            failures.add(String.format(Locale.US, "number of threads grew from %d to %d, limit is %d",
+                    baselineThreads, finalThreads, this.maxThreadGrowth));
+        }
+        if (this.calls.get() == 0) {
+            failures.add("no calls completed");
+        }
+
+        System.out.println(String.format(Locale.US, "Heap: %d MB after warmup, %d MB at the end; threads: %d after warmup, %d at the end",
+                baselineHeap / MB, finalHeap / MB, baselineThreads, finalThreads));
+        System.out.println("Actions: " + this.metrics.toJson().getJSONObject("actions").toString(2));
+
+        this.scheduler.shutdown();
+        this.workerPool.shutdown();
+        this.streamPool.shutdown();
+        this.server.shutdown();
+        return failures;
+    }
+
+    /**
+     * Dispatches action the same way as OutlookServicesProxy.execute: arguments are parsed and handler
+     * is called on worker pool, errors are sent back as error results
+     */
+    private void dispatch(final String action, final JSONArray args, CallbackContext callbackContext) {
+        final ActionHandler handler = this.actions.get(action);
+        final long start = System.nanoTime();
+        final MeteredCallbackContext metered = new MeteredCallbackContext(callbackContext, null,
+                this.metrics.get(action), start);
+
+        this.workerPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                Metrics.record(metered, Metrics.Phase.DISPATCH, start);
+                try {
+                    long parseStart = System.nanoTime();
+                    ODataMethodArgs methodArgs = ODataMethodArgs.parseInvocationArgs(args);
+
+                    long handlerStart = System.nanoTime();
+                    Metrics.record(metered, Metrics.Phase.PARSE, parseStart);
+
+                    handler.execute(metered, client, resolver, methodArgs);
+
+                    Metrics.record(metered, Metrics.Phase.HANDLER, handlerStart);
+                } catch (JSONException e) {
+                    String message = "Failed to parse arguments for method " + action + ": " + e.getMessage();
+                    metered.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION, message));
+                } catch (Throwable e) {
+                    String message = "Method " + action + " failed with error: " + e.getMessage();
+                    metered.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, message));
+                } finally {
+                    metered.onHandlerReturned();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops callers from starting new calls and waits for calls in flight to complete
+     */
+    private void pause() throws InterruptedException {
+        this.paused = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CALL_TIMEOUT_SECONDS);
+        while (this.inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * @return number of calls still pending after waiting for them to complete
+     */
+    private long waitForPendingCalls() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        long pending;
+        while ((pending = pendingCalls()) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        return pending;
+    }
+
+    private long pendingCalls() throws JSONException {
+        JSONObject actions = this.metrics.toJson().getJSONObject("actions");
+        long pending = 0;
+        Iterator<?> names = actions.keys();
+        while (names.hasNext()) {
+            pending += actions.getJSONObject(names.next().toString()).getLong("pending");
+        }
+        return pending;
+    }
+
+    private void report(long startNanos, long usedHeap) throws JSONException {
+        long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos));
+        System.out.println(String.format(Locale.US,
+                "[%4d s] calls %d (%d/s), errors %d, lost %d, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, "
+                        + "pending %d, heap %d MB, threads %d, requests %d, injected errors %d, throttled %d, retried %d",
+                elapsed, this.calls.get(), this.calls.get() / elapsed, this.errors.get(), this.lost.get(),
+                this.latency.getPercentile(50) / 1000.0, this.latency.getPercentile(90) / 1000.0,
+                this.latency.getPercentile(99) / 1000.0, pendingCalls(), usedHeap / MB, Thread.activeCount(),
+                this.server.getRequestsCount(), this.server.getInjectedErrorsCount(),
+                this.scheduler.getThrottledCount(), this.scheduler.getRetriedCount()));
+    }
+
+    private static void sleepUntil(long startNanos, long seconds) throws InterruptedException {
+        long remaining = startNanos + TimeUnit.SECONDS.toNanos(seconds) - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return usedHeap();
+    }
+
+    /**
+     * Caller that repeats random reads, one at a time, and waits for the final result of each
+     */
+    private final class Caller implements Runnable {
+        private final Random random;
+
+        Caller(int seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    if (paused) {
+                        Thread.sleep(10);
+                        continue;
+                    }
+                    inFlight.incrementAndGet();
+                    try {
+                        call();
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void call() throws JSONException, InterruptedException {
+            JSONArray args = new JSONArray().put(TOKEN).put(SERVICE_ROOT);
+            String action;
+            int n = this.random.nextInt(100);
+
+            if (n < 30) {
+                action = "getMessages";
+                args.put(SERVICE_ROOT + "/me/Folders/Inbox/Messages")
+                        .put("{\"top\":25,\"fields\":\"Subject,From,DateTimeReceived,IsRead\",\"previewLength\":100}");
+            } else if (n < 55) {
+                action = "getMessage";
+                // Every tenth message is missing, its read fails with 404
+                String id = this.random.nextInt(10) == 0 ? "missing-" + this.random.nextInt(1000) : "AAMk" + this.random.nextInt(1000);
+                args.put(SERVICE_ROOT + "/me/Messages/" + id);
+            } else if (n < 75) {
+                action = "getEvents";
+                args.put(SERVICE_ROOT + "/me/Events").put("{\"top\":10}");
+            } else if (n < 85) {
+                action = "getFolder";
+                args.put(SERVICE_ROOT + "/me/Folders/Inbox");
+            } else if (n < 95) {
+                action = "getAttachments";
+                args.put(SERVICE_ROOT + "/me/Messages/AAMk" + this.random.nextInt(1000) + "/Attachments").put("{}");
+            } else {
+                action = "getUsers";
+                args.put(SERVICE_ROOT + "/Users").put("{\"top\":10}");
+            }
+
+            final CountDownLatch done = new CountDownLatch(1);
+            final boolean[] failed = new boolean[1];
+            CordovaWebView webView = new CordovaWebView() {
+                @Override
+                public void sendPluginResult(PluginResult result, String callbackId) {
+                    if (!result.getKeepCallback()) {
+                        failed[0] = result.getStatus() != PluginResult.Status.OK.ordinal();
+                        done.countDown();
+                    }
+                }
+            };
+
+            long start = System.nanoTime();
+            dispatch(action, args, new CallbackContext("SoakTest" + callbackIds.incrementAndGet(), webView));
+            if (!done.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                lost.incrementAndGet();
+                return;
+            }
+
+            latency.record(System.nanoTime() - start);
+            calls.incrementAndGet();
+            if (failed[0]) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.app;
+
+import android.content.Context;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for Android's Activity, reduced to Context with application's directories
+ */
+public class Activity extends Context {
+
+    /**
+     * @param dataDir application's data directory, files and cache directories are created in it
+     */
+    public Activity(File dataDir) {
+        super(dataDir);
+    }
+}
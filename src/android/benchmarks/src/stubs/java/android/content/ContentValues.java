@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for Android's ContentValues
+ */
+public final class ContentValues {
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    public void put(String key, String value) {
+        this.values.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        this.values.put(key, value);
+    }
+
+    public Object get(String key) {
+        return this.values.get(key);
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.content;
+
+import android.net.ConnectivityManager;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for Android's Context. Keeps registered receivers, so tests can send broadcasts to them,
+ * and application's directories, if data directory is set
+ */
+public class Context {
+
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+    private final Map<BroadcastReceiver, IntentFilter> receivers = new LinkedHashMap<BroadcastReceiver, IntentFilter>();
+    private final ConnectivityManager connectivity = new ConnectivityManager();
+    private final File dataDir;
+
+    public Context() {
+        this(null);
+    }
+
+    /**
+     * @param dataDir application's data directory, files and cache directories are created in it
+     */
+    public Context(File dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public File getFilesDir() {
+        return directory("files");
+    }
+
+    public File getCacheDir() {
+        return directory("cache");
+    }
+
+    public Object getSystemService(String name) {
+        return CONNECTIVITY_SERVICE.equals(name) ? this.connectivity : null;
+    }
+
+    /**
+     * There are no sticky broadcasts, so registration without receiver returns null
+     */
+    public synchronized Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        if (receiver != null) {
+            this.receivers.put(receiver, filter);
+        }
+        return null;
+    }
+
+    public synchronized void unregisterReceiver(BroadcastReceiver receiver) {
+        if (this.receivers.remove(receiver) == null) {
+            throw new IllegalArgumentException("Receiver not registered: " + receiver);
+        }
+    }
+
+    /**
+     * Delivers intent to matching receivers on calling thread
+     */
+    public void sendBroadcast(Intent intent) {
+        Map<BroadcastReceiver, IntentFilter> registered;
+        synchronized (this) {
+            registered = new LinkedHashMap<BroadcastReceiver, IntentFilter>(this.receivers);
+        }
+        for (Map.Entry<BroadcastReceiver, IntentFilter> receiver : registered.entrySet()) {
+            if (receiver.getValue().hasAction(intent.getAction())) {
+                receiver.getKey().onReceive(this, intent);
+            }
+        }
+    }
+
+    private File directory(String name) {
+        if (this.dataDir == null) {
+            throw new IllegalStateException("Context has no data directory");
+        }
+        File directory = new File(this.dataDir, name);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Failed to create " + directory);
+        }
+        return directory;
+    }
+}
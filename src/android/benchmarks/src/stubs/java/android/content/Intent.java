@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM stand-in for Android's Intent, with boolean extras only: int extras are read as missing
+ */
+public class Intent {
+
+    public static final String ACTION_BATTERY_CHANGED = "android.intent.action.BATTERY_CHANGED";
+
+    private final String action;
+    private final Map<String, Boolean> extras = new HashMap<String, Boolean>();
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return this.action;
+    }
+
+    public Intent putExtra(String name, boolean value) {
+        this.extras.put(name, value);
+        return this;
+    }
+
+    public boolean getBooleanExtra(String name, boolean defaultValue) {
+        Boolean value = this.extras.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getIntExtra(String name, int defaultValue) {
+        return defaultValue;
+    }
+}
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.content;
+
+/**
+ * JVM stand-in for Android's IntentFilter, with a single action
+ */
+public class IntentFilter {
+
+    private final String action;
+
+    public IntentFilter(String action) {
+        this.action = action;
+    }
+
+    public final boolean hasAction(String action) {
+        return this.action.equals(action);
+    }
+}
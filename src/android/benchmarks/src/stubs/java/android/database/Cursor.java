@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.database;
+
+/**
+ * JVM stand-in for Android's Cursor, reduced to the reads done by plugin
+ */
+public interface Cursor {
+
+    boolean moveToFirst();
+
+    boolean moveToNext();
+
+    String getString(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    byte[] getBlob(int columnIndex);
+
+    void close();
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * JVM stand-in for Android's SQLiteDatabase that keeps nothing: writes are dropped and queries return no rows,
+ * so local search's index doesn't take part in measurements
+ */
+public class SQLiteDatabase {
+
+    public interface CursorFactory {
+    }
+
+    private static final Cursor EMPTY = new Cursor() {
+        @Override
+        public boolean moveToFirst() {
+            return false;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return false;
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            throw new IllegalStateException("Cursor is empty");
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            throw new IllegalStateException("Cursor is empty");
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            throw new IllegalStateException("Cursor is empty");
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private long lastRowId;
+
+    public boolean enableWriteAheadLogging() {
+        return true;
+    }
+
+    public void beginTransaction() {
+    }
+
+    public void setTransactionSuccessful() {
+    }
+
+    public void endTransaction() {
+    }
+
+    public void execSQL(String sql) {
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+    }
+
+    public synchronized long insertOrThrow(String table, String nullColumnHack, ContentValues values) {
+        return ++this.lastRowId;
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        return 0;
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        return EMPTY;
+    }
+
+    public void close() {
+    }
+}
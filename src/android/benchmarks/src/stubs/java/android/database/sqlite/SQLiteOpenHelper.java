@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * JVM stand-in for Android's SQLiteOpenHelper, opens the database stand-in that keeps nothing
+ */
+public abstract class SQLiteOpenHelper {
+
+    private SQLiteDatabase database;
+
+    public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
+    }
+
+    public void onConfigure(SQLiteDatabase db) {
+    }
+
+    public abstract void onCreate(SQLiteDatabase db);
+
+    public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+    public synchronized SQLiteDatabase getWritableDatabase() {
+        if (this.database == null) {
+            this.database = new SQLiteDatabase();
+            onConfigure(this.database);
+            onCreate(this.database);
+        }
+        return this.database;
+    }
+
+    public SQLiteDatabase getReadableDatabase() {
+        return getWritableDatabase();
+    }
+
+    public synchronized void close() {
+        if (this.database != null) {
+            this.database.close();
+            this.database = null;
+        }
+    }
+}
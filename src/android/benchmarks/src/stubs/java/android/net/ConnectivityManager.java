@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.net;
+
+/**
+ * JVM stand-in for Android's ConnectivityManager: constants of connectivity broadcast and an unmetered network
+ */
+public class ConnectivityManager {
+
+    public static final String CONNECTIVITY_ACTION = "android.net.conn.CONNECTIVITY_CHANGE";
+    public static final String EXTRA_NO_CONNECTIVITY = "noConnectivity";
+
+    public static final int TYPE_WIFI = 1;
+
+    private final NetworkInfo network = new NetworkInfo();
+
+    public NetworkInfo getActiveNetworkInfo() {
+        return this.network;
+    }
+
+    public boolean isActiveNetworkMetered() {
+        return false;
+    }
+}
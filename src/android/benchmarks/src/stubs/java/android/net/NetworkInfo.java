@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.net;
+
+/**
+ * JVM stand-in for Android's NetworkInfo, always a connected Wi-Fi network
+ */
+public class NetworkInfo {
+
+    public boolean isConnected() {
+        return true;
+    }
+
+    public int getType() {
+        return ConnectivityManager.TYPE_WIFI;
+    }
+}
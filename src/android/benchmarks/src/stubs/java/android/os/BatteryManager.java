@@ -0,0 +1,21 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.os;
+
+/**
+ * JVM stand-in for Android's BatteryManager, constants of battery broadcast only
+ */
+public class BatteryManager {
+
+    public static final String EXTRA_STATUS = "status";
+    public static final String EXTRA_LEVEL = "level";
+    public static final String EXTRA_SCALE = "scale";
+
+    public static final int BATTERY_STATUS_CHARGING = 2;
+    public static final int BATTERY_STATUS_FULL = 5;
+}
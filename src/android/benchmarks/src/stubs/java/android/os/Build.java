@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.os;
+
+/**
+ * JVM stand-in for Android's Build, used by SDK to build User-Agent header and by plugin's version checks
+ */
+public class Build {
+
+    public static final String CPU_ABI = System.getProperty("os.arch");
+
+    public static class VERSION {
+        public static final String RELEASE = "jvm-" + System.getProperty("java.version");
+        public static final int SDK_INT = 0;
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN = 16;
+    }
+}
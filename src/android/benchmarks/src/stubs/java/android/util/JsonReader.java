@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * JVM stand-in for Android's JsonReader. Android's reader is derived from Gson's one,
+ * so calls are passed to Gson's reader as is
+ */
+public final class JsonReader implements Closeable {
+
+    private final com.google.gson.stream.JsonReader reader;
+
+    public JsonReader(Reader in) {
+        this.reader = new com.google.gson.stream.JsonReader(in);
+    }
+
+    public void setLenient(boolean lenient) {
+        this.reader.setLenient(lenient);
+    }
+
+    public void beginArray() throws IOException {
+        this.reader.beginArray();
+    }
+
+    public void endArray() throws IOException {
+        this.reader.endArray();
+    }
+
+    public void beginObject() throws IOException {
+        this.reader.beginObject();
+    }
+
+    public void endObject() throws IOException {
+        this.reader.endObject();
+    }
+
+    public boolean hasNext() throws IOException {
+        return this.reader.hasNext();
+    }
+
+    public JsonToken peek() throws IOException {
+        return JsonToken.valueOf(this.reader.peek().name());
+    }
+
+    public String nextName() throws IOException {
+        return this.reader.nextName();
+    }
+
+    public String nextString() throws IOException {
+        return this.reader.nextString();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        return this.reader.nextBoolean();
+    }
+
+    public void nextNull() throws IOException {
+        this.reader.nextNull();
+    }
+
+    public double nextDouble() throws IOException {
+        return this.reader.nextDouble();
+    }
+
+    public long nextLong() throws IOException {
+        return this.reader.nextLong();
+    }
+
+    public int nextInt() throws IOException {
+        return this.reader.nextInt();
+    }
+
+    public void skipValue() throws IOException {
+        this.reader.skipValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
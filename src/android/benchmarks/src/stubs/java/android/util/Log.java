@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package android.util;
+
+/**
+ * JVM stand-in for Android's Log, used by SDK's logger. Messages are dropped: SDK logs every failed
+ * response as an error, so expected failures would flood the output
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int v(String tag, String message) {
+        return 0;
+    }
+
+    public static int d(String tag, String message) {
+        return 0;
+    }
+
+    public static int i(String tag, String message) {
+        return 0;
+    }
+
+    public static int w(String tag, String message) {
+        return 0;
+    }
+
+    public static int e(String tag, String message) {
+        return 0;
+    }
+}
@@ -0,0 +1,18 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package org.apache.cordova;
+
+import android.app.Activity;
+
+/**
+ * JVM stand-in for Cordova's CordovaInterface, reduced to plugin's activity
+ */
+public interface CordovaInterface {
+
+    Activity getActivity();
+}
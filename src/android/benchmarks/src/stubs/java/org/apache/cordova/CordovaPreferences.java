@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * JVM stand-in for Cordova's preferences, filled by harness instead of config.xml
+ */
+public class CordovaPreferences {
+
+    private final Map<String, String> prefs = new HashMap<String, String>();
+
+    public void set(String name, String value) {
+        this.prefs.put(name.toLowerCase(Locale.ENGLISH), value);
+    }
+
+    public void set(String name, int value) {
+        set(name, String.valueOf(value));
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = this.prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    public int getInteger(String name, int defaultValue) {
+        String value = this.prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? Integer.decode(value) : defaultValue;
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        String value = this.prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? Double.valueOf(value) : defaultValue;
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = this.prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,16 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package org.apache.cordova;
+
+/**
+ * JVM stand-in for Cordova's WebView, reduced to receiving plugin results
+ */
+public interface CordovaWebView {
+
+    void sendPluginResult(PluginResult result, String callbackId);
+}
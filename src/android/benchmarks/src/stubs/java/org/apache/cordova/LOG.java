@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package org.apache.cordova;
+
+/**
+ * JVM stand-in for Cordova's LOG. Debug and info messages are dropped, so they don't skew measurements,
+ * warnings and errors are printed to stderr
+ */
+public class LOG {
+
+    public static void d(String tag, String message) {
+    }
+
+    public static void d(String tag, String message, Throwable e) {
+    }
+
+    public static void d(String tag, String message, Object... args) {
+    }
+
+    public static void i(String tag, String message) {
+    }
+
+    public static void i(String tag, String message, Throwable e) {
+    }
+
+    public static void w(String tag, String message) {
+        print("W", tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable e) {
+        print("W", tag, message, e);
+    }
+
+    public static void w(String tag, String message, Object... args) {
+        print("W", tag, String.format(message, args), null);
+    }
+
+    public static void e(String tag, String message) {
+        print("E", tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable e) {
+        print("E", tag, message, e);
+    }
+
+    private static void print(String level, String tag, String message, Throwable e) {
+        System.err.println(level + "/" + tag + ": " + message);
+        if (e != null) {
+            e.printStackTrace();
+        }
+    }
+}
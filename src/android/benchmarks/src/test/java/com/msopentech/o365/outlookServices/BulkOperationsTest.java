@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.services.odata.interfaces.HttpVerb;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bulk message actions against local stand-in of the service: entities' addressing, per-item results
+ * and partial failures
+ */
+public class BulkOperationsTest {
+
+    private static final String TOKEN = PluginHarness.token("alexd@contoso.com");
+    private static final String MESSAGES = PluginHarness.SERVICE_ROOT + "/Me/Messages";
+
+    private final PluginHarness harness = new PluginHarness();
+
+    @After
+    public void tearDown() {
+        this.harness.close();
+    }
+
+    @Test
+    public void addressesEntitiesByEncodedKey() throws Exception {
+        // Real Ids are base64 and may contain '/' and '+'
+        JSONArray ids = new JSONArray().put("AAMk/AGI2+THVS==").put("AAMk1");
+
+        JSONObject result = new JSONObject(this.harness.callForResult(TOKEN, "updateMessages", MESSAGES,
+                ids.toString(), "{\"IsRead\":true}"));
+
+        List<MockOutlookServer.RecordedRequest> batches = this.harness.server.getReceived(HttpVerb.POST, "/$batch");
+        assertEquals(1, batches.size());
+        JSONArray requests = new JSONObject(batches.get(0).body).getJSONArray("requests");
+        assertEquals("/Me/Messages('AAMk%2FAGI2+THVS==')", requests.getJSONObject(0).getString("url"));
+        assertEquals("/Me/Messages('AAMk1')", requests.getJSONObject(1).getString("url"));
+
+        assertEquals(2, result.getInt("succeeded"));
+        JSONArray items = result.getJSONArray("results");
+        for (int i = 0; i < ids.length(); i++) {
+            assertEquals(ids.getString(i), items.getJSONObject(i).getString("id"));
+            assertEquals(ids.getString(i), items.getJSONObject(i).getJSONObject("body").getString("Id"));
+            assertTrue(items.getJSONObject(i).getJSONObject("body").getBoolean("IsRead"));
+        }
+    }
+
+    @Test
+    public void reportsResultOfEveryItemInOrder() throws Exception {
+        int count = 25;
+        JSONArray ids = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            ids.put(i % 5 == 2 ? "missing-" + i : "AAMk" + i);
+        }
+
+        JSONObject result = new JSONObject(this.harness.callForResult(TOKEN, "moveMessages", MESSAGES,
+                ids.toString(), "DeletedItems"));
+
+        assertEquals(2, this.harness.server.getReceived(HttpVerb.POST, "/$batch").size());
+        assertEquals(20, result.getInt("succeeded"));
+        assertEquals(5, result.getInt("failed"));
+
+        JSONArray items = result.getJSONArray("results");
+        assertEquals(count, items.length());
+        for (int i = 0; i < count; i++) {
+            JSONObject item = items.getJSONObject(i);
+            assertEquals(ids.getString(i), item.getString("id"));
+            if (i % 5 == 2) {
+                assertEquals(404, item.getInt("status"));
+                assertEquals("ErrorItemNotFound", item.getJSONObject("body").getJSONObject("error").getString("code"));
+            } else {
+                assertEquals(201, item.getInt("status"));
+            }
+        }
+    }
+
+    @Test
+    public void reportsItemsOfUnansweredBatchAsFailed() throws Exception {
+        this.harness.server.setDown(true);
+        JSONArray ids = new JSONArray().put("AAMk1").put("AAMk2").put("AAMk3");
+
+        JSONObject result = new JSONObject(this.harness.callForResult(TOKEN, "deleteMessages", MESSAGES, ids.toString()));
+
+        assertEquals(0, result.getInt("succeeded"));
+        assertEquals(3, result.getInt("failed"));
+        JSONArray items = result.getJSONArray("results");
+        for (int i = 0; i < ids.length(); i++) {
+            assertEquals(ids.getString(i), items.getJSONObject(i).getString("id"));
+            assertEquals(0, items.getJSONObject(i).getInt("status"));
+            assertTrue(items.getJSONObject(i).getString("error").contains("Connection refused"));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.microsoft.services.odata.interfaces.HttpVerb;
+
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * syncChanges action against responses recorded from the service: full sync, delta sync, expired sync state,
+ * and sync states of different accounts and calendar view windows
+ */
+public class DeltaSyncTest {
+
+    private static final String ALEX = PluginHarness.token("alexd@contoso.com");
+    private static final String MEGAN = PluginHarness.token("meganb@contoso.com");
+
+    private static final String MESSAGES = PluginHarness.SERVICE_ROOT + "/Me/Messages";
+    private static final String CALENDAR_VIEW = PluginHarness.SERVICE_ROOT + "/Me/CalendarView";
+
+    private static final String FIRST_WEEK = "{\"startDateTime\":\"2015-06-01T00:00:00Z\",\"endDateTime\":\"2015-06-08T00:00:00Z\"}";
+    private static final String SECOND_WEEK = "{\"startDateTime\":\"2015-06-08T00:00:00Z\",\"endDateTime\":\"2015-06-15T00:00:00Z\"}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PluginHarness harness = new PluginHarness();
+
+    @Before
+    public void setUp() throws Exception {
+        new DeltaSync(new StateStore(this.folder.newFolder("sync")), MoreExecutors.directExecutor())
+                .registerActions(this.harness.actions);
+        this.harness.server.setScript(new RecordedResponses("recordings/delta-sync.json"));
+    }
+
+    @After
+    public void tearDown() {
+        this.harness.close();
+    }
+
+    @Test
+    public void downloadsWholeCollectionAndThenOnlyChanges() throws Exception {
+        List<JSONObject> full = sync(ALEX, MESSAGES, "{}");
+        assertEquals(2, full.size());
+        assertEquals(ids("AAMk1", "AAMk2"), ids(full.get(0).getJSONArray("changed")));
+        assertEquals(ids("AAMk3"), ids(full.get(1).getJSONArray("changed")));
+        assertTrue(full.get(0).getBoolean("full"));
+        assertFalse(full.get(0).getBoolean("done"));
+        assertTrue(full.get(1).getBoolean("done"));
+
+        List<JSONObject> delta = sync(ALEX, MESSAGES, "{}");
+        assertEquals(1, delta.size());
+        assertFalse(delta.get(0).getBoolean("full"));
+        assertEquals(ids("AAMk2"), ids(delta.get(0).getJSONArray("changed")));
+        assertEquals("AAMk1", delta.get(0).getJSONArray("deleted").getString(0));
+
+        List<String> urls = receivedUrls();
+        assertEquals(MESSAGES + "?$deltatoken=messages1", urls.get(urls.size() - 1));
+        for (MockOutlookServer.RecordedRequest request : this.harness.server.getReceived()) {
+            assertTrue(request.headers.get("Prefer").startsWith("odata.track-changes"));
+        }
+    }
+
+    @Test
+    public void startsOverWhenSyncStateIsExpired() throws Exception {
+        sync(ALEX, MESSAGES, "{}");
+        sync(ALEX, MESSAGES, "{}");
+
+        List<PluginResult> expired = this.harness.call(ALEX, "syncChanges", MESSAGES, "{}");
+        assertEquals(PluginResult.Status.ERROR.ordinal(), expired.get(expired.size() - 1).getStatus());
+
+        List<JSONObject> full = sync(ALEX, MESSAGES, "{}");
+        assertTrue(full.get(0).getBoolean("full"));
+        assertEquals(MESSAGES, receivedUrls().get(receivedUrls().size() - 2));
+    }
+
+    @Test
+    public void keepsSyncStatesOfAccountsApart() throws Exception {
+        sync(ALEX, MESSAGES, "{}");
+
+        List<JSONObject> other = sync(MEGAN, MESSAGES, "{}");
+        assertTrue("other account starts with full sync", other.get(0).getBoolean("full"));
+        assertEquals(MESSAGES, receivedUrls().get(receivedUrls().size() - 2));
+
+        List<JSONObject> delta = sync(ALEX, MESSAGES, "{}");
+        assertFalse(delta.get(0).getBoolean("full"));
+    }
+
+    @Test
+    public void keepsSyncStatesOfCalendarViewWindowsApart() throws Exception {
+        List<JSONObject> firstWeek = sync(ALEX, CALENDAR_VIEW, FIRST_WEEK);
+        assertEquals(ids("AAMkEvent1"), ids(firstWeek.get(0).getJSONArray("changed")));
+
+        List<JSONObject> secondWeek = sync(ALEX, CALENDAR_VIEW, SECOND_WEEK);
+        assertTrue(secondWeek.get(0).getBoolean("full"));
+        assertEquals(ids("AAMkEvent2"), ids(secondWeek.get(0).getJSONArray("changed")));
+
+        List<JSONObject> firstWeekDelta = sync(ALEX, CALENDAR_VIEW, FIRST_WEEK);
+        assertFalse(firstWeekDelta.get(0).getBoolean("full"));
+        assertEquals(CALENDAR_VIEW + "?$deltatoken=week1", receivedUrls().get(receivedUrls().size() - 1));
+    }
+
+    private List<JSONObject> sync(String token, String path, String options) throws Exception {
+        List<JSONObject> changeSets = new ArrayList<JSONObject>();
+        for (PluginResult result : this.harness.call(token, "syncChanges", path, options)) {
+            assertEquals(result.getStrMessage(), PluginResult.Status.OK.ordinal(), result.getStatus());
+            changeSets.add(new JSONObject(result.getStrMessage()));
+        }
+        return changeSets;
+    }
+
+    private List<String> receivedUrls() {
+        List<String> urls = new ArrayList<String>();
+        for (MockOutlookServer.RecordedRequest request : this.harness.server.getReceived(HttpVerb.GET, "")) {
+            urls.add(request.url);
+        }
+        return urls;
+    }
+
+    private static List<String> ids(String... ids) {
+        List<String> list = new ArrayList<String>();
+        for (String id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static List<String> ids(JSONArray items) throws Exception {
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < items.length(); i++) {
+            list.add(items.getJSONObject(i).getString("Id"));
+        }
+        return list;
+    }
+}
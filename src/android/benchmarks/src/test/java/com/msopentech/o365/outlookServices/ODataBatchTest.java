@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.services.odata.interfaces.HttpVerb;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * executeBatch action against local stand-in of the service: round-trips, results' order and errors
+ */
+public class ODataBatchTest {
+
+    private static final String TOKEN = PluginHarness.token("alexd@contoso.com");
+    private static final String MESSAGES = PluginHarness.SERVICE_ROOT + "/Me/Messages/";
+
+    private final PluginHarness harness = new PluginHarness();
+
+    @After
+    public void tearDown() {
+        this.harness.close();
+    }
+
+    @Test
+    public void sendsOperationsInBatchesOfTwentyAndKeepsTheirOrder() throws Exception {
+        int count = 45;
+        JSONArray operations = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            operations.put(new JSONObject()
+                    .put("action", "updateMessage")
+                    .put("path", MESSAGES + "AAMk" + i)
+                    .put("args", new JSONArray().put(new JSONObject().put("Subject", "Updated #" + i).toString())));
+        }
+
+        JSONArray results = new JSONArray(this.harness.callForResult(TOKEN, "executeBatch", PluginHarness.SERVICE_ROOT,
+                operations.toString()));
+
+        List<MockOutlookServer.RecordedRequest> batches = this.harness.server.getReceived(HttpVerb.POST, "/$batch");
+        assertEquals((count + ODataBatch.MAX_OPERATIONS_PER_BATCH - 1) / ODataBatch.MAX_OPERATIONS_PER_BATCH, batches.size());
+        assertEquals("only $batch requests are sent", batches.size(), this.harness.server.getReceived().size());
+
+        int sent = 0;
+        for (MockOutlookServer.RecordedRequest batch : batches) {
+            JSONArray requests = new JSONObject(batch.body).getJSONArray("requests");
+            assertTrue(requests.length() <= ODataBatch.MAX_OPERATIONS_PER_BATCH);
+            sent += requests.length();
+            for (int i = 0; i < requests.length(); i++) {
+                JSONObject request = requests.getJSONObject(i);
+                int index = Integer.parseInt(request.getString("id"));
+                assertEquals("PATCH", request.getString("method"));
+                assertEquals("/Me/Messages/AAMk" + index, request.getString("url"));
+            }
+        }
+        assertEquals(count, sent);
+
+        assertEquals(count, results.length());
+        for (int i = 0; i < count; i++) {
+            JSONObject result = results.getJSONObject(i);
+            assertEquals(200, result.getInt("status"));
+            assertEquals("AAMk" + i, result.getJSONObject("body").getString("Id"));
+            assertEquals("Updated #" + i, result.getJSONObject("body").getString("Subject"));
+        }
+    }
+
+    @Test
+    public void reportsErrorsPerOperation() throws Exception {
+        JSONArray operations = new JSONArray()
+                .put(new JSONObject().put("action", "getMessage").put("path", MESSAGES + "AAMk0"))
+                // Download to file has no single request equivalent, ODataOperation.fromAction rejects it
+                .put(new JSONObject().put("action", "downloadAttachmentToFile").put("path", MESSAGES + "AAMk1/Attachments/AAMk2"))
+                .put(new JSONObject().put("action", "deleteMessage").put("path", MESSAGES + "missing-3"))
+                .put(new JSONObject().put("action", "send").put("path", MESSAGES + "AAMk4"));
+
+        JSONArray results = new JSONArray(this.harness.callForResult(TOKEN, "executeBatch", PluginHarness.SERVICE_ROOT,
+                operations.toString()));
+
+        assertEquals(4, results.length());
+        assertEquals(200, results.getJSONObject(0).getInt("status"));
+        assertEquals("AAMk0", results.getJSONObject(0).getJSONObject("body").getString("Id"));
+
+        assertEquals(0, results.getJSONObject(1).getInt("status"));
+        assertEquals("Action downloadAttachmentToFile can't be sent as a single OData request",
+                results.getJSONObject(1).getString("error"));
+
+        assertEquals(404, results.getJSONObject(2).getInt("status"));
+        assertEquals("ErrorItemNotFound", results.getJSONObject(2).getJSONObject("body").getJSONObject("error").getString("code"));
+
+        assertEquals(202, results.getJSONObject(3).getInt("status"));
+
+        // Operation that can't be mapped is not sent
+        List<MockOutlookServer.RecordedRequest> batches = this.harness.server.getReceived(HttpVerb.POST, "/$batch");
+        assertEquals(1, batches.size());
+        assertEquals(3, new JSONObject(batches.get(0).body).getJSONArray("requests").length());
+    }
+
+    @Test
+    public void failsAllOperationsOfBatchThatIsNotAnswered() throws Exception {
+        this.harness.server.setDown(true);
+        JSONArray operations = new JSONArray();
+        for (int i = 0; i < 25; i++) {
+            operations.put(new JSONObject().put("action", "deleteMessage").put("path", MESSAGES + "AAMk" + i));
+        }
+
+        JSONArray results = new JSONArray(this.harness.callForResult(TOKEN, "executeBatch", PluginHarness.SERVICE_ROOT,
+                operations.toString()));
+
+        assertEquals(25, results.length());
+        for (int i = 0; i < results.length(); i++) {
+            assertEquals(0, results.getJSONObject(i).getInt("status"));
+            assertTrue(results.getJSONObject(i).getString("error").contains("Connection refused"));
+        }
+    }
+}
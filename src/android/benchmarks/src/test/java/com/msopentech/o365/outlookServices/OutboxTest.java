@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Outbox replay against local stand-in of the service that goes down and comes back: queue order,
+ * idempotency keys and access tokens of different accounts
+ */
+public class OutboxTest {
+
+    private static final String ALEX = PluginHarness.token("alexd@contoso.com");
+    private static final String MEGAN = PluginHarness.token("meganb@contoso.com");
+    private static final String MESSAGES = PluginHarness.SERVICE_ROOT + "/Me/Messages/";
+
+    private static final long REPLAY_TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PluginHarness harness = new PluginHarness();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Context context = new Context();
+    private Outbox outbox;
+
+    @Before
+    public void setUp() throws Exception {
+        this.outbox = new Outbox(new OperationLog(new File(this.folder.getRoot(), "operations.log")), this.executor);
+        this.outbox.registerActions(this.harness.actions);
+        this.outbox.start(this.context);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.outbox.stop(this.context);
+        this.executor.shutdownNow();
+        this.executor.awaitTermination(5, TimeUnit.SECONDS);
+        this.harness.close();
+    }
+
+    @Test
+    public void sendsQueuedOperationsInOrderOnceServerIsBack() throws Exception {
+        this.harness.server.setDown(true);
+
+        String first = enqueue(ALEX, "AAMk1", "updateMessage", "update-1", "{\"IsRead\":true}").getString("id");
+        String second = enqueue(ALEX, "AAMk2", "send", "send-2").getString("id");
+        String third = enqueue(ALEX, "AAMk3", "updateMessage", "update-3", "{\"Subject\":\"Updated\"}").getString("id");
+
+        // Duplicate of queued operation is answered with the queued one
+        JSONObject duplicate = enqueue(ALEX, "AAMk2", "send", "send-2");
+        assertEquals(second, duplicate.getString("id"));
+
+        awaitReplayStopped();
+        JSONArray pending = pendingOperations();
+        assertEquals(3, pending.length());
+        assertEquals(Arrays.asList(first, second, third), ids(pending));
+        assertTrue("first operation is tried while server is down", pending.getJSONObject(0).getInt("attempts") > 0);
+        assertEquals(0, applied().size());
+
+        this.harness.server.setDown(false);
+        JSONObject summary = new JSONObject(this.harness.callForResult(ALEX, "flushOperations", PluginHarness.SERVICE_ROOT));
+        assertEquals(3, summary.getInt("sent"));
+        assertEquals(0, summary.getInt("pending"));
+
+        List<MockOutlookServer.RecordedRequest> sent = applied();
+        assertEquals(3, sent.size());
+        assertRequest(sent.get(0), HttpVerb.PATCH, "/AAMk1");
+        assertRequest(sent.get(1), HttpVerb.POST, "/AAMk2/send");
+        assertRequest(sent.get(2), HttpVerb.PATCH, "/AAMk3");
+
+        // Duplicate of sent operation is not queued again
+        JSONObject done = enqueue(ALEX, "AAMk2", "send", "send-2");
+        assertEquals(second, done.getString("id"));
+        assertEquals("done", done.getString("state"));
+        assertEquals(0, pendingOperations().length());
+        assertEquals(3, applied().size());
+    }
+
+    @Test
+    public void replaysWhenConnectionComesBack() throws Exception {
+        this.harness.server.setDown(true);
+        for (int i = 0; i < 5; i++) {
+            enqueue(ALEX, "AAMk" + i, "updateMessage", "update-" + i, "{\"IsRead\":true}");
+        }
+        awaitReplayStopped();
+
+        this.harness.server.setDown(false);
+        this.context.sendBroadcast(new Intent(ConnectivityManager.CONNECTIVITY_ACTION)
+                .putExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false));
+        awaitNoPendingOperations();
+
+        List<MockOutlookServer.RecordedRequest> sent = applied();
+        assertEquals(5, sent.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertRequest(sent.get(i), HttpVerb.PATCH, "/AAMk" + i);
+        }
+    }
+
+    @Test
+    public void sendsOperationsOnlyWithTokenOfTheirAccount() throws Exception {
+        final String expired = ALEX;
+        this.harness.server.setScript(new MockOutlookServer.Script() {
+            @Override
+            public Response respond(MockOutlookServer.RecordedRequest request) throws Exception {
+                String authorization = request.headers.get("Authorization");
+                if (authorization == null || !authorization.endsWith(expired)) {
+                    return null;
+                }
+                JSONObject error = new JSONObject().put("error", new JSONObject()
+                        .put("code", "InvalidAuthenticationToken").put("message", "Access token has expired."));
+                return Fixtures.response(401, Collections.<String, List<String>>emptyMap(), Fixtures.bytes(error));
+            }
+        });
+
+        enqueue(ALEX, "AAMk1", "updateMessage", "alex-1", "{\"IsRead\":true}");
+        awaitReplayStopped();
+
+        // Other account's token is never used for Alex's operation, which blocks later ones to keep the order
+        enqueue(MEGAN, "AAMk2", "updateMessage", "megan-2", "{\"IsRead\":true}");
+        JSONObject summary = new JSONObject(this.harness.callForResult(MEGAN, "flushOperations", PluginHarness.SERVICE_ROOT));
+        assertEquals(0, summary.getInt("sent"));
+        assertEquals(2, summary.getInt("pending"));
+        assertEquals(1, this.harness.server.getReceived().size());
+
+        String refreshed = PluginHarness.token("alexd@contoso.com");
+        summary = new JSONObject(this.harness.callForResult(refreshed, "flushOperations", PluginHarness.SERVICE_ROOT));
+        assertEquals(0, summary.getInt("pending"));
+
+        List<MockOutlookServer.RecordedRequest> sent = this.harness.server.getReceived();
+        assertEquals(3, sent.size());
+        assertRequest(sent.get(1), HttpVerb.PATCH, "/AAMk1");
+        assertTrue(sent.get(1).headers.get("Authorization").endsWith(refreshed));
+        assertRequest(sent.get(2), HttpVerb.PATCH, "/AAMk2");
+        assertTrue(sent.get(2).headers.get("Authorization").endsWith(MEGAN));
+    }
+
+    private JSONObject enqueue(String token, String messageId, String action, String key, String... args) throws Exception {
+        JSONArray argsArray = new JSONArray();
+        for (String arg : args) {
+            argsArray.put(arg);
+        }
+        JSONObject operation = new JSONObject().put("action", action).put("key", key).put("args", argsArray);
+        return new JSONObject(this.harness.callForResult(token, "enqueueOperation", MESSAGES + messageId, operation.toString()));
+    }
+
+    private JSONArray pendingOperations() throws Exception {
+        return new JSONArray(this.harness.callForResult(ALEX, "getPendingOperations", PluginHarness.SERVICE_ROOT));
+    }
+
+    private void awaitNoPendingOperations() throws Exception {
+        long deadline = System.currentTimeMillis() + REPLAY_TIMEOUT_MILLIS;
+        while (pendingOperations().length() > 0) {
+            assertFalse("operations are not sent in " + REPLAY_TIMEOUT_MILLIS + " ms", System.currentTimeMillis() > deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Waits until replay, started by queued operations or by connectivity change, stops on a transient failure
+     */
+    private void awaitReplayStopped() throws Exception {
+        long deadline = System.currentTimeMillis() + REPLAY_TIMEOUT_MILLIS;
+        do {
+            assertFalse("replay doesn't stop in " + REPLAY_TIMEOUT_MILLIS + " ms", System.currentTimeMillis() > deadline);
+            // Replays that are already started set operation's state to sending on outbox's executor
+            this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } while (pendingOperations().toString().contains("\"state\":\"sending\""));
+    }
+
+    /**
+     * @return requests that arrived while server was up, in order of arrival
+     */
+    private List<MockOutlookServer.RecordedRequest> applied() {
+        List<MockOutlookServer.RecordedRequest> applied = new ArrayList<MockOutlookServer.RecordedRequest>();
+        for (MockOutlookServer.RecordedRequest request : this.harness.server.getReceived()) {
+            if (!request.refused) {
+                applied.add(request);
+            }
+        }
+        return applied;
+    }
+
+    private static void assertRequest(MockOutlookServer.RecordedRequest request, HttpVerb verb, String urlPart) {
+        assertEquals(verb, request.verb);
+        assertTrue(request.url + " doesn't contain " + urlPart, request.url.contains(urlPart));
+    }
+
+    private static List<String> ids(JSONArray operations) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < operations.length(); i++) {
+            ids.add(operations.getJSONObject(i).getString("id"));
+        }
+        return ids;
+    }
+}
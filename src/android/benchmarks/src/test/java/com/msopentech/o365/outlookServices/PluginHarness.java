@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.microsoft.outlookservices.odata.OutlookClient;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs plugin's actions against MockOutlookServer the same way as OutlookServicesProxy.execute: arguments are parsed,
+ * handler is looked up in actions table and errors are sent back as error results. Requests go through the plugin's
+ * coalescer and scheduler. Callbacks run on the thread that completes a request, so results come in the order
+ * the server sends them
+ */
+final class PluginHarness {
+
+    static final String SERVICE_ROOT = Fixtures.SERVICE_ROOT;
+
+    private static final long CALL_TIMEOUT_SECONDS = 30;
+
+    final MockOutlookServer server = new MockOutlookServer();
+    final RequestScheduler scheduler;
+    final RequestCoalescer coalescer = new RequestCoalescer();
+    final Map<String, ActionHandler> actions = new HashMap<String, ActionHandler>();
+
+    private final Map<String, PluginDependencyResolver> resolvers = new HashMap<String, PluginDependencyResolver>();
+
+    PluginHarness() {
+        this(new CordovaPreferences());
+    }
+
+    /**
+     * @param preferences plugin's preferences; request rate limit is lifted unless it is set explicitly
+     */
+    PluginHarness(CordovaPreferences preferences) {
+        if (preferences.getInteger(RequestScheduler.REQUESTS_PER_SECOND_PREFERENCE, 0) == 0) {
+            preferences.set(RequestScheduler.REQUESTS_PER_SECOND_PREFERENCE, 1000);
+        }
+        this.scheduler = RequestScheduler.create(preferences);
+
+        OutlookServicesMethodsImpl.setCallbackExecutor(null);
+        OutlookServicesMethodsImpl.setStreamExecutor(null);
+        OutlookServicesActions.registerActions(this.actions);
+    }
+
+    /**
+     * Returns access token shaped like a JWT issued for specified user, so tokens of the same user
+     * map to the same account, see Accounts.key
+     *
+     * @param user user's principal name
+     * @return fake access token
+     */
+    static String token(String user) {
+        BaseEncoding encoding = BaseEncoding.base64Url().omitPadding();
+        try {
+            String claims = new JSONObject().put("tid", "contoso").put("upn", user).put("nonce", System.nanoTime()).toString();
+            return encoding.encode("{\"alg\":\"none\"}".getBytes(Charsets.UTF_8)) + "."
+                    + encoding.encode(claims.getBytes(Charsets.UTF_8)) + ".signature";
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param token access token
+     * @return resolver that sends requests with specified token to the server, one per token
+     */
+    synchronized PluginDependencyResolver resolver(String token) {
+        PluginDependencyResolver resolver = this.resolvers.get(token);
+        if (resolver == null) {
+            resolver = new PluginDependencyResolver(token, Accounts.key(SERVICE_ROOT, token), this.server,
+                    this.coalescer, this.scheduler);
+            this.resolvers.put(token, resolver);
+        }
+        return resolver;
+    }
+
+    /**
+     * Calls action and waits for its final result
+     *
+     * @param token access token
+     * @param action action's name
+     * @param path OData path of the action, absolute
+     * @param args action specific arguments
+     * @return all results sent by action, the last one is final
+     */
+    List<PluginResult> call(String token, String action, String path, String... args) throws Exception {
+        JSONArray actionArgs = new JSONArray().put(token).put(SERVICE_ROOT).put(path);
+        for (String arg : args) {
+            actionArgs.put(arg);
+        }
+
+        final List<PluginResult> results = Collections.synchronizedList(new ArrayList<PluginResult>());
+        final CountDownLatch done = new CountDownLatch(1);
+        CallbackContext context = new CallbackContext(action, new CordovaWebView() {
+            @Override
+            public void sendPluginResult(PluginResult result, String callbackId) {
+                results.add(result);
+                if (!result.getKeepCallback()) {
+                    done.countDown();
+                }
+            }
+        });
+
+        try {
+            ODataMethodArgs methodArgs = ODataMethodArgs.parseInvocationArgs(actionArgs);
+            PluginDependencyResolver resolver = resolver(token);
+            ActionHandler handler = this.actions.get(action);
+            if (handler == null) {
+                throw new IllegalArgumentException("Unknown action " + action);
+            }
+            handler.execute(context, new OutlookClient(SERVICE_ROOT, resolver), resolver, methodArgs);
+        } catch (JSONException e) {
+            context.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION,
+                    "Failed to parse arguments for method " + action + ": " + e.getMessage()));
+        } catch (Throwable e) {
+            context.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                    "Method " + action + " failed with error: " + e.getMessage()));
+        }
+
+        if (!done.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError(action + " is not answered in " + CALL_TIMEOUT_SECONDS + " s");
+        }
+        synchronized (results) {
+            return new ArrayList<PluginResult>(results);
+        }
+    }
+
+    /**
+     * Calls action and returns its final result, which must be successful
+     *
+     * @return final result's message as sent to JS layer
+     */
+    String callForResult(String token, String action, String path, String... args) throws Exception {
+        List<PluginResult> results = call(token, action, path, args);
+        PluginResult result = results.get(results.size() - 1);
+        if (result.getStatus() != PluginResult.Status.OK.ordinal()) {
+            throw new AssertionError(action + " failed: " + result.getMessage());
+        }
+        return result.getStrMessage() != null ? result.getStrMessage() : result.getMessage();
+    }
+
+    void close() {
+        this.scheduler.shutdown();
+        this.server.shutdown();
+    }
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Script that replays responses recorded from the service. Recording is a JSON resource that maps
+ * "VERB url relative to service root" to {status: Number, body: Object}. Requests that are not recorded
+ * fail with 501, so test sees them in results
+ */
+final class RecordedResponses implements MockOutlookServer.Script {
+
+    private static final Map<String, List<String>> JSON_HEADERS =
+            Collections.singletonMap("Content-Type", Collections.singletonList("application/json"));
+
+    private final JSONObject recording;
+
+    /**
+     * @param resource name of recording resource, e.g. "recordings/delta-sync.json"
+     */
+    RecordedResponses(String resource) throws IOException, JSONException {
+        this.recording = new JSONObject(Resources.toString(Resources.getResource(resource), Charsets.UTF_8));
+    }
+
+    @Override
+    public Response respond(MockOutlookServer.RecordedRequest request) throws JSONException {
+        String url = request.url.startsWith(Fixtures.SERVICE_ROOT) ?
+                request.url.substring(Fixtures.SERVICE_ROOT.length()) : request.url;
+
+        JSONObject recorded = this.recording.optJSONObject(request.verb + " " + url);
+        if (recorded == null) {
+            JSONObject error = new JSONObject().put("error", new JSONObject()
+                    .put("code", "NotRecorded")
+                    .put("message", "No recorded response for " + request));
+            return Fixtures.response(501, JSON_HEADERS, Fixtures.bytes(error));
+        }
+
+        JSONObject body = recorded.optJSONObject("body");
+        return Fixtures.response(recorded.getInt("status"), JSON_HEADERS, body != null ? Fixtures.bytes(body) : null);
+    }
+}
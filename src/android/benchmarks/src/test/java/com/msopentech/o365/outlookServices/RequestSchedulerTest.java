@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) Microsoft Open Technologies, Inc.
+ * All Rights Reserved
+ * Licensed under the Apache License, Version 2.0.
+ * See License.txt in the project root for license information.
+ ******************************************************************************/
+
+package com.msopentech.o365.outlookServices;
+
+import com.microsoft.services.odata.interfaces.HttpVerb;
+import com.microsoft.services.odata.interfaces.Response;
+
+import org.apache.cordova.CordovaPreferences;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Request scheduler against scripted throttled responses: Retry-After pauses, retries of idempotent requests only
+ * and per-mailbox limit of concurrent requests
+ */
+public class RequestSchedulerTest {
+
+    private static final String TOKEN = PluginHarness.token("alexd@contoso.com");
+    private static final String MESSAGES = PluginHarness.SERVICE_ROOT + "/Me/Messages/";
+
+    private static final int RETRY_AFTER_SECONDS = 1;
+    private static final int MAX_CONCURRENT_REQUESTS = 2;
+
+    private PluginHarness harness = new PluginHarness();
+
+    @After
+    public void tearDown() {
+        this.harness.close();
+    }
+
+    @Test
+    public void retriesGetNotBeforeRetryAfter() throws Exception {
+        this.harness.server.setScript(new ThrottleOnce(HttpVerb.GET, "('AAMk1')"));
+
+        JSONObject message = new JSONObject(this.harness.callForResult(TOKEN, "getMessage", MESSAGES + "AAMk1"));
+        assertEquals("AAMk1", message.getString("Id"));
+
+        List<MockOutlookServer.RecordedRequest> sent = this.harness.server.getReceived(HttpVerb.GET, "('AAMk1')");
+        assertEquals(2, sent.size());
+        assertNotBeforeRetryAfter(sent.get(0), sent.get(1));
+        assertEquals(1, this.harness.scheduler.getThrottledCount());
+        assertEquals(1, this.harness.scheduler.getRetriedCount());
+    }
+
+    @Test
+    public void doesNotRetryNonIdempotentRequestsButPausesMailbox() throws Exception {
+        this.harness.server.setScript(new ThrottleOnce(HttpVerb.PATCH, "('AAMk1')"));
+
+        List<PluginResult> update = this.harness.call(TOKEN, "updateMessage", MESSAGES + "AAMk1", "{\"Subject\":\"Updated\"}");
+        assertEquals(PluginResult.Status.ERROR.ordinal(), update.get(update.size() - 1).getStatus());
+        assertEquals(1, this.harness.server.getReceived(HttpVerb.PATCH, "('AAMk1')").size());
+        assertEquals(0, this.harness.scheduler.getRetriedCount());
+
+        // Throttled response pauses all requests of the mailbox, not only the throttled one
+        this.harness.callForResult(TOKEN, "getMessage", MESSAGES + "AAMk2");
+        List<MockOutlookServer.RecordedRequest> sent = this.harness.server.getReceived();
+        assertEquals(2, sent.size());
+        assertNotBeforeRetryAfter(sent.get(0), sent.get(1));
+    }
+
+    @Test
+    public void keepsConcurrentRequestsOfMailboxUnderLimit() throws Exception {
+        this.harness.close();
+        CordovaPreferences preferences = new CordovaPreferences();
+        preferences.set(RequestScheduler.MAX_CONCURRENT_REQUESTS_PREFERENCE, MAX_CONCURRENT_REQUESTS);
+        this.harness = new PluginHarness(preferences);
+        this.harness.server.setScript(new MockOutlookServer.Script() {
+            @Override
+            public Response respond(MockOutlookServer.RecordedRequest request) throws Exception {
+                // Slow answers, so requests overlap unless scheduler holds them back
+                Thread.sleep(50);
+                return null;
+            }
+        });
+
+        int count = 12;
+        ExecutorService callers = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < count; i++) {
+                final String path = MESSAGES + "AAMk" + i;
+                results.add(callers.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return harness.callForResult(TOKEN, "getMessage", path);
+                    }
+                }));
+            }
+            for (Future<String> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertEquals(count, this.harness.server.getRequestsCount());
+        assertEquals(MAX_CONCURRENT_REQUESTS, this.harness.server.getMaxInFlight());
+    }
+
+    private static void assertNotBeforeRetryAfter(MockOutlookServer.RecordedRequest throttled,
+                                                  MockOutlookServer.RecordedRequest next) {
+        long pauseNanos = next.receivedNanos - throttled.receivedNanos;
+        assertTrue("next request is sent " + TimeUnit.NANOSECONDS.toMillis(pauseNanos) + " ms after throttled one",
+                pauseNanos >= TimeUnit.SECONDS.toNanos(RETRY_AFTER_SECONDS));
+    }
+
+    /**
+     * Answers the first request with specified verb and URL with 429 and Retry-After, other requests get default answers
+     */
+    private static final class ThrottleOnce implements MockOutlookServer.Script {
+
+        private static final Map<String, List<String>> HEADERS = Collections.singletonMap("Retry-After",
+                Collections.singletonList(String.valueOf(RETRY_AFTER_SECONDS)));
+
+        private final HttpVerb verb;
+        private final String urlPart;
+        private final AtomicBoolean throttled = new AtomicBoolean();
+
+        ThrottleOnce(HttpVerb verb, String urlPart) {
+            this.verb = verb;
+            this.urlPart = urlPart;
+        }
+
+        @Override
+        public Response respond(MockOutlookServer.RecordedRequest request) throws JSONException {
+            if (request.verb != this.verb || !request.url.contains(this.urlPart) || !this.throttled.compareAndSet(false, true)) {
+                return null;
+            }
+            JSONObject error = new JSONObject().put("error", new JSONObject()
+                    .put("code", "ApplicationThrottled")
+                    .put("message", "Application is over its MailboxConcurrency limit."));
+            return Fixtures.response(429, HEADERS, Fixtures.bytes(error));
+        }
+    }
+}
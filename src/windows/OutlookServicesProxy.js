@@ -5,6 +5,10 @@ var Windows = window.Windows,
 
 //Helper methods
 
+// OData system query options that are sent to the server. Other query parameters (fields, previewLength,
+// binary, pageAll, maxItems) are handled by Android native layer only and must not reach the server
+var ODATA_QUERY_OPTIONS = ["top", "skip", "filter", "select", "expand", "orderby"];
+
 /**
  * Method that generates a string of OData query
  * parameters, such as $filter of $top, from JSON object
@@ -15,6 +19,8 @@ var Windows = window.Windows,
  *                                  filter: String
  *                                  select: String
  *                                  expand: String
+ *                                  orderBy: String
+ *                              Other fields are ignored
  * @return {String}             String with prepared query or empty string
  *                                     if no query params provided
  */
@@ -37,11 +43,14 @@ function createQueryParams(jsonParams) {
         for (var property in jsonParams) {
             if (jsonParams.hasOwnProperty(property)) {
                 var propertyValue = jsonParams[property];
+                // OData system query options are lower case
+                var option = property.toLowerCase();
 
-                // if property's value is defined and not null or "null"
+                // if property is OData query option and its value is defined and not null or "null"
                 // we accumulate its' string representation into array
-                if (propertyValue && propertyValue !== "null" && propertyValue !== -1) {
-                    var propertyString = "$" + property + "=" + escape(propertyValue);
+                if (ODATA_QUERY_OPTIONS.indexOf(option) !== -1 &&
+                    propertyValue && propertyValue !== "null" && propertyValue !== -1) {
+                    var propertyString = "$" + option + "=" + escape(propertyValue);
                     params.push(propertyString);
                 }
             }
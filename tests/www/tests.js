@@ -385,6 +385,41 @@ exports.defineAutoTests = function () {
                 }, fail.bind(this, done));
             });
 
+            it("should be able to get metrics of called actions", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                contacts.getContacts().top(1).fetchAll().then(function () {
+                    client.getMetrics().then(function (metrics) {
+                        expect(metrics.since).toBeLessThan(metrics.now);
+                        expect(metrics.actions.getContacts).toBeDefined();
+                        expect(metrics.actions.getContacts.calls).toBeGreaterThan(0);
+                        expect(metrics.actions.getContacts.phases.total.p99).toBeGreaterThan(0);
+                        done();
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to look up a new contact in recipients directory", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                contacts.addContact(createContact()).then(function (created) {
+                    tempEntities.push(created);
+                    client.refreshDirectory().then(function () {
+                        client.lookupRecipients(created.DisplayName.substr(0, 6)).then(function (recipients) {
+                            expect(recipients).toEqual(jasmine.any(Array));
+                            expect(recipients.some(function (recipient) {
+                                return recipient.Address === created.EmailAddresses[0].Address;
+                            })).toBe(true);
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
             it("should be able to get user's contacts", function (done) {
                 contacts.addContact(createContact()).then(function (created) {
                     tempEntities.push(created);
@@ -874,6 +909,32 @@ exports.defineAutoTests = function () {
                 }, fail.bind(this, done));
             });
 
+            it("should be able to get events in overlapping calendar view windows", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                var evt = createEvent();
+                evt.End = new Date(evt.Start.getTime() + 60 * 60 * 1000);
+                var day = 24 * 60 * 60 * 1000;
+                var start = new Date(evt.Start.getTime() - day);
+
+                events.addEvent(evt).then(function (added) {
+                    tempEntities.push(added);
+                    // second window partially overlaps the first one, so only its uncovered part is requested
+                    events.getEvents().calendarView(start, new Date(start.getTime() + 2 * day)).then(function () {
+                        events.getEvents().calendarView(evt.Start, new Date(start.getTime() + 4 * day)).then(function (c) {
+                            expect(c).toEqual(jasmine.any(Array));
+                            expect(c.some(function (event) {
+                                return event.Id === added.Id;
+                            })).toBe(true);
+                            expect(c[0]).toEqual(jasmine.any(Event));
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
             it("should be able to get a newly created event by Id", function (done) {
                 var evt = createEvent();
                 events.addEvent(evt).then(function (added) {
@@ -1070,6 +1131,31 @@ exports.defineAutoTests = function () {
                 }, fail.bind(this, done));
             });
 
+            it("should fail to get messages with malformed filter", function (done) {
+                client.me.drafts.messages.getMessages().filter('IsRead eq (false').fetchAll().then(fail, function (err) {
+                    expect(err).toBeDefined();
+                    expect(err).toContain('Invalid $filter option');
+                    done();
+                });
+            });
+
+            it("should be able to apply order to user's messages", function (done) {
+                messages.addMessage(createMessage()).then(function (created) {
+                    tempEntities.push(created);
+                    messages.addMessage(createMessage()).then(function (created2) {
+                        tempEntities.push(created2);
+                        client.me.drafts.messages.getMessages().orderBy('DateTimeCreated desc').top(2).fetchAll().then(function (c) {
+                            expect(c).toBeDefined();
+                            expect(c).toEqual(jasmine.any(Array));
+                            expect(c.length).toEqual(2);
+                            expect(c[0].Subject).toEqual(created2.Subject);
+                            expect(c[1].Subject).toEqual(created.Subject);
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
             it("should be able to apply top query to user's messages", function (done) {
                 messages.addMessage(createMessage()).then(function (created) {
                     tempEntities.push(created);
@@ -1087,6 +1173,103 @@ exports.defineAutoTests = function () {
                 }, fail.bind(this, done));
             });
 
+            it("should be able to get only selected fields and body preview of user's messages", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (created) {
+                    tempEntities.push(created);
+                    client.me.drafts.messages.getMessages().top(1).fields(['Subject', 'Body']).previewLength(4).fetchAll().then(function (c) {
+                        expect(c.length).toEqual(1);
+                        expect(c[0]).toEqual(jasmine.any(Message));
+                        expect(c[0].Id).toEqual(created.Id);
+                        expect(c[0].Subject).toEqual(created.Subject);
+                        expect(c[0].Body.Content).toEqual("Test");
+                        expect(c[0].DateTimeCreated).toBeNull();
+                        done();
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to get user's messages in binary form", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (created) {
+                    tempEntities.push(created);
+                    client.me.drafts.messages.getMessages().top(1).binary().fetchAll().then(function (c) {
+                        expect(c.length).toEqual(1);
+                        expect(c[0]).toEqual(jasmine.any(Message));
+                        expect(c[0].Id).toEqual(created.Id);
+                        expect(c[0].Subject).toEqual(created.Subject);
+                        done();
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to prefetch fetched messages", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (created) {
+                    tempEntities.push(created);
+                    client.me.drafts.messages.getMessages().top(1).prefetch().fetchAll().then(function (c) {
+                        expect(c.length).toEqual(1);
+                        messages.getMessage(c[0].Id).fetch().then(function (message) {
+                            expect(message.Id).toEqual(c[0].Id);
+                            expect(message.Subject).toEqual(c[0].Subject);
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to read user's messages page by page", function (done) {
+                messages.addMessage(createMessage()).then(function (created) {
+                    tempEntities.push(created);
+                    messages.addMessage(createMessage()).then(function (created2) {
+                        tempEntities.push(created2);
+                        var received = [];
+                        client.me.drafts.messages.getMessages().top(1).fetchPages(function (page) {
+                            expect(page).toEqual(jasmine.any(Array));
+                            received = received.concat(page);
+                        }, 2).then(function (count) {
+                            expect(count).toEqual(received.length);
+                            expect(count).toBeGreaterThan(0);
+                            expect(count).not.toBeGreaterThan(2);
+                            expect(received[0]).toEqual(jasmine.any(Message));
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to sync changes of user's messages", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                var drafts = client.me.drafts.messages.getMessages();
+                drafts.syncChanges(function () {}, { reset: true }).then(function () {
+                    messages.addMessage(createMessage()).then(function (created) {
+                        tempEntities.push(created);
+                        var changed = [];
+                        drafts.syncChanges(function (changeSet) {
+                            expect(changeSet.full).toBe(false);
+                            changed = changed.concat(changeSet.changed);
+                        }).then(function () {
+                            expect(changed.some(function (message) {
+                                return message.Id === created.Id;
+                            })).toBe(true);
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
             it("should be able to get a newly created message by Id", function (done) {
                 var message = createMessage();
                 messages.addMessage(message).then(function (added) {
@@ -1112,6 +1295,21 @@ exports.defineAutoTests = function () {
                 }, fail.bind(this, done));
             });
 
+            it("should get modified message after it was read and then updated", function (done) {
+                messages.addMessage(createMessage()).then(function (added) {
+                    tempEntities.push(added);
+                    messages.getMessage(added.Id).fetch().then(function (read) {
+                        read.Subject = guid();
+                        read.update().then(function () {
+                            messages.getMessage(added.Id).fetch().then(function (got) {
+                                expect(got.Subject).toEqual(read.Subject);
+                                done();
+                            }, fail.bind(this, done));
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
             it("should be able to delete existing message", function (done) {
                 messages.addMessage(createMessage()).then(function (added) {
                     added.delete().then(function () {
@@ -1128,6 +1326,105 @@ exports.defineAutoTests = function () {
                 }, fail.bind(this, done));
             });
 
+            it("should be able to update several messages with a single batch call", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (first) {
+                    tempEntities.push(first);
+                    messages.addMessage(createMessage()).then(function (second) {
+                        tempEntities.push(second);
+                        var subject = guid();
+                        var operations = [first, second].map(function (message) {
+                            return { action: "updateMessage", path: message.path, args: [JSON.stringify({ Subject: subject })] };
+                        });
+                        client.executeBatch(operations).then(function (results) {
+                            expect(results.length).toEqual(2);
+                            results.forEach(function (result) {
+                                expect(result.status).toEqual(200);
+                                expect(result.body.Subject).toEqual(subject);
+                            });
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to update several messages with a single bulk call", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (first) {
+                    tempEntities.push(first);
+                    messages.addMessage(createMessage()).then(function (second) {
+                        tempEntities.push(second);
+                        var subject = guid();
+                        messages.updateMessages([first.Id, second.Id, guid()], { Subject: subject }).then(function (result) {
+                            expect(result.succeeded).toEqual(2);
+                            expect(result.failed).toEqual(1);
+                            expect(result.results[0].id).toEqual(first.Id);
+                            expect(result.results[0].body.Subject).toEqual(subject);
+                            expect(result.results[1].body.Subject).toEqual(subject);
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to find read messages with local search by prefix", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (created) {
+                    tempEntities.push(created);
+                    var filter = 'Subject eq \'' + created.Subject + '\'';
+                    messages.getMessages().filter(filter).fetchAll().then(function () {
+                        // pages are indexed in background
+                        setTimeout(function () {
+                            messages.searchLocal(created.Subject.substr(0, 6)).then(function (found) {
+                                expect(found).toEqual(jasmine.any(Array));
+                                expect(found.some(function (message) {
+                                    return message.Id === created.Id;
+                                })).toBe(true);
+                                done();
+                            }, fail.bind(this, done));
+                        }, 500);
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
+            it("should be able to queue message update and send it later", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (created) {
+                    tempEntities.push(created);
+                    created.Subject = guid();
+                    var key = guid();
+                    created.queueUpdate(key).then(function (operation) {
+                        expect(operation.action).toEqual("updateMessage");
+                        expect(operation.key).toEqual(key);
+                        created.queueUpdate(key).then(function (duplicate) {
+                            expect(duplicate.id).toEqual(operation.id);
+                            client.flushOperations().then(function (result) {
+                                expect(result.failed).toEqual(0);
+                                client.getPendingOperations().then(function (operations) {
+                                    expect(operations.filter(function (item) { return item.id === operation.id; }).length).toEqual(0);
+                                    messages.getMessage(created.Id).fetch().then(function (message) {
+                                        expect(message.Subject).toEqual(created.Subject);
+                                        done();
+                                    }, fail.bind(this, done));
+                                }, fail.bind(this, done));
+                            }, fail.bind(this, done));
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
             it("should be able to send a newly created message ", function (done) {
                 client.me.fetch().then(function (owner) {
                     var msgToSend = createMessage();
@@ -1710,6 +2007,25 @@ exports.defineAutoTests = function () {
                 }, fail.bind(this, done));
             });
 
+            it("should be able to download message's attachment to file", function (done) {
+                if (cordova.platformId !== 'android') {
+                    pending();
+                }
+
+                messages.addMessage(createMessage()).then(function (added) {
+                    tempEntities.push(added);
+                    var fileAttachment = createFileAttachment();
+                    added.attachments.addAttachment(fileAttachment).then(function (attachment) {
+                        added.attachments.getAttachment(attachment.Id).downloadToFile().then(function (file) {
+                            expect(file.name).toEqual(fileAttachment.Name);
+                            expect(file.uri).toMatch(/^file:/);
+                            expect(file.size).toEqual(atob(fileAttachment.ContentBytes).length);
+                            done();
+                        }, fail.bind(this, done));
+                    }, fail.bind(this, done));
+                }, fail.bind(this, done));
+            });
+
             it("should be able to get event's attachments", function (done) {
                 events.addEvent(createEvent()).then(function (added) {
                     tempEntities.push(added);
@@ -1921,6 +2237,25 @@ exports.defineManualTests = function (contentEl, createActionButton) {
         });
     });
 
+    createActionButton('Compare JSON and binary transfer of 1000 messages', function () {
+        var client = new Microsoft.OutlookServices.Client(OFFICE_ENDPOINT_URL,
+            new AuthenticationContext(AUTH_URL), RESOURCE_URL, APP_ID, REDIRECT_URL);
+
+        var measure = function (binary) {
+            var fetcher = client.me.messages.getMessages().top(1000).binary(binary);
+            var start = Date.now();
+            return fetcher.fetchAll().then(function (items) {
+                console.log((binary ? "Binary" : "JSON") + ": " + items.length + " messages in " + (Date.now() - start) + " ms");
+            });
+        };
+
+        measure(false).then(function () {
+            return measure(true);
+        }).then(null, function (err) {
+            console.error(err);
+        });
+    });
+
     createActionButton('Log out', function () {
         authContext = authContext || new AuthenticationContext(AUTH_URL);
         return authContext.tokenCache.clear().then(function () {
@@ -132,6 +132,10 @@ Attachments.prototype.addAttachment = function (item) {
     return this.executeNativeMethod("addAttachment", attachmentTypeChooser, payload, true);
 };
 
+Attachments.prototype.uploadFromFile = function (file, name, onProgress) {
+    return this.executeNativeTransfer("uploadAttachmentFromFile", { file: file, name: name || undefined }, onProgress);
+};
+
 utils.extends(AttachmentFetcher, Fetcher);
 function AttachmentFetcher(context, path, id) {
     Fetcher.call(this, context, path);
@@ -142,6 +146,10 @@ AttachmentFetcher.prototype.fetch = function () {
     return this.executeNativeMethod("getAttachment", attachmentTypeChooser, this._id);
 };
 
+AttachmentFetcher.prototype.downloadToFile = function (options, onProgress) {
+    return this.executeNativeTransfer("downloadAttachmentToFile", options, onProgress);
+};
+
 utils.extends(AttachmentCollectionFetcher, CollectionFetcher);
 function AttachmentCollectionFetcher (context, path) {
     CollectionFetcher.call(this, context, path);
@@ -158,7 +166,8 @@ AttachmentCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy
     });
 
     return this.executeNativeMethod("getAttachments", attachmentTypeChooser, queryParams, true);
@@ -102,7 +102,8 @@ CalendarGroupCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy
     });
     return this.executeNativeMethod("getCalendarGroups", CalendarGroup, queryParams, true);
 };
@@ -103,7 +103,8 @@ CalendarCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy
     });
     return this.executeNativeMethod("getCalendars", Calendar, queryParams, true);
 };
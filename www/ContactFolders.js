@@ -140,7 +140,8 @@ ContactFolderCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy
     });
 
     return this.executeNativeMethod("getContactFolders", ContactFolder, queryParams, true);
@@ -115,6 +115,12 @@ Contacts.prototype.getContacts = function () {
     return new ContactCollectionFetcher(this.context, this.path);
 };
 
+// Searches contacts that were read on this device, without network requests. Every term of text matches as
+// prefix, so it can be called as user types; results are ranked, best matches first (Android only)
+Contacts.prototype.searchLocal = function (text, options) {
+    return this.getContacts().executeLocalSearch(Contact, text, options);
+};
+
 Contacts.prototype.addContact = function (item) {
     var payload = JSON.stringify(Contact.prototype.preparePayload.call(item));
     return this.executeNativeMethod("addContact", Contact, payload, true);
@@ -147,11 +153,35 @@ ContactCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy,
+        fields: this._fields,
+        previewLength: this._previewLength,
+        binary: this._binary
     });
 
     return this.executeNativeMethod("getContacts", Contact, queryParams, true);
 };
 
+ContactCollectionFetcher.prototype.fetchPages = function (onPage, maxItems) {
+
+    var queryParams = JSON.stringify({
+        top: this._top,
+        skip: this._skip,
+        selectedId: this._selectedId,
+        select: this._select,
+        expand: this._expand,
+        filter: this._filter,
+        orderBy: this._orderBy,
+        fields: this._fields,
+        previewLength: this._previewLength,
+        binary: this._binary,
+        pageAll: true,
+        maxItems: maxItems || -1
+    });
+
+    return this.executeNativeMethodPaged("getContacts", Contact, queryParams, true, onPage);
+};
+
 module.exports.Contact = Contact;
 module.exports.Contacts = Contacts;
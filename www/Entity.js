@@ -53,5 +53,101 @@ Entity.prototype.executeNativeMethod = function (nativeMethodName, resultType, p
     return deferred;
 };
 
+Entity.prototype.executeNativeTransfer = function (nativeMethodName, options, onProgress) {
+    var _this = this;
+    var deferred = new Deferred();
+
+    if (cordova.platformId !== 'android') {
+        deferred.reject(new Error("File transfers are supported on Android only"));
+        return deferred;
+    }
+
+    this.context.getAccessTokenFn().then(
+        function (token) {
+            // To support native ADAL plugin
+            if (token.accessToken) {
+                token = token.accessToken;
+            }
+
+            // called for each progress notification and once for the result, which has 'done' flag set
+            var win = function(res){
+                try {
+                    var status = JSON.parse(res);
+                    if (status.done) {
+                        deferred.resolve(status);
+                    } else if (onProgress) {
+                        onProgress(status);
+                    }
+                } catch (e) {
+                    deferred.reject(e);
+                }
+            };
+
+            var fail = function (err) {
+                // in most cases error callback returns serialized error object so we need to parse it
+                if (typeof err === "string") {
+                    try {
+                        err = JSON.parse (err);
+                    } catch(ex) {}
+                }
+                deferred.reject(err);
+            };
+
+            var nativeArguments = [token, _this.context.serviceRootUri, _this.path, JSON.stringify(options || {})];
+            exec(win, fail, "OutlookServices", nativeMethodName, nativeArguments);
+        }, function(err) {
+            deferred.reject(err);
+        }
+    );
+
+    return deferred;
+};
+
+Entity.prototype.executeQueued = function (action, args, key) {
+    var _this = this;
+    var deferred = new Deferred();
+
+    if (cordova.platformId !== 'android') {
+        deferred.reject(new Error("Operations queue is supported on Android only"));
+        return deferred;
+    }
+
+    this.context.getAccessTokenFn().then(
+        function (token) {
+            // To support native ADAL plugin
+            if (token.accessToken) {
+                token = token.accessToken;
+            }
+
+            // called once operation is written to disk, before it is sent
+            var win = function(res){
+                try {
+                    deferred.resolve(JSON.parse(res));
+                } catch (e) {
+                    deferred.reject(e);
+                }
+            };
+
+            var fail = function (err) {
+                // in most cases error callback returns serialized error object so we need to parse it
+                if (typeof err === "string") {
+                    try {
+                        err = JSON.parse (err);
+                    } catch(ex) {}
+                }
+                deferred.reject(err);
+            };
+
+            var operation = JSON.stringify({ action: action, args: args || [], key: key || null });
+            var nativeArguments = [token, _this.context.serviceRootUri, _this.path, operation];
+            exec(win, fail, "OutlookServices", "enqueueOperation", nativeArguments);
+        }, function(err) {
+            deferred.reject(err);
+        }
+    );
+
+    return deferred;
+};
+
 module.exports = Entity;
 
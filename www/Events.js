@@ -107,6 +107,12 @@ Event.prototype.delete = function () {
     return this.executeNativeMethod("deleteEvent");
 };
 
+// Queued version of update: changes are stored on device and sent later, even if there is no connection right now.
+// Optional key prevents queuing the same update twice (Android only)
+Event.prototype.queueUpdate = function (key) {
+    return this.executeQueued("updateEvent", [JSON.stringify(this.preparePayload())], key);
+};
+
 utils.extends(Events, Entity);
 function Events(context, path) {
     Entity.call(this, context, path);
@@ -176,11 +182,61 @@ EventCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy,
+        fields: this._fields,
+        previewLength: this._previewLength,
+        binary: this._binary
     });
     
     return this.executeNativeMethod("getEvents", Event, queryParams, true);
 };
 
+EventCollectionFetcher.prototype.fetchPages = function (onPage, maxItems) {
+
+    var queryParams = JSON.stringify({
+        top: this._top,
+        skip: this._skip,
+        selectedId: this._selectedId,
+        select: this._select,
+        expand: this._expand,
+        filter: this._filter,
+        orderBy: this._orderBy,
+        fields: this._fields,
+        previewLength: this._previewLength,
+        binary: this._binary,
+        pageAll: true,
+        maxItems: maxItems || -1
+    });
+
+    return this.executeNativeMethodPaged("getEvents", Event, queryParams, true, onPage);
+};
+
+EventCollectionFetcher.prototype.syncChanges = function (onChanges, startDateTime, endDateTime, options) {
+    // changes of events are tracked through calendar view for specified time window
+    options = options || {};
+    options.startDateTime = startDateTime.toISOString();
+    options.endDateTime = endDateTime.toISOString();
+
+    var calendarViewPath = this.path.replace(/\/Events$/i, '/CalendarView');
+    return this.executeNativeSync(calendarViewPath, Event, options, onChanges);
+};
+
+// Returns events and occurrences of recurring events that overlap time window, sorted by start time. Windows are
+// kept in device index, so only parts of window that weren't read before are requested from server (Android only)
+EventCollectionFetcher.prototype.calendarView = function (startDateTime, endDateTime, options) {
+    if (cordova.platformId !== 'android') {
+        var deferred = new utils.Utility.Deferred();
+        deferred.reject(new Error("Calendar view is supported on Android only"));
+        return deferred;
+    }
+
+    options = options || {};
+    options.startDateTime = startDateTime.toISOString();
+    options.endDateTime = endDateTime.toISOString();
+
+    return this.executeNativeMethod("getCalendarView", Event, JSON.stringify(options), true);
+};
+
 module.exports.Event = Event;
 module.exports.Events = Events;
@@ -1,5 +1,6 @@
 // Copyright (c) Microsoft Open Technologies, Inc.  All rights reserved.  Licensed under the Apache License, Version 2.0.  See License.txt in the project root for license information.
 
+var exec = require('cordova/exec');
 var Users = require('./Users').Users;
 var UserFetcher = require('./Users').UserFetcher;
 var Deferred = require('./utility').Utility.Deferred;
@@ -81,6 +82,143 @@ Object.defineProperty(Client.prototype, "users", {
     configurable: true
 });
 
+/**
+ * Sends several operations to the server as OData $batch requests (Android only)
+ * @param  {Array} operations Array of operations: { action: String, path: String, args: [String] },
+ *                            where action is a name of native method (e.g. "updateMessage"), path is
+ *                            entity's path and args are method's arguments
+ * @return {Promise}          Promise, resolved with array of results in the same order as operations:
+ *                            { status: Number, body: Object } or { status: 0, error: String }
+ */
+Client.prototype.executeBatch = function (operations) {
+    return executeClientMethod(this.context, "executeBatch", [JSON.stringify(operations)], "Batch requests");
+};
+
+/**
+ * Returns queued operations (see Message.queueSend, Message.queueUpdate, etc.) that are not sent yet or failed (Android only)
+ * @return {Promise} Promise, resolved with array of operations in queue order:
+ *                   { id: String, key: String, action: String, path: String, enqueuedAt: Number, attempts: Number,
+ *                   state: String, status: Number, error: String }, where state is "pending", "sending" or "failed";
+ *                   status and error are set for failed operations only
+ */
+Client.prototype.getPendingOperations = function () {
+    return executeClientMethod(this.context, "getPendingOperations", [], "Operations queue");
+};
+
+/**
+ * Sends queued operations now, in queue order (Android only)
+ * @return {Promise} Promise, resolved when sending stops: { sent: Number, failed: Number, pending: Number }
+ */
+Client.prototype.flushOperations = function () {
+    return executeClientMethod(this.context, "flushOperations", [], "Operations queue");
+};
+
+/**
+ * Removes queued operation that is not sent yet or failed (Android only)
+ * @param  {String} id Operation's id
+ * @return {Promise}   Promise, resolved with false if there is no such operation or it is being sent
+ */
+Client.prototype.removeOperation = function (id) {
+    return executeClientMethod(this.context, "removeOperation", [id], "Operations queue");
+};
+
+/**
+ * Removes all messages and contacts of client's account from local search index, e.g. when user signs out (Android only)
+ * @return {Promise} Promise, resolved when index is empty
+ */
+Client.prototype.clearSearchIndex = function () {
+    return executeClientMethod(this.context, "clearSearchIndex", [], "Local search");
+};
+
+/**
+ * Removes all cached messages, events, contacts, folders and calendars of client's account from device,
+ * e.g. when user signs out (Android only)
+ * @return {Promise} Promise, resolved when cache is empty
+ */
+Client.prototype.clearCache = function () {
+    return executeClientMethod(this.context, "clearCache", [], "Entity cache");
+};
+
+/**
+ * Returns recipients whose name or address words start with every term of text, for recipient autocomplete.
+ * Recipients are looked up in device directory of contacts and users read with getUsers, without network requests;
+ * contacts are refreshed in background when they are older than refresh interval (Android only)
+ * @param  {String} text    Text typed by user
+ * @param  {Object} options Optional options: { top: Number }, max number of results, 10 by default
+ * @return {Promise}        Promise, resolved with array of { Name: String, Address: String, Source: String },
+ *                          where source is "contact" or "user"
+ */
+Client.prototype.lookupRecipients = function (text, options) {
+    return executeClientMethod(this.context, "lookupRecipients", [text, JSON.stringify(options || {})], "Recipients directory");
+};
+
+/**
+ * Reads contacts of all contact folders into device directory now (Android only)
+ * @return {Promise} Promise, resolved with number of recipients in directory
+ */
+Client.prototype.refreshDirectory = function () {
+    return executeClientMethod(this.context, "refreshDirectory", [], "Recipients directory");
+};
+
+/**
+ * Removes all recipients from device directory, e.g. when user signs out (Android only)
+ * @return {Promise} Promise, resolved when directory is empty
+ */
+Client.prototype.clearDirectory = function () {
+    return executeClientMethod(this.context, "clearDirectory", [], "Recipients directory");
+};
+
+/**
+ * Returns native layer's per-action metrics: calls, errors, results' size and latency of call phases
+ * (dispatch, parse, handler, network, serialize, bridge and total) in milliseconds (Android only)
+ * @param  {Object} options Optional options: { reset: Boolean }, true to start new measurement after snapshot is taken
+ * @return {Promise}        Promise, resolved with { since: Number, now: Number, actions: Object, components: Object }
+ */
+Client.prototype.getMetrics = function (options) {
+    return executeClientMethod(this.context, "getMetrics", [JSON.stringify(options || {})], "Metrics");
+};
+
+function executeClientMethod(context, nativeMethodName, args, feature) {
+    var deferred = new Deferred();
+
+    if (cordova.platformId !== 'android') {
+        deferred.reject(new Error(feature + " is supported on Android only"));
+        return deferred;
+    }
+
+    context.getAccessTokenFn().then(function (token) {
+        // To support native ADAL plugin
+        if (token.accessToken) {
+            token = token.accessToken;
+        }
+
+        var win = function (res) {
+            try {
+                deferred.resolve(typeof res === "string" ? JSON.parse(res) : res);
+            } catch (e) {
+                deferred.reject(e);
+            }
+        };
+
+        var fail = function (err) {
+            // in most cases error callback returns serialized error object so we need to parse it
+            if (typeof err === "string") {
+                try {
+                    err = JSON.parse(err);
+                } catch (ex) {}
+            }
+            deferred.reject(err);
+        };
+
+        var nativeArguments = [token, context.serviceRootUri, context.serviceRootUri].concat(args);
+        exec(win, fail, "OutlookServices", nativeMethodName, nativeArguments);
+    }, function (err) {
+        deferred.reject(err);
+    });
+
+    return deferred;
+}
+
 // Enums
 Exchange.AttendeeType = Types.AttendeeType;
 Exchange.BodyType = Types.BodyType;
@@ -4,6 +4,66 @@ var exec = require('cordova/exec');
 var utils = require('./utility');
 var Entity = require('./Entity');
 
+// Format marker of binary collection pages, see BinaryPages.java
+var BINARY_PAGE_MAGIC = 0x4F534231;
+
+function decodeUtf8(bytes) {
+    if (typeof TextDecoder !== 'undefined') {
+        return new TextDecoder('utf-8').decode(bytes);
+    }
+
+    // Older WebViews don't have TextDecoder
+    var chars = [];
+    for (var i = 0; i < bytes.length;) {
+        var b = bytes[i++];
+        var code;
+        if (b < 0x80) {
+            code = b;
+        } else if (b < 0xE0) {
+            code = ((b & 0x1F) << 6) | (bytes[i++] & 0x3F);
+        } else if (b < 0xF0) {
+            code = ((b & 0x0F) << 12) | ((bytes[i++] & 0x3F) << 6) | (bytes[i++] & 0x3F);
+        } else {
+            code = ((b & 0x07) << 18) | ((bytes[i++] & 0x3F) << 12) | ((bytes[i++] & 0x3F) << 6) | (bytes[i++] & 0x3F);
+            code -= 0x10000;
+            chars.push(String.fromCharCode(0xD800 + (code >> 10)));
+            code = 0xDC00 + (code & 0x3FF);
+        }
+        chars.push(String.fromCharCode(code));
+    }
+    return chars.join('');
+}
+
+// Decodes collection page, sent either as JSON string or as ArrayBuffer in binary form
+function parsePage(res) {
+    if (!(res instanceof ArrayBuffer)) {
+        return JSON.parse(res);
+    }
+
+    var view = new DataView(res);
+    if (view.getUint32(0) !== BINARY_PAGE_MAGIC) {
+        throw new Error("Unknown collection page format");
+    }
+
+    var offset = 4;
+    var readJson = function () {
+        var length = view.getUint32(offset);
+        var json = JSON.parse(decodeUtf8(new Uint8Array(res, offset + 4, length)));
+        offset += 4 + length;
+        return json;
+    };
+
+    var page = readJson();
+    var count = view.getUint32(offset);
+    offset += 4;
+
+    page.value = [];
+    for (var i = 0; i < count; i++) {
+        page.value.push(readJson());
+    }
+    return page;
+}
+
 utils.extends(Fetcher, Entity);
 
 function Fetcher(context, path) {
@@ -33,7 +93,7 @@ CollectionFetcher.prototype.executeNativeMethod = function (nativeMethodName, re
 
             var win = function(res){
                 try {
-                    var result = JSON.parse(res);
+                    var result = parsePage(res);
                     var resultArray = [];
                     result.value.forEach(function (resItem) {
                         var path = !!appendResultId ? _this.getPath(resItem.Id) : _this.path;
@@ -65,6 +125,135 @@ CollectionFetcher.prototype.executeNativeMethod = function (nativeMethodName, re
     return deferred;
 };
 
+CollectionFetcher.prototype.executeLocalSearch = function (resultType, text, options) {
+    // Local search index is available on Android only
+    if (cordova.platformId !== 'android') {
+        var deferred = new utils.Utility.Deferred();
+        deferred.reject(new Error("Local search is supported on Android only"));
+        return deferred;
+    }
+
+    return this.executeNativeMethod("searchLocal", resultType, [text, JSON.stringify(options || {})], true);
+};
+
+CollectionFetcher.prototype.executeNativeMethodPaged = function (nativeMethodName, resultType, payload, appendResultId, onPage) {
+    var _this = this;
+    var deferred = new utils.Utility.Deferred();
+
+    // Native paging is available on Android only, other platforms deliver first page only
+    if (cordova.platformId !== 'android') {
+        this.fetchAll().then(function (items) {
+            onPage(items);
+            deferred.resolve(items.length);
+        }, function (err) {
+            deferred.reject(err);
+        });
+
+        return deferred;
+    }
+
+    this.context.getAccessTokenFn().then(
+        function (token) {
+            // To support native ADAL plugin
+            if (token.accessToken) {
+                token = token.accessToken;
+            }
+
+            var itemsCount = 0;
+
+            // called once per part of page, parts of the same page but the last are marked as partial,
+            // last part of collection has neither partial flag nor next page link
+            var win = function(res){
+                try {
+                    var page = parsePage(res);
+                    var pageItems = page.value.map(function (resItem) {
+                        var path = !!appendResultId ? _this.getPath(resItem.Id) : _this.path;
+                        return new resultType(_this.context, path, resItem);
+                    });
+                    itemsCount += pageItems.length;
+                    onPage(pageItems);
+
+                    if (!page['@odata.nextLink'] && !page.partial) {
+                        deferred.resolve(itemsCount);
+                    }
+                } catch (e) {
+                    deferred.reject(e);
+                }
+            };
+
+            var fail = function (err) {
+                // in most cases error callback returns serialized error object so we need to parse it
+                if (typeof err === "string") {
+                    try {
+                        err = JSON.parse (err);
+                    } catch(ex) {}
+                }
+                deferred.reject(err);
+            };
+
+            var nativeArguments = [token, _this.context.serviceRootUri, _this.path].concat(payload);
+            exec(win, fail, "OutlookServices", nativeMethodName, nativeArguments);
+        }, function(err) {
+            deferred.reject(err);
+        }
+    );
+
+    return deferred;
+};
+
+CollectionFetcher.prototype.executeNativeSync = function (path, resultType, options, onChanges) {
+    var _this = this;
+    var deferred = new utils.Utility.Deferred();
+
+    if (cordova.platformId !== 'android') {
+        deferred.reject(new Error("Changes sync is supported on Android only"));
+        return deferred;
+    }
+
+    this.context.getAccessTokenFn().then(
+        function (token) {
+            // To support native ADAL plugin
+            if (token.accessToken) {
+                token = token.accessToken;
+            }
+
+            // called once per change set, last change set has 'done' flag set
+            var win = function(res){
+                try {
+                    var changeSet = JSON.parse(res);
+                    changeSet.changed = changeSet.changed.map(function (resItem) {
+                        return new resultType(_this.context, _this.getPath(resItem.Id), resItem);
+                    });
+                    onChanges(changeSet);
+
+                    if (changeSet.done) {
+                        deferred.resolve();
+                    }
+                } catch (e) {
+                    deferred.reject(e);
+                }
+            };
+
+            var fail = function (err) {
+                // in most cases error callback returns serialized error object so we need to parse it
+                if (typeof err === "string") {
+                    try {
+                        err = JSON.parse (err);
+                    } catch(ex) {}
+                }
+                deferred.reject(err);
+            };
+
+            var nativeArguments = [token, _this.context.serviceRootUri, path, JSON.stringify(options || {})];
+            exec(win, fail, "OutlookServices", "syncChanges", nativeArguments);
+        }, function(err) {
+            deferred.reject(err);
+        }
+    );
+
+    return deferred;
+};
+
 CollectionFetcher.prototype.fetch = function (prop) {
     // abstract method
 };
@@ -80,6 +269,10 @@ CollectionFetcher.prototype.reset = function () {
     this._select = null;
     this._expand = null;
     this._filter = null;
+    this._orderBy = null;
+    this._fields = null;
+    this._previewLength = -1;
+    this._binary = false;
 };
 
 CollectionFetcher.prototype.top = function (top) {
@@ -107,6 +300,30 @@ CollectionFetcher.prototype.filter = function(filter) {
     return this;
 };
 
+// Sort order of fetched items, e.g. 'DateTimeReceived desc'
+CollectionFetcher.prototype.orderBy = function(orderBy) {
+    this._orderBy = orderBy;
+    return this;
+};
+
+// Fields to keep in fetched items, other fields are dropped by native layer before results are sent to JS (Android only)
+CollectionFetcher.prototype.fields = function(fields) {
+    this._fields = Array.isArray(fields) ? fields.join(',') : fields;
+    return this;
+};
+
+// Max length of items' Body.Content, longer bodies are shortened by native layer (Android only)
+CollectionFetcher.prototype.previewLength = function(previewLength) {
+    this._previewLength = previewLength;
+    return this;
+};
+
+// Sends fetched items from native layer in compact binary form instead of a single JSON string (Android only)
+CollectionFetcher.prototype.binary = function(binary) {
+    this._binary = binary !== false;
+    return this;
+};
+
 module.exports.Fetcher = Fetcher;
 module.exports.CollectionFetcher = CollectionFetcher;
 
@@ -143,12 +143,17 @@ FolderCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy
     });
 
     return this.executeNativeMethod("getFolders", Folder, queryParams, true);
 };
 
+FolderCollectionFetcher.prototype.syncChanges = function (onChanges, options) {
+    return this.executeNativeSync(this.path, Folder, options, onChanges);
+};
+
 module.exports.Folder = Folder;
 module.exports.Folders = Folders;
 module.exports.FolderFetcher = FolderFetcher;
@@ -127,6 +127,28 @@ Message.prototype.send = function () {
 
 };
 
+// Queued versions of methods above: operation is stored on device and sent later, in queue order,
+// even if there is no connection right now. Optional key prevents queuing the same operation twice (Android only)
+Message.prototype.queueSend = function (key) {
+    return this.executeQueued("send", [], key);
+};
+
+Message.prototype.queueReply = function (comment, key) {
+    return this.executeQueued("reply", [comment], key);
+};
+
+Message.prototype.queueReplyAll = function (comment, key) {
+    return this.executeQueued("replyAll", [comment], key);
+};
+
+Message.prototype.queueForward = function (comment, toRecipients, key) {
+    return this.executeQueued("forward", [comment, JSON.stringify(toRecipients || [])], key);
+};
+
+Message.prototype.queueUpdate = function (key) {
+    return this.executeQueued("updateMessage", [JSON.stringify(this.preparePayload())], key);
+};
+
 utils.extends(Messages, Entity);
 function Messages(context, path) {
     Entity.call(this, context, path);
@@ -140,11 +162,75 @@ Messages.prototype.getMessages = function () {
     return new MessageCollectionFetcher(this.context, this.path);
 };
 
+// Searches messages that were read on this device, without network requests. Every term of text matches as
+// prefix, so it can be called as user types; results are ranked, best matches first (Android only)
+Messages.prototype.searchLocal = function (text, options) {
+    return this.getMessages().executeLocalSearch(Message, text, options);
+};
+
 Messages.prototype.addMessage = function (item) {
     var payload = JSON.stringify(Message.prototype.preparePayload.call(item));
     return this.executeNativeMethod("addMessage", Message, payload, true);
 };
 
+Messages.prototype.moveMessages = function (ids, destinationId) {
+    return executeBulk(this, "moveMessages", ids, destinationId);
+};
+
+Messages.prototype.copyMessages = function (ids, destinationId) {
+    return executeBulk(this, "copyMessages", ids, destinationId);
+};
+
+Messages.prototype.updateMessages = function (ids, changes) {
+    return executeBulk(this, "updateMessages", ids, JSON.stringify(changes));
+};
+
+Messages.prototype.deleteMessages = function (ids) {
+    return executeBulk(this, "deleteMessages", ids);
+};
+
+// Reads messages, specified by Ids, and their attachments' metadata into device cache in background, in the order
+// they are passed, so they are opened without network requests. Replaces previous prefetch request (Android only)
+Messages.prototype.prefetch = function (ids, options) {
+    if (cordova.platformId !== 'android') {
+        var deferred = new utils.Utility.Deferred();
+        deferred.resolve(null);
+        return deferred;
+    }
+    return this.executeNativeMethod("prefetchMessages", null, [JSON.stringify(ids), JSON.stringify(options || {})]);
+};
+
+// Stops reading messages that are not read yet, e.g. when user scrolls away from them
+Messages.prototype.cancelPrefetch = function () {
+    if (cordova.platformId !== 'android') {
+        var deferred = new utils.Utility.Deferred();
+        deferred.resolve(null);
+        return deferred;
+    }
+    return this.executeNativeMethod("cancelPrefetch");
+};
+
+// Result of bulk operation: number of succeeded and failed items and per-item results in the same order as ids
+function BulkResult(context, path, data) {
+    this.succeeded = data.succeeded;
+    this.failed = data.failed;
+    this.results = data.results;
+}
+
+function executeBulk(messages, nativeMethodName, ids, argument) {
+    if (cordova.platformId !== 'android') {
+        var deferred = new utils.Utility.Deferred();
+        deferred.reject(new Error("Bulk operations are supported on Android only"));
+        return deferred;
+    }
+
+    var payload = [JSON.stringify(ids)];
+    if (argument !== undefined) {
+        payload.push(argument);
+    }
+    return messages.executeNativeMethod(nativeMethodName, BulkResult, payload);
+}
+
 utils.extends(MessageFetcher, Fetcher);
 function MessageFetcher(context, path, id) {
     Fetcher.call(this, context, path);
@@ -212,6 +298,12 @@ MessageCollectionFetcher.prototype.fetch = function () {
     return this.fetchAll();
 };
 
+// Prefetches fetched messages: options are passed to Messages.prefetch
+MessageCollectionFetcher.prototype.prefetch = function (options) {
+    this._prefetch = options || {};
+    return this;
+};
+
 MessageCollectionFetcher.prototype.fetchAll = function () {
     
     var queryParams = JSON.stringify({
@@ -220,10 +312,56 @@ MessageCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy,
+        fields: this._fields,
+        previewLength: this._previewLength,
+        binary: this._binary
+    });
+
+    var result = this.executeNativeMethod("getMessages", Message, queryParams, true);
+    return this._prefetch ? prefetchFetched(this, result) : result;
+};
+
+function prefetchFetched(fetcher, result) {
+    var deferred = new utils.Utility.Deferred();
+    var options = fetcher._prefetch;
+
+    result.then(function (messages) {
+        var ids = messages.map(function (message) {
+            return message.Id;
+        });
+        new Messages(fetcher.context, fetcher.path).prefetch(ids, options);
+        deferred.resolve(messages);
+    }, function (err) {
+        deferred.reject(err);
+    });
+
+    return deferred;
+}
+
+MessageCollectionFetcher.prototype.fetchPages = function (onPage, maxItems) {
+
+    var queryParams = JSON.stringify({
+        top: this._top,
+        skip: this._skip,
+        selectedId: this._selectedId,
+        select: this._select,
+        expand: this._expand,
+        filter: this._filter,
+        orderBy: this._orderBy,
+        fields: this._fields,
+        previewLength: this._previewLength,
+        binary: this._binary,
+        pageAll: true,
+        maxItems: maxItems || -1
     });
 
-    return this.executeNativeMethod("getMessages", Message, queryParams, true);
+    return this.executeNativeMethodPaged("getMessages", Message, queryParams, true, onPage);
+};
+
+MessageCollectionFetcher.prototype.syncChanges = function (onChanges, options) {
+    return this.executeNativeSync(this.path, Message, options, onChanges);
 };
 
 module.exports.Message = Message;
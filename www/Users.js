@@ -368,7 +368,8 @@ UserCollectionFetcher.prototype.fetchAll = function () {
         selectedId: this._selectedId,
         select: this._select,
         expand: this._expand,
-        filter: this._filter
+        filter: this._filter,
+        orderBy: this._orderBy
     });
 
     return this.executeNativeMethod("getUsers", User, queryParams, true);